@@ -0,0 +1,229 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.cli;
+
+import com.google.protobuf.ByteString;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysImport;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.tosl.coronawarncompanion.dkdownload.Unzip.openUnzippedStream;
+
+/*
+ Matches all device snapshots in a directory against the Diagnosis Keys of local key packages,
+ one device per thread, and writes a summary per device:
+   <out>/<device>.json          daily matches and throughput
+   <out>/<device>.csv           daily matches
+   <out>/<device>.metrics.json  the MatcherMetrics of the run
+   <out>/summary.csv            one row per device
+ */
+public class BatchMatcher {
+
+    private static final String USAGE = "Usage: cli --keys <dir with key package zips> --devices <dir with snapshots> " +
+            "--out <dir> [--threads <n>] [--tz-offset <seconds>] [--format json|csv|both]\n" +
+            "Snapshots: LevelDB directories (copies of app_contact-tracing-contact-record-db) and RaMBLE *.sqlite files.";
+
+    public static class Options {
+        File keysDir;
+        File devicesDir;
+        File outDir;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int timeZoneOffsetSeconds = TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 1000;
+        boolean writeJson = true;
+        boolean writeCsv = true;
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--keys": options.keysDir = new File(value); break;
+                    case "--devices": options.devicesDir = new File(value); break;
+                    case "--out": options.outDir = new File(value); break;
+                    case "--threads": options.threads = Integer.parseInt(value); break;
+                    case "--tz-offset": options.timeZoneOffsetSeconds = Integer.parseInt(value); break;
+                    case "--format":
+                        options.writeJson = value.equals("json") || value.equals("both");
+                        options.writeCsv = value.equals("csv") || value.equals("both");
+                        if (!options.writeJson && !options.writeCsv) {
+                            throw new IllegalArgumentException("Unknown format: " + value);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.keysDir == null || options.devicesDir == null || options.outDir == null) {
+                throw new IllegalArgumentException("--keys, --devices and --out are required");
+            }
+            if (options.threads < 1) {
+                throw new IllegalArgumentException("--threads must be at least 1");
+            }
+            return options;
+        }
+    }
+
+    /*
+     The keys of all *.zip files in the directory, without duplicates (like the app does for overlapping packages).
+     */
+    static ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> readDiagnosisKeys(File keysDir) throws IOException {
+        File[] files = keysDir.listFiles((dir, name) -> name.endsWith(".zip"));
+        if (files == null) {
+            throw new IOException("Not a directory: " + keysDir);
+        }
+        Arrays.sort(files);
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys = new ArrayList<>();
+        HashSet<ByteString> diagnosisKeysData = new HashSet<>();
+        for (File file : files) {
+            try (InputStream exportDotBin = openUnzippedStream(file, "export.bin")) {
+                if (exportDotBin == null) {
+                    System.err.println("No export.bin in " + file + ", skipped.");
+                    continue;
+                }
+                DiagnosisKeysImport diagnosisKeysImport = new DiagnosisKeysImport(exportDotBin);
+                if (!diagnosisKeysImport.isHeaderValid() || diagnosisKeysImport.getDiagnosisKeys() == null) {
+                    System.err.println("Invalid export.bin in " + file + ", skipped.");
+                    continue;
+                }
+                for (DiagnosisKeysProtos.TemporaryExposureKey dk : diagnosisKeysImport.getDiagnosisKeys()) {
+                    if (diagnosisKeysData.add(dk.getKeyData())) {
+                        diagnosisKeys.add(dk);
+                    }
+                }
+            }
+        }
+        return diagnosisKeys;
+    }
+
+    static DeviceSummary matchDevice(DeviceSnapshot device,
+                                     ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys,
+                                     int timeZoneOffsetSeconds) throws IOException {
+        long startNanos = System.nanoTime();
+        RpiList rpiList = device.readToRpiList(timeZoneOffsetSeconds);
+        long readNanos = System.nanoTime() - startNanos;
+
+        MatchEntryContent matchEntryContent = new MatchEntryContent();
+        Matcher matcher = new Matcher(rpiList, diagnosisKeys, matchEntryContent, timeZoneOffsetSeconds);
+        matcher.findMatches(null, () -> false);
+        matcher.getMetrics().device = device.name;
+        return new DeviceSummary(device, rpiList.getRpiCount(), readNanos, matcher.getMetrics(), matchEntryContent);
+    }
+
+    /*
+     Returns the number of devices that could not be matched.
+     */
+    public static int run(Options options) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys = readDiagnosisKeys(options.keysDir);
+        List<DeviceSnapshot> devices = DeviceSnapshot.findAll(options.devicesDir);
+        System.out.println(diagnosisKeys.size() + " diagnosis keys, " + devices.size() + " devices, " +
+                options.threads + " threads");
+        if (!options.outDir.isDirectory() && !options.outDir.mkdirs()) {
+            throw new IOException("Could not create " + options.outDir);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        List<Future<DeviceSummary>> futures = new ArrayList<>();
+        for (DeviceSnapshot device : devices) {
+            futures.add(executor.submit(() -> {
+                DeviceSummary summary = matchDevice(device, diagnosisKeys, options.timeZoneOffsetSeconds);
+                writeDeviceFiles(summary, options);
+                System.out.println(String.format(Locale.ROOT,
+                        "%s: %d local RPIs, %d matching DKs, read %.0f ms, matched %.0f ms (%.0f DKs/s, %.0f RPIs/s)",
+                        device.name, summary.numLocalRpis, summary.matchingDks,
+                        summary.readNanos / 1e6, summary.metrics.wallNanos / 1e6,
+                        summary.metrics.getDiagnosisKeysPerSecond(), summary.metrics.getGeneratedRpisPerSecond()));
+                return summary;
+            }));
+        }
+        executor.shutdown();
+
+        int numFailed = 0;
+        List<DeviceSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < devices.size(); i++) {
+            try {
+                summaries.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                System.err.println(devices.get(i).name + ": failed: " + e.getCause());
+                numFailed++;
+            }
+        }
+        if (options.writeCsv) {
+            try (Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(new File(options.outDir, "summary.csv")), StandardCharsets.UTF_8)) {
+                writer.write(DeviceSummary.CSV_HEADER + "\n");
+                for (DeviceSummary summary : summaries) {
+                    writer.write(summary.toCsvRow() + "\n");
+                }
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d devices matched, %d failed, %.1f s",
+                summaries.size(), numFailed, (System.nanoTime() - startNanos) / 1e9));
+        return numFailed;
+    }
+
+    private static void writeDeviceFiles(DeviceSummary summary, Options options) throws IOException {
+        String baseName = summary.device.name.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (options.writeJson) {
+            summary.writeJson(new File(options.outDir, baseName + ".json"));
+            summary.metrics.writeJson(new File(options.outDir, baseName + ".metrics.json"));
+        }
+        if (options.writeCsv) {
+            summary.writeDailyCsv(new File(options.outDir, baseName + ".csv"));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        System.exit(run(options) == 0 ? 0 : 1);
+    }
+}
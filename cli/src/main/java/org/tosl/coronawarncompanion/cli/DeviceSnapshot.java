@@ -0,0 +1,139 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.cli;
+
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.tosl.coronawarncompanion.gmsreadout.ContactDbReader;
+import org.tosl.coronawarncompanion.ramblereadout.RambleDevice;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ One device snapshot in the devices directory:
+ - a copy of the GMS contact DB, i.e. a LevelDB directory (recognized by its CURRENT file), or
+ - a RaMBLE export (*.sqlite).
+ */
+class DeviceSnapshot {
+
+    enum Source {GMS, RAMBLE}
+
+    final String name;
+    final Source source;
+    final File file;
+
+    private DeviceSnapshot(String name, Source source, File file) {
+        this.name = name;
+        this.source = source;
+        this.file = file;
+    }
+
+    /*
+     All snapshots in the directory, sorted by name. Other files are ignored.
+     */
+    static List<DeviceSnapshot> findAll(File devicesDir) {
+        List<DeviceSnapshot> result = new ArrayList<>();
+        File[] files = devicesDir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory() && new File(file, "CURRENT").isFile()) {
+                result.add(new DeviceSnapshot(file.getName(), Source.GMS, file));
+            } else if (file.isFile() && file.getName().endsWith(".sqlite")) {
+                String name = file.getName().substring(0, file.getName().length() - ".sqlite".length());
+                result.add(new DeviceSnapshot(name, Source.RAMBLE, file));
+            }
+        }
+        return result;
+    }
+
+    RpiList readToRpiList(int timeZoneOffsetSeconds) throws IOException {
+        if (source == Source.GMS) {
+            return readGmsLevelDb(timeZoneOffsetSeconds);
+        } else {
+            return readRambleDb(timeZoneOffsetSeconds);
+        }
+    }
+
+    private RpiList readGmsLevelDb(int timeZoneOffsetSeconds) throws IOException {
+        // like the app, open a copy, because LevelDB writes to its directory (LOCK, LOG, compactions)
+        Path copy = Files.createTempDirectory("cwc-" + name);
+        try {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File dbFile : files) {
+                    if (dbFile.isFile() && !dbFile.getName().equals("LOCK")) {
+                        Files.copy(dbFile.toPath(), copy.resolve(dbFile.getName()), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+            Options options = new Options();
+            options.createIfMissing(false);
+            options.compressionType(CompressionType.NONE);
+            try (DB levelDBStore = new Iq80DBFactory().open(copy.toFile(), options)) {
+                return ContactDbReader.readToRpiList(levelDBStore, timeZoneOffsetSeconds);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(copy)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private RpiList readRambleDb(int timeZoneOffsetSeconds) throws IOException {
+        RpiList rpiList = new RpiList(timeZoneOffsetSeconds);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+             Statement statement = connection.createStatement();
+             Statement statement2 = connection.createStatement();
+             ResultSet devices = statement.executeQuery(RambleDevice.DEVICES_QUERY)) {
+            while (devices.next()) {
+                RambleDevice device = new RambleDevice(devices.getString(1),
+                        Integer.parseInt(devices.getString(2)), Integer.parseInt(devices.getString(3)));
+                try (ResultSet locations = statement2.executeQuery(RambleDevice.LOCATIONS_QUERY + devices.getString(4))) {
+                    while (locations.next()) {
+                        device.addScan(Integer.parseInt(locations.getString(1)), Integer.parseInt(locations.getString(2)));
+                    }
+                }
+                device.addTo(rpiList);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read " + file + ": " + e.getMessage(), e);
+        }
+        return rpiList;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.cli;
+
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.ExposureRisk;
+import org.tosl.coronawarncompanion.matcher.MatcherMetrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.tosl.coronawarncompanion.matcher.MatcherMetrics.quote;
+import static org.tosl.coronawarncompanion.tools.Utils.getDateFromDaysSinceEpoch;
+
+/*
+ The result of matching one device: the daily figures of its MatchEntryContent, and the throughput.
+ */
+class DeviceSummary {
+
+    static final String CSV_HEADER = "device,source,localRpis,diagnosisKeys,matchingDks,matchingRpis," +
+            "maxWeightedExposureMinutes,strategy,readMillis,matchMillis,diagnosisKeysPerSecond,generatedRpisPerSecond";
+    static final String DAILY_CSV_HEADER = "date,daysSinceEpoch,matchingDks,matchingRpis," +
+            "weightedExposureMinutes,minAttenuation,numScans";
+
+    static class Day {
+        final int daysSinceEpochLocalTZ;
+        final int matchingDks;
+        final int matchingRpis;
+        final double weightedExposureMinutes;
+        final int minAttenuation;
+        final int numScans;
+
+        Day(int daysSinceEpochLocalTZ, MatchEntryContent.DailyMatchEntries dailyMatchEntries) {
+            this.daysSinceEpochLocalTZ = daysSinceEpochLocalTZ;
+            this.matchingDks = dailyMatchEntries.getDailyMatchingDkCount();
+            this.matchingRpis = dailyMatchEntries.getDailyRpiCount();
+            ExposureRisk exposureRisk = dailyMatchEntries.getDailyExposureRisk();
+            this.weightedExposureMinutes = exposureRisk.getWeightedExposureMinutes();
+            this.minAttenuation = exposureRisk.getMinAttenuation();
+            this.numScans = exposureRisk.getNumScans();
+        }
+    }
+
+    final DeviceSnapshot device;
+    final int numLocalRpis;
+    final long readNanos;
+    final MatcherMetrics metrics;
+    final int matchingDks;
+    final int matchingRpis;
+    final List<Day> days = new ArrayList<>();
+
+    DeviceSummary(DeviceSnapshot device, int numLocalRpis, long readNanos,
+                  MatcherMetrics metrics, MatchEntryContent matchEntryContent) {
+        this.device = device;
+        this.numLocalRpis = numLocalRpis;
+        this.readNanos = readNanos;
+        this.metrics = metrics;
+        this.matchingDks = matchEntryContent.matchEntries.getTotalMatchingDkCount();
+        this.matchingRpis = matchEntryContent.matchEntries.getTotalRpiCount();
+        for (Integer day : matchEntryContent.matchEntries.getAvailableDaysSinceEpochLocalTZ()) {
+            days.add(new Day(day, matchEntryContent.matchEntries.getDailyMatchEntries(day)));
+        }
+    }
+
+    double getMaxWeightedExposureMinutes() {
+        double max = 0.0;
+        for (Day day : days) {
+            max = Math.max(max, day.weightedExposureMinutes);
+        }
+        return max;
+    }
+
+    private static String date(int daysSinceEpoch) {
+        // days are already shifted to the local time zone, so format them as UTC
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.format(getDateFromDaysSinceEpoch(daysSinceEpoch));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static String csvField(String string) {
+        if (string.contains(",") || string.contains("\"") || string.contains("\n")) {
+            return '"' + string.replace("\"", "\"\"") + '"';
+        }
+        return string;
+    }
+
+    String toCsvRow() {
+        return csvField(device.name) + "," + device.source.name().toLowerCase(Locale.ROOT) + "," +
+                numLocalRpis + "," + metrics.numDiagnosisKeys + "," + matchingDks + "," + matchingRpis + "," +
+                String.format(Locale.ROOT, "%.1f", getMaxWeightedExposureMinutes()) + "," + metrics.strategy + "," +
+                millis(readNanos) + "," + millis(metrics.wallNanos) + "," +
+                String.format(Locale.ROOT, "%.1f", metrics.getDiagnosisKeysPerSecond()) + "," +
+                String.format(Locale.ROOT, "%.1f", metrics.getGeneratedRpisPerSecond());
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"device\": ").append(quote(device.name)).append(",\n");
+        sb.append("  \"source\": ").append(quote(device.source.name().toLowerCase(Locale.ROOT))).append(",\n");
+        sb.append("  \"localRpis\": ").append(numLocalRpis).append(",\n");
+        sb.append("  \"diagnosisKeys\": ").append(metrics.numDiagnosisKeys).append(",\n");
+        sb.append("  \"matchingDks\": ").append(matchingDks).append(",\n");
+        sb.append("  \"matchingRpis\": ").append(matchingRpis).append(",\n");
+        sb.append("  \"strategy\": ").append(quote(String.valueOf(metrics.strategy))).append(",\n");
+        sb.append("  \"readMillis\": ").append(millis(readNanos)).append(",\n");
+        sb.append("  \"matchMillis\": ").append(millis(metrics.wallNanos)).append(",\n");
+        sb.append("  \"diagnosisKeysPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", metrics.getDiagnosisKeysPerSecond())).append(",\n");
+        sb.append("  \"generatedRpisPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", metrics.getGeneratedRpisPerSecond())).append(",\n");
+        sb.append("  \"days\": [");
+        for (int i = 0; i < days.size(); i++) {
+            Day day = days.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"date\": ").append(quote(date(day.daysSinceEpochLocalTZ)))
+                    .append(", \"daysSinceEpoch\": ").append(day.daysSinceEpochLocalTZ)
+                    .append(", \"matchingDks\": ").append(day.matchingDks)
+                    .append(", \"matchingRpis\": ").append(day.matchingRpis)
+                    .append(", \"weightedExposureMinutes\": ").append(String.format(Locale.ROOT, "%.1f", day.weightedExposureMinutes))
+                    .append(", \"minAttenuation\": ").append(day.minAttenuation)
+                    .append(", \"numScans\": ").append(day.numScans)
+                    .append("}");
+        }
+        sb.append(days.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    void writeJson(File file) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(toJson().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    void writeDailyCsv(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(DAILY_CSV_HEADER + "\n");
+            for (Day day : days) {
+                writer.write(date(day.daysSinceEpochLocalTZ) + "," + day.daysSinceEpochLocalTZ + "," +
+                        day.matchingDks + "," + day.matchingRpis + "," +
+                        String.format(Locale.ROOT, "%.1f", day.weightedExposureMinutes) + "," +
+                        day.minAttenuation + "," + day.numScans + "\n");
+            }
+        }
+    }
+}
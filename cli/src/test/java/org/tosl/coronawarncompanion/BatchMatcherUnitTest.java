@@ -0,0 +1,65 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tosl.coronawarncompanion.cli.BatchMatcher;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Runs the batch matcher on synthetic key packages and device snapshots.
+ */
+public class BatchMatcherUnitTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void run_matchesAllDevices() throws Exception {
+        File keysDir = tempDir.newFolder("keys");
+        File devicesDir = tempDir.newFolder("devices");
+        File outDir = new File(tempDir.getRoot(), "out");
+
+        SyntheticMatchingData data = SyntheticMatchingData.create(41, 300, 2000, 0.1, 18600);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        data.writeExportZips(keysDir, "XX", 100, keyPair.getPrivate());
+        data.writeExportZips(keysDir, "YY", 300, keyPair.getPrivate());  // the same keys again, must be ignored
+        data.writeGmsLevelDb(new File(devicesDir, "phone1"));
+        data.writeRambleSqlite(new File(devicesDir, "phone2.sqlite"));
+        assertTrue(new File(devicesDir, "notes.txt").createNewFile());
+
+        BatchMatcher.Options options = BatchMatcher.Options.parse(new String[]{
+                "--keys", keysDir.getPath(), "--devices", devicesDir.getPath(), "--out", outDir.getPath(),
+                "--threads", "2", "--tz-offset", "0"});
+        assertEquals(0, BatchMatcher.run(options));
+
+        List<String> summary = Files.readAllLines(new File(outDir, "summary.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, summary.size());
+        assertTrue(summary.get(1).startsWith("phone1,gms,2000,300,"));
+        assertTrue(summary.get(2).startsWith("phone2,ramble,"));
+        for (String device : new String[]{"phone1", "phone2"}) {
+            String json = new String(Files.readAllBytes(new File(outDir, device + ".json").toPath()),
+                    StandardCharsets.UTF_8);
+            assertTrue(json, json.contains("\"matchingRpis\": " + data.numPlantedMatches + ","));
+            assertTrue(new File(outDir, device + ".csv").isFile());
+            assertTrue(new File(outDir, device + ".metrics.json").isFile());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_requiresDirectories() {
+        BatchMatcher.Options.parse(new String[]{"--keys", "keys"});
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.crypto;
+
+/**
+ * Pure-Java AES-128 encryption (table based, "T-tables"), as an alternative to
+ * {@link AesEcbEncryptor} for devices whose JCE provider has no hardware-backed AES.
+ *
+ * <p>It is meant for the RPI generation: the key schedule is computed once per key, and
+ * {@link #setFixedPrefix(byte[])} / {@link #encryptWithFixedPrefix(int, byte[], int)} encrypt many blocks
+ * that only differ in their last 4 bytes (like the "EN-RPI" padded data of consecutive intervals),
+ * with the parts of the first round that don't depend on these bytes computed only once.
+ *
+ * <p>Table based AES is not constant-time. That's acceptable here, because the keys are derived from
+ * published Diagnosis Keys.
+ */
+public final class Aes128TableEncryptor {
+
+    private static final int[] SBOX = new int[256];
+    private static final int[] TE0 = new int[256];
+    private static final int[] TE1 = new int[256];
+    private static final int[] TE2 = new int[256];
+    private static final int[] TE3 = new int[256];
+
+    static {
+        // S-box from the multiplicative inverse in GF(2^8) and the affine transformation
+        int p = 1;
+        int q = 1;
+        do {
+            p = p ^ ((p << 1) & 0xff) ^ (((p & 0x80) != 0) ? 0x1b : 0);  // p * 3
+            q ^= q << 1;  // q / 3
+            q ^= q << 2;
+            q ^= q << 4;
+            q &= 0xff;
+            if ((q & 0x80) != 0) {
+                q ^= 0x09;
+            }
+            int x = q ^ rotl8(q, 1) ^ rotl8(q, 2) ^ rotl8(q, 3) ^ rotl8(q, 4);
+            SBOX[p] = (x ^ 0x63) & 0xff;
+        } while (p != 1);
+        SBOX[0] = 0x63;
+
+        for (int i = 0; i < 256; i++) {
+            int s = SBOX[i];
+            int s2 = xtime(s);
+            int s3 = s2 ^ s;
+            int t = (s2 << 24) | (s << 16) | (s << 8) | s3;
+            TE0[i] = t;
+            TE1[i] = Integer.rotateRight(t, 8);
+            TE2[i] = Integer.rotateRight(t, 16);
+            TE3[i] = Integer.rotateRight(t, 24);
+        }
+    }
+
+    private static int rotl8(int x, int shift) {
+        return ((x << shift) | (x >>> (8 - shift))) & 0xff;
+    }
+
+    private static int xtime(int x) {
+        return ((x << 1) ^ (((x & 0x80) != 0) ? 0x1b : 0)) & 0xff;
+    }
+
+    private final int[] rk = new int[44];  // round keys
+
+    // first round of setFixedPrefix(), without the contributions of the last 4 bytes
+    private int p0, p1, p2, p3;
+
+    /**
+     * Initializes encryption with provided key (16 bytes).
+     */
+    public void init(byte[] key) throws CryptoException {
+        if (key == null || key.length != 16) {
+            throw new CryptoException(new IllegalArgumentException("AES-128 key must have 16 bytes"));
+        }
+        for (int i = 0; i < 4; i++) {
+            rk[i] = getInt(key, 4 * i);
+        }
+        int rcon = 1;
+        for (int i = 4; i < 44; i++) {
+            int temp = rk[i - 1];
+            if (i % 4 == 0) {
+                temp = subWord(Integer.rotateLeft(temp, 8)) ^ (rcon << 24);
+                rcon = xtime(rcon);
+            }
+            rk[i] = rk[i - 4] ^ temp;
+        }
+    }
+
+    private static int subWord(int w) {
+        return (SBOX[w >>> 24] << 24) | (SBOX[(w >>> 16) & 0xff] << 16) |
+                (SBOX[(w >>> 8) & 0xff] << 8) | SBOX[w & 0xff];
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    private static void putInt(int v, byte[] b, int off) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    /**
+     * Encrypts one 16 byte block.
+     */
+    public void encrypt(byte[] input, int inputOffset, byte[] output, int outputOffset) {
+        int s0 = getInt(input, inputOffset) ^ rk[0];
+        int s1 = getInt(input, inputOffset + 4) ^ rk[1];
+        int s2 = getInt(input, inputOffset + 8) ^ rk[2];
+        int s3 = getInt(input, inputOffset + 12) ^ rk[3];
+        int t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xff] ^ TE2[(s2 >>> 8) & 0xff] ^ TE3[s3 & 0xff] ^ rk[4];
+        int t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xff] ^ TE2[(s3 >>> 8) & 0xff] ^ TE3[s0 & 0xff] ^ rk[5];
+        int t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xff] ^ TE2[(s0 >>> 8) & 0xff] ^ TE3[s1 & 0xff] ^ rk[6];
+        int t3 = TE0[s3 >>> 24] ^ TE1[(s0 >>> 16) & 0xff] ^ TE2[(s1 >>> 8) & 0xff] ^ TE3[s2 & 0xff] ^ rk[7];
+        encryptRounds2To10(t0, t1, t2, t3, output, outputOffset);
+    }
+
+    /**
+     * Prepares {@link #encryptWithFixedPrefix(int, byte[], int)} for blocks that start with the
+     * first 12 bytes of the given block. Call this after {@link #init(byte[])}.
+     */
+    public void setFixedPrefix(byte[] block) {
+        int s0 = getInt(block, 0) ^ rk[0];
+        int s1 = getInt(block, 4) ^ rk[1];
+        int s2 = getInt(block, 8) ^ rk[2];
+        // each column of the first round depends on exactly one byte of the last word
+        p0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xff] ^ TE2[(s2 >>> 8) & 0xff] ^ rk[4];
+        p1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xff] ^ TE3[s0 & 0xff] ^ rk[5];
+        p2 = TE0[s2 >>> 24] ^ TE2[(s0 >>> 8) & 0xff] ^ TE3[s1 & 0xff] ^ rk[6];
+        p3 = TE1[(s0 >>> 16) & 0xff] ^ TE2[(s1 >>> 8) & 0xff] ^ TE3[s2 & 0xff] ^ rk[7];
+    }
+
+    /**
+     * Encrypts the block that consists of the prefix set by {@link #setFixedPrefix(byte[])},
+     * followed by the 4 bytes of lastWord (big-endian).
+     */
+    public void encryptWithFixedPrefix(int lastWord, byte[] output, int outputOffset) {
+        int s3 = lastWord ^ rk[3];
+        encryptRounds2To10(p0 ^ TE3[s3 & 0xff], p1 ^ TE2[(s3 >>> 8) & 0xff],
+                p2 ^ TE1[(s3 >>> 16) & 0xff], p3 ^ TE0[s3 >>> 24], output, outputOffset);
+    }
+
+    private void encryptRounds2To10(int t0, int t1, int t2, int t3, byte[] output, int outputOffset) {
+        final int[] rk = this.rk;
+        int s0, s1, s2, s3;
+        int r = 8;
+        for (int round = 1; round < 9; round++) {
+            s0 = TE0[t0 >>> 24] ^ TE1[(t1 >>> 16) & 0xff] ^ TE2[(t2 >>> 8) & 0xff] ^ TE3[t3 & 0xff] ^ rk[r];
+            s1 = TE0[t1 >>> 24] ^ TE1[(t2 >>> 16) & 0xff] ^ TE2[(t3 >>> 8) & 0xff] ^ TE3[t0 & 0xff] ^ rk[r + 1];
+            s2 = TE0[t2 >>> 24] ^ TE1[(t3 >>> 16) & 0xff] ^ TE2[(t0 >>> 8) & 0xff] ^ TE3[t1 & 0xff] ^ rk[r + 2];
+            s3 = TE0[t3 >>> 24] ^ TE1[(t0 >>> 16) & 0xff] ^ TE2[(t1 >>> 8) & 0xff] ^ TE3[t2 & 0xff] ^ rk[r + 3];
+            t0 = s0;
+            t1 = s1;
+            t2 = s2;
+            t3 = s3;
+            r += 4;
+        }
+        // final round: no MixColumns
+        putInt(((SBOX[t0 >>> 24] << 24) | (SBOX[(t1 >>> 16) & 0xff] << 16) |
+                (SBOX[(t2 >>> 8) & 0xff] << 8) | SBOX[t3 & 0xff]) ^ rk[40], output, outputOffset);
+        putInt(((SBOX[t1 >>> 24] << 24) | (SBOX[(t2 >>> 16) & 0xff] << 16) |
+                (SBOX[(t3 >>> 8) & 0xff] << 8) | SBOX[t0 & 0xff]) ^ rk[41], output, outputOffset + 4);
+        putInt(((SBOX[t2 >>> 24] << 24) | (SBOX[(t3 >>> 16) & 0xff] << 16) |
+                (SBOX[(t0 >>> 8) & 0xff] << 8) | SBOX[t1 & 0xff]) ^ rk[42], output, outputOffset + 8);
+        putInt(((SBOX[t3 >>> 24] << 24) | (SBOX[(t0 >>> 16) & 0xff] << 16) |
+                (SBOX[(t1 >>> 8) & 0xff] << 8) | SBOX[t2 & 0xff]) ^ rk[43], output, outputOffset + 12);
+    }
+}
@@ -21,8 +21,6 @@
 
 package org.tosl.coronawarncompanion.crypto;
 
-import android.annotation.SuppressLint;
-
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
@@ -42,7 +40,6 @@ public final class AesEcbEncryptor {
 
     private final Cipher cipher;
 
-    @SuppressLint("GetInstance")
     public AesEcbEncryptor() throws CryptoException {
         try {
             this.cipher = Cipher.getInstance("AES/ECB/NoPadding");
@@ -73,6 +70,18 @@ public final class AesEcbEncryptor {
         }
     }
 
+    /**
+     * Encrypts a region of provided data (a multiple of 16 bytes, e.g. several blocks) to a given output buffer.
+     */
+    public void encrypt(byte[] data, int inputOffset, int length, byte[] output, int outputOffset)
+            throws CryptoException {
+        try {
+            cipher.doFinal(data, inputOffset, length, output, outputOffset);
+        } catch (BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
+            throw new CryptoException(e);
+        }
+    }
+
     /**
      * Encrypts provided data to a given output buffer.
      */
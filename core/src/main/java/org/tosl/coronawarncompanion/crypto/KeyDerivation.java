@@ -21,10 +21,6 @@
 
 package org.tosl.coronawarncompanion.crypto;
 
-import androidx.annotation.Nullable;
-
-import com.google.common.base.Preconditions;
-
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -50,19 +46,23 @@ public final class KeyDerivation {
      * Note that this function is for Exposure Notification Cryptography Specification 1.1 only, it
      * only support 16-byte length output.
      */
-    private static Mac mac;
-    static {
-        try {
-            mac = Mac.getInstance(ALGORITHM_NAME);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+    // one Mac per thread, a Mac instance must not be used by several matchers at the same time
+    private static final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(ALGORITHM_NAME);
+            } catch (NoSuchAlgorithmException e) {
+                e.printStackTrace();
+                return null;
+            }
         }
-    }
+    };
 
     public static byte[] hkdfSha256(
-            byte[] inputKeyingMaterial, @Nullable byte[] inputSalt, byte[] info, int length)
+            byte[] inputKeyingMaterial, byte[] inputSalt, byte[] info, int length)
             throws CryptoException {
-        return hkdfSha256(mac, inputKeyingMaterial, inputSalt, info, length);
+        return hkdfSha256(mac.get(), inputKeyingMaterial, inputSalt, info, length);
     }
 
     /**
@@ -70,9 +70,11 @@ public final class KeyDerivation {
      * only support 16-byte length output.
      */
     public static byte[] hkdfSha256(
-            Mac mac, byte[] inputKeyingMaterial, @Nullable byte[] inputSalt, byte[] info, int length)
+            Mac mac, byte[] inputKeyingMaterial, byte[] inputSalt, byte[] info, int length)
             throws CryptoException {
-        Preconditions.checkArgument(mac.getAlgorithm().equals(ALGORITHM_NAME));
+        if (!mac.getAlgorithm().equals(ALGORITHM_NAME)) {
+            throw new IllegalArgumentException();
+        }
         if (length != HKDF_OUTPUT_LENGTH) {
             throw new CryptoException(new NoSuchAlgorithmException("Only support 16-byte."));
         }
@@ -0,0 +1,139 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.diagnosiskeys;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysSinceEpochFromENIN;
+
+/*
+ The number of Diagnosis Keys per day of their rolling start, also by region and report type, for a fixed range
+ of days. Counted in int arrays while the keys are imported, so that no extra pass over all keys is needed.
+ Keys before the first day are not counted, keys after the last day are counted for the last day.
+ Not thread-safe: e.g. one for each downloaded file, merged into the one that is shown on the UI thread.
+ */
+public class DiagnosisKeyHistogram {
+
+    // TemporaryExposureKey.ReportType: UNKNOWN, CONFIRMED_TEST, ..., REVOKED
+    public static final int NUM_REPORT_TYPES = DiagnosisKeysProtos.TemporaryExposureKey.ReportType.values().length;
+
+    private final int firstDaysSinceEpoch;
+    private final int numDays;
+    private final int[] dailyCounts;
+    private final ArrayList<String> regions = new ArrayList<>();
+    private final ArrayList<int[]> countsPerRegion = new ArrayList<>();  // [reportType * numDays + day index]
+    private int totalCount = 0;
+
+    // the keys of one file are all from the same region
+    private String lastRegion = null;
+    private int[] lastRegionCounts = null;
+
+    public DiagnosisKeyHistogram(int firstDaysSinceEpoch, int lastDaysSinceEpoch) {
+        this.firstDaysSinceEpoch = firstDaysSinceEpoch;
+        this.numDays = Math.max(1, lastDaysSinceEpoch - firstDaysSinceEpoch + 1);
+        this.dailyCounts = new int[numDays];
+    }
+
+    /*
+     An empty histogram for the same days, e.g. for the keys of one file.
+     */
+    public DiagnosisKeyHistogram newEmptyCopy() {
+        return new DiagnosisKeyHistogram(firstDaysSinceEpoch, getLastDaysSinceEpoch());
+    }
+
+    public void add(String region, DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        int dayIndex = getDaysSinceEpochFromENIN(dk.getRollingStartIntervalNumber()) - firstDaysSinceEpoch;
+        if (dayIndex < 0) {
+            return;
+        }
+        if (dayIndex >= numDays) {
+            dayIndex = numDays - 1;
+        }
+        dailyCounts[dayIndex]++;
+        totalCount++;
+        getRegionCounts(region)[dk.getReportType().getNumber() * numDays + dayIndex]++;
+    }
+
+    public void merge(DiagnosisKeyHistogram other) {
+        if (other.firstDaysSinceEpoch != firstDaysSinceEpoch || other.numDays != numDays) {
+            throw new IllegalArgumentException("Different days: " + other.firstDaysSinceEpoch + "+" + other.numDays +
+                    " instead of " + firstDaysSinceEpoch + "+" + numDays);
+        }
+        for (int i = 0; i < numDays; i++) {
+            dailyCounts[i] += other.dailyCounts[i];
+        }
+        totalCount += other.totalCount;
+        for (int r = 0; r < other.regions.size(); r++) {
+            int[] counts = getRegionCounts(other.regions.get(r));
+            int[] otherCounts = other.countsPerRegion.get(r);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+        }
+    }
+
+    private int[] getRegionCounts(String region) {
+        if (lastRegionCounts != null && Objects.equals(region, lastRegion)) {
+            return lastRegionCounts;
+        }
+        int regionIndex = regions.indexOf(region);
+        if (regionIndex == -1) {
+            regions.add(region);
+            countsPerRegion.add(new int[NUM_REPORT_TYPES * numDays]);
+            regionIndex = regions.size() - 1;
+        }
+        lastRegion = region;
+        lastRegionCounts = countsPerRegion.get(regionIndex);
+        return lastRegionCounts;
+    }
+
+    public int getFirstDaysSinceEpoch() {
+        return firstDaysSinceEpoch;
+    }
+
+    public int getLastDaysSinceEpoch() {
+        return firstDaysSinceEpoch + numDays - 1;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getCount(int daysSinceEpoch) {
+        int dayIndex = daysSinceEpoch - firstDaysSinceEpoch;
+        return (dayIndex >= 0 && dayIndex < numDays) ? dailyCounts[dayIndex] : 0;
+    }
+
+    public List<String> getRegions() {
+        return Collections.unmodifiableList(regions);
+    }
+
+    public int getCount(String region, DiagnosisKeysProtos.TemporaryExposureKey.ReportType reportType,
+                        int daysSinceEpoch) {
+        int regionIndex = regions.indexOf(region);
+        int dayIndex = daysSinceEpoch - firstDaysSinceEpoch;
+        if (regionIndex == -1 || dayIndex < 0 || dayIndex >= numDays) {
+            return 0;
+        }
+        return countsPerRegion.get(regionIndex)[reportType.getNumber() * numDays + dayIndex];
+    }
+}
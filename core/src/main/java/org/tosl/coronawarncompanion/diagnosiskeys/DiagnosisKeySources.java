@@ -0,0 +1,108 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.diagnosiskeys;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ The downloaded packages that contain each Diagnosis Key, while their signatures are being verified.
+ A key that is contained in several packages (e.g. in several regions) is only used once, in the copy of the
+ package that has arrived first. Its matches are only retracted when all packages that contain it have failed
+ the verification, so it does not depend on the order in which the packages arrive and are verified.
+ Thread-safe: the packages are added by the download, the verifications fail on their own threads.
+ */
+public class DiagnosisKeySources {
+
+    /*
+     The keys of one package, see addPackage().
+     */
+    public static final class Package {
+        public final List<DiagnosisKeysProtos.TemporaryExposureKey> addedDks;  // not contained in an earlier package
+        private final Collection<ByteString> keyData;  // distinct
+        private boolean failed = false;
+
+        private Package(List<DiagnosisKeysProtos.TemporaryExposureKey> addedDks, Collection<ByteString> keyData) {
+            this.addedDks = Collections.unmodifiableList(addedDks);
+            this.keyData = keyData;
+        }
+    }
+
+    private static class Sources {
+        final DiagnosisKeysProtos.TemporaryExposureKey dk;  // the copy that is used
+        int numPackagesNotFailed = 0;  // verified, or still being verified
+
+        Sources(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+            this.dk = dk;
+        }
+    }
+
+    private final HashMap<ByteString, Sources> sourcesByKeyData = new HashMap<>();
+
+    /*
+     Adds the keys of a package that has arrived. A package counts once for each of its keys,
+     also if it contains a key more than once.
+     */
+    public synchronized Package addPackage(List<DiagnosisKeysProtos.TemporaryExposureKey> dks) {
+        LinkedHashMap<ByteString, DiagnosisKeysProtos.TemporaryExposureKey> distinctKeys = new LinkedHashMap<>();
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : dks) {
+            if (!distinctKeys.containsKey(dk.getKeyData())) {
+                distinctKeys.put(dk.getKeyData(), dk);
+            }
+        }
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> addedDks = new ArrayList<>();
+        for (Map.Entry<ByteString, DiagnosisKeysProtos.TemporaryExposureKey> entry : distinctKeys.entrySet()) {
+            Sources sources = sourcesByKeyData.get(entry.getKey());
+            if (sources == null) {
+                sources = new Sources(entry.getValue());
+                sourcesByKeyData.put(entry.getKey(), sources);
+                addedDks.add(entry.getValue());
+            }
+            sources.numPackagesNotFailed++;
+        }
+        return new Package(addedDks, distinctKeys.keySet());
+    }
+
+    /*
+     The verification of a package has failed. Returns the keys that are now contained in failed packages only,
+     i.e. whose matches are to be retracted, in the copies that have been added. Only counts once per package.
+     */
+    public synchronized List<DiagnosisKeysProtos.TemporaryExposureKey> failPackage(Package failedPackage) {
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> retractedDks = new ArrayList<>();
+        if (failedPackage.failed) {
+            return retractedDks;
+        }
+        failedPackage.failed = true;
+        for (ByteString keyData : failedPackage.keyData) {
+            Sources sources = sourcesByKeyData.get(keyData);
+            sources.numPackagesNotFailed--;
+            if (sources.numPackagesNotFailed == 0) {
+                retractedDks.add(sources.dk);
+            }
+        }
+        return retractedDks;
+    }
+}
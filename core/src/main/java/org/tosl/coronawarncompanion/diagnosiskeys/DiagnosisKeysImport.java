@@ -18,47 +18,56 @@
 
 package org.tosl.coronawarncompanion.diagnosiskeys;
 
-import android.content.Context;
-import android.util.Log;
-import android.view.Gravity;
-import android.widget.Toast;
-
-import com.google.protobuf.InvalidProtocolBufferException;
-
-import org.tosl.coronawarncompanion.BuildConfig;
-import org.tosl.coronawarncompanion.R;
-
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
+import org.tosl.coronawarncompanion.tools.Log;
+
 public class DiagnosisKeysImport {
 
     private static final String TAG = "DiagnosisKeys";
 
     private DiagnosisKeysProtos.TemporaryExposureKeyExport dkImport = null;
+    private boolean headerValid = false;
 
-    public DiagnosisKeysImport(byte[] exportDotBin, Context context) {
+    public DiagnosisKeysImport(byte[] exportDotBin) {
+        this(new ByteArrayInputStream(exportDotBin));
+    }
+
+    /*
+     Parses export.bin directly from the (unzip) stream, without an intermediate copy in memory.
+     An invalid header is only logged here, the app reports it via isHeaderValid().
+     */
+    public DiagnosisKeysImport(InputStream exportDotBin) {
         String header = "EK Export v1    ";
         byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
-        if (BuildConfig.DEBUG && headerBytes.length != 16) {
-            throw new AssertionError("Invalid header string in source code!");
+        byte[] fileHeaderBytes = new byte[16];
+        try {
+            new DataInputStream(exportDotBin).readFully(fileHeaderBytes);
+            headerValid = Arrays.equals(fileHeaderBytes, headerBytes);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        if (Arrays.equals(Arrays.copyOf(exportDotBin, 16), headerBytes)) {
+        if (headerValid) {
             try {
-                dkImport = DiagnosisKeysProtos.TemporaryExposureKeyExport.parseFrom(Arrays.copyOfRange(exportDotBin, 16, exportDotBin.length));
-            } catch (InvalidProtocolBufferException e) {
+                dkImport = DiagnosisKeysProtos.TemporaryExposureKeyExport.parseFrom(exportDotBin);
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         } else {
             Log.e(TAG, "Invalid Header: export.bin does not start with 'EK Export v1'");
-            CharSequence text = context.getResources().getString(R.string.error_download_invalid_key_file_header);
-            Toast toast = Toast.makeText(context, text, Toast.LENGTH_LONG);
-            toast.setGravity(Gravity.CENTER, 0, 0);
-            toast.show();
         }
     }
 
+    public boolean isHeaderValid() {
+        return headerValid;
+    }
+
     public List<DiagnosisKeysProtos.TemporaryExposureKey> getDiagnosisKeys() {
         if (dkImport != null) {
             return dkImport.getKeysList();
@@ -66,4 +75,12 @@ public class DiagnosisKeysImport {
             return null;
         }
     }
+
+    public String getRegion() {
+        if (dkImport != null && dkImport.hasRegion()) {
+            return dkImport.getRegion();
+        } else {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.diagnosiskeys;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.tosl.coronawarncompanion.tools.Log;
+
+import static org.tosl.coronawarncompanion.dkdownload.Unzip.getUnzippedBytesFromZipFile;
+import static org.tosl.coronawarncompanion.dkdownload.Unzip.openUnzippedStream;
+
+/*
+ Verifies export.bin against the signatures in export.sig, using the configured public key.
+
+ The verification runs on its own small thread pool, so that it can be done concurrently
+ with parsing and matching, and does not delay the result.
+ */
+public class SignatureVerifier {
+
+    private static final String TAG = "SignatureVerifier";
+
+    // ECDSA with SHA-256, as specified for the Exposure Notification key export files
+    public static final String SIGNATURE_ALGORITHM_OID = "1.2.840.10045.4.3.2";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    private final PublicKey publicKey;
+    private final ExecutorService verificationPool;
+
+    /*
+     encodedPublicKey: X.509 SubjectPublicKeyInfo (DER) of the EC public key
+     */
+    public SignatureVerifier(byte[] encodedPublicKey, int numThreads) throws GeneralSecurityException {
+        publicKey = KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(encodedPublicKey));
+        verificationPool = Executors.newFixedThreadPool(Math.max(1, numThreads), runnable -> {
+            Thread thread = new Thread(runnable, "SignatureVerifier");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /*
+     Returns true if at least one of the signatures in exportDotSig is a valid signature of exportDotBin.
+     */
+    public boolean verify(byte[] exportDotBin, byte[] exportDotSig) {
+        if (exportDotBin == null || exportDotSig == null) {
+            return false;
+        }
+        return verify(Collections.singletonList(exportDotBin), exportDotSig);
+    }
+
+    /*
+     Same as above, for a zip file with export.bin and export.sig.
+     export.bin is streamed through the verification, and unzipped once per signature.
+     */
+    public boolean verify(File zipFile) {
+        try {
+            byte[] exportDotSig = getUnzippedBytesFromZipFile(zipFile, "export.sig");
+            if (exportDotSig == null) {
+                Log.w(TAG, "No export.sig in " + zipFile);
+                return false;
+            }
+            return verify(() -> new ZipEntryChunks(zipFile, "export.bin"), exportDotSig);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + zipFile + ": " + e);
+            return false;
+        }
+    }
+
+    private boolean verify(Iterable<byte[]> exportDotBinChunks, byte[] exportDotSig) {
+        DiagnosisKeysProtos.TEKSignatureList signatureList;
+        try {
+            signatureList = DiagnosisKeysProtos.TEKSignatureList.parseFrom(exportDotSig);
+        } catch (InvalidProtocolBufferException e) {
+            Log.w(TAG, "Invalid export.sig: " + e);
+            return false;
+        }
+        for (DiagnosisKeysProtos.TEKSignature tekSignature : signatureList.getSignaturesList()) {
+            if (tekSignature.hasSignatureInfo() && tekSignature.getSignatureInfo().hasSignatureAlgorithm() &&
+                    !SIGNATURE_ALGORITHM_OID.equals(tekSignature.getSignatureInfo().getSignatureAlgorithm())) {
+                continue;  // unsupported algorithm
+            }
+            try {
+                Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+                signature.initVerify(publicKey);
+                for (byte[] chunk : exportDotBinChunks) {
+                    signature.update(chunk);
+                }
+                if (signature.verify(tekSignature.getSignature().toByteArray())) {
+                    return true;
+                }
+            } catch (GeneralSecurityException e) {
+                Log.w(TAG, "Signature verification failed: " + e);
+            }
+        }
+        return false;
+    }
+
+    /*
+     Verifies in the background, then calls resultCallback (on a verification thread) with the result.
+     */
+    public void verifyAsync(File zipFile, Consumer<Boolean> resultCallback) {
+        verificationPool.execute(() -> resultCallback.accept(verify(zipFile)));
+    }
+
+    /*
+     Iterates over the content of a file in a zip file, in chunks of a fixed-size buffer.
+     A full chunk is the buffer itself, so it is only valid until hasNext() is called again:
+     the next chunk is read there, not in next().
+     */
+    private static class ZipEntryChunks implements Iterator<byte[]> {
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[16 * 1024];
+        private byte[] next;
+        private boolean nextRead = false;
+
+        ZipEntryChunks(File zipFile, String filename) {
+            InputStream stream = null;
+            try {
+                stream = openUnzippedStream(zipFile, filename);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not unzip " + filename + ": " + e);
+            }
+            inputStream = stream;
+        }
+
+        private void advance() {
+            next = null;
+            if (inputStream == null) {
+                return;
+            }
+            try {
+                int bytesRead = inputStream.read(buffer);
+                if (bytesRead == buffer.length) {
+                    next = buffer;
+                } else if (bytesRead > 0) {
+                    next = Arrays.copyOf(buffer, bytesRead);
+                } else if (bytesRead == -1) {
+                    inputStream.close();
+                } else {
+                    next = new byte[0];
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not unzip: " + e);
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!nextRead) {
+                advance();
+                nextRead = true;
+            }
+            return next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            nextRead = false;
+            return next;
+        }
+    }
+
+    public void shutdown() {
+        verificationPool.shutdownNow();
+    }
+
+    /*
+     No more verifications are started: those that have been started still call back, then the threads end.
+     */
+    public void shutdownWhenDone() {
+        verificationPool.shutdown();
+    }
+}
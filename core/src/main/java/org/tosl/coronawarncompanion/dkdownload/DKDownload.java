@@ -0,0 +1,393 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.dkdownload;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.tosl.coronawarncompanion.tools.Log;
+
+/*
+ Downloads the Diagnosis Keys of several countries (regions) concurrently.
+
+ For each region, the list of available dates and the list of available hours of the current day
+ are requested, then all matching packages are streamed into files in the package directory.
+ The package directory is a cache: packages that are already there (e.g. prefetched by the
+ background sync) are delivered without downloading them again.
+ All requests share one fixed-size
+ thread pool (the concurrency limit), and the pending requests are picked round-robin per region,
+ so one region with many packages cannot starve the others.
+ The downloaded packages of all regions are delivered through one shared queue, see takeNext().
+ */
+public class DKDownload {
+    private static final String TAG = "DKDownload";
+
+    public static final String CWA_URL = "https://svc90.main.px.t-online.de/version/v1/diagnosis-keys/country";
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    // cached packages older than this are removed
+    public static final int PACKAGE_RETENTION_DAYS = 15;
+    private static final long PART_FILE_RETENTION_MILLIS = 3600 * 1000;
+
+    // region_yyyy-MM-dd.zip (daily package) or region_yyyy-MM-dd_hour.zip (hourly package)
+    private static final Pattern PACKAGE_FILENAME_PATTERN =
+            Pattern.compile("^([A-Za-z]+)_(\\d{4}-\\d{2}-\\d{2})(_\\d+)?\\.zip(\\..*)?$");
+
+    private final String baseUrl;
+    private final File packageDir;
+    private final List<String> regions;
+    private final ExecutorService executor;
+
+    // pending requests, per region, in the order in which the regions have been configured
+    private final LinkedHashMap<String, ArrayDeque<Runnable>> pendingRequests = new LinkedHashMap<>();
+    private int nextRegionIndex = 0;
+
+    private final BlockingQueue<FileResponse> fileResponseQueue = new LinkedBlockingQueue<>();
+    private final AtomicInteger numOpenRequests = new AtomicInteger(0);
+    private volatile boolean cancelled = false;
+    private final List<String> failedRegions = Collections.synchronizedList(new ArrayList<>());
+
+    // marks the end of fileResponseQueue
+    private static final FileResponse END_OF_DOWNLOADS = new FileResponse();
+
+    public DKDownload(File packageDir, List<String> regions, int maxConcurrentRequests) {
+        this(CWA_URL, packageDir, regions, maxConcurrentRequests);
+    }
+
+    public DKDownload(String baseUrl, File packageDir, List<String> regions, int maxConcurrentRequests) {
+        this.baseUrl = baseUrl;
+        this.packageDir = packageDir;
+        this.regions = new ArrayList<>(regions);
+        for (String region : this.regions) {
+            pendingRequests.put(region, new ArrayDeque<>());
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrentRequests));
+    }
+
+    public static class FileResponse {
+        public URL url;
+        public String region;
+        public File file;  // the downloaded zip file
+        public boolean cached;  // true if the file was already in the package directory
+    }
+
+    /*
+     Starts downloading all packages of all regions, for the dates from minDate on.
+     */
+    public void start(Date minDate) {
+        //noinspection ResultOfMethodCallIgnored
+        packageDir.mkdirs();
+        removeOutdatedPackages();
+        numOpenRequests.incrementAndGet();  // keeps the queue open until all index requests have been scheduled
+        for (String region : regions) {
+            schedule(region, () -> processRegion(region, minDate));
+        }
+        requestFinished();
+    }
+
+    /*
+     Returns the next downloaded package (of any region), blocking until one is available.
+     Returns null when all packages have been delivered.
+     */
+    public FileResponse takeNext() throws InterruptedException {
+        FileResponse fileResponse = fileResponseQueue.take();
+        if (fileResponse == END_OF_DOWNLOADS) {
+            fileResponseQueue.add(END_OF_DOWNLOADS);  // so that further calls also return null
+            return null;
+        }
+        return fileResponse;
+    }
+
+    public List<String> getFailedRegions() {
+        synchronized (failedRegions) {
+            return new ArrayList<>(failedRegions);
+        }
+    }
+
+    public boolean allRegionsFailed() {
+        return getFailedRegions().size() == regions.size();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+        fileResponseQueue.add(END_OF_DOWNLOADS);
+    }
+
+    // requests that are still running after cancel() don't schedule further requests
+    private void schedule(String region, Runnable request) {
+        if (cancelled) {
+            return;
+        }
+        numOpenRequests.incrementAndGet();
+        synchronized (pendingRequests) {
+            ArrayDeque<Runnable> queue = pendingRequests.get(region);
+            if (queue == null) {
+                throw new IllegalArgumentException("Unknown region: " + region);
+            }
+            queue.add(request);
+        }
+        try {
+            executor.execute(this::runNextPendingRequest);
+        } catch (RejectedExecutionException e) {  // cancelled in the meantime
+            numOpenRequests.decrementAndGet();
+        }
+    }
+
+    // Each scheduled request causes exactly one call of this method,
+    // but the request that is actually run is the next one in round-robin order over the regions.
+    private void runNextPendingRequest() {
+        Runnable request = null;
+        synchronized (pendingRequests) {
+            int numRegions = regions.size();
+            for (int i = 0; i < numRegions && request == null; i++) {
+                String region = regions.get((nextRegionIndex + i) % numRegions);
+                ArrayDeque<Runnable> queue = pendingRequests.get(region);
+                if (queue != null && !queue.isEmpty()) {
+                    request = queue.poll();
+                    nextRegionIndex = (nextRegionIndex + i + 1) % numRegions;
+                }
+            }
+        }
+        if (request != null) {
+            try {
+                request.run();
+            } finally {
+                requestFinished();
+            }
+        }
+    }
+
+    private void requestFinished() {
+        if (numOpenRequests.decrementAndGet() == 0) {
+            Log.d(TAG, "All downloads finished.");
+            fileResponseQueue.add(END_OF_DOWNLOADS);
+            executor.shutdown();
+        }
+    }
+
+    private void processRegion(String region, Date minDate) {
+        String availableDatesStr;
+        try {
+            availableDatesStr = new String(StreamingHttpClient.get(new URL(getRegionUrl(region))),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.e(TAG, "Region " + region + ": Could not get available dates: " + e);
+            failedRegions.add(region);
+            return;
+        }
+        if (cancelled) {
+            return;
+        }
+        LinkedList<Date> availableDates = parseAvailableDates(availableDatesStr);
+        removeSupersededHourlyPackages(region, availableDates);
+
+        // Daily Diagnosis Keys for the previous days
+        for (Date date : availableDates) {
+            if (date.compareTo(minDate) >= 0) {  // date >= minDate
+                scheduleFileRequest(region, getDailyDKsURLForDate(region, date),
+                        region + "_" + getStringFromDate(date) + ".zip");
+            }
+        }
+
+        if (availableDates.size() > 0) {
+            // Hourly Diagnosis Keys for the current day
+            Calendar c = Calendar.getInstance();
+            c.setTime(availableDates.getLast());
+            c.add(Calendar.DATE, 1);
+            Date currentDate = c.getTime();
+            List<String> availableHours = new LinkedList<>();
+            try {
+                String availableHoursStr = new String(StreamingHttpClient.get(new URL(getRegionUrl(region) + "/" +
+                        getStringFromDate(currentDate) + "/" + "hour")), StandardCharsets.UTF_8);
+                Collections.addAll(availableHours, parseCwsListResponse(availableHoursStr));
+            } catch (IOException e) {
+                Log.i(TAG, "Region " + region + ": No hourly downloads available yet: " + e);
+            }
+            for (String hour : availableHours) {
+                if (!hour.isEmpty()) {
+                    scheduleFileRequest(region, getHourlyDKsURLForDateAndHour(region, currentDate, hour),
+                            region + "_" + getStringFromDate(currentDate) + "_" + hour + ".zip");
+                }
+            }
+        } else {
+            Log.e(TAG, "Region " + region + ": No dates available.");
+            failedRegions.add(region);
+        }
+    }
+
+    private void scheduleFileRequest(String region, URL url, String filename) {
+        if (url == null) {
+            return;
+        }
+        FileResponse fileResponse = new FileResponse();
+        fileResponse.url = url;
+        fileResponse.region = region;
+        fileResponse.file = new File(packageDir, filename);
+        if (fileResponse.file.length() > 0) {
+            // packages don't change once they are published
+            fileResponse.cached = true;
+            fileResponseQueue.add(fileResponse);
+            return;
+        }
+        schedule(region, () -> {
+            Log.d(TAG, "Going to download: " + url);
+            try {
+                long numBytes = StreamingHttpClient.getToFile(url, fileResponse.file);
+                Log.d(TAG, "Downloaded " + numBytes + " bytes: " + url);
+                fileResponseQueue.add(fileResponse);
+            } catch (IOException e) {
+                Log.e(TAG, "Download failed: " + url + ": " + e);
+            }
+        });
+    }
+
+    // Removes packages that are older than the retention period, and leftovers of failed downloads.
+    // The decision only depends on the file itself, so that several downloads can share the directory.
+    private void removeOutdatedPackages() {
+        File[] files = packageDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(now);
+        c.add(Calendar.DATE, -PACKAGE_RETENTION_DAYS);
+        Date oldestDate = c.getTime();
+        SimpleDateFormat dateFormatter = getDateFormatter();
+        for (File file : files) {
+            java.util.regex.Matcher matcher = PACKAGE_FILENAME_PATTERN.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            boolean remove = false;
+            if (file.getName().endsWith(StreamingHttpClient.PART_FILE_SUFFIX)) {
+                remove = now - file.lastModified() > PART_FILE_RETENTION_MILLIS;
+            } else {
+                try {
+                    Date date = dateFormatter.parse(matcher.group(2));
+                    remove = date != null && date.before(oldestDate);
+                } catch (ParseException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (remove) {
+                Log.d(TAG, "Removing outdated package: " + file.getName());
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    // Hourly packages of a day are superseded by the daily package, once that is available.
+    private void removeSupersededHourlyPackages(String region, List<Date> availableDates) {
+        File[] files = packageDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        HashSet<String> availableDateStrings = new HashSet<>();
+        for (Date date : availableDates) {
+            availableDateStrings.add(getStringFromDate(date));
+        }
+        for (File file : files) {
+            java.util.regex.Matcher matcher = PACKAGE_FILENAME_PATTERN.matcher(file.getName());
+            if (matcher.matches() && matcher.group(3) != null && matcher.group(4) == null &&
+                    region.equals(matcher.group(1)) && availableDateStrings.contains(matcher.group(2))) {
+                Log.d(TAG, "Removing superseded package: " + file.getName());
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    static String[] parseCwsListResponse(String str) {
+        String reducedStr = str.replace("\"","");
+        reducedStr = reducedStr.replace("[","");
+        reducedStr = reducedStr.replace("]","");
+        return reducedStr.split(",");
+    }
+
+    private LinkedList<Date> parseAvailableDates(String availableDatesStr) {
+        SimpleDateFormat dateFormatter = getDateFormatter();
+        LinkedList<Date> result = new LinkedList<>();
+        for (String str : parseCwsListResponse(availableDatesStr)) {
+            try {
+                result.add(dateFormatter.parse(str));
+            } catch (ParseException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    // SimpleDateFormat is not thread-safe, so each request gets its own instance
+    private static SimpleDateFormat getDateFormatter() {
+        return new SimpleDateFormat("yyyy-MM-dd");
+    }
+
+    private static String getStringFromDate(Date date) {
+        return getDateFormatter().format(date);
+    }
+
+    private String getRegionUrl(String region) {
+        return baseUrl + "/" + region + "/date";
+    }
+
+    public URL getDailyDKsURLForDate(String region, Date date) {
+        URL result = null;
+        try {
+            result = new URL(getRegionUrl(region) + "/" + getStringFromDate(date));
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+        //Log.d(TAG, "getDailyDKsURLForDate: URL: "+result);
+        return result;
+    }
+
+    public URL getHourlyDKsURLForDateAndHour(String region, Date date, String hour) {
+        URL result = null;
+        try {
+            result = new URL(getRegionUrl(region) + "/" + getStringFromDate(date) + "/hour/" + hour);
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+        //Log.d(TAG, "getHourlyDKsURLForDateAndHour: URL: "+result);
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.dkdownload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ Minimal HTTP GET client.
+ Response bodies can be streamed straight to a file through a fixed-size buffer,
+ so that the memory used during a download does not depend on the size of the file.
+ */
+public class StreamingHttpClient {
+
+    public static final int BUFFER_SIZE = 16 * 1024;
+    public static final String PART_FILE_SUFFIX = ".part";
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private StreamingHttpClient() {
+    }
+
+    private static HttpURLConnection connect(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("HTTP response code " + responseCode + " for " + url);
+        }
+        return connection;
+    }
+
+    /*
+     Downloads a small response (e.g. a list of dates) into memory.
+     */
+    public static byte[] get(URL url) throws IOException {
+        HttpURLConnection connection = connect(url);
+        try (InputStream inputStream = connection.getInputStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+            return output.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /*
+     Streams the response body to a file. Returns the number of bytes written.
+     The body is written to a temporary file in the same directory first,
+     so the file only appears once it is complete.
+     */
+    public static long getToFile(URL url, File file) throws IOException {
+        File partFile = File.createTempFile(file.getName() + ".", PART_FILE_SUFFIX, file.getParentFile());
+        long numBytes = 0;
+        boolean complete = false;
+        HttpURLConnection connection = null;
+        try {
+            connection = connect(url);
+            try (ReadableByteChannel in = Channels.newChannel(connection.getInputStream());
+                 FileOutputStream fileOutputStream = new FileOutputStream(partFile);
+                 FileChannel out = fileOutputStream.getChannel()) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        numBytes += out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            complete = true;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (!complete) {
+                //noinspection ResultOfMethodCallIgnored
+                partFile.delete();
+            }
+        }
+        if (!partFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            partFile.delete();
+            throw new IOException("Could not rename " + partFile + " to " + file);
+        }
+        return numBytes;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.dkdownload;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class Unzip {
+    private static final String TAG = "Unzip";
+    private static final int bufferLen = 16*1024;
+
+    /*
+     Opens a stream of one file within the zip file, without unzipping it into memory.
+     Returns null if the zip file does not contain this file.
+     The caller has to close the returned stream (this also closes the zip file).
+     */
+    public static InputStream openUnzippedStream(File zipFile, String filename) throws IOException {
+        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile), bufferLen));
+        try {
+            ZipEntry zipEntry = zis.getNextEntry();
+            while (zipEntry != null) {
+                if (zipEntry.getName().equals(filename)) {
+                    return zis;
+                }
+                zipEntry = zis.getNextEntry();
+            }
+        } catch (IOException e) {
+            zis.close();
+            throw e;
+        }
+        zis.close();
+        return null;
+    }
+
+    /*
+     Unzips a (small) file into memory.
+     Returns null if the zip file does not contain this file.
+     */
+    public static byte[] getUnzippedBytesFromZipFile(File zipFile, String filename) throws IOException {
+        try (InputStream inputStream = openUnzippedStream(zipFile, filename)) {
+            if (inputStream == null) {
+                return null;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] tmpBuffer = new byte[bufferLen];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(tmpBuffer, 0, bufferLen)) != -1) {
+                baos.write(tmpBuffer, 0, bytesRead);
+            }
+            //Log.d(TAG, "Unzipped file "+filename+". Length: "+baos.size());
+            return baos.toByteArray();
+        }
+    }
+}
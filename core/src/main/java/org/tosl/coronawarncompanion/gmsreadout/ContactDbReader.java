@@ -0,0 +1,70 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.gmsreadout;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.ReadOptions;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.nio.ByteBuffer;
+
+public class ContactDbReader {
+
+    /*
+     Reads all entries of a LevelDB in the GMS layout: key = 2 bytes day (UTC) + 16 bytes RPI, value = ContactRecords.
+     */
+    public static RpiList readToRpiList(DB levelDBStore, int timeZoneOffsetSeconds) {
+        RpiList rpiList = new RpiList(timeZoneOffsetSeconds);
+        readInto(levelDBStore, rpiList);
+        return rpiList;
+    }
+
+    /*
+     Same as readToRpiList, but into a given (e.g. memory-bounded) RpiList
+     */
+    public static void readInto(DB levelDBStore, RpiList rpiList) {
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.verifyChecksums(true);
+        readOptions.fillCache(true);
+
+        DBIterator iterator = levelDBStore.iterator(readOptions);
+        for(iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
+            byte[] key = iterator.peekNext().getKey();
+            byte[] value = iterator.peekNext().getValue();
+
+            byte[] rpiBytes = new byte[16];
+            ByteBuffer keyBuf = ByteBuffer.wrap(key);
+            int daysSinceEpochUTC = keyBuf.getShort();  // get first 2 bytes: date
+            keyBuf.get(rpiBytes); // get the next 16 bytes: RPI
+
+            ContactRecordsProtos.ContactRecords contactRecords = null;
+            try {
+                contactRecords = ContactRecordsProtos.ContactRecords.parseFrom(value);
+            } catch (InvalidProtocolBufferException e) {
+                e.printStackTrace();
+            }
+            if (contactRecords != null) {
+                rpiList.addEntry(daysSinceEpochUTC, rpiBytes, contactRecords);
+            }
+        }
+    }
+}
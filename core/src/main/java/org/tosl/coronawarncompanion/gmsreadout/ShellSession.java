@@ -0,0 +1,288 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.gmsreadout;
+
+import org.tosl.coronawarncompanion.tools.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ A long-lived shell process (e.g. "su") that runs one command after the other.
+ After each command, the shell prints a marker with a random token of the session, the number of the command
+ and its exit status, so the output of a command is streamed as it is, byte by byte, until its marker shows up.
+ The commands run in the shell itself (not in a subshell), so e.g. "cd" applies to the following commands.
+ The output is read by a separate thread, through a few recycled buffers, so that a command can time out even
+ while a child process of the shell still holds its output open. If a command times out, or the shell exits,
+ the session is closed, because its output can no longer be told apart from the output of the next command.
+ */
+public class ShellSession implements Closeable {
+
+    private static final String TAG = "ShellSession";
+    public static final int BUFFER_SIZE = 16 * 1024;
+    private static final int NUM_BUFFERS = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    public static final long NO_TIMEOUT = 0;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    public static class Result {
+        public final int exitStatus;
+        public final String output;
+
+        Result(int exitStatus, String output) {
+            this.exitStatus = exitStatus;
+            this.output = output;
+        }
+    }
+
+    private static class Chunk {
+        final byte[] data;
+        int length;  // -1: the shell has exited
+
+        Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private final Process process;
+    private final OutputStream commandStream;
+    private final String markerToken;
+    private final BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(NUM_BUFFERS);
+    private final BlockingQueue<Chunk> filledChunks = new ArrayBlockingQueue<>(NUM_BUFFERS);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // the chunk being consumed, may already contain the output of the next command
+    private Chunk chunk = null;
+    private int chunkPos = 0;
+    private int numCommands = 0;
+
+    public ShellSession(String... shellCommand) throws IOException {
+        process = new ProcessBuilder(shellCommand).start();
+        commandStream = process.getOutputStream();
+        markerToken = newMarkerToken();
+        for (int i = 0; i < NUM_BUFFERS; i++) {
+            freeChunks.add(new Chunk(new byte[BUFFER_SIZE]));
+        }
+        startDaemon(() -> readOutput(process.getInputStream()), TAG + "-stdout");
+        startDaemon(() -> logErrors(process.getErrorStream()), TAG + "-stderr");
+    }
+
+    private static void startDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // hex digits only: no newline or ':' in the marker, apart from its separators
+    private static String newMarkerToken() {
+        byte[] tokenBytes = new byte[16];
+        new SecureRandom().nextBytes(tokenBytes);
+        StringBuilder sb = new StringBuilder("CWC_");
+        for (byte b : tokenBytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private void readOutput(InputStream outputStream) {
+        try {
+            while (true) {
+                Chunk freeChunk = freeChunks.take();
+                try {
+                    freeChunk.length = outputStream.read(freeChunk.data, 0, freeChunk.data.length);
+                } catch (IOException e) {
+                    freeChunk.length = -1;
+                }
+                filledChunks.put(freeChunk);
+                if (freeChunk.length == -1) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static void logErrors(InputStream errorStream) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Log.w(TAG, line);
+            }
+        } catch (IOException e) {
+            // the shell has exited
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /*
+     Runs a command and collects its output as text.
+     */
+    public Result run(String command, long timeoutMillis) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitStatus = run(command, output, timeoutMillis);
+        return new Result(exitStatus, output.toString("UTF-8"));
+    }
+
+    /*
+     Runs a command and streams its output (unchanged, binary-safe) to output. Returns the exit status.
+     Throws an InterruptedIOException if the command does not finish within timeoutMillis.
+     With NO_TIMEOUT, it waits until the command has finished, or the shell has exited.
+     */
+    public synchronized int run(String command, OutputStream output, long timeoutMillis) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Shell session is closed");
+        }
+        numCommands++;
+        byte[] marker = ("\n" + markerToken + ":" + numCommands + ":").getBytes(UTF_8);
+        // the command reads from /dev/null, so it cannot consume the commands that follow it
+        String script = "{\n" + command + "\n} </dev/null\n" +
+                "printf '\\n%s:%d:%d\\n' " + markerToken + " " + numCommands + " \"$?\"\n";
+        long deadlineNanos = (timeoutMillis == NO_TIMEOUT) ? NO_DEADLINE :
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            commandStream.write(script.getBytes(UTF_8));
+            commandStream.flush();
+            return readUntilMarker(marker, output, deadlineNanos);
+        } catch (InterruptedIOException e) {
+            close();
+            throw new InterruptedIOException(e.getMessage() + ": " + command);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // makes sure that the current chunk has bytes left, returns false if the shell has exited
+    private boolean nextChunk(long deadlineNanos) throws IOException {
+        while (true) {
+            if (chunk != null) {
+                if (chunk.length == -1) {
+                    return false;
+                }
+                if (chunkPos < chunk.length) {
+                    return true;
+                }
+                freeChunks.add(chunk);
+                chunk = null;
+            }
+            try {
+                if (deadlineNanos == NO_DEADLINE) {
+                    chunk = filledChunks.take();
+                } else {
+                    chunk = filledChunks.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            }
+            if (chunk == null) {
+                throw new InterruptedIOException("Timed out");
+            }
+            chunkPos = 0;
+        }
+    }
+
+    // writes the output up to the marker, the bytes that might be the start of the marker are held back
+    private int readUntilMarker(byte[] marker, OutputStream output, long deadlineNanos) throws IOException {
+        int numMatched = 0;
+        while (true) {
+            if (!nextChunk(deadlineNanos)) {
+                throw new EOFException("Shell has exited");
+            }
+            byte[] data = chunk.data;
+            int runStart = chunkPos;
+            while (chunkPos < chunk.length) {
+                if (data[chunkPos] == marker[numMatched]) {
+                    if (numMatched == 0) {
+                        output.write(data, runStart, chunkPos - runStart);
+                    }
+                    numMatched++;
+                    chunkPos++;
+                    if (numMatched == marker.length) {
+                        return readExitStatus(deadlineNanos);
+                    }
+                } else if (numMatched > 0) {
+                    // not the marker after all, and only the newline at its start can start it again
+                    output.write(marker, 0, numMatched);
+                    numMatched = 0;
+                    runStart = chunkPos;
+                } else {
+                    chunkPos++;
+                }
+            }
+            if (numMatched == 0) {
+                output.write(data, runStart, chunkPos - runStart);
+            }
+        }
+    }
+
+    private int readExitStatus(long deadlineNanos) throws IOException {
+        int exitStatus = 0;
+        while (true) {
+            if (!nextChunk(deadlineNanos)) {
+                throw new EOFException("Shell has exited");
+            }
+            byte b = chunk.data[chunkPos++];
+            if (b == '\n') {
+                return exitStatus;
+            }
+            if (b < '0' || b > '9') {
+                throw new IOException("Unexpected exit status of the shell command");
+            }
+            exitStatus = exitStatus * 10 + (b - '0');
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            commandStream.write("exit\n".getBytes(UTF_8));
+            commandStream.close();
+        } catch (IOException e) {
+            // the shell has exited already
+        }
+        process.destroy();
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.matchentries;
+
+import com.google.protobuf.ByteString;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.matcher.ExposureRisk;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class MatchEntryContent {
+    // organized in a TreeMap indexed by days,
+    // which contains HashMaps indexed by (the DkIds of) Diagnosis Keys,
+    // which contain ArrayLists of MatchEntries.
+
+    public final MatchEntries matchEntries = new MatchEntries();
+
+    /*
+     Compact identity of a Diagnosis Key: its key data and validity. Much cheaper to hash and compare than
+     the protobuf message, whose hashCode()/equals() walk all fields.
+     */
+    public static final class DkId {
+        private final long keyDataHigh;
+        private final long keyDataLow;
+        private final int rollingStartIntervalNumber;
+        private final int rollingPeriod;
+        private final ByteString otherKeyData;  // only for key data that is not 16 bytes long
+
+        private DkId(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+            ByteString keyData = dk.getKeyData();
+            if (keyData.size() == 16) {
+                ByteBuffer byteBuffer = keyData.asReadOnlyByteBuffer();
+                keyDataHigh = byteBuffer.getLong(0);
+                keyDataLow = byteBuffer.getLong(8);
+                otherKeyData = null;
+            } else {
+                keyDataHigh = 0;
+                keyDataLow = 0;
+                otherKeyData = keyData;
+            }
+            rollingStartIntervalNumber = dk.getRollingStartIntervalNumber();
+            rollingPeriod = dk.getRollingPeriod();
+        }
+
+        public static DkId of(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+            return new DkId(dk);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DkId)) {
+                return false;
+            }
+            DkId other = (DkId) o;
+            return keyDataHigh == other.keyDataHigh && keyDataLow == other.keyDataLow &&
+                    rollingStartIntervalNumber == other.rollingStartIntervalNumber &&
+                    rollingPeriod == other.rollingPeriod &&
+                    (otherKeyData == null ? other.otherKeyData == null : otherKeyData.equals(other.otherKeyData));
+        }
+
+        @Override
+        public int hashCode() {
+            // the key data is random already
+            long h = keyDataHigh ^ keyDataLow;
+            int hash = (int) (h ^ (h >>> 32)) ^ rollingStartIntervalNumber;
+            return (otherKeyData == null) ? hash : hash ^ otherKeyData.hashCode();
+        }
+    }
+
+    /*
+     Consistent per-day figures, taken at one point in time (see MatchEntries.getDailyCounts()).
+     */
+    public static final class DailyCounts {
+        public final int dailyRpiCount;
+        public final int dailyMatchingDkCount;
+        public final ExposureRisk dailyExposureRisk;  // a copy
+
+        private DailyCounts(DailyMatchEntries dailyMatchEntries) {
+            dailyRpiCount = dailyMatchEntries.getDailyRpiCount();
+            dailyMatchingDkCount = dailyMatchEntries.getDailyMatchingDkCount();
+            dailyExposureRisk = new ExposureRisk();
+            dailyExposureRisk.add(dailyMatchEntries.getDailyExposureRisk());
+        }
+    }
+
+    /*
+     Collects the matches of one worker without any locking, until they are merged into the
+     MatchEntries in one go (see MatchEntries.merge()). Not thread-safe: one Accumulator per worker.
+     */
+    public static final class Accumulator {
+        private final TreeMap<Integer, DailyMatchEntries> map = new TreeMap<>();  // <DaysSinceEpoch, DailyMatchEntries>
+        private int rpiCount = 0;
+
+        public void add(Matcher.MatchEntry entry, DiagnosisKeysProtos.TemporaryExposureKey dk,
+                        Integer daysSinceEpochLocalTZ) {
+            DailyMatchEntries dailyMatchEntries = map.get(daysSinceEpochLocalTZ);
+            if (dailyMatchEntries == null) {
+                dailyMatchEntries = new DailyMatchEntries();
+                map.put(daysSinceEpochLocalTZ, dailyMatchEntries);
+            }
+            dailyMatchEntries.add(entry, dk, DkId.of(dk));
+            rpiCount++;
+        }
+
+        public boolean isEmpty() {
+            return rpiCount == 0;
+        }
+
+        public int getRpiCount() {
+            return rpiCount;
+        }
+    }
+
+    public interface DailyMatchingDkCountListener {
+        // called while the MatchEntries are locked: must not call back into them
+        void onDailyMatchingDkCountChanged(int daysSinceEpochLocalTZ, int delta);
+    }
+
+    public static class MatchEntries {
+        private final TreeMap<Integer, DailyMatchEntries> map = new TreeMap<>();  // <DaysSinceEpoch, DailyMatchEntries>
+        private final HashSet<DkId> quarantinedDks = new HashSet<>();
+        private int totalRpiCount = 0;
+        private int totalMatchingDkCount = 0;
+        private DailyMatchingDkCountListener dailyMatchingDkCountListener = null;
+
+        /*
+         E.g. to show the matches while matching is still running. null to remove it.
+         */
+        public synchronized void setDailyMatchingDkCountListener(DailyMatchingDkCountListener listener) {
+            dailyMatchingDkCountListener = listener;
+        }
+
+        private void notifyDailyMatchingDkCountChanged(int daysSinceEpochLocalTZ, int delta) {
+            if (dailyMatchingDkCountListener != null && delta != 0) {
+                dailyMatchingDkCountListener.onDailyMatchingDkCountChanged(daysSinceEpochLocalTZ, delta);
+            }
+        }
+
+        public synchronized int getTotalRpiCount() {
+            return totalRpiCount;
+        }
+
+        public synchronized int getTotalMatchingDkCount() {
+            return totalMatchingDkCount;
+        }
+
+        /*
+         The returned DailyMatchEntries are live: while matches are still being merged,
+         synchronize on this MatchEntries when reading them, or use getDailyCounts().
+         */
+        public synchronized DailyMatchEntries getDailyMatchEntries(Integer daysSinceEpoch) {
+            return map.get(daysSinceEpoch);
+        }
+
+        public synchronized SortedSet<Integer> getAvailableDaysSinceEpochLocalTZ() {
+            return new TreeSet<>(map.keySet());
+        }
+
+        /*
+         A consistent snapshot of the per-day figures, e.g. for the UI while matching is still running.
+         */
+        public synchronized SortedMap<Integer, DailyCounts> getDailyCounts() {
+            TreeMap<Integer, DailyCounts> dailyCounts = new TreeMap<>();
+            for (Map.Entry<Integer, DailyMatchEntries> entry : map.entrySet()) {
+                dailyCounts.put(entry.getKey(), new DailyCounts(entry.getValue()));
+            }
+            return Collections.unmodifiableSortedMap(dailyCounts);
+        }
+
+        public synchronized void add(Matcher.MatchEntry entry, DiagnosisKeysProtos.TemporaryExposureKey dk,
+                        Integer daysSinceEpochLocalTZ) {
+            DkId dkId = DkId.of(dk);
+            if (quarantinedDks.contains(dkId)) {
+                return;
+            }
+            DailyMatchEntries dailyMatchEntries = getOrCreateDailyMatchEntries(daysSinceEpochLocalTZ);
+            int previousMatchingDkCount = dailyMatchEntries.getDailyMatchingDkCount();
+            dailyMatchEntries.add(entry, dk, dkId);
+            totalRpiCount++;
+            int delta = dailyMatchEntries.getDailyMatchingDkCount() - previousMatchingDkCount;
+            totalMatchingDkCount += delta;
+            notifyDailyMatchingDkCountChanged(daysSinceEpochLocalTZ, delta);
+        }
+
+        /*
+         Moves all matches collected by the accumulator into this MatchEntries, under a single lock,
+         and leaves the accumulator empty for reuse. Matches of quarantined keys are dropped.
+         */
+        public synchronized void merge(Accumulator accumulator) {
+            for (Map.Entry<Integer, DailyMatchEntries> day : accumulator.map.entrySet()) {
+                DailyMatchEntries dailyMatchEntries = null;
+                int dailyDelta = 0;
+                for (GroupedByDkMatchEntries groupedByDkMatchEntries : day.getValue().map.values()) {
+                    if (quarantinedDks.contains(groupedByDkMatchEntries.dkId)) {
+                        continue;
+                    }
+                    if (dailyMatchEntries == null) {
+                        dailyMatchEntries = getOrCreateDailyMatchEntries(day.getKey());
+                    }
+                    int previousMatchingDkCount = dailyMatchEntries.getDailyMatchingDkCount();
+                    dailyMatchEntries.addAll(groupedByDkMatchEntries);
+                    totalRpiCount += groupedByDkMatchEntries.getGroupedByDkRpiCount();
+                    dailyDelta += dailyMatchEntries.getDailyMatchingDkCount() - previousMatchingDkCount;
+                }
+                totalMatchingDkCount += dailyDelta;
+                notifyDailyMatchingDkCountChanged(day.getKey(), dailyDelta);
+            }
+            accumulator.map.clear();
+            accumulator.rpiCount = 0;
+        }
+
+        private DailyMatchEntries getOrCreateDailyMatchEntries(Integer daysSinceEpochLocalTZ) {
+            DailyMatchEntries dailyMatchEntries = map.get(daysSinceEpochLocalTZ);
+            if (dailyMatchEntries == null) {
+                dailyMatchEntries = new DailyMatchEntries();
+                map.put(daysSinceEpochLocalTZ, dailyMatchEntries);
+            }
+            return dailyMatchEntries;
+        }
+
+        /*
+         Retracts all matches of the given Diagnosis Keys (e.g. from a file that failed signature verification),
+         and ignores matches of these keys that are added later.
+         */
+        public synchronized void quarantine(Collection<DiagnosisKeysProtos.TemporaryExposureKey> dks) {
+            ArrayList<DkId> dkIds = new ArrayList<>(dks.size());
+            for (DiagnosisKeysProtos.TemporaryExposureKey dk : dks) {
+                dkIds.add(DkId.of(dk));
+            }
+            quarantinedDks.addAll(dkIds);
+            Iterator<Map.Entry<Integer, DailyMatchEntries>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, DailyMatchEntries> day = iterator.next();
+                DailyMatchEntries dailyMatchEntries = day.getValue();
+                int dailyDelta = 0;
+                for (DkId dkId : dkIds) {
+                    GroupedByDkMatchEntries removed = dailyMatchEntries.remove(dkId);
+                    if (removed != null) {
+                        totalRpiCount -= removed.getGroupedByDkRpiCount();
+                        totalMatchingDkCount--;
+                        dailyDelta--;
+                    }
+                }
+                notifyDailyMatchingDkCountChanged(day.getKey(), dailyDelta);
+                if (dailyMatchEntries.getDailyMatchingDkCount() == 0) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public static class DailyMatchEntries {
+        private final HashMap<DkId, GroupedByDkMatchEntries> map = new HashMap<>();
+        private int dailyRpiCount = 0;
+        private int dailyMatchingDkCount = 0;
+        private ExposureRisk dailyExposureRisk = new ExposureRisk();
+
+        public int getDailyRpiCount() {
+            return dailyRpiCount;
+        }
+
+        public int getDailyMatchingDkCount() {
+            return dailyMatchingDkCount;
+        }
+
+        public ExposureRisk getDailyExposureRisk() {
+            return dailyExposureRisk;
+        }
+
+        /*
+         A snapshot of the matches of each Diagnosis Key (see GroupedByDkMatchEntries.getDk()), in no particular order.
+         */
+        public ArrayList<GroupedByDkMatchEntries> getGroupedByDkList() {
+            return new ArrayList<>(map.values());
+        }
+
+        // the matches of a Diagnosis Key, null if there are none
+        public GroupedByDkMatchEntries getGroupedByDk(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+            return map.get(DkId.of(dk));
+        }
+
+        void add(Matcher.MatchEntry entry, DiagnosisKeysProtos.TemporaryExposureKey dk, DkId dkId) {
+            GroupedByDkMatchEntries groupedByDkMatchEntries = map.get(dkId);
+            if (groupedByDkMatchEntries == null) {
+                groupedByDkMatchEntries = new GroupedByDkMatchEntries(dk, dkId);
+                map.put(dkId, groupedByDkMatchEntries);
+                dailyMatchingDkCount++;
+            }
+            groupedByDkMatchEntries.add(entry);
+            dailyRpiCount++;
+            if (entry.exposureRisk != null) {
+                dailyExposureRisk.add(entry.exposureRisk);
+            }
+        }
+
+        void addAll(GroupedByDkMatchEntries other) {
+            GroupedByDkMatchEntries groupedByDkMatchEntries = map.get(other.dkId);
+            if (groupedByDkMatchEntries == null) {
+                map.put(other.dkId, other);  // taken over as a whole
+                dailyMatchingDkCount++;
+            } else {
+                for (Matcher.MatchEntry entry : other.getList()) {
+                    groupedByDkMatchEntries.add(entry);
+                }
+            }
+            dailyRpiCount += other.getGroupedByDkRpiCount();
+            dailyExposureRisk.add(other.getGroupedByDkExposureRisk());
+        }
+
+        GroupedByDkMatchEntries remove(DkId dkId) {
+            GroupedByDkMatchEntries removed = map.remove(dkId);
+            if (removed != null) {
+                dailyMatchingDkCount--;
+                dailyRpiCount -= removed.getGroupedByDkRpiCount();
+                // sum up again, instead of subtracting the (rounded) minutes
+                dailyExposureRisk = new ExposureRisk();
+                for (GroupedByDkMatchEntries groupedByDkMatchEntries : map.values()) {
+                    dailyExposureRisk.add(groupedByDkMatchEntries.getGroupedByDkExposureRisk());
+                }
+            }
+            return removed;
+        }
+    }
+
+    public static class GroupedByDkMatchEntries {
+        private final DiagnosisKeysProtos.TemporaryExposureKey dk;
+        private final DkId dkId;
+        private final ArrayList<Matcher.MatchEntry> list = new ArrayList<>();
+        private int groupedByDkRpiCount = 0;
+        private final ExposureRisk groupedByDkExposureRisk = new ExposureRisk();
+
+        GroupedByDkMatchEntries(DiagnosisKeysProtos.TemporaryExposureKey dk, DkId dkId) {
+            this.dk = dk;
+            this.dkId = dkId;
+        }
+
+        public DiagnosisKeysProtos.TemporaryExposureKey getDk() {
+            return dk;
+        }
+
+        public int getGroupedByDkRpiCount() {
+            return groupedByDkRpiCount;
+        }
+
+        public ExposureRisk getGroupedByDkExposureRisk() {
+            return groupedByDkExposureRisk;
+        }
+
+        public ArrayList<Matcher.MatchEntry> getList() {
+            return list;
+        }
+
+        public void add(Matcher.MatchEntry entry) {
+            list.add(entry);
+            groupedByDkRpiCount++;
+            if (entry.exposureRisk != null) {
+                groupedByDkExposureRisk.add(entry.exposureRisk);
+            }
+        }
+    }
+}
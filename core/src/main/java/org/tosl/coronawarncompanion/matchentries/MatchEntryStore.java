@@ -0,0 +1,249 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.matchentries;
+
+import com.google.protobuf.ByteString;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.matcher.ExposureRisk;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.tools.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.tosl.coronawarncompanion.tools.Utils.standardRollingPeriod;
+
+/*
+ Persistent store of precomputed matches, one file per Diagnosis Keys package.
+ Written by the background sync, read by MainActivity to show results before its own matching has finished.
+
+ Each file records the snapshot of the contact DB (RPIs) that the package has been matched against.
+ RPIs are only ever added for the current time, so a package only has to be matched again if
+ its keys were still valid after that snapshot (see needsMatching()).
+ */
+public class MatchEntryStore {
+    private static final String TAG = "MatchEntryStore";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String MATCHES_SUFFIX = ".matches";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // RPIs are searched with 2 hours tolerance, see RpiList.searchForRpiOnDaySinceEpochUTCWith2HoursTolerance
+    private static final int RPI_TOLERANCE_SECONDS = 2 * 3600;
+    private static final int SECONDS_PER_INTERVAL = 600;
+
+    private final File storeDir;
+
+    public MatchEntryStore(File storeDir) {
+        this.storeDir = storeDir;
+    }
+
+    private static class Header {
+        long rpiSnapshotTimeMillis;
+        int timeZoneOffsetSeconds;
+        int maxDkEndENIN;  // end of the validity of the most recent key in the package
+        int numMatches;
+    }
+
+    private static class StoredMatch {
+        Matcher.MatchEntry matchEntry;
+        DiagnosisKeysProtos.TemporaryExposureKey dk;
+        int daysSinceEpochLocalTZ;
+    }
+
+    private File getFile(String packageName) {
+        return new File(storeDir, packageName + MATCHES_SUFFIX);
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        Header header = new Header();
+        header.rpiSnapshotTimeMillis = in.readLong();
+        header.timeZoneOffsetSeconds = in.readInt();
+        header.maxDkEndENIN = in.readInt();
+        header.numMatches = in.readInt();
+        return header;
+    }
+
+    private static byte[] readByteArray(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeByteArray(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     Returns true if the package has not been matched yet, or may match RPIs that have been
+     recorded after it has been matched the last time.
+     */
+    public boolean needsMatching(String packageName, int timeZoneOffsetSeconds) {
+        File file = getFile(packageName);
+        if (!file.exists()) {
+            return true;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Header header = readHeader(in);
+            if (header == null || header.timeZoneOffsetSeconds != timeZoneOffsetSeconds) {
+                return true;
+            }
+            long validUntilSeconds = (long) header.maxDkEndENIN * SECONDS_PER_INTERVAL + RPI_TOLERANCE_SECONDS;
+            return validUntilSeconds * 1000 > header.rpiSnapshotTimeMillis;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + file + ": " + e);
+            return true;
+        }
+    }
+
+    /*
+     Stores the matches of one package.
+     dks: all keys of the package, matchEntryContent: the matches of these keys.
+     */
+    public void save(String packageName, long rpiSnapshotTimeMillis, int timeZoneOffsetSeconds,
+                     List<DiagnosisKeysProtos.TemporaryExposureKey> dks, MatchEntryContent matchEntryContent)
+            throws IOException {
+        int maxDkEndENIN = 0;
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : dks) {
+            int rollingPeriod = dk.hasRollingPeriod() ? dk.getRollingPeriod() : standardRollingPeriod;
+            maxDkEndENIN = Math.max(maxDkEndENIN, dk.getRollingStartIntervalNumber() + rollingPeriod);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        storeDir.mkdirs();
+        File file = getFile(packageName);
+        File tempFile = new File(storeDir, packageName + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(rpiSnapshotTimeMillis);
+            out.writeInt(timeZoneOffsetSeconds);
+            out.writeInt(maxDkEndENIN);
+            out.writeInt(matchEntryContent.matchEntries.getTotalRpiCount());
+            for (Integer daysSinceEpochLocalTZ : matchEntryContent.matchEntries.getAvailableDaysSinceEpochLocalTZ()) {
+                MatchEntryContent.DailyMatchEntries dailyMatchEntries =
+                        matchEntryContent.matchEntries.getDailyMatchEntries(daysSinceEpochLocalTZ);
+                for (MatchEntryContent.GroupedByDkMatchEntries groupedByDk : dailyMatchEntries.getGroupedByDkList()) {
+                    byte[] dkBytes = groupedByDk.getDk().toByteArray();
+                    for (Matcher.MatchEntry matchEntry : groupedByDk.getList()) {
+                        out.writeInt(daysSinceEpochLocalTZ);
+                        out.writeInt(matchEntry.startTimestampUTC);
+                        writeByteArray(out, matchEntry.aemXorBytes);
+                        writeByteArray(out, dkBytes);
+                        writeByteArray(out, matchEntry.contactRecords.toByteArray());
+                    }
+                }
+            }
+        }
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+    }
+
+    /*
+     Removes the stored matches of all packages that are no longer available.
+     */
+    public void retainOnly(Collection<String> packageNames) {
+        File[] files = storeDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        HashSet<String> fileNames = new HashSet<>();
+        for (String packageName : packageNames) {
+            fileNames.add(packageName + MATCHES_SUFFIX);
+        }
+        for (File file : files) {
+            if (!fileNames.contains(file.getName())) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /*
+     Loads the stored matches of all packages.
+     Keys that are contained in more than one package (e.g. in several regions) are only counted once.
+     Returns null if there are no stored matches for this time zone.
+     */
+    public MatchEntryContent load(int timeZoneOffsetSeconds) {
+        File[] files = storeDir.listFiles((dir, name) -> name.endsWith(MATCHES_SUFFIX));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        Arrays.sort(files);
+        MatchEntryContent matchEntryContent = new MatchEntryContent();
+        HashMap<ByteString, File> dkOrigin = new HashMap<>();  // key data, file that provides the matches of this key
+        boolean found = false;
+        for (File file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                Header header = readHeader(in);
+                if (header == null || header.timeZoneOffsetSeconds != timeZoneOffsetSeconds) {
+                    continue;
+                }
+                found = true;
+                ArrayList<StoredMatch> storedMatches = new ArrayList<>(header.numMatches);
+                for (int i = 0; i < header.numMatches; i++) {
+                    StoredMatch storedMatch = new StoredMatch();
+                    storedMatch.daysSinceEpochLocalTZ = in.readInt();
+                    int startTimestampUTC = in.readInt();
+                    byte[] aemXorBytes = readByteArray(in);
+                    storedMatch.dk = DiagnosisKeysProtos.TemporaryExposureKey.parseFrom(readByteArray(in));
+                    ContactRecordsProtos.ContactRecords contactRecords =
+                            ContactRecordsProtos.ContactRecords.parseFrom(readByteArray(in));
+                    storedMatch.matchEntry = new Matcher.MatchEntry(contactRecords, startTimestampUTC, aemXorBytes,
+                            new ExposureRisk(contactRecords, Crypto.getIntFromAemBytes(aemXorBytes), storedMatch.dk));
+                    storedMatches.add(storedMatch);
+                }
+                // add the matches only after the whole file has been read successfully
+                for (StoredMatch storedMatch : storedMatches) {
+                    File origin = dkOrigin.get(storedMatch.dk.getKeyData());
+                    if (origin == null) {
+                        dkOrigin.put(storedMatch.dk.getKeyData(), file);
+                    } else if (!origin.equals(file)) {
+                        continue;  // already added from another package
+                    }
+                    matchEntryContent.matchEntries.add(storedMatch.matchEntry, storedMatch.dk,
+                            storedMatch.daysSinceEpochLocalTZ);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read " + file + ": " + e);
+            }
+        }
+        return found ? matchEntryContent : null;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.matchentries;
+
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
+import org.tosl.coronawarncompanion.tools.Log;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ All scans of the matches of one Diagnosis Key, sorted by time and split into contiguous exposures
+ (separated by pauses of at least PAUSE_THRESHOLD_SECONDS). From each exposure, the (first) scan with the
+ minimum attenuation goes to the "minAttenuation" arrays, all other scans go to the other arrays.
+
+ Timestamps are the local time of day (with the DST offset in effect at each scan), relative to the midnight
+ that starts the day of the matches, to improve the resolution within the float x value of the charts.
+ Scans before / after that day are not wrapped around, so an exposure across midnight stays contiguous.
+ If there are several scans with the same timestamp, the last one is used.
+
+ The scans are collected into primitive arrays and sorted with a primitive sort, so that even exposures
+ with thousands of scans only need a few allocations.
+ */
+public class SegmentedScans {
+
+    private static final String TAG = "SegmentedScans";
+
+    // Threshold value for break detection:
+    public static final int PAUSE_THRESHOLD_SECONDS = 10;
+
+    public final int[] minAttenuationTimestamps;
+    public final int[] minAttenuations;
+    public final int[] timestamps;
+    public final int[] attenuations;
+
+    public final int minAttenuation;
+    public final byte minTxPower;
+    public final byte maxTxPower;
+    public final int minTimestampLocalTZDay0;
+    public final int maxTimestampLocalTZDay0;
+
+    public SegmentedScans(List<Matcher.MatchEntry> list, DayBoundaries dayBoundaries, int daysSinceEpochLocalTZ) {
+        int minAttenuation = Integer.MAX_VALUE;
+        byte minTxPower = Byte.MAX_VALUE;
+        byte maxTxPower = Byte.MIN_VALUE;
+        int minTimestampLocalTZDay0 = Integer.MAX_VALUE;
+        int maxTimestampLocalTZDay0 = Integer.MIN_VALUE;
+
+        int numScans = 0;
+        for (Matcher.MatchEntry matchEntry : list) {
+            numScans += matchEntry.contactRecords.getRecordCount();
+        }
+
+        // First step: collect all scan records from all matchEntries.
+        // The sort keys hold the timestamp in the upper and the index of the scan in the lower 32 bits,
+        // so that scans with the same timestamp stay in the order in which they have been collected.
+        // The negative timestamps of scans before the day sort correctly as well, as the index is never negative.
+        long[] sortKeys = new long[numScans];
+        int[] scanAttenuations = new int[numScans];
+        int index = 0;
+        for (Matcher.MatchEntry matchEntry : list) {  // process each matchEntry separately
+            for (ContactRecordsProtos.ScanRecord scanRecord : matchEntry.contactRecords.getRecordList()) {
+                int aem = matchEntry.getAem(scanRecord);
+                if (!Crypto.isValidAem(aem)) {
+                    Log.w(TAG, "WARNING: Invalid AEM: " + String.format("%08x", aem));
+                }
+                byte txPower = Crypto.getTxPowerFromAem(aem);
+                int attenuation = txPower - (int) scanRecord.getRssi();
+
+                // reduce to "day0", to improve resolution within the float x value:
+                int timestampLocalTZDay0 = dayBoundaries.getLocalSecondsOfDay(scanRecord.getTimestamp(),
+                        daysSinceEpochLocalTZ);
+
+                sortKeys[index] = ((long) timestampLocalTZDay0 << 32) | index;
+                scanAttenuations[index] = attenuation;
+                index++;
+
+                // if found, store max/min values
+                if (minTxPower > txPower) {
+                    minTxPower = txPower;
+                }
+                if (maxTxPower < txPower) {
+                    maxTxPower = txPower;
+                }
+                if (minAttenuation > attenuation) {
+                    minAttenuation = attenuation;
+                }
+                if (minTimestampLocalTZDay0 > timestampLocalTZDay0) {
+                    minTimestampLocalTZDay0 = timestampLocalTZDay0;
+                }
+                if (maxTimestampLocalTZDay0 < timestampLocalTZDay0) {
+                    maxTimestampLocalTZDay0 = timestampLocalTZDay0;
+                }
+            }
+        }
+        this.minAttenuation = minAttenuation;
+        this.minTxPower = minTxPower;
+        this.maxTxPower = maxTxPower;
+        this.minTimestampLocalTZDay0 = minTimestampLocalTZDay0;
+        this.maxTimestampLocalTZDay0 = maxTimestampLocalTZDay0;
+
+        // Second step: sort, keep only the last scan of each timestamp, and count the exposures
+        Arrays.sort(sortKeys);
+        int[] sortedTimestamps = new int[numScans];
+        int[] sortedAttenuations = new int[numScans];
+        int numSorted = 0;
+        int numSegments = 0;
+        for (int i = 0; i < numScans; i++) {
+            int timestampLocalTZDay0 = (int) (sortKeys[i] >> 32);
+            if ((i + 1 < numScans) && ((int) (sortKeys[i + 1] >> 32) == timestampLocalTZDay0)) {
+                continue;  // superseded by a later scan with the same timestamp
+            }
+            if ((numSorted == 0) ||
+                    (timestampLocalTZDay0 >= sortedTimestamps[numSorted - 1] + PAUSE_THRESHOLD_SECONDS)) {
+                numSegments++;
+            }
+            sortedTimestamps[numSorted] = timestampLocalTZDay0;
+            sortedAttenuations[numSorted] = scanAttenuations[(int) sortKeys[i]];
+            numSorted++;
+        }
+
+        // Third step: process each exposure, find the minimum attenuation in each exposure
+        minAttenuationTimestamps = new int[numSegments];
+        minAttenuations = new int[numSegments];
+        timestamps = new int[numSorted - numSegments];
+        attenuations = new int[numSorted - numSegments];
+        int numMin = 0;
+        int numRest = 0;
+        int segmentStart = 0;
+        while (segmentStart < numSorted) {
+            // find the end of the exposure, and the position of its (first) minimum
+            int minPos = segmentStart;
+            int segmentEnd = segmentStart + 1;
+            while ((segmentEnd < numSorted) &&
+                    (sortedTimestamps[segmentEnd] < sortedTimestamps[segmentEnd - 1] + PAUSE_THRESHOLD_SECONDS)) {
+                if (sortedAttenuations[segmentEnd] < sortedAttenuations[minPos]) {
+                    minPos = segmentEnd;
+                }
+                segmentEnd++;
+            }
+            for (int pos = segmentStart; pos < segmentEnd; pos++) {
+                if (pos == minPos) {
+                    minAttenuationTimestamps[numMin] = sortedTimestamps[pos];
+                    minAttenuations[numMin] = sortedAttenuations[pos];
+                    numMin++;
+                } else {
+                    timestamps[numRest] = sortedTimestamps[pos];
+                    attenuations[numRest] = sortedAttenuations[pos];
+                    numRest++;
+                }
+            }
+            segmentStart = segmentEnd;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.matcher;
+
+import com.google.protobuf.ByteString;
+
+import org.tosl.coronawarncompanion.crypto.Aes128TableEncryptor;
+import org.tosl.coronawarncompanion.crypto.AesEcbEncryptor;
+import org.tosl.coronawarncompanion.crypto.CryptoException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.tosl.coronawarncompanion.crypto.AesCtrEncryptor.aesCtr;
+import static org.tosl.coronawarncompanion.crypto.KeyDerivation.hkdfSha256;
+
+public class Crypto {
+
+    private static final int intervalLengthMinutes = 10;
+    private static final int tekRollingPeriod = 144;
+
+    /*
+     The AES implementation used for RPI generation:
+     JCE: javax.crypto (default),
+     JAVA_TABLES: Aes128TableEncryptor, faster on devices without hardware-backed AES in their JCE provider.
+     */
+    public enum AesEngine {
+        JCE,
+        JAVA_TABLES
+    }
+
+    private static volatile AesEngine defaultAesEngine = AesEngine.JCE;
+
+    public static void setDefaultAesEngine(AesEngine aesEngine) {
+        defaultAesEngine = aesEngine;
+    }
+
+    public static AesEngine getDefaultAesEngine() {
+        return defaultAesEngine;
+    }
+
+    private final AesEngine aesEngine;
+    private AesEcbEncryptor encryptor;
+    private final Aes128TableEncryptor tableEncryptor = new Aes128TableEncryptor();
+    private AesEcbEncryptor aemEncryptor;
+    private final byte[] aemKeystreamBlock = new byte[16];
+
+    private final ArrayList<RpiWithInterval> rpiBuffer;  // only one is required per Crypto object
+    // (But this can't be static, otherwise there's a concurrency problem when MainActivity is recreated.)
+
+    private EnRpiBlockTable blockTable = null;
+    private byte[] rpiOutputBuffer = new byte[16 * tekRollingPeriod];
+
+    public Crypto() {
+        this(defaultAesEngine);
+    }
+
+    public Crypto(AesEngine aesEngine) {
+        this.aesEngine = aesEngine;
+        try {
+            this.encryptor = new AesEcbEncryptor();
+            this.aemEncryptor = new AesEcbEncryptor();
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        rpiBuffer = new ArrayList<>(144);
+    }
+
+    public static byte[] encodedEnIntervalNumber(int enin) {
+        final ByteBuffer bb = ByteBuffer.allocate(4);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(enin);
+        return bb.array();
+    }
+
+    public static byte[] deriveRpiKey(byte[] tek) {
+        byte[] derivedKey = null;
+        try {
+            derivedKey = hkdfSha256(tek, null, "EN-RPIK".getBytes(StandardCharsets.UTF_8), 16);
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return derivedKey;
+    }
+
+    public static byte[] deriveAemKey(byte[] tek) {
+        byte[] derivedKey = null;
+        try {
+            derivedKey = hkdfSha256(tek, null, "EN-AEMK".getBytes(StandardCharsets.UTF_8), 16);
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return derivedKey;
+    }
+
+    private static final byte[] paddedDataPrefix = {0x45, 0x4E, 0x2D, 0x52, 0x50, 0x49};  // "EN-RPI"
+
+    /*
+     Writes the 16 byte padded data of an interval: "EN-RPI", 6 zero bytes, interval number (little-endian)
+     */
+    static void writePaddedData(int intervalNumber, byte[] output, int outputOffset) {
+        System.arraycopy(paddedDataPrefix, 0, output, outputOffset, paddedDataPrefix.length);
+        for (int i = paddedDataPrefix.length; i < 12; i++) {
+            output[outputOffset + i] = 0x00;
+        }
+        output[outputOffset + 12] = (byte) (intervalNumber&0x000000ff);
+        output[outputOffset + 13] = (byte) ((intervalNumber&0x0000ff00)>>8);
+        output[outputOffset + 14] = (byte) ((intervalNumber&0x00ff0000)>>16);
+        output[outputOffset + 15] = (byte) ((intervalNumber&0xff000000)>>24);
+    }
+
+    /*
+     Uses the given (shared) table of padded data blocks for createListOfRpisForIntervalRange(),
+     for the keys that it covers.
+     */
+    public void setBlockTable(EnRpiBlockTable blockTable) {
+        this.blockTable = blockTable;
+    }
+
+    public byte[] encryptRpi(byte[] rpiKey, int intervalNumber) {
+        byte[] padded_data = new byte[16];
+        writePaddedData(intervalNumber, padded_data, 0);
+        byte[] ciphertext = null;
+        try {
+            encryptor.init(rpiKey);
+            ciphertext = encryptor.encrypt(padded_data);
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return ciphertext;
+    }
+
+    public static class RpiWithInterval {
+        public final byte[] rpiBytes;
+        public final int intervalNumber;
+        public RpiWithInterval(byte[] rpiBytes, int intervalNumber) {
+            this.rpiBytes = rpiBytes;
+            this.intervalNumber = intervalNumber;
+        }
+    }
+
+    public ArrayList<RpiWithInterval> createListOfRpisForIntervalRange(byte[] rpiKey, int startIntervalNumber, int intervalCount) {
+        rpiBuffer.clear();
+        byte[] padded_data = {0x45, 0x4E, 0x2D, 0x52, 0x50, 0x49, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+        if (aesEngine == AesEngine.JAVA_TABLES) {
+            // one key schedule per key, and the constant "EN-RPI" prefix is only processed once
+            try {
+                tableEncryptor.init(rpiKey);
+            } catch (CryptoException e) {
+                e.printStackTrace();
+                return rpiBuffer;
+            }
+            tableEncryptor.setFixedPrefix(padded_data);
+            for (int interval=startIntervalNumber; interval < startIntervalNumber + intervalCount; interval++) {
+                byte[] rpiBytes = new byte[16];
+                // the interval number is encoded little-endian in the last 4 bytes
+                tableEncryptor.encryptWithFixedPrefix(Integer.reverseBytes(interval), rpiBytes, 0);
+                rpiBuffer.add(new RpiWithInterval(rpiBytes, interval));
+            }
+            return rpiBuffer;
+        }
+        if ((blockTable != null) && blockTable.contains(startIntervalNumber, intervalCount)) {
+            // encrypt the key's slice of the table with one cipher call
+            int length = 16 * intervalCount;
+            if (rpiOutputBuffer.length < length) {
+                rpiOutputBuffer = new byte[length];
+            }
+            try {
+                encryptor.init(rpiKey);
+                encryptor.encrypt(blockTable.getBlocks(), blockTable.getOffset(startIntervalNumber), length,
+                        rpiOutputBuffer, 0);
+            } catch (CryptoException e) {
+                e.printStackTrace();
+                return rpiBuffer;
+            }
+            for (int i = 0; i < intervalCount; i++) {
+                rpiBuffer.add(new RpiWithInterval(Arrays.copyOfRange(rpiOutputBuffer, 16 * i, 16 * i + 16),
+                        startIntervalNumber + i));
+            }
+            return rpiBuffer;
+        }
+        try {
+            encryptor.init(rpiKey);
+            for (int interval=startIntervalNumber; interval < startIntervalNumber + intervalCount; interval++) {
+                padded_data[12] = (byte) (interval&0x000000ff);
+                padded_data[13] = (byte) ((interval&0x0000ff00)>>8);
+                padded_data[14] = (byte) ((interval&0x00ff0000)>>16);
+                padded_data[15] = (byte) ((interval&0xff000000)>>24);
+
+                RpiWithInterval rpiWithInterval = new RpiWithInterval(encryptor.encrypt(padded_data), interval);
+                rpiBuffer.add(rpiWithInterval);
+            }
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return rpiBuffer;
+    }
+
+    /*
+     Returns the mask that decrypts all AEMs sent along with the given RPI, as a (big-endian) int.
+     The AEM is encrypted with AES-CTR, using the RPI as the counter block, so the mask is just
+     the start of the first keystream block AES(AEMK, RPI). The cipher and the keystream buffer are reused,
+     so use one Crypto object per thread.
+     */
+    public int deriveAemMask(byte[] aemKey, byte[] rpi) {
+        try {
+            aemEncryptor.init(aemKey);
+            aemEncryptor.encrypt(rpi, aemKeystreamBlock);
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return getIntFromAemBytes(aemKeystreamBlock);
+    }
+
+    public static int getIntFromAemBytes(byte[] aem) {
+        return ((aem[0] & 0xff) << 24) | ((aem[1] & 0xff) << 16) | ((aem[2] & 0xff) << 8) | (aem[3] & 0xff);
+    }
+
+    public static int getIntFromAemBytes(ByteString aem) {
+        return ((aem.byteAt(0) & 0xff) << 24) | ((aem.byteAt(1) & 0xff) << 16) |
+                ((aem.byteAt(2) & 0xff) << 8) | (aem.byteAt(3) & 0xff);
+    }
+
+    public static byte[] getAemBytesFromInt(int aem) {
+        return new byte[] {(byte) (aem >> 24), (byte) (aem >> 16), (byte) (aem >> 8), (byte) aem};
+    }
+
+    // AEM: version (0x40), TX power, 2 reserved bytes (0x00)
+    public static boolean isValidAem(int aem) {
+        return ((aem & 0xff00ffff) == 0x40000000);
+    }
+
+    public static byte getTxPowerFromAem(int aem) {
+        return (byte) (aem >> 16);
+    }
+
+    public static byte[] decryptAem(byte[] aemKey, byte[] aem, byte[] rpi) {
+        byte[] result = null;
+        try {
+            result = aesCtr(aemKey, rpi, aem);
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    public static byte[] encryptAem(byte[] aemKey, byte[] metadata, byte[] rpi) {
+        byte[] result = null;
+        try {
+            result = aesCtr(aemKey, rpi, metadata);
+        } catch (CryptoException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+}
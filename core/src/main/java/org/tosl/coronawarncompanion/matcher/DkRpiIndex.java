@@ -0,0 +1,114 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.matcher;
+
+import java.util.Arrays;
+
+/*
+ A compact index of the RPIs generated from the Diagnosis Keys, for streaming the local RPIs through it
+ instead of searching each generated RPI in the local RpiList. This pays off if there are more local RPIs than
+ generated ones (e.g. only the keys of the last hours, or a large RaMBLE database).
+ The RPIs are kept in primitive arrays with open addressing (linear probing), 24 bytes per slot instead of
+ a HashMap entry, an RpiBytes and an int[] per RPI. The same RPI may be added several times (e.g. a key published
+ in two regions), all of its slots are found by findFirst / findNext.
+ */
+class DkRpiIndex {
+
+    private static final int EMPTY = -1;
+
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] dkIndices;  // EMPTY for unused slots
+    private final int[] intervalNumbers;
+    private final int mask;
+    private int size = 0;
+
+    // capacity: the maximum number of RPIs, the table is kept at most half full
+    DkRpiIndex(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+        highs = new long[tableSize];
+        lows = new long[tableSize];
+        dkIndices = new int[tableSize];
+        intervalNumbers = new int[tableSize];
+        Arrays.fill(dkIndices, EMPTY);
+        mask = tableSize - 1;
+    }
+
+    private int hash(long high, long low) {
+        // RPIs are AES outputs, so any of their bits are well distributed
+        return (int) (low ^ (low >>> 32) ^ high) & mask;
+    }
+
+    void add(byte[] rpi, int offset, int dkIndex, int intervalNumber) {
+        if (2 * (size + 1) > highs.length) {
+            throw new IllegalStateException("DkRpiIndex capacity exceeded");
+        }
+        long high = getLong(rpi, offset);
+        long low = getLong(rpi, offset + 8);
+        int slot = hash(high, low);
+        while (dkIndices[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        highs[slot] = high;
+        lows[slot] = low;
+        dkIndices[slot] = dkIndex;
+        intervalNumbers[slot] = intervalNumber;
+        size++;
+    }
+
+    // Returns the first slot containing the RPI, or -1 if it is not in the index.
+    int findFirst(long high, long low) {
+        return find(hash(high, low), high, low);
+    }
+
+    // Returns the next slot (after the given one) containing the same RPI, or -1.
+    int findNext(int slot, long high, long low) {
+        return find((slot + 1) & mask, high, low);
+    }
+
+    private int find(int slot, long high, long low) {
+        while (dkIndices[slot] != EMPTY) {
+            if (highs[slot] == high && lows[slot] == low) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int getDkIndex(int slot) {
+        return dkIndices[slot];
+    }
+
+    int getIntervalNumber(int slot) {
+        return intervalNumbers[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
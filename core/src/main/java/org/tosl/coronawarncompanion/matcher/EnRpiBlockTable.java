@@ -0,0 +1,86 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.matcher;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+
+import java.util.List;
+
+import static org.tosl.coronawarncompanion.tools.Utils.standardRollingPeriod;
+
+/*
+ The "EN-RPI" padded data blocks (the plaintexts of the RPIs) of all intervals of a window, in one array:
+ block i (at offset 16*i) is the padded data of interval firstIntervalNumber+i.
+ The RPIs of a key can then be encrypted with one multi-block cipher call on a slice of this array,
+ instead of building the padded data for each interval of each key.
+
+ The table is read-only after construction, so it can be shared by the Crypto objects of several threads.
+ */
+public class EnRpiBlockTable {
+
+    // enough for the keys of 14 days (+ 1 day tolerance), 16 bytes per interval
+    public static final int MAX_INTERVALS = 15 * standardRollingPeriod;
+
+    private final int firstIntervalNumber;
+    private final int numIntervals;
+    private final byte[] blocks;
+
+    public EnRpiBlockTable(int firstIntervalNumber, int numIntervals) {
+        this.firstIntervalNumber = firstIntervalNumber;
+        this.numIntervals = numIntervals;
+        this.blocks = new byte[16 * numIntervals];
+        for (int i = 0; i < numIntervals; i++) {
+            Crypto.writePaddedData(firstIntervalNumber + i, blocks, 16 * i);
+        }
+    }
+
+    /*
+     Creates the table for the (latest MAX_INTERVALS) intervals of the given Diagnosis Keys.
+     Returns null if there are no keys.
+     */
+    public static EnRpiBlockTable forDiagnosisKeys(List<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys) {
+        if (diagnosisKeys.isEmpty()) {
+            return null;
+        }
+        int minIntervalNumber = Integer.MAX_VALUE;
+        int maxIntervalNumber = Integer.MIN_VALUE;  // exclusive
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : diagnosisKeys) {
+            int start = dk.getRollingStartIntervalNumber();
+            minIntervalNumber = Math.min(minIntervalNumber, start);
+            maxIntervalNumber = Math.max(maxIntervalNumber, start + dk.getRollingPeriod());
+        }
+        minIntervalNumber = Math.max(minIntervalNumber, maxIntervalNumber - MAX_INTERVALS);
+        return new EnRpiBlockTable(minIntervalNumber, maxIntervalNumber - minIntervalNumber);
+    }
+
+    public boolean contains(int startIntervalNumber, int intervalCount) {
+        return (startIntervalNumber >= firstIntervalNumber) &&
+                (startIntervalNumber + intervalCount <= firstIntervalNumber + numIntervals);
+    }
+
+    // the array must not be modified
+    byte[] getBlocks() {
+        return blocks;
+    }
+
+    int getOffset(int intervalNumber) {
+        return 16 * (intervalNumber - firstIntervalNumber);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.matcher;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+
+/*
+ Exposure risk of a match, or the sum of the risks of several matches.
+ It is computed during matching, while the scan records of the match are at hand,
+ so that the risk of a day can be shown without decoding the scan records again.
+
+ Each scan stands for the time since the previous scan of the same RPI (at most MAX_SECONDS_PER_SCAN,
+ the first scan stands for MAX_SECONDS_PER_SCAN). This time is counted in one of the attenuation buckets
+ (same thresholds as the dot colors of the details charts), and weighted with the bucket's weight and
+ with the weight of the Diagnosis Key (transmission risk level, report type, days since onset of symptoms).
+ The weights are a heuristic, they are not the risk calculation of any official app.
+ */
+public class ExposureRisk {
+
+    public static final int BUCKET_IMMEDIATE = 0;  // attenuation < 55 dB
+    public static final int BUCKET_NEAR = 1;       // attenuation 55..63 dB
+    public static final int BUCKET_MEDIUM = 2;     // attenuation 64..73 dB
+    public static final int BUCKET_OTHER = 3;      // attenuation > 73 dB
+    public static final int NUM_BUCKETS = 4;
+
+    private static final double[] bucketWeights = {1.0, 1.0, 0.5, 0.0};
+
+    public static final int MAX_SECONDS_PER_SCAN = 5*60;
+
+    private final int[] secondsPerBucket = new int[NUM_BUCKETS];
+    private double weightedExposureMinutes = 0.0;
+    private int minAttenuation = Integer.MAX_VALUE;
+    private int numScans = 0;
+
+    public ExposureRisk() {
+    }
+
+    public ExposureRisk(ContactRecordsProtos.ContactRecords contactRecords, int aemXorMask,
+                        DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        double keyWeight = getKeyWeight(dk);
+        int previousTimestamp = 0;
+        for (ContactRecordsProtos.ScanRecord scanRecord : contactRecords.getRecordList()) {
+            int aem = Crypto.getIntFromAemBytes(scanRecord.getAem()) ^ aemXorMask;
+            byte txPower = Crypto.getTxPowerFromAem(aem);
+            int attenuation = txPower - (int) scanRecord.getRssi();
+            int timestamp = scanRecord.getTimestamp();
+
+            int seconds = MAX_SECONDS_PER_SCAN;
+            if (numScans > 0) {
+                seconds = Math.max(0, Math.min(timestamp - previousTimestamp, MAX_SECONDS_PER_SCAN));
+            }
+            int bucket = getAttenuationBucket(attenuation);
+            secondsPerBucket[bucket] += seconds;
+            weightedExposureMinutes += seconds / 60.0 * bucketWeights[bucket] * keyWeight;
+            if (minAttenuation > attenuation) {
+                minAttenuation = attenuation;
+            }
+            previousTimestamp = timestamp;
+            numScans++;
+        }
+    }
+
+    public static int getAttenuationBucket(int attenuation) {
+        if (attenuation < 55) {
+            return BUCKET_IMMEDIATE;
+        } else if (attenuation <= 63) {
+            return BUCKET_NEAR;
+        } else if (attenuation <= 73) {
+            return BUCKET_MEDIUM;
+        } else {
+            return BUCKET_OTHER;
+        }
+    }
+
+    public static double getKeyWeight(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        return getTransmissionRiskLevelWeight(dk) * getReportTypeWeight(dk) * getDaysSinceOnsetWeight(dk);
+    }
+
+    // proportional to the transmission risk level (1..8), 1.0 if not available
+    @SuppressWarnings("deprecation")
+    static double getTransmissionRiskLevelWeight(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        if (!dk.hasTransmissionRiskLevel()) {
+            return 1.0;
+        }
+        int transmissionRiskLevel = dk.getTransmissionRiskLevel();
+        if ((transmissionRiskLevel < 1) || (transmissionRiskLevel > 8)) {
+            return 1.0;
+        }
+        return transmissionRiskLevel / 8.0;
+    }
+
+    static double getReportTypeWeight(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        if (!dk.hasReportType()) {
+            return 1.0;
+        }
+        switch (dk.getReportType()) {
+            case REVOKED:
+                return 0.0;
+            case SELF_REPORT:
+            case RECURSIVE:
+                return 0.5;
+            default:
+                return 1.0;
+        }
+    }
+
+    // high infectiousness from 2 days before until 5 days after the onset of symptoms,
+    // none more than 14 days away from it, 1.0 if not available
+    static double getDaysSinceOnsetWeight(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        if (!dk.hasDaysSinceOnsetOfSymptoms()) {
+            return 1.0;
+        }
+        int daysSinceOnset = dk.getDaysSinceOnsetOfSymptoms();
+        if ((daysSinceOnset >= -2) && (daysSinceOnset <= 5)) {
+            return 1.0;
+        } else if ((daysSinceOnset >= -14) && (daysSinceOnset <= 14)) {
+            return 0.6;
+        } else {
+            return 0.0;
+        }
+    }
+
+    public void add(ExposureRisk other) {
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            secondsPerBucket[bucket] += other.secondsPerBucket[bucket];
+        }
+        weightedExposureMinutes += other.weightedExposureMinutes;
+        if (minAttenuation > other.minAttenuation) {
+            minAttenuation = other.minAttenuation;
+        }
+        numScans += other.numScans;
+    }
+
+    public int getSecondsInBucket(int bucket) {
+        return secondsPerBucket[bucket];
+    }
+
+    public double getWeightedExposureMinutes() {
+        return weightedExposureMinutes;
+    }
+
+    public int getMinAttenuation() {
+        return minAttenuation;
+    }
+
+    public int getNumScans() {
+        return numScans;
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.matcher;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
+import org.tosl.coronawarncompanion.tools.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static java.lang.Math.abs;
+import static org.tosl.coronawarncompanion.matcher.Crypto.deriveAemKey;
+import static org.tosl.coronawarncompanion.matcher.Crypto.deriveRpiKey;
+import static org.tosl.coronawarncompanion.matcher.Crypto.getAemBytesFromInt;
+import static org.tosl.coronawarncompanion.matcher.Crypto.getIntFromAemBytes;
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysSinceEpochFromENIN;
+import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
+
+public class Matcher {
+
+    private static final String TAG = "Matcher";
+
+    private final MatchEntryContent matchEntryContent;
+    // the matches of this worker, merged into matchEntryContent at every progress step and at the end
+    private final MatchEntryContent.Accumulator accumulator = new MatchEntryContent.Accumulator();
+
+    public static class MatchEntry {
+        public final ContactRecordsProtos.ContactRecords contactRecords;
+        public final int startTimestampUTC;
+        public final byte[] aemXorBytes;
+        public final int aemXorMask;  // the same as aemXorBytes, for decrypting AEMs without allocations
+        public final ExposureRisk exposureRisk;  // may be null
+
+        public MatchEntry(ContactRecordsProtos.ContactRecords contactRecords,
+                          int startTimestampUTC, byte[] aemXorBytes) {
+            this(contactRecords, startTimestampUTC, aemXorBytes, null);
+        }
+
+        public MatchEntry(ContactRecordsProtos.ContactRecords contactRecords,
+                          int startTimestampUTC, byte[] aemXorBytes, ExposureRisk exposureRisk) {
+            this.contactRecords = contactRecords;
+            this.startTimestampUTC = startTimestampUTC;
+            this.aemXorBytes = aemXorBytes;
+            this.aemXorMask = getIntFromAemBytes(aemXorBytes);
+            this.exposureRisk = exposureRisk;
+        }
+
+        public MatchEntry(ContactRecordsProtos.ContactRecords contactRecords,
+                          int startTimestampUTC, int aemXorMask, ExposureRisk exposureRisk) {
+            this.contactRecords = contactRecords;
+            this.startTimestampUTC = startTimestampUTC;
+            this.aemXorBytes = getAemBytesFromInt(aemXorMask);
+            this.aemXorMask = aemXorMask;
+            this.exposureRisk = exposureRisk;
+        }
+
+        // Returns the decrypted AEM of a scan record of this match, as a (big-endian) int.
+        public int getAem(ContactRecordsProtos.ScanRecord scanRecord) {
+            return getIntFromAemBytes(scanRecord.getAem()) ^ aemXorMask;
+        }
+    }
+
+    /*
+     How generated and local RPIs are brought together:
+     INDEX_LOCAL_RPIS searches each RPI generated from the Diagnosis Keys in the (hashed) RpiList,
+     INDEX_DK_RPIS indexes the generated RPIs and streams the local RPIs through that index,
+     AUTO chooses INDEX_DK_RPIS if there are fewer generated RPIs (keys x 144) than local ones.
+     */
+    public enum Strategy {
+        AUTO,
+        INDEX_LOCAL_RPIS,
+        INDEX_DK_RPIS
+    }
+
+    private static volatile Strategy defaultStrategy = Strategy.AUTO;
+
+    public static void setDefaultStrategy(Strategy strategy) {
+        defaultStrategy = strategy;
+    }
+
+    public static Strategy getDefaultStrategy() {
+        return defaultStrategy;
+    }
+
+    private final RpiList rpiList;
+    private final ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList;
+    private Strategy strategy = defaultStrategy;
+    private int numWorkers = 1;
+    private MatcherMetrics metrics = new MatcherMetrics();
+    private long nanosOutsideLookup;  // spent in key derivation and aggregation during a lookup loop
+
+    final DayBoundaries dayBoundaries;  // the local days of the matches
+
+    public Matcher(RpiList rpis, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys,
+                   MatchEntryContent matchEntryContent, int timeZoneOffsetSeconds) {
+        this(rpis, diagnosisKeys, matchEntryContent, DayBoundaries.forFixedOffset(timeZoneOffsetSeconds));
+    }
+
+    public Matcher(RpiList rpis, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys,
+                   MatchEntryContent matchEntryContent, DayBoundaries dayBoundaries) {
+        this.rpiList = rpis;
+        this.diagnosisKeysList = diagnosisKeys;
+        this.matchEntryContent = matchEntryContent;
+        this.dayBoundaries = dayBoundaries;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /*
+     More than one worker: the keys are matched on that many threads (not for a spilled RpiList).
+     The StopCondition and the ProgressCallback are then called from these threads.
+     */
+    public void setNumWorkers(int numWorkers) {
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+    // the metrics of the last (or current) run of findMatches
+    public MatcherMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     Checked regularly during matching, matching stops early as soon as this returns true.
+     */
+    public interface StopCondition {
+        boolean shouldStop();
+    }
+
+    /*
+     Receives the progress in percent and the number of matches found so far.
+     */
+    public interface ProgressCallback {
+        void onProgress(int percent, int numMatches);
+    }
+
+    /*
+     Returns true if all Diagnosis Keys have been matched, false if matching has been stopped early.
+     */
+    public boolean findMatches(ProgressCallback progressCallback, StopCondition stopCondition) {
+        Log.d(TAG, "Started matching...");
+        long startNanos = System.nanoTime();
+        metrics = new MatcherMetrics();
+        metrics.startTimeMillis = System.currentTimeMillis();
+        metrics.numDiagnosisKeys = diagnosisKeysList.size();
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : diagnosisKeysList) {
+            metrics.numGeneratedRpis += dk.getRollingPeriod();
+        }
+        metrics.numLocalRpis = rpiList.getRpiCount();
+        metrics.strategy = chooseStrategy(strategy, metrics.numGeneratedRpis, metrics.numLocalRpis);
+        if (numWorkers > 1 && !rpiList.isSpilled() && diagnosisKeysList.size() >= 2 * numWorkers) {
+            metrics.finished = findMatchesInParallel(progressCallback, stopCondition);
+            metrics.wallNanos = System.nanoTime() - startNanos;
+        } else {
+            MatcherMetrics.Worker worker = metrics.addWorker(Thread.currentThread().getName());
+            Crypto crypto = new Crypto();
+            crypto.setBlockTable(EnRpiBlockTable.forDiagnosisKeys(diagnosisKeysList));
+            if (rpiList.isSpilled()) {
+                metrics.finished = findMatchesPartitioned(crypto, worker, progressCallback, stopCondition);
+            } else if (metrics.strategy == Strategy.INDEX_DK_RPIS) {
+                metrics.finished = findMatchesIndexingDkRpis(crypto, worker, rpiList, diagnosisKeysList,
+                        progressCallback, stopCondition);
+            } else {
+                metrics.finished = findMatchesIndexingLocalRpis(crypto, worker, rpiList, diagnosisKeysList,
+                        progressCallback, stopCondition);
+            }
+            mergeMatches();  // also the partial results, if stopped early
+            metrics.wallNanos = System.nanoTime() - startNanos;
+            // a single worker: busy whenever it is in one of the phases
+            worker.busyNanos = metrics.hkdfNanos + metrics.aesNanos + metrics.lookupNanos + metrics.aggregationNanos +
+                    metrics.spillReadNanos;
+        }
+        Log.d(TAG, (metrics.finished ? "Finished matching: " : "Stopped matching: ") + metrics);
+        return metrics.finished;
+    }
+
+    /*
+     The keys are split (interleaved, so that each part has keys of all days) between numWorkers Matchers,
+     each with its own Crypto and accumulator, which run on their own threads and merge their matches into
+     the shared matchEntryContent. Their metrics are added up.
+     */
+    private boolean findMatchesInParallel(ProgressCallback progressCallback, StopCondition stopCondition) {
+        Matcher[] workerMatchers = new Matcher[numWorkers];
+        boolean[] workerFinished = new boolean[numWorkers];
+        int[] workerPercents = new int[numWorkers];
+        Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[numWorkers];
+        for (int w = 0; w < numWorkers; w++) {
+            ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> part = new ArrayList<>();
+            for (int i = w; i < diagnosisKeysList.size(); i += numWorkers) {
+                part.add(diagnosisKeysList.get(i));
+            }
+            Matcher workerMatcher = new Matcher(rpiList, part, matchEntryContent, dayBoundaries);
+            workerMatcher.setStrategy(metrics.strategy);
+            workerMatchers[w] = workerMatcher;
+            final int workerIndex = w;
+            ProgressCallback workerProgressCallback = (progressCallback == null) ? null : (percent, numMatches) -> {
+                synchronized (workerPercents) {
+                    int sumBefore = 0;
+                    for (int workerPercent : workerPercents) {
+                        sumBefore += workerPercent;
+                    }
+                    int sumAfter = sumBefore - workerPercents[workerIndex] + percent;
+                    workerPercents[workerIndex] = percent;
+                    if (sumAfter / numWorkers != sumBefore / numWorkers) {
+                        progressCallback.onProgress(sumAfter / numWorkers,
+                                matchEntryContent.matchEntries.getTotalMatchingDkCount());
+                    }
+                }
+            };
+            threads[w] = new Thread(() -> {
+                try {
+                    workerFinished[workerIndex] = workerMatcher.findMatches(workerProgressCallback, stopCondition);
+                } catch (Throwable t) {
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = t;
+                        }
+                    }
+                }
+            }, TAG + "-" + w);
+            threads[w].start();
+        }
+
+        // the workers check the StopCondition, so they end soon after a cancellation as well
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new IllegalStateException("Matching failed", failure[0]);
+            }
+        }
+        boolean finished = true;
+        for (int w = 0; w < numWorkers; w++) {
+            metrics.addWorkerMetrics(workerMatchers[w].getMetrics());
+            finished &= workerFinished[w];
+        }
+        return finished;
+    }
+
+    public static Strategy chooseStrategy(Strategy strategy, long numGeneratedRpis, int numLocalRpis) {
+        if (strategy != Strategy.AUTO) {
+            return strategy;
+        }
+        return (numGeneratedRpis < numLocalRpis) ? Strategy.INDEX_DK_RPIS : Strategy.INDEX_LOCAL_RPIS;
+    }
+
+    /*
+     Memory-bounded matching of a spilled RpiList: the keys are grouped by the UTC day of their rolling start,
+     and each group is matched against a partition with only the RPIs that can match it (see RpiList.loadPartition),
+     which is released again before the next day is loaded. So the peak heap is bounded by the largest day.
+     */
+    private boolean findMatchesPartitioned(Crypto crypto, MatcherMetrics.Worker worker,
+                                           ProgressCallback progressCallback,
+                                           StopCondition stopCondition) {
+        TreeMap<Integer, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey>> diagnosisKeysPerDayUTC = new TreeMap<>();
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : diagnosisKeysList) {
+            int daysSinceEpochUTC = getDaysSinceEpochFromENIN(dk.getRollingStartIntervalNumber());
+            ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = diagnosisKeysPerDayUTC.get(daysSinceEpochUTC);
+            if (dks == null) {
+                dks = new ArrayList<>();
+                diagnosisKeysPerDayUTC.put(daysSinceEpochUTC, dks);
+            }
+            dks.add(dk);
+        }
+        int diagnosisKeysListLength = diagnosisKeysList.size();
+        int numDiagnosisKeysDone = 0;
+        for (Map.Entry<Integer, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey>> day : diagnosisKeysPerDayUTC.entrySet()) {
+            if (stopCondition.shouldStop()) {
+                return false;
+            }
+            ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = day.getValue();
+            long loadStartNanos = System.nanoTime();
+            RpiList partition;
+            try {
+                partition = rpiList.loadPartition(day.getKey());
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the RPIs of day " + day.getKey() + ": " + e);
+                return false;
+            }
+            metrics.spillReadNanos += System.nanoTime() - loadStartNanos;
+            metrics.numPartitions++;
+            int numPartitionEntries = 0;
+            for (RpiList.ListsPerDayUTC listsPerDayUTC : partition.getListsPerDaysSinceEpochUTC().values()) {
+                numPartitionEntries += listsPerDayUTC.rpiEntries.size() +
+                        listsPerDayUTC.rpiEntriesEarly.size() + listsPerDayUTC.rpiEntriesLate.size();
+            }
+            metrics.maxPartitionEntries = Math.max(metrics.maxPartitionEntries, numPartitionEntries);
+
+            if (numPartitionEntries == 0) {  // nothing that could match
+                worker.numDiagnosisKeys += dks.size();
+            } else {
+                final int offset = numDiagnosisKeysDone;
+                ProgressCallback partitionProgressCallback = (progressCallback == null) ? null :
+                        (percent, numMatches) -> progressCallback.onProgress(
+                                (int) ((offset + dks.size() * percent / 100f) * 100f / diagnosisKeysListLength),
+                                this.matchEntryContent.matchEntries.getTotalMatchingDkCount());
+                boolean finished;
+                if (metrics.strategy == Strategy.INDEX_DK_RPIS) {
+                    finished = findMatchesIndexingDkRpis(crypto, worker, partition, dks,
+                            partitionProgressCallback, stopCondition);
+                } else {
+                    finished = findMatchesIndexingLocalRpis(crypto, worker, partition, dks,
+                            partitionProgressCallback, stopCondition);
+                }
+                if (!finished) {
+                    return false;
+                }
+            }
+            numDiagnosisKeysDone += dks.size();
+        }
+        if (progressCallback != null) {
+            progressCallback.onProgress(100, this.matchEntryContent.matchEntries.getTotalMatchingDkCount());
+        }
+        return true;
+    }
+
+    private boolean findMatchesIndexingLocalRpis(Crypto crypto, MatcherMetrics.Worker worker,
+                                                 RpiList rpiList,
+                                                 List<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList,
+                                                 ProgressCallback progressCallback,
+                                                 StopCondition stopCondition) {
+        int diagnosisKeysListLength = diagnosisKeysList.size();
+        int currentDiagnosisKey = 0;
+        int lastProgress = 0;
+        int currentProgress;
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : diagnosisKeysList) {
+            if (stopCondition.shouldStop()) {
+                return false;
+            }
+            currentDiagnosisKey += 1;
+            currentProgress = (int) (100f * currentDiagnosisKey / diagnosisKeysListLength);
+            if (currentProgress != lastProgress) {
+                lastProgress = currentProgress;
+                mergeMatches();
+                if (progressCallback != null) {
+                    progressCallback.onProgress(currentProgress,
+                            this.matchEntryContent.matchEntries.getTotalMatchingDkCount());
+                }
+            }
+            byte[] aemKey = null;  // derived at the first match of this key
+            int dkIntervalNumber = dk.getRollingStartIntervalNumber();
+            ArrayList<Crypto.RpiWithInterval> dkRpisWithIntervals = generateRpis(crypto, dk);
+            long lookupStartNanos = System.nanoTime();
+            nanosOutsideLookup = 0;
+            for (Crypto.RpiWithInterval dkRpiWithInterval : dkRpisWithIntervals) {
+                metrics.numLookups++;
+                RpiList.RpiEntry rpiEntry =
+                        rpiList.searchForRpiOnDaySinceEpochUTCWith2HoursTolerance(dkRpiWithInterval, getDaysSinceEpochFromENIN(dkIntervalNumber));
+                if (rpiEntry != null) {
+                    if (aemKey == null) {
+                        aemKey = deriveAemKeyMeasured(dk);
+                    }
+                    addMatch(crypto, aemKey, dk, rpiEntry);
+                }
+            }
+            metrics.lookupNanos += System.nanoTime() - lookupStartNanos - nanosOutsideLookup;
+            worker.numDiagnosisKeys++;
+        }
+        return true;
+    }
+
+    private static class Candidate {
+        final int priority;  // of the list it has been found in, lower is better
+        final RpiList.RpiEntry rpiEntry;
+
+        Candidate(int priority, RpiList.RpiEntry rpiEntry) {
+            this.priority = priority;
+            this.rpiEntry = rpiEntry;
+        }
+    }
+
+    /*
+     The reverse of findMatchesIndexingLocalRpis: generates all RPIs of all keys into a DkRpiIndex first,
+     then streams the local RPIs through it. The result is the same: a generated RPI matches the entry of
+     (1) the "late" list of the previous day, (2) the full list of its day, or (3) the "early" list of the next day,
+     whichever is found first in this order, and the matches of each key are added in the order of its intervals.
+     The local RPIs are streamed day by day, and as soon as the candidates of the keys of a day are complete,
+     their matches are added and merged, so they reach matchEntryContent during the run.
+     */
+    private boolean findMatchesIndexingDkRpis(Crypto crypto, MatcherMetrics.Worker worker,
+                                              RpiList rpiList,
+                                              List<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList,
+                                              ProgressCallback progressCallback,
+                                              StopCondition stopCondition) {
+        int diagnosisKeysListLength = diagnosisKeysList.size();
+        int lastProgress = 0;
+        int currentProgress;
+        long numGeneratedRpis = 0;
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : diagnosisKeysList) {
+            numGeneratedRpis += dk.getRollingPeriod();
+        }
+        DkRpiIndex dkRpiIndex = new DkRpiIndex((int) Math.min(numGeneratedRpis, Integer.MAX_VALUE / 4));
+        for (int dkIndex = 0; dkIndex < diagnosisKeysListLength; dkIndex++) {
+            if (stopCondition.shouldStop()) {
+                return false;
+            }
+            // generating the RPIs is most of the work
+            currentProgress = (int) (90f * (dkIndex + 1) / diagnosisKeysListLength);
+            if (currentProgress != lastProgress) {
+                lastProgress = currentProgress;
+                if (progressCallback != null) {
+                    progressCallback.onProgress(currentProgress,
+                            this.matchEntryContent.matchEntries.getTotalMatchingDkCount());
+                }
+            }
+            DiagnosisKeysProtos.TemporaryExposureKey dk = diagnosisKeysList.get(dkIndex);
+            ArrayList<Crypto.RpiWithInterval> dkRpisWithIntervals = generateRpis(crypto, dk);
+            long indexStartNanos = System.nanoTime();
+            for (Crypto.RpiWithInterval dkRpiWithInterval : dkRpisWithIntervals) {
+                dkRpiIndex.add(dkRpiWithInterval.rpiBytes, 0, dkIndex, dkRpiWithInterval.intervalNumber);
+            }
+            metrics.lookupNanos += System.nanoTime() - indexStartNanos;
+            worker.numDiagnosisKeys++;
+        }
+
+        // per UTC day of the keys: (dkIndex << 32 | intervalNumber), best Candidate
+        TreeMap<Integer, HashMap<Long, Candidate>> candidatesPerDkDayUTC = new TreeMap<>();
+        TreeMap<Integer, RpiList.ListsPerDayUTC> listsPerDaysSinceEpochUTC =
+                new TreeMap<>(rpiList.getListsPerDaysSinceEpochUTC());
+        int numDaysStreamed = 0;
+        for (Map.Entry<Integer, RpiList.ListsPerDayUTC> day : listsPerDaysSinceEpochUTC.entrySet()) {
+            if (stopCondition.shouldStop()) {
+                return false;
+            }
+            int daysSinceEpochUTC = day.getKey();
+            RpiList.ListsPerDayUTC listsPerDayUTC = day.getValue();
+            long streamStartNanos = System.nanoTime();
+            // a "late" entry is searched for with the keys of the next day, an "early" one with the keys of the previous day
+            streamThroughIndex(listsPerDayUTC.rpiEntriesLate.values(), daysSinceEpochUTC + 1, 1,
+                    diagnosisKeysList, dkRpiIndex, candidatesPerDkDayUTC);
+            streamThroughIndex(listsPerDayUTC.rpiEntries.values(), daysSinceEpochUTC, 2,
+                    diagnosisKeysList, dkRpiIndex, candidatesPerDkDayUTC);
+            streamThroughIndex(listsPerDayUTC.rpiEntriesEarly.values(), daysSinceEpochUTC - 1, 3,
+                    diagnosisKeysList, dkRpiIndex, candidatesPerDkDayUTC);
+            metrics.lookupNanos += System.nanoTime() - streamStartNanos;
+
+            // the keys of the previous days cannot get any more candidates, the last ones were in this day's "early" list
+            addMatches(crypto, diagnosisKeysList, candidatesPerDkDayUTC.headMap(daysSinceEpochUTC));
+            numDaysStreamed++;
+            // 100 only after the candidates of the last days
+            currentProgress = 90 + (int) (10f * numDaysStreamed / (listsPerDaysSinceEpochUTC.size() + 1));
+            if (currentProgress != lastProgress) {
+                lastProgress = currentProgress;
+                mergeMatches();
+                if (progressCallback != null) {
+                    progressCallback.onProgress(currentProgress,
+                            this.matchEntryContent.matchEntries.getTotalMatchingDkCount());
+                }
+            }
+        }
+
+        addMatches(crypto, diagnosisKeysList, candidatesPerDkDayUTC);
+        mergeMatches();
+        if (progressCallback != null) {
+            progressCallback.onProgress(100, this.matchEntryContent.matchEntries.getTotalMatchingDkCount());
+        }
+        return true;
+    }
+
+    /*
+     Adds the matches of the best candidates, ordered by key and interval, and removes the candidates.
+     */
+    private void addMatches(Crypto crypto, List<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList,
+                            SortedMap<Integer, HashMap<Long, Candidate>> candidatesPerDkDayUTC) {
+        for (HashMap<Long, Candidate> candidates : candidatesPerDkDayUTC.values()) {
+            ArrayList<Long> candidateKeys = new ArrayList<>(candidates.keySet());
+            Collections.sort(candidateKeys);
+            int lastDkIndex = -1;
+            byte[] aemKey = null;  // derived at the first match of each key
+            for (Long candidateKey : candidateKeys) {
+                int dkIndex = (int) (candidateKey >>> 32);
+                DiagnosisKeysProtos.TemporaryExposureKey dk = diagnosisKeysList.get(dkIndex);
+                if (dkIndex != lastDkIndex) {
+                    lastDkIndex = dkIndex;
+                    aemKey = deriveAemKeyMeasured(dk);
+                }
+                addMatch(crypto, aemKey, dk, Objects.requireNonNull(candidates.get(candidateKey)).rpiEntry);
+            }
+        }
+        candidatesPerDkDayUTC.clear();
+    }
+
+    private void streamThroughIndex(Collection<RpiList.RpiEntry> rpiEntries, int dkDaysSinceEpochUTC, int priority,
+                                    List<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList,
+                                    DkRpiIndex dkRpiIndex,
+                                    TreeMap<Integer, HashMap<Long, Candidate>> candidatesPerDkDayUTC) {
+        HashMap<Long, Candidate> candidates = candidatesPerDkDayUTC.get(dkDaysSinceEpochUTC);  // created at the first one
+        for (RpiList.RpiEntry rpiEntry : rpiEntries) {
+            metrics.numLookups++;
+            long high = rpiEntry.rpiBytes.getHigh();
+            long low = rpiEntry.rpiBytes.getLow();
+            for (int slot = dkRpiIndex.findFirst(high, low); slot != -1; slot = dkRpiIndex.findNext(slot, high, low)) {
+                metrics.numIndexHits++;
+                int dkIndex = dkRpiIndex.getDkIndex(slot);
+                int intervalNumber = dkRpiIndex.getIntervalNumber(slot);
+                if (getDaysSinceEpochFromENIN(diagnosisKeysList.get(dkIndex).getRollingStartIntervalNumber()) != dkDaysSinceEpochUTC ||
+                        abs(intervalNumber - getENINFromSeconds(rpiEntry.startTimeStampUTC)) > 6 * 2) {  // max diff: 2 hours
+                    continue;
+                }
+                Long candidateKey = ((long) dkIndex << 32) | (intervalNumber & 0xFFFFFFFFL);
+                if (candidates == null) {
+                    candidates = new HashMap<>();
+                    candidatesPerDkDayUTC.put(dkDaysSinceEpochUTC, candidates);
+                }
+                Candidate candidate = candidates.get(candidateKey);
+                if (candidate == null || candidate.priority > priority) {
+                    candidates.put(candidateKey, new Candidate(priority, rpiEntry));
+                }
+            }
+        }
+    }
+
+    private ArrayList<Crypto.RpiWithInterval> generateRpis(Crypto crypto, DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        long startNanos = System.nanoTime();
+        byte[] rpiKey = deriveRpiKey(dk.getKeyData().toByteArray());
+        long hkdfEndNanos = System.nanoTime();
+        ArrayList<Crypto.RpiWithInterval> rpisWithIntervals = crypto.createListOfRpisForIntervalRange(rpiKey,
+                dk.getRollingStartIntervalNumber(), dk.getRollingPeriod());
+        metrics.hkdfNanos += hkdfEndNanos - startNanos;
+        metrics.aesNanos += System.nanoTime() - hkdfEndNanos;
+        return rpisWithIntervals;
+    }
+
+    private byte[] deriveAemKeyMeasured(DiagnosisKeysProtos.TemporaryExposureKey dk) {
+        long startNanos = System.nanoTime();
+        byte[] aemKey = deriveAemKey(dk.getKeyData().toByteArray());
+        long nanos = System.nanoTime() - startNanos;
+        metrics.hkdfNanos += nanos;
+        nanosOutsideLookup += nanos;
+        return aemKey;
+    }
+
+    private void addMatch(Crypto crypto, byte[] aemKey, DiagnosisKeysProtos.TemporaryExposureKey dk,
+                          RpiList.RpiEntry rpiEntry) {
+        Log.d(TAG, "Match found!");
+        long startNanos = System.nanoTime();
+        metrics.numMatchingRpis++;
+        int aemXorMask = crypto.deriveAemMask(aemKey, rpiEntry.rpiBytes.getBytes());
+        long aesEndNanos = System.nanoTime();
+        // score the exposure now, while the scan records are at hand
+        ExposureRisk exposureRisk = new ExposureRisk(rpiEntry.contactRecords, aemXorMask, dk);
+
+        accumulator.add(new MatchEntry(rpiEntry.contactRecords,
+                rpiEntry.startTimeStampUTC, aemXorMask, exposureRisk),
+                dk,
+                dayBoundaries.getDaysSinceEpochLocalTZ(rpiEntry.startTimeStampUTC));
+        long endNanos = System.nanoTime();
+        metrics.aesNanos += aesEndNanos - startNanos;
+        metrics.aggregationNanos += endNanos - aesEndNanos;
+        nanosOutsideLookup += endNanos - startNanos;
+    }
+
+    private void mergeMatches() {
+        if (accumulator.isEmpty()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        this.matchEntryContent.matchEntries.merge(accumulator);
+        metrics.aggregationNanos += System.nanoTime() - startNanos;
+    }
+}
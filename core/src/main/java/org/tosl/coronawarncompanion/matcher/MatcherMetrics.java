@@ -0,0 +1,177 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.matcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ Figures of one run of Matcher.findMatches: counts, throughput, and where the time went.
+ The times are summed up per phase (HKDF, AES, lookup, aggregation) over all workers,
+ so with several workers their sum can exceed the wall time.
+ toJson() gives a flat JSON object, for comparing runs on different devices.
+ */
+public class MatcherMetrics {
+
+    public static class Worker {
+        public final String name;
+        public int numDiagnosisKeys;
+        public long busyNanos;
+
+        public Worker(String name) {
+            this.name = name;
+        }
+    }
+
+    public String device;  // set by the caller, e.g. manufacturer, model and API level
+    public Matcher.Strategy strategy;  // the one actually used, never AUTO
+    public boolean finished;  // false if stopped early
+    public int numDiagnosisKeys;
+    public long numGeneratedRpis;
+    public int numLocalRpis;
+    public long numLookups;  // generated RPIs searched for, or local RPIs streamed through the index
+    public long numIndexHits;  // local RPIs found in the DK index, before the day and interval check (INDEX_DK_RPIS only)
+    public int numMatchingRpis;
+    public long startTimeMillis;
+    public long wallNanos;
+    public long hkdfNanos;  // RPI and AEM key derivation
+    public long aesNanos;  // RPI generation and AEM keystream
+    public long lookupNanos;  // searching RPIs, or building and probing the DK index
+    public long aggregationNanos;  // exposure risk and adding the matches
+    // memory-bounded matching of a spilled RpiList only:
+    public int numPartitions;  // UTC days loaded from the spill files
+    public int maxPartitionEntries;  // the most entries held in memory at a time
+    public long spillReadNanos;  // loading the partitions
+    public final List<Worker> workers = new ArrayList<>();
+
+    public Worker addWorker(String name) {
+        Worker worker = new Worker(name);
+        workers.add(worker);
+        return worker;
+    }
+
+    // the counts, times and workers of one of several parallel workers
+    public void addWorkerMetrics(MatcherMetrics workerMetrics) {
+        numLookups += workerMetrics.numLookups;
+        numIndexHits += workerMetrics.numIndexHits;
+        numMatchingRpis += workerMetrics.numMatchingRpis;
+        hkdfNanos += workerMetrics.hkdfNanos;
+        aesNanos += workerMetrics.aesNanos;
+        lookupNanos += workerMetrics.lookupNanos;
+        aggregationNanos += workerMetrics.aggregationNanos;
+        workers.addAll(workerMetrics.workers);
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return (nanos > 0) ? count * 1e9 / nanos : 0.0;
+    }
+
+    public double getDiagnosisKeysPerSecond() {
+        return perSecond(numDiagnosisKeys, wallNanos);
+    }
+
+    public double getGeneratedRpisPerSecond() {
+        return perSecond(numGeneratedRpis, wallNanos);
+    }
+
+    // the share of the wall time a worker has been busy, 0..1
+    public double getUtilization(Worker worker) {
+        return (wallNanos > 0) ? Math.min(1.0, (double) worker.busyNanos / wallNanos) : 0.0;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    // JSON string literal, also used by the batch tool for its summaries
+    public static String quote(String string) {
+        if (string == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : string.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"device\": ").append(quote(device)).append(",\n");
+        sb.append("  \"strategy\": ").append(quote(strategy == null ? null : strategy.name())).append(",\n");
+        sb.append("  \"finished\": ").append(finished).append(",\n");
+        sb.append("  \"startTimeMillis\": ").append(startTimeMillis).append(",\n");
+        sb.append("  \"diagnosisKeys\": ").append(numDiagnosisKeys).append(",\n");
+        sb.append("  \"generatedRpis\": ").append(numGeneratedRpis).append(",\n");
+        sb.append("  \"localRpis\": ").append(numLocalRpis).append(",\n");
+        sb.append("  \"lookups\": ").append(numLookups).append(",\n");
+        sb.append("  \"indexHits\": ").append(numIndexHits).append(",\n");
+        sb.append("  \"matchingRpis\": ").append(numMatchingRpis).append(",\n");
+        sb.append("  \"diagnosisKeysPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", getDiagnosisKeysPerSecond())).append(",\n");
+        sb.append("  \"generatedRpisPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", getGeneratedRpisPerSecond())).append(",\n");
+        sb.append("  \"wallMillis\": ").append(millis(wallNanos)).append(",\n");
+        sb.append("  \"hkdfMillis\": ").append(millis(hkdfNanos)).append(",\n");
+        sb.append("  \"aesMillis\": ").append(millis(aesNanos)).append(",\n");
+        sb.append("  \"lookupMillis\": ").append(millis(lookupNanos)).append(",\n");
+        sb.append("  \"aggregationMillis\": ").append(millis(aggregationNanos)).append(",\n");
+        sb.append("  \"partitions\": ").append(numPartitions).append(",\n");
+        sb.append("  \"maxPartitionEntries\": ").append(maxPartitionEntries).append(",\n");
+        sb.append("  \"spillReadMillis\": ").append(millis(spillReadNanos)).append(",\n");
+        sb.append("  \"workers\": [");
+        for (int i = 0; i < workers.size(); i++) {
+            Worker worker = workers.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": ").append(quote(worker.name))
+                    .append(", \"diagnosisKeys\": ").append(worker.numDiagnosisKeys)
+                    .append(", \"busyMillis\": ").append(millis(worker.busyNanos))
+                    .append(", \"utilization\": ").append(String.format(Locale.ROOT, "%.3f", getUtilization(worker)))
+                    .append("}");
+        }
+        sb.append(workers.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    public void writeJson(File file) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(toJson().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "strategy=" + strategy + ", diagnosisKeys=" + numDiagnosisKeys +
+                ", generatedRpis=" + numGeneratedRpis + ", localRpis=" + numLocalRpis +
+                ", lookups=" + numLookups + ", matchingRpis=" + numMatchingRpis +
+                ", wall=" + millis(wallNanos) + "ms (hkdf=" + millis(hkdfNanos) + "ms, aes=" + millis(aesNanos) +
+                "ms, lookup=" + millis(lookupNanos) + "ms, aggregation=" + millis(aggregationNanos) + "ms)";
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.ramblereadout;
+
+import com.google.protobuf.ByteString;
+
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromSeconds;
+import static org.tosl.coronawarncompanion.tools.Utils.hexStringToByteArray;
+
+/*
+ One entry of the RaMBLE table "devices" with service_uuids 'fd6f', and its scans from the table "locations".
+ Shared by the app (Android SQLite) and host tools (JDBC), which only differ in how they query the database.
+ */
+public class RambleDevice {
+
+    public static final String DEVICES_QUERY = "SELECT service_data, first_seen, last_seen, id " +
+            "FROM devices WHERE service_uuids='fd6f'";
+    public static final String LOCATIONS_QUERY = "SELECT timestamp, rssi FROM locations WHERE device_id=";
+
+    private final byte[] rpiBytes;
+    private final ByteString aem;
+    private final int firstSeenTimestamp;
+    private final int lastSeenTimestamp;
+    private final ContactRecordsProtos.ContactRecords.Builder contactRecordsBuilder =
+            ContactRecordsProtos.ContactRecords.newBuilder();
+
+    /*
+     serviceData: e.g. "fd6f:<16 bytes RPI><4 bytes AEM>" (hex)
+     */
+    public RambleDevice(String serviceData, int firstSeenTimestamp, int lastSeenTimestamp) {
+        String rpiAemStr = serviceData.split(":")[1];
+        this.rpiBytes = hexStringToByteArray(rpiAemStr.substring(0, 16*2));
+        this.aem = ByteString.copyFrom(hexStringToByteArray(rpiAemStr.substring(16*2)));
+        this.firstSeenTimestamp = firstSeenTimestamp;
+        this.lastSeenTimestamp = lastSeenTimestamp;
+    }
+
+    public void addScan(int timestamp, int rssi) {
+        ContactRecordsProtos.ScanRecord scanRecord = ContactRecordsProtos.ScanRecord.newBuilder()
+                .setTimestamp(timestamp)
+                .setRssi(rssi)
+                .setAem(aem)
+                .build();
+        contactRecordsBuilder.addRecord(scanRecord);
+    }
+
+    public void addTo(RpiList rpiList) {
+        int daysSinceEpochUTC = getDaysFromSeconds(firstSeenTimestamp);
+        rpiList.addEntry(daysSinceEpochUTC, rpiBytes, contactRecordsBuilder.build());
+        if (getDaysFromSeconds(lastSeenTimestamp) != daysSinceEpochUTC) {  // extremely unlikely
+            rpiList.addEntry(daysSinceEpochUTC+1, rpiBytes, contactRecordsBuilder.build());
+        }
+    }
+}
@@ -18,24 +18,29 @@
 
 package org.tosl.coronawarncompanion.rpis;
 
-import org.tosl.coronawarncompanion.CWCApplication;
 import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
 import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
+import org.tosl.coronawarncompanion.tools.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 import static java.lang.Math.abs;
-import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromSeconds;
+import static org.tosl.coronawarncompanion.tools.DayBoundaries.getSecondsOfDayUTC;
 import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
-import static org.tosl.coronawarncompanion.tools.Utils.getMillisFromSeconds;
 
 public class RpiList {
     private static final String TAG = "RpiList";
 
     private final Map<Integer, ListsPerDayUTC> mapOfDaysUTCAndListsOfRPIs;  // daysSinceEpochUTC, ListsPerDayUTC
-    private final Map<Integer, Integer> mapOfDailyCountsLocalTZ;  // daysSinceEpochLocalTZ, numberOfEntries
+    private final TreeMap<Integer, int[]> mapOfDailyCountsLocalTZ;  // daysSinceEpochLocalTZ, {numberOfEntries}
 
-    final int timeZoneOffsetSeconds;
+    final DayBoundaries dayBoundaries;
+
+    private final RpiSpillFiles spillFiles;  // null: all entries in memory
+    private int numSpilledEntries = 0;
 
     public static class ListsPerDayUTC {
         public final HashMap<RpiBytes, RpiEntry> rpiEntries = new HashMap<>(2048);     // RpiEntries
@@ -86,6 +91,15 @@ public class RpiList {
             return bytes;
         }
 
+        // upper and lower 8 bytes, big-endian, e.g. for hashing RPIs into primitive arrays
+        public long getHigh() {
+            return ((long) values[0] << 32) | (values[1] & 0xFFFFFFFFL);
+        }
+
+        public long getLow() {
+            return ((long) values[2] << 32) | (values[3] & 0xFFFFFFFFL);
+        }
+
         @Override
         public boolean equals(Object o) {
             // Check if o is an instance of RpiBytes or not
@@ -115,10 +129,41 @@ public class RpiList {
         }
     }
 
-    public RpiList() {
+    /*
+     timeZoneOffsetSeconds: offset of the local time zone, used for the daily counts
+     */
+    public RpiList(int timeZoneOffsetSeconds) {
+        this(DayBoundaries.forFixedOffset(timeZoneOffsetSeconds));
+    }
+
+    /*
+     dayBoundaries: the local days, used for the daily counts
+     */
+    public RpiList(DayBoundaries dayBoundaries) {
+        mapOfDaysUTCAndListsOfRPIs = new HashMap<>();
+        mapOfDailyCountsLocalTZ = new TreeMap<>();
+        this.dayBoundaries = dayBoundaries;
+        this.spillFiles = null;
+    }
+
+    /*
+     Memory-bounded RpiList: the entries are written to temporary files in spillDir (one per UTC day)
+     instead of being held in memory, only the daily counts are kept. The Matcher then matches day by day,
+     see loadPartition(). The files are removed by deleteSpillFiles().
+     */
+    public RpiList(int timeZoneOffsetSeconds, File spillDir) {
+        this(DayBoundaries.forFixedOffset(timeZoneOffsetSeconds), spillDir);
+    }
+
+    public RpiList(DayBoundaries dayBoundaries, File spillDir) {
         mapOfDaysUTCAndListsOfRPIs = new HashMap<>();
         mapOfDailyCountsLocalTZ = new TreeMap<>();
-        timeZoneOffsetSeconds = CWCApplication.getTimeZoneOffsetSeconds();
+        this.dayBoundaries = dayBoundaries;
+        this.spillFiles = new RpiSpillFiles(spillDir);
+    }
+
+    public DayBoundaries getDayBoundaries() {
+        return dayBoundaries;
     }
 
     public void addEntry(Integer daysSinceEpochUTC, byte[] rpiBytes, ContactRecordsProtos.ContactRecords contactRecords) {
@@ -127,25 +172,29 @@ public class RpiList {
             int startTimeStampUTC = contactRecords.getRecord(0).getTimestamp();
             int endTimeStampUTC = contactRecords.getRecord(contactRecords.getRecordCount() - 1).getTimestamp();
 
-            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            calendar.setTimeInMillis(getMillisFromSeconds(startTimeStampUTC));
-            boolean early = (calendar.get(Calendar.HOUR_OF_DAY) <= 1);
-            calendar.setTimeInMillis(getMillisFromSeconds(endTimeStampUTC));
-            boolean late = (calendar.get(Calendar.HOUR_OF_DAY) >= 22);
+            // started in the first 2 hours / ended in the last 2 hours of the UTC day
+            boolean early = (getSecondsOfDayUTC(startTimeStampUTC) < 2 * 3600);
+            boolean late = (getSecondsOfDayUTC(endTimeStampUTC) >= 22 * 3600);
 
-            // also get the start timestamp in local time zone
-            int startTimeStampInLocalTZ = startTimeStampUTC + timeZoneOffsetSeconds;
-
-            // add to RPI counter per day (local time zone)
-            int daysSinceEpochLocalTZ = getDaysFromSeconds(startTimeStampInLocalTZ);
-            if (!mapOfDailyCountsLocalTZ.containsKey(daysSinceEpochLocalTZ)) {  // day not yet in list, create new entry
-                mapOfDailyCountsLocalTZ.put(daysSinceEpochLocalTZ, 0);
-            }
-            Integer dailyCount = mapOfDailyCountsLocalTZ.get(daysSinceEpochLocalTZ);
-            if (dailyCount != null) {
-                dailyCount++;
+            // add to RPI counter per day (local time zone, with the DST offset of that day)
+            int daysSinceEpochLocalTZ = dayBoundaries.getDaysSinceEpochLocalTZ(startTimeStampUTC);
+            int[] dailyCount = mapOfDailyCountsLocalTZ.get(daysSinceEpochLocalTZ);
+            if (dailyCount == null) {  // day not yet in list, create new entry
+                dailyCount = new int[1];
                 mapOfDailyCountsLocalTZ.put(daysSinceEpochLocalTZ, dailyCount);
             }
+            dailyCount[0]++;
+
+            if (spillFiles != null) {
+                try {
+                    spillFiles.write(daysSinceEpochUTC, (early ? RpiSpillFiles.FLAG_EARLY : 0) |
+                            (late ? RpiSpillFiles.FLAG_LATE : 0), rpiBytes, contactRecords);
+                    numSpilledEntries++;
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not spill entry: " + e);
+                }
+                return;
+            }
 
             // add to the main map (mapOfDaysUTCAndListsOfRPIs)
             ListsPerDayUTC listsPerDayUTC;
@@ -170,8 +219,94 @@ public class RpiList {
         }
     }
 
+    private void putEntry(int daysSinceEpochUTC, RpiEntry rpiEntry, boolean full, boolean early, boolean late) {
+        ListsPerDayUTC listsPerDayUTC = mapOfDaysUTCAndListsOfRPIs.get(daysSinceEpochUTC);
+        if (listsPerDayUTC == null) {
+            listsPerDayUTC = new ListsPerDayUTC();
+            mapOfDaysUTCAndListsOfRPIs.put(daysSinceEpochUTC, listsPerDayUTC);
+        }
+        if (full) {
+            listsPerDayUTC.rpiEntries.put(rpiEntry.rpiBytes, rpiEntry);
+        }
+        if (early) {
+            listsPerDayUTC.rpiEntriesEarly.put(rpiEntry.rpiBytes, rpiEntry);
+        }
+        if (late) {
+            listsPerDayUTC.rpiEntriesLate.put(rpiEntry.rpiBytes, rpiEntry);
+        }
+    }
+
+    public boolean isSpilled() {
+        return spillFiles != null;
+    }
+
+    /*
+     The UTC days with spilled entries.
+     */
+    public SortedSet<Integer> getSpilledDaysSinceEpochUTC() {
+        return (spillFiles != null) ? spillFiles.getDaysSinceEpochUTC() : new TreeSet<>();
+    }
+
+    /*
+     Loads what searchForRpiOnDaySinceEpochUTCWith2HoursTolerance() needs for one UTC day from the spill files:
+     the full list of that day, the "late" list of the day before and the "early" list of the day after,
+     into a new in-memory RpiList. The other lists of the neighbouring days stay on disk.
+     */
+    public RpiList loadPartition(int daysSinceEpochUTC) throws IOException {
+        if (spillFiles == null) {
+            throw new IllegalStateException("Not a spilled RpiList");
+        }
+        RpiList partition = new RpiList(dayBoundaries);
+        spillFiles.read(daysSinceEpochUTC - 1, RpiSpillFiles.FLAG_LATE, (flags, rpiBytes, contactRecords) ->
+                partition.putEntry(daysSinceEpochUTC - 1, new RpiEntry(rpiBytes, contactRecords,
+                        contactRecords.getRecord(0).getTimestamp()), false, false, true));
+        spillFiles.read(daysSinceEpochUTC, 0, (flags, rpiBytes, contactRecords) ->
+                partition.putEntry(daysSinceEpochUTC, new RpiEntry(rpiBytes, contactRecords,
+                        contactRecords.getRecord(0).getTimestamp()), true,
+                        (flags & RpiSpillFiles.FLAG_EARLY) != 0, (flags & RpiSpillFiles.FLAG_LATE) != 0));
+        spillFiles.read(daysSinceEpochUTC + 1, RpiSpillFiles.FLAG_EARLY, (flags, rpiBytes, contactRecords) ->
+                partition.putEntry(daysSinceEpochUTC + 1, new RpiEntry(rpiBytes, contactRecords,
+                        contactRecords.getRecord(0).getTimestamp()), false, true, false));
+        return partition;
+    }
+
+    /*
+     Bytes written to the spill files so far.
+     */
+    public long getSpilledBytes() {
+        return (spillFiles != null) ? spillFiles.getNumBytes() : 0;
+    }
+
+    public void deleteSpillFiles() {
+        if (spillFiles != null) {
+            spillFiles.delete();
+        }
+    }
+
+    /*
+     Returns the lists of all UTC days, for streaming through all RPIs instead of searching for single ones.
+     */
+    public Map<Integer, ListsPerDayUTC> getListsPerDaysSinceEpochUTC() {
+        return Collections.unmodifiableMap(mapOfDaysUTCAndListsOfRPIs);
+    }
+
+    /*
+     Returns the number of entries in all full (daily) lists (of a spilled RpiList: the number of entries written).
+     */
+    public int getRpiCount() {
+        if (spillFiles != null) {
+            return numSpilledEntries;
+        }
+        int rpiCount = 0;
+        for (ListsPerDayUTC listsPerDayUTC : mapOfDaysUTCAndListsOfRPIs.values()) {
+            rpiCount += listsPerDayUTC.rpiEntries.size();
+        }
+        return rpiCount;
+    }
+
     public Integer getRpiCountForDaysSinceEpochLocalTZ(Integer daysSinceEpochLocalTZ) {
-        return mapOfDailyCountsLocalTZ.get(daysSinceEpochLocalTZ);
+        int[] dailyCount = mapOfDailyCountsLocalTZ.get(daysSinceEpochLocalTZ);
+        return (dailyCount != null) ? dailyCount[0] : null;
     }
 
     /*
@@ -234,7 +369,7 @@ public class RpiList {
     }
 
     public SortedSet<Integer> getAvailableDaysSinceEpochLocalTZ() {
-        return (SortedSet<Integer>) mapOfDailyCountsLocalTZ.keySet();
+        return mapOfDailyCountsLocalTZ.navigableKeySet();
     }
 
     public boolean isEmpty() {
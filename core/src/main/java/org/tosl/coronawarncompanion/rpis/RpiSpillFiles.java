@@ -0,0 +1,156 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.rpis;
+
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.tools.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*
+ The entries of a spilled RpiList, in one temporary file per UTC day.
+ Per entry: 1 byte flags (early / late), 16 bytes RPI, the length and the bytes of the serialized ContactRecords.
+ The files are appended to while the RpiList is filled, and read again one day at a time.
+ */
+class RpiSpillFiles {
+
+    private static final String TAG = "RpiSpillFiles";
+    static final int FLAG_EARLY = 1;
+    static final int FLAG_LATE = 2;
+
+    interface EntryConsumer {
+        void accept(int flags, byte[] rpiBytes, ContactRecordsProtos.ContactRecords contactRecords);
+    }
+
+    private final File dir;
+    private final TreeMap<Integer, File> files = new TreeMap<>();  // daysSinceEpochUTC, file
+    private final Map<Integer, DataOutputStream> outputStreams = new HashMap<>();
+    private long numBytes = 0;
+
+    RpiSpillFiles(File dir) {
+        this.dir = dir;
+    }
+
+    synchronized void write(int daysSinceEpochUTC, int flags, byte[] rpiBytes,
+                            ContactRecordsProtos.ContactRecords contactRecords) throws IOException {
+        DataOutputStream outputStream = outputStreams.get(daysSinceEpochUTC);
+        if (outputStream == null) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            File file = File.createTempFile("rpis-" + daysSinceEpochUTC + "-", ".bin", dir);
+            file.deleteOnExit();
+            files.put(daysSinceEpochUTC, file);
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 8 * 1024));
+            outputStreams.put(daysSinceEpochUTC, outputStream);
+        }
+        byte[] contactRecordsBytes = contactRecords.toByteArray();
+        outputStream.writeByte(flags);
+        outputStream.write(rpiBytes, 0, 16);
+        outputStream.writeInt(contactRecordsBytes.length);
+        outputStream.write(contactRecordsBytes);
+        numBytes += 1 + 16 + 4 + contactRecordsBytes.length;
+    }
+
+    /*
+     Passes the entries of a day that have any of the given flags (or all entries, if flagMask is 0) to the consumer.
+     */
+    synchronized void read(int daysSinceEpochUTC, int flagMask, EntryConsumer consumer) throws IOException {
+        File file = files.get(daysSinceEpochUTC);
+        if (file == null) {
+            return;
+        }
+        DataOutputStream outputStream = outputStreams.get(daysSinceEpochUTC);
+        if (outputStream != null) {
+            outputStream.flush();
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8 * 1024))) {
+            byte[] rpiBytes = new byte[16];
+            while (true) {
+                int flags;
+                try {
+                    flags = inputStream.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                inputStream.readFully(rpiBytes);
+                int length = inputStream.readInt();
+                if (flagMask != 0 && (flags & flagMask) == 0) {
+                    skipFully(inputStream, length);
+                    continue;
+                }
+                byte[] contactRecordsBytes = new byte[length];
+                inputStream.readFully(contactRecordsBytes);
+                consumer.accept(flags, rpiBytes, ContactRecordsProtos.ContactRecords.parseFrom(contactRecordsBytes));
+            }
+        }
+    }
+
+    // skipBytes() may skip less than asked for, e.g. at the end of the buffer
+    private static void skipFully(DataInputStream inputStream, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = inputStream.skipBytes(remaining);
+            if (skipped == 0) {
+                if (inputStream.read() == -1) {
+                    throw new EOFException("Truncated spill file");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    synchronized SortedSet<Integer> getDaysSinceEpochUTC() {
+        return new TreeSet<>(files.keySet());
+    }
+
+    synchronized long getNumBytes() {
+        return numBytes;
+    }
+
+    synchronized void delete() {
+        for (DataOutputStream outputStream : outputStreams.values()) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close spill file: " + e);
+            }
+        }
+        outputStreams.clear();
+        for (File file : files.values()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        files.clear();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.tasks;
+
+import org.tosl.coronawarncompanion.matcher.Matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ Shared by the stages of a TaskScheduler. cancel() is visible to all threads right away (volatile),
+ long-running loops poll it (it can be passed to Matcher.findMatches() directly),
+ and blocking operations can register a listener that unblocks them.
+ */
+public class CancellationToken implements Matcher.StopCondition {
+
+    private volatile boolean cancelled = false;
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    /*
+     Returns false if the token had already been cancelled before.
+     */
+    public boolean cancel() {
+        List<Runnable> listenersToRun;
+        synchronized (listeners) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            listenersToRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : listenersToRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean shouldStop() {
+        return cancelled;
+    }
+
+    /*
+     Runs listener (on the cancelling thread) when the token gets cancelled, or right away if it already is.
+     */
+    public void onCancel(Runnable listener) {
+        synchronized (listeners) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.tasks;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/*
+ Carries count deltas (e.g. the matches per day) from a worker thread to the UI thread, without flooding it:
+ the deltas published in between are summed up per key, and delivered at most maxUpdatesPerSecond times
+ per second through the given Executor. Deltas published within that interval go with the next delivery
+ (of a later publish() or of flush()). At most one delivery is pending at a time, so if the UI thread is busy,
+ the deltas just pile up in that delivery.
+ */
+public class CoalescingDeltaChannel {
+
+    public interface Listener {
+        void onDeltas(SortedMap<Integer, Integer> deltas);  // called on the delivery Executor
+    }
+
+    private final long minIntervalNanos;
+    private final Executor deliveryExecutor;
+    private final Listener listener;
+
+    // guarded by this
+    private TreeMap<Integer, Integer> pendingDeltas = new TreeMap<>();
+    private boolean deliveryPending = false;
+    private long lastDeliveryNanos;
+    private int numDeliveries = 0;
+
+    public CoalescingDeltaChannel(int maxUpdatesPerSecond, Executor deliveryExecutor, Listener listener) {
+        this.minIntervalNanos = 1_000_000_000L / Math.max(1, maxUpdatesPerSecond);
+        this.deliveryExecutor = deliveryExecutor;
+        this.listener = listener;
+        this.lastDeliveryNanos = System.nanoTime() - minIntervalNanos;
+    }
+
+    public void publish(int key, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        boolean deliverNow;
+        synchronized (this) {
+            Integer pendingDelta = pendingDeltas.get(key);
+            int sum = (pendingDelta == null) ? delta : pendingDelta + delta;
+            if (sum == 0) {
+                pendingDeltas.remove(key);
+            } else {
+                pendingDeltas.put(key, sum);
+            }
+            deliverNow = scheduleDelivery(System.nanoTime() - lastDeliveryNanos >= minIntervalNanos);
+        }
+        if (deliverNow) {
+            deliveryExecutor.execute(this::deliver);
+        }
+    }
+
+    /*
+     Delivers the pending deltas without waiting for the interval, e.g. when the worker has finished.
+     */
+    public void flush() {
+        boolean deliverNow;
+        synchronized (this) {
+            deliverNow = scheduleDelivery(true);
+        }
+        if (deliverNow) {
+            deliveryExecutor.execute(this::deliver);
+        }
+    }
+
+    public synchronized int getNumDeliveries() {
+        return numDeliveries;
+    }
+
+    private boolean scheduleDelivery(boolean intervalElapsed) {
+        if (deliveryPending || pendingDeltas.isEmpty() || !intervalElapsed) {
+            return false;  // a pending delivery takes the new deltas along
+        }
+        deliveryPending = true;
+        return true;
+    }
+
+    private void deliver() {
+        SortedMap<Integer, Integer> deltas;
+        synchronized (this) {
+            deltas = Collections.unmodifiableSortedMap(pendingDeltas);
+            pendingDeltas = new TreeMap<>();
+            deliveryPending = false;
+            lastDeliveryNanos = System.nanoTime();
+            numDeliveries++;
+        }
+        if (!deltas.isEmpty()) {
+            listener.onDeltas(deltas);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.tasks;
+
+import org.tosl.coronawarncompanion.tools.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Runs the stages of one owner (e.g. an activity) in background threads, and delivers their results
+ on the resultExecutor (e.g. the UI thread). All stages share one CancellationToken: cancel() stops
+ the running stages and drops all results that have not been delivered yet, without waiting for the threads.
+ A stage that is cancelled returns (or throws) early, whatever it has computed until then stays
+ in the objects it has written to.
+ */
+public class TaskScheduler {
+    private static final String TAG = "TaskScheduler";
+
+    public interface Stage<T> {
+        T run(CancellationToken cancellationToken) throws Exception;
+    }
+
+    public interface ResultCallback<T> {
+        void onResult(T result);
+    }
+
+    private final String name;
+    private final Executor resultExecutor;
+    private final ExecutorService executor;
+    private final CancellationToken cancellationToken = new CancellationToken();
+    private final Set<Future<?>> runningTasks = new HashSet<>();
+
+    public TaskScheduler(String name, Executor resultExecutor) {
+        this.name = name;
+        this.resultExecutor = resultExecutor;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     Runs stage in a background thread, named stageName while it runs. Its result is delivered to
+     resultCallback (may be null) on the resultExecutor, unless the scheduler has been cancelled by then.
+     If the stage throws, the exception is logged and nothing is delivered.
+     */
+    public <T> Future<T> submit(String stageName, Stage<T> stage, ResultCallback<T> resultCallback) {
+        FutureTask<T> task = new FutureTask<T>(() -> {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(stageName);
+            try {
+                return stage.run(cancellationToken);
+            } finally {
+                thread.setName(threadName);
+            }
+        }) {
+            @Override
+            protected void done() {
+                synchronized (runningTasks) {
+                    runningTasks.remove(this);
+                }
+                if (isCancelled() || cancellationToken.isCancelled()) {
+                    return;
+                }
+                T result;
+                try {
+                    result = get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, name + ": " + stageName + " failed: " + e.getCause());
+                    return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (resultCallback != null) {
+                    post(() -> resultCallback.onResult(result));
+                }
+            }
+        };
+        synchronized (runningTasks) {
+            if (cancellationToken.isCancelled()) {
+                task.cancel(false);
+                return task;
+            }
+            runningTasks.add(task);
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    /*
+     Runs runnable on the resultExecutor, unless the scheduler has been cancelled before it gets there.
+     For intermediate results (e.g. progress) of a running stage.
+     */
+    public void post(Runnable runnable) {
+        if (cancellationToken.isCancelled()) {
+            return;
+        }
+        resultExecutor.execute(() -> {
+            if (!cancellationToken.isCancelled()) {
+                runnable.run();
+            }
+        });
+    }
+
+    /*
+     Cancels all stages and returns right away. The running stages see the cancelled token
+     (and get interrupted), later submitted stages are not run.
+     */
+    public void cancel() {
+        if (!cancellationToken.cancel()) {
+            return;
+        }
+        synchronized (runningTasks) {
+            for (Future<?> task : new ArrayList<>(runningTasks)) {  // done() removes them
+                task.cancel(true);
+            }
+            runningTasks.clear();
+            executor.shutdownNow();
+        }
+        Log.d(TAG, name + ": cancelled.");
+    }
+
+    public boolean isCancelled() {
+        return cancellationToken.isCancelled();
+    }
+
+    /*
+     True while at least one stage is running.
+     */
+    public boolean isBusy() {
+        synchronized (runningTasks) {
+            return !runningTasks.isEmpty();
+        }
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+}
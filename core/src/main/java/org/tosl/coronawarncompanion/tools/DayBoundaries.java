@@ -0,0 +1,181 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.tools;
+
+import java.util.TimeZone;
+
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromMillis;
+
+/*
+ The local days of a time zone over a window of days, precomputed as a table of the (UTC) seconds at which each
+ of them starts. So the local day of a timestamp is integer arithmetic and a table lookup, with the DST offsets
+ in effect on each day, instead of a Calendar per timestamp or a single offset for the whole window.
+ Before / after the window, the offset at its first / last boundary is used. Immutable.
+ */
+public final class DayBoundaries {
+
+    public static final int SECONDS_PER_DAY = 24 * 3600;
+
+    private final int firstDaysSinceEpochLocalTZ;
+    private final int[] dayStartSecondsUTC;  // [i]: start of local day firstDaysSinceEpochLocalTZ + i (one more than days)
+    private final int[] offsetChangeSecondsUTC;  // [i]: DST transition within day i, or Integer.MAX_VALUE
+    private final int firstOffsetSeconds;
+    private final int lastOffsetSeconds;
+
+    private DayBoundaries(int firstDaysSinceEpochLocalTZ, int[] dayStartSecondsUTC, int[] offsetChangeSecondsUTC,
+                          int firstOffsetSeconds, int lastOffsetSeconds) {
+        this.firstDaysSinceEpochLocalTZ = firstDaysSinceEpochLocalTZ;
+        this.dayStartSecondsUTC = dayStartSecondsUTC;
+        this.offsetChangeSecondsUTC = offsetChangeSecondsUTC;
+        this.firstOffsetSeconds = firstOffsetSeconds;
+        this.lastOffsetSeconds = lastOffsetSeconds;
+    }
+
+    /*
+     The same offset on all days, e.g. for UTC, or for tests.
+     */
+    public static DayBoundaries forFixedOffset(int offsetSeconds) {
+        return new DayBoundaries(0, new int[0], new int[0], offsetSeconds, offsetSeconds);
+    }
+
+    /*
+     The numDaysBack local days before the day of nowMillis, that day itself and the day after it.
+     */
+    public static DayBoundaries forTimeZone(TimeZone timeZone, long nowMillis, int numDaysBack) {
+        int today = getDaysFromMillis(nowMillis + timeZone.getOffset(nowMillis));
+        int firstDay = today - numDaysBack;
+        int lastDay = today + 1;
+        int[] dayStartSecondsUTC = new int[lastDay - firstDay + 2];
+        for (int i = 0; i < dayStartSecondsUTC.length; i++) {
+            dayStartSecondsUTC[i] = getDayStartSecondsUTC(timeZone, firstDay + i);
+        }
+        int[] offsetChangeSecondsUTC = new int[dayStartSecondsUTC.length - 1];
+        for (int i = 0; i < offsetChangeSecondsUTC.length; i++) {
+            offsetChangeSecondsUTC[i] = getOffsetChangeSecondsUTC(timeZone,
+                    dayStartSecondsUTC[i], dayStartSecondsUTC[i + 1]);
+        }
+        return new DayBoundaries(firstDay, dayStartSecondsUTC, offsetChangeSecondsUTC,
+                getOffsetSeconds(timeZone, dayStartSecondsUTC[0]),
+                getOffsetSeconds(timeZone, dayStartSecondsUTC[dayStartSecondsUTC.length - 1]));
+    }
+
+    private static int getOffsetSeconds(TimeZone timeZone, long secondsUTC) {
+        return timeZone.getOffset(secondsUTC * 1000L) / 1000;
+    }
+
+    // the instant of local midnight: the offset guessed at midnight UTC of that day is corrected once,
+    // if a DST transition lies in between
+    private static int getDayStartSecondsUTC(TimeZone timeZone, int daysSinceEpochLocalTZ) {
+        long localMidnightSeconds = (long) daysSinceEpochLocalTZ * SECONDS_PER_DAY;
+        int offsetSeconds = getOffsetSeconds(timeZone, localMidnightSeconds);
+        long dayStartSeconds = localMidnightSeconds - offsetSeconds;
+        int correctedOffsetSeconds = getOffsetSeconds(timeZone, dayStartSeconds);
+        if (correctedOffsetSeconds != offsetSeconds) {
+            dayStartSeconds = localMidnightSeconds - correctedOffsetSeconds;
+        }
+        return (int) dayStartSeconds;
+    }
+
+    // the first second of [dayStartSeconds, nextDayStartSeconds) with the offset of the next day, by bisection
+    private static int getOffsetChangeSecondsUTC(TimeZone timeZone, int dayStartSeconds, int nextDayStartSeconds) {
+        int nextOffsetSeconds = getOffsetSeconds(timeZone, nextDayStartSeconds);
+        if (getOffsetSeconds(timeZone, dayStartSeconds) == nextOffsetSeconds) {
+            return Integer.MAX_VALUE;
+        }
+        int low = dayStartSeconds;
+        int high = nextDayStartSeconds;
+        while (low < high) {
+            int middle = low + (high - low) / 2;
+            if (getOffsetSeconds(timeZone, middle) == nextOffsetSeconds) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    public int getDaysSinceEpochLocalTZ(int secondsUTC) {
+        int numDays = dayStartSecondsUTC.length - 1;
+        if (numDays <= 0 || secondsUTC < dayStartSecondsUTC[0]) {
+            return floorDays((long) secondsUTC + firstOffsetSeconds);
+        }
+        if (secondsUTC >= dayStartSecondsUTC[numDays]) {
+            return floorDays((long) secondsUTC + lastOffsetSeconds);
+        }
+        return firstDaysSinceEpochLocalTZ + getDayIndex(secondsUTC);
+    }
+
+    /*
+     The offset of the local time zone at the given instant, e.g. to convert the current time.
+     */
+    public int getOffsetSeconds(int secondsUTC) {
+        int numDays = dayStartSecondsUTC.length - 1;
+        if (numDays <= 0 || secondsUTC < dayStartSecondsUTC[0]) {
+            return firstOffsetSeconds;
+        }
+        if (secondsUTC >= dayStartSecondsUTC[numDays]) {
+            return lastOffsetSeconds;
+        }
+        int i = getDayIndex(secondsUTC);
+        if (secondsUTC >= offsetChangeSecondsUTC[i]) {
+            i++;  // after the transition: the offset in effect at the start of the next day
+        }
+        return (int) ((long) (firstDaysSinceEpochLocalTZ + i) * SECONDS_PER_DAY - dayStartSecondsUTC[i]);
+    }
+
+    /*
+     The local (wall clock) time of the given instant, in seconds since the local midnight that starts the given day.
+     Not reduced modulo a day: an instant on the day before / after gives a negative value / a value of at least
+     SECONDS_PER_DAY, so that a time span across midnight stays contiguous.
+     */
+    public int getLocalSecondsOfDay(int secondsUTC, int daysSinceEpochLocalTZ) {
+        return (int) ((long) secondsUTC + getOffsetSeconds(secondsUTC)
+                - (long) daysSinceEpochLocalTZ * SECONDS_PER_DAY);
+    }
+
+    // the index of the day within the table, for an instant within the table
+    private int getDayIndex(int secondsUTC) {
+        int numDays = dayStartSecondsUTC.length - 1;
+        // a day is 23 to 25 hours long: the guess is at most one day off
+        int i = floorDays((long) secondsUTC + firstOffsetSeconds) - firstDaysSinceEpochLocalTZ;
+        if (i >= numDays) {
+            i = numDays - 1;
+        }
+        while (secondsUTC < dayStartSecondsUTC[i]) {
+            i--;
+        }
+        while (secondsUTC >= dayStartSecondsUTC[i + 1]) {
+            i++;
+        }
+        return i;
+    }
+
+    public static int getSecondsOfDayUTC(int secondsUTC) {
+        return (int) ((long) secondsUTC - (long) floorDays(secondsUTC) * SECONDS_PER_DAY);
+    }
+
+    private static int floorDays(long seconds) {
+        long days = seconds / SECONDS_PER_DAY;
+        if (seconds < 0 && days * SECONDS_PER_DAY != seconds) {
+            days--;
+        }
+        return (int) days;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.tools;
+
+/**
+ * Minimal logging facade for the core module, with the signatures of android.util.Log.
+ * The app installs a sink that forwards to android.util.Log. The default sink prints warnings
+ * and errors to System.err, so that host tools and tests are not slowed down by debug output.
+ */
+public class Log {
+
+    public interface Sink {
+        void log(char level, String tag, String msg);
+    }
+
+    private static final Sink STDERR_SINK = (level, tag, msg) -> {
+        if (level == 'W' || level == 'E') {
+            System.err.println(level + "/" + tag + ": " + msg);
+        }
+    };
+
+    private static volatile Sink sink = STDERR_SINK;
+
+    public static void setSink(Sink newSink) {
+        sink = (newSink != null) ? newSink : STDERR_SINK;
+    }
+
+    public static void d(String tag, String msg) {
+        sink.log('D', tag, msg);
+    }
+
+    public static void i(String tag, String msg) {
+        sink.log('I', tag, msg);
+    }
+
+    public static void w(String tag, String msg) {
+        sink.log('W', tag, msg);
+    }
+
+    public static void e(String tag, String msg) {
+        sink.log('E', tag, msg);
+    }
+}
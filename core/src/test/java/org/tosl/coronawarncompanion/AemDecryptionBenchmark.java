@@ -0,0 +1,65 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+
+import java.util.Random;
+
+import static org.tosl.coronawarncompanion.tools.Utils.xorTwoByteArrays;
+
+/**
+ * Benchmark, which will execute on the development machine (host).
+ * Compares the AEM decryption of a match with a new AES-CTR cipher and byte array XOR per scan
+ * with the reused keystream and int XOR.
+ * Run with: ./gradlew :core:test -Pbenchmark --tests '*AemDecryptionBenchmark'
+ */
+public class AemDecryptionBenchmark {
+
+    private static final int numMatches = 20000;
+    private static final int scansPerMatch = 10;
+
+    @Test
+    public void benchmarkAemDecryption() {
+        Random random = new Random(3);
+        byte[] aemKey = new byte[16];
+        random.nextBytes(aemKey);
+        byte[][] rpis = new byte[numMatches][16];
+        byte[][] aems = new byte[scansPerMatch][4];
+        for (byte[] rpi : rpis) {
+            random.nextBytes(rpi);
+        }
+        for (byte[] aem : aems) {
+            random.nextBytes(aem);
+        }
+        Crypto crypto = new Crypto();
+
+        for (int run = 0; run < 3; run++) {  // the first runs are the warm-up
+            long start = System.nanoTime();
+            int sumOld = 0;
+            for (byte[] rpi : rpis) {
+                byte[] zeroAem = {0x00, 0x00, 0x00, 0x00};
+                byte[] aemXorBytes = Crypto.decryptAem(aemKey, zeroAem, rpi);
+                for (byte[] aem : aems) {
+                    sumOld += xorTwoByteArrays(aem, aemXorBytes)[1];
+                }
+            }
+            long nanosOld = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int sumNew = 0;
+            for (byte[] rpi : rpis) {
+                int aemXorMask = crypto.deriveAemMask(aemKey, rpi);
+                for (byte[] aem : aems) {
+                    sumNew += Crypto.getTxPowerFromAem(Crypto.getIntFromAemBytes(aem) ^ aemXorMask);
+                }
+            }
+            long nanosNew = System.nanoTime() - start;
+
+            if (sumOld != sumNew) {
+                throw new AssertionError("Different results");
+            }
+            System.out.printf("run %d: AES-CTR cipher per match: %5d ns/match, reused keystream: %5d ns/match%n",
+                    run, nanosOld / numMatches, nanosNew / numMatches);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.matcher.EnRpiBlockTable;
+
+import java.util.Random;
+
+/**
+ * Benchmark, which will execute on the development machine (host).
+ * Compares the RPI generation (144 RPIs per key) with the JCE, with the JCE and the block table
+ * (one cipher call per key), and with the Java AES engine.
+ * Note that the host JVM's JCE uses AES instructions, so run it on a device for representative numbers.
+ * Run with: ./gradlew :core:test -Pbenchmark --tests '*AesEngineBenchmark'
+ */
+public class AesEngineBenchmark {
+
+    private static final int numKeys = 20000;
+
+    private static void measure(int run, String name, Crypto crypto, byte[][] rpiKeys) {
+        long start = System.nanoTime();
+        int sum = 0;
+        for (byte[] rpiKey : rpiKeys) {
+            sum += crypto.createListOfRpisForIntervalRange(rpiKey, 2660000, 144).get(143).rpiBytes[0];
+        }
+        long nanosPerKey = (System.nanoTime() - start) / numKeys;
+        System.out.printf("run %d: %-11s %6d ns/key (%d)%n", run, name, nanosPerKey, sum);
+    }
+
+    @Test
+    public void benchmarkRpiGeneration() {
+        Random random = new Random(9);
+        byte[][] rpiKeys = new byte[numKeys][16];
+        for (byte[] rpiKey : rpiKeys) {
+            random.nextBytes(rpiKey);
+        }
+        for (int run = 0; run < 3; run++) {  // the first runs are the warm-up
+            for (Crypto.AesEngine aesEngine : Crypto.AesEngine.values()) {
+                measure(run, aesEngine.name(), new Crypto(aesEngine), rpiKeys);
+            }
+            Crypto blockTableCrypto = new Crypto(Crypto.AesEngine.JCE);
+            blockTableCrypto.setBlockTable(new EnRpiBlockTable(2660000 - 144 * 7, 144 * 14));
+            measure(run, "JCE+table", blockTableCrypto, rpiKeys);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.tosl.coronawarncompanion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Collects benchmark results, so that they can be compared across commits.
+ * Each result is printed, and appended as a CSV line (time, commit, benchmark, parameters, value, unit)
+ * to benchmark-results.csv in the directory given by the system property benchmark.resultsDir
+ * (set by the Gradle build, together with benchmark.commit).
+ */
+class BenchmarkResults {
+
+    private BenchmarkResults() {
+    }
+
+    static int getIntProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        return (value != null) ? Integer.parseInt(value) : defaultValue;
+    }
+
+    static double getDoubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return (value != null) ? Double.parseDouble(value) : defaultValue;
+    }
+
+    static void record(String benchmark, String parameters, double value, String unit) {
+        System.out.printf(Locale.ROOT, "%-28s %-36s %14.1f %s%n", benchmark, parameters, value, unit);
+        String resultsDir = System.getProperty("benchmark.resultsDir");
+        if (resultsDir == null) {
+            return;
+        }
+        File dir = new File(resultsDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Cannot create " + dir);
+            return;
+        }
+        File file = new File(dir, "benchmark-results.csv");
+        boolean newFile = !file.exists();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            if (newFile) {
+                writer.write("timeMillis,commit,benchmark,parameters,value,unit\n");
+            }
+            writer.write(String.format(Locale.ROOT, "%d,%s,%s,\"%s\",%.3f,%s%n", System.currentTimeMillis(),
+                    System.getProperty("benchmark.commit", "unknown"), benchmark, parameters, value, unit));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.tasks.CoalescingDeltaChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks that the deltas are summed up while a delivery is pending, and that the deliveries are throttled.
+ */
+public class CoalescingDeltaChannelUnitTest {
+
+    // stands in for the UI thread: the test thread runs what has been posted
+    private final BlockingQueue<Runnable> deliveryQueue = new LinkedBlockingQueue<>();
+    private final List<SortedMap<Integer, Integer>> deliveries = new ArrayList<>();
+
+    private void runDeliveries() {
+        Runnable runnable;
+        while ((runnable = deliveryQueue.poll()) != null) {
+            runnable.run();
+        }
+    }
+
+    @Test
+    public void publish_whileDeliveryPending_isCoalesced() {
+        CoalescingDeltaChannel channel = new CoalescingDeltaChannel(1000, deliveryQueue::add, deliveries::add);
+        channel.publish(18500, 1);
+        channel.publish(18500, 2);
+        channel.publish(18501, 1);
+        channel.publish(18502, 1);
+        channel.publish(18502, -1);
+        assertEquals(1, deliveryQueue.size());
+        runDeliveries();
+        assertEquals(1, deliveries.size());
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        expected.put(18500, 3);
+        expected.put(18501, 1);
+        assertEquals(expected, deliveries.get(0));
+    }
+
+    @Test
+    public void publish_withinInterval_waitsForFlush() {
+        CoalescingDeltaChannel channel = new CoalescingDeltaChannel(1, deliveryQueue::add, deliveries::add);
+        channel.publish(18500, 1);
+        runDeliveries();
+        // at most one update per second: no delivery for these yet
+        channel.publish(18500, 1);
+        channel.publish(18501, 4);
+        assertTrue(deliveryQueue.isEmpty());
+        channel.flush();
+        runDeliveries();
+        assertEquals(2, deliveries.size());
+        assertEquals(2, channel.getNumDeliveries());
+        assertEquals(Integer.valueOf(1), deliveries.get(1).get(18500));
+        assertEquals(Integer.valueOf(4), deliveries.get(1).get(18501));
+        // nothing left
+        channel.flush();
+        assertTrue(deliveryQueue.isEmpty());
+    }
+
+    @Test
+    public void matchEntries_publishDailyMatchingDkCountDeltas() {
+        CoalescingDeltaChannel channel = new CoalescingDeltaChannel(1000, deliveryQueue::add, deliveries::add);
+        MatchEntryContent content = new MatchEntryContent();
+        content.matchEntries.setDailyMatchingDkCountListener(channel::publish);
+
+        DiagnosisKeysProtos.TemporaryExposureKey dk1 = createDk(1);
+        DiagnosisKeysProtos.TemporaryExposureKey dk2 = createDk(2);
+        MatchEntryContent.Accumulator accumulator = new MatchEntryContent.Accumulator();
+        accumulator.add(createMatchEntry(), dk1, 18500);
+        accumulator.add(createMatchEntry(), dk1, 18500);  // the same key: still one match
+        accumulator.add(createMatchEntry(), dk2, 18500);
+        accumulator.add(createMatchEntry(), dk2, 18501);
+        content.matchEntries.merge(accumulator);
+        assertTrue(accumulator.isEmpty());
+        content.matchEntries.quarantine(Collections.singletonList(dk2));
+        channel.flush();
+        runDeliveries();
+
+        // summed up over all deliveries, the deltas are the final counts
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (SortedMap<Integer, Integer> deltas : deliveries) {
+            for (Integer day : deltas.keySet()) {
+                Integer count = counts.get(day);
+                counts.put(day, (count == null ? 0 : count) + deltas.get(day));
+            }
+        }
+        assertEquals(Integer.valueOf(1), counts.get(18500));
+        assertNull(counts.get(18501));  // added and retracted before the delivery: nothing to deliver
+        assertEquals(1, content.matchEntries.getDailyCounts().get(18500).dailyMatchingDkCount);
+        assertNull(content.matchEntries.getDailyCounts().get(18501));
+    }
+
+    private static DiagnosisKeysProtos.TemporaryExposureKey createDk(int keyByte) {
+        byte[] keyBytes = new byte[16];
+        Arrays.fill(keyBytes, (byte) keyByte);
+        return DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setKeyData(ByteString.copyFrom(keyBytes))
+                .setRollingStartIntervalNumber(2664000)
+                .setRollingPeriod(144)
+                .build();
+    }
+
+    private static Matcher.MatchEntry createMatchEntry() {
+        ContactRecordsProtos.ContactRecords contactRecords = ContactRecordsProtos.ContactRecords.newBuilder()
+                .addRecord(ContactRecordsProtos.ScanRecord.newBuilder()
+                        .setTimestamp(1598400000)
+                        .setRssi(-60)
+                        .setAem(ByteString.copyFrom(new byte[]{1, 2, 3, 4})))
+                .build();
+        return new Matcher.MatchEntry(contactRecords, 1598400000, new byte[]{5, 6, 7, 8});
+    }
+}
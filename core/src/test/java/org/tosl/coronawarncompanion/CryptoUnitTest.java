@@ -0,0 +1,141 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.crypto.Aes128TableEncryptor;
+import org.tosl.coronawarncompanion.crypto.AesEcbEncryptor;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.matcher.EnRpiBlockTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.tools.Utils.hexStringToByteArray;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ */
+public class CryptoUnitTest {
+
+    @Test
+    public void deriveAemMask_isCorrect() {
+        Random random = new Random(7);
+        Crypto crypto = new Crypto();
+        for (int i = 0; i < 100; i++) {
+            byte[] tek = new byte[16];
+            byte[] rpi = new byte[16];
+            byte[] metadata = new byte[] {0x40, (byte) (-random.nextInt(40)), 0x00, 0x00};
+            random.nextBytes(tek);
+            random.nextBytes(rpi);
+            byte[] aemKey = Crypto.deriveAemKey(tek);
+
+            // assert that the mask is the same as decrypting an all-zero AEM with AES-CTR
+            int aemMask = crypto.deriveAemMask(aemKey, rpi);
+            byte[] zeroAem = {0x00, 0x00, 0x00, 0x00};
+            assertArrayEquals(Crypto.decryptAem(aemKey, zeroAem, rpi), Crypto.getAemBytesFromInt(aemMask));
+
+            // assert that the mask decrypts an encrypted AEM
+            byte[] aem = Crypto.encryptAem(aemKey, metadata, rpi);
+            int decryptedAem = Crypto.getIntFromAemBytes(aem) ^ aemMask;
+            assertTrue(Crypto.isValidAem(decryptedAem));
+            assertEquals(metadata[1], Crypto.getTxPowerFromAem(decryptedAem));
+            assertArrayEquals(metadata, Crypto.getAemBytesFromInt(decryptedAem));
+        }
+    }
+
+    @Test
+    public void isValidAem_isCorrect() {
+        assertTrue(Crypto.isValidAem(0x40ec0000));
+        assertFalse(Crypto.isValidAem(0x41ec0000));
+        assertFalse(Crypto.isValidAem(0x40ec0100));
+        assertFalse(Crypto.isValidAem(0x40ec0001));
+    }
+
+    @Test
+    public void aes128TableEncryptor_isCorrect() throws Exception {
+        // FIPS-197, Appendix C.1
+        byte[] key = hexStringToByteArray("000102030405060708090a0b0c0d0e0f");
+        byte[] plaintext = hexStringToByteArray("00112233445566778899aabbccddeeff");
+        Aes128TableEncryptor tableEncryptor = new Aes128TableEncryptor();
+        tableEncryptor.init(key);
+        byte[] ciphertext = new byte[16];
+        tableEncryptor.encrypt(plaintext, 0, ciphertext, 0);
+        assertArrayEquals(hexStringToByteArray("69c4e0d86a7b0430d8cdb78070b4c55a"), ciphertext);
+
+        // cross-check with the JCE
+        Random random = new Random(11);
+        AesEcbEncryptor jceEncryptor = new AesEcbEncryptor();
+        for (int i = 0; i < 200; i++) {
+            random.nextBytes(key);
+            random.nextBytes(plaintext);
+            tableEncryptor.init(key);
+            jceEncryptor.init(key);
+            tableEncryptor.encrypt(plaintext, 0, ciphertext, 0);
+            assertArrayEquals(jceEncryptor.encrypt(plaintext), ciphertext);
+
+            tableEncryptor.setFixedPrefix(plaintext);
+            int lastWord = random.nextInt();
+            plaintext[12] = (byte) (lastWord >>> 24);
+            plaintext[13] = (byte) (lastWord >>> 16);
+            plaintext[14] = (byte) (lastWord >>> 8);
+            plaintext[15] = (byte) lastWord;
+            tableEncryptor.encryptWithFixedPrefix(lastWord, ciphertext, 0);
+            assertArrayEquals(jceEncryptor.encrypt(plaintext), ciphertext);
+        }
+    }
+
+    @Test
+    public void createListOfRpisForIntervalRange_isSameForAllAesEngines() {
+        Random random = new Random(5);
+        Crypto jceCrypto = new Crypto(Crypto.AesEngine.JCE);
+        Crypto tableCrypto = new Crypto(Crypto.AesEngine.JAVA_TABLES);
+        // the block table covers only some of the keys, the others use the per-block encryption
+        final int firstIntervalNumber = 2650000;
+        Crypto blockTableCrypto = new Crypto(Crypto.AesEngine.JCE);
+        blockTableCrypto.setBlockTable(new EnRpiBlockTable(firstIntervalNumber + 144 * 10, 144 * 14));
+        for (int i = 0; i < 40; i++) {
+            byte[] tek = new byte[16];
+            random.nextBytes(tek);
+            byte[] rpiKey = Crypto.deriveRpiKey(tek);
+            int startIntervalNumber = firstIntervalNumber + 144 * random.nextInt(30);
+            ArrayList<Crypto.RpiWithInterval> expected =
+                    new ArrayList<>(jceCrypto.createListOfRpisForIntervalRange(rpiKey, startIntervalNumber, 144));
+            for (Crypto crypto : new Crypto[] {tableCrypto, blockTableCrypto}) {
+                ArrayList<Crypto.RpiWithInterval> actual =
+                        crypto.createListOfRpisForIntervalRange(rpiKey, startIntervalNumber, 144);
+                assertEquals(144, actual.size());
+                for (int pos = 0; pos < 144; pos++) {
+                    assertEquals(expected.get(pos).intervalNumber, actual.get(pos).intervalNumber);
+                    assertArrayEquals(expected.get(pos).rpiBytes, actual.get(pos).rpiBytes);
+                    // and the same as the single RPI encryption
+                    assertArrayEquals(jceCrypto.encryptRpi(rpiKey, startIntervalNumber + pos),
+                            actual.get(pos).rpiBytes);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void enRpiBlockTable_isCorrect() {
+        EnRpiBlockTable blockTable = new EnRpiBlockTable(2650000, 144);
+        assertTrue(blockTable.contains(2650000, 144));
+        assertTrue(blockTable.contains(2650100, 44));
+        assertFalse(blockTable.contains(2650001, 144));
+        assertFalse(blockTable.contains(2649999, 10));
+
+        // keys of many days: only the latest days are covered
+        DiagnosisKeysProtos.TemporaryExposureKey oldDk = DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setRollingStartIntervalNumber(2650000).setRollingPeriod(144).build();
+        DiagnosisKeysProtos.TemporaryExposureKey newDk = DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setRollingStartIntervalNumber(2650000 + 144 * 30).setRollingPeriod(144).build();
+        blockTable = EnRpiBlockTable.forDiagnosisKeys(Arrays.asList(oldDk, newDk));
+        assertNotNull(blockTable);
+        assertTrue(blockTable.contains(2650000 + 144 * 30, 144));
+        assertTrue(blockTable.contains(2650000 + 144 * 31 - EnRpiBlockTable.MAX_INTERVALS, 144));
+        assertFalse(blockTable.contains(2650000, 144));
+        assertNull(EnRpiBlockTable.forDiagnosisKeys(Collections.emptyList()));
+    }
+}
@@ -0,0 +1,227 @@
+package org.tosl.coronawarncompanion;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tosl.coronawarncompanion.dkdownload.DKDownload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * A local HTTP server stands in for the Diagnosis Keys server.
+ */
+public class DKDownloadUnitTest {
+
+    private static final int maxConcurrentRequests = 3;
+
+    @Rule
+    public TemporaryFolder packageDir = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private final Map<String, byte[]> files = new HashMap<>();  // path -> content
+    private final AtomicInteger concurrentRequests = new AtomicInteger(0);
+    private final AtomicInteger maxObservedConcurrentRequests = new AtomicInteger(0);
+    private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<>());
+    // if set, the requests of the list of dates wait until released
+    private volatile CountDownLatch dateListRequested = null;
+    private volatile CountDownLatch dateListReleased = null;
+
+    @Before
+    public void startServer() throws IOException {
+        // region DE: 3 days + 2 hours, region EUR: 2 days, no hours yet, region XX: not available
+        files.put("/DE/date", "[\"2020-10-01\",\"2020-10-02\",\"2020-10-03\"]".getBytes(StandardCharsets.UTF_8));
+        files.put("/DE/date/2020-10-01", "DE-1".getBytes(StandardCharsets.UTF_8));
+        files.put("/DE/date/2020-10-02", "DE-2".getBytes(StandardCharsets.UTF_8));
+        files.put("/DE/date/2020-10-03", "DE-3".getBytes(StandardCharsets.UTF_8));
+        files.put("/DE/date/2020-10-04/hour", "[0,1]".getBytes(StandardCharsets.UTF_8));
+        files.put("/DE/date/2020-10-04/hour/0", "DE-4-0".getBytes(StandardCharsets.UTF_8));
+        files.put("/DE/date/2020-10-04/hour/1", "DE-4-1".getBytes(StandardCharsets.UTF_8));
+        files.put("/EUR/date", "[\"2020-10-02\",\"2020-10-03\"]".getBytes(StandardCharsets.UTF_8));
+        files.put("/EUR/date/2020-10-02", "EUR-2".getBytes(StandardCharsets.UTF_8));
+        files.put("/EUR/date/2020-10-03", "EUR-3".getBytes(StandardCharsets.UTF_8));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int current = concurrentRequests.incrementAndGet();
+        maxObservedConcurrentRequests.accumulateAndGet(current, Math::max);
+        try {
+            Thread.sleep(20);  // slow server, so that requests overlap
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        requestedPaths.add(exchange.getRequestURI().getPath());
+        if (dateListRequested != null && exchange.getRequestURI().getPath().endsWith("/date")) {
+            dateListRequested.countDown();
+            try {
+                dateListReleased.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        byte[] content = files.get(exchange.getRequestURI().getPath());
+        if (content != null) {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(content);
+            }
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+        }
+        concurrentRequests.decrementAndGet();
+        exchange.close();
+    }
+
+    @Test
+    public void download_allRegions_isCorrect() throws Exception {
+        DKDownload download = new DKDownload(baseUrl, packageDir.getRoot(), Arrays.asList("DE", "EUR", "XX"), maxConcurrentRequests);
+        download.start(new SimpleDateFormat("yyyy-MM-dd").parse("2020-10-02"));
+
+        List<String> received = new ArrayList<>();
+        DKDownload.FileResponse fileResponse;
+        while ((fileResponse = download.takeNext()) != null) {
+            // assert that each package has been streamed into its own file in the package directory
+            assertEquals(packageDir.getRoot(), fileResponse.file.getParentFile());
+            String content = new String(Files.readAllBytes(fileResponse.file.toPath()), StandardCharsets.UTF_8);
+            // assert that each package is tagged with the region it has been downloaded for
+            assertTrue(content.startsWith(fileResponse.region + "-"));
+            received.add(content);
+        }
+        // assert that the end of the queue is reported again
+        assertNull(download.takeNext());
+
+        // assert that all packages from minDate on have been received, and nothing else
+        Collections.sort(received);
+        assertEquals(Arrays.asList("DE-2", "DE-3", "DE-4-0", "DE-4-1", "EUR-2", "EUR-3"), received);
+
+        // assert that the missing region has been reported, but did not stop the others
+        assertEquals(Collections.singletonList("XX"), download.getFailedRegions());
+        assertFalse(download.allRegionsFailed());
+
+        // assert that the concurrency limit has been respected
+        assertTrue(maxObservedConcurrentRequests.get() <= maxConcurrentRequests);
+    }
+
+    private static List<String> takeAllContents(DKDownload download) throws Exception {
+        List<String> received = new ArrayList<>();
+        DKDownload.FileResponse fileResponse;
+        while ((fileResponse = download.takeNext()) != null) {
+            received.add(new String(Files.readAllBytes(fileResponse.file.toPath()), StandardCharsets.UTF_8));
+        }
+        Collections.sort(received);
+        return received;
+    }
+
+    @Test
+    public void download_cachedPackages_areNotDownloadedAgain() throws Exception {
+        // recent dates, because older packages are removed from the cache
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        long now = System.currentTimeMillis();
+        long day = 24 * 3600 * 1000L;
+        String date1 = dateFormat.format(new Date(now - 3 * day));
+        String date2 = dateFormat.format(new Date(now - 2 * day));
+        String date3 = dateFormat.format(new Date(now - day));
+        files.put("/AT/date", ("[\"" + date1 + "\",\"" + date2 + "\"]").getBytes(StandardCharsets.UTF_8));
+        files.put("/AT/date/" + date1, "AT-1".getBytes(StandardCharsets.UTF_8));
+        files.put("/AT/date/" + date2, "AT-2".getBytes(StandardCharsets.UTF_8));
+        files.put("/AT/date/" + date3 + "/hour", "[0]".getBytes(StandardCharsets.UTF_8));
+        files.put("/AT/date/" + date3 + "/hour/0", "AT-3-0".getBytes(StandardCharsets.UTF_8));
+        Date minDate = new Date(now - 7 * day);
+
+        DKDownload download = new DKDownload(baseUrl, packageDir.getRoot(), Collections.singletonList("AT"), maxConcurrentRequests);
+        download.start(minDate);
+        assertEquals(Arrays.asList("AT-1", "AT-2", "AT-3-0"), takeAllContents(download));
+
+        // the daily package of date3 has been published, it replaces the hourly package
+        files.put("/AT/date", ("[\"" + date1 + "\",\"" + date2 + "\",\"" + date3 + "\"]").getBytes(StandardCharsets.UTF_8));
+        files.put("/AT/date/" + date3, "AT-3".getBytes(StandardCharsets.UTF_8));
+        requestedPaths.clear();
+        download = new DKDownload(baseUrl, packageDir.getRoot(), Collections.singletonList("AT"), maxConcurrentRequests);
+        download.start(minDate);
+        assertEquals(Arrays.asList("AT-1", "AT-2", "AT-3"), takeAllContents(download));
+
+        // assert that only the new package (and the lists) have been downloaded
+        assertFalse(requestedPaths.contains("/AT/date/" + date1));
+        assertFalse(requestedPaths.contains("/AT/date/" + date2));
+        assertTrue(requestedPaths.contains("/AT/date/" + date3));
+
+        // assert that the superseded hourly package has been removed from the cache
+        String[] cachedFiles = packageDir.getRoot().list();
+        assertNotNull(cachedFiles);
+        Arrays.sort(cachedFiles);
+        assertEquals(Arrays.asList("AT_" + date1 + ".zip", "AT_" + date2 + ".zip", "AT_" + date3 + ".zip"),
+                Arrays.asList(cachedFiles));
+    }
+
+    @Test
+    public void download_cancelWhileRequestsAreRunning_schedulesNothingMore() throws Exception {
+        List<Throwable> uncaughtExceptions = Collections.synchronizedList(new ArrayList<>());
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> uncaughtExceptions.add(throwable));
+        try {
+            dateListRequested = new CountDownLatch(2);
+            dateListReleased = new CountDownLatch(1);
+            DKDownload download = new DKDownload(baseUrl, packageDir.getRoot(), Arrays.asList("DE", "EUR"), maxConcurrentRequests);
+            download.start(new SimpleDateFormat("yyyy-MM-dd").parse("2020-10-01"));
+            assertTrue(dateListRequested.await(5, TimeUnit.SECONDS));
+
+            // the running index requests finish after the cancellation, and find packages to download
+            download.cancel();
+            dateListReleased.countDown();
+            assertNull(download.takeNext());
+            Thread.sleep(500);
+
+            // assert that no package has been requested, and that no request has failed
+            for (String path : requestedPaths) {
+                assertTrue(path, path.endsWith("/date"));
+            }
+            assertEquals(Collections.emptyList(), uncaughtExceptions);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+    }
+
+    @Test
+    public void download_noRegionAvailable_isReported() throws Exception {
+        DKDownload download = new DKDownload(baseUrl, packageDir.getRoot(), Arrays.asList("XX", "YY"), maxConcurrentRequests);
+        download.start(new SimpleDateFormat("yyyy-MM-dd").parse("2020-10-01"));
+
+        assertNull(download.takeNext());
+        assertTrue(download.allRegionsFailed());
+    }
+}
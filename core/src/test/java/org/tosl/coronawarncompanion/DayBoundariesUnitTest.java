@@ -0,0 +1,134 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromSeconds;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks the precomputed local days against Calendar, across DST transitions.
+ */
+public class DayBoundariesUnitTest {
+
+    private static int getDaysSinceEpochFromCalendar(TimeZone timeZone, int secondsUTC) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(secondsUTC * 1000L);
+        Calendar utcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utcCalendar.clear();
+        utcCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
+        return (int) (utcCalendar.getTimeInMillis() / (24L * 3600 * 1000));
+    }
+
+    private static ContactRecordsProtos.ContactRecords createContactRecords(int startTimestamp, int endTimestamp) {
+        return ContactRecordsProtos.ContactRecords.newBuilder()
+                .addRecord(ContactRecordsProtos.ScanRecord.newBuilder().setTimestamp(startTimestamp))
+                .addRecord(ContactRecordsProtos.ScanRecord.newBuilder().setTimestamp(endTimestamp))
+                .build();
+    }
+
+    @Test
+    public void getDaysSinceEpochLocalTZ_acrossDstTransitions_matchesCalendar() {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        // 2020-03-29 (23 h) and 2020-10-25 (25 h), each with some days of margin, and before / after the table
+        long[] nowMillisList = {1585735200000L, 1604052000000L};  // 2020-04-01 10:00, 2020-10-30 10:00 UTC
+        for (long nowMillis : nowMillisList) {
+            DayBoundaries dayBoundaries = DayBoundaries.forTimeZone(timeZone, nowMillis, 7);
+            int nowSeconds = (int) (nowMillis / 1000);
+            for (int secondsUTC = nowSeconds - 12 * 24 * 3600; secondsUTC < nowSeconds + 5 * 24 * 3600;
+                 secondsUTC += 600) {
+                assertEquals("at " + secondsUTC, getDaysSinceEpochFromCalendar(timeZone, secondsUTC),
+                        dayBoundaries.getDaysSinceEpochLocalTZ(secondsUTC));
+            }
+        }
+    }
+
+    @Test
+    public void getDaysSinceEpochLocalTZ_fixedOffset_matchesOffsetArithmetic() {
+        int[] offsetsSeconds = {0, 3600, 2 * 3600, -5 * 3600, 5 * 3600 + 1800};
+        for (int offsetSeconds : offsetsSeconds) {
+            DayBoundaries dayBoundaries = DayBoundaries.forFixedOffset(offsetSeconds);
+            for (int secondsUTC = 1600000000; secondsUTC < 1600000000 + 3 * 24 * 3600; secondsUTC += 900) {
+                assertEquals(getDaysFromSeconds(secondsUTC + offsetSeconds),
+                        dayBoundaries.getDaysSinceEpochLocalTZ(secondsUTC));
+            }
+        }
+    }
+
+    @Test
+    public void getOffsetSeconds_acrossDstTransitions_matchesTimeZone() {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        long[] nowMillisList = {1585735200000L, 1604052000000L};  // 2020-04-01 10:00, 2020-10-30 10:00 UTC
+        for (long nowMillis : nowMillisList) {
+            DayBoundaries dayBoundaries = DayBoundaries.forTimeZone(timeZone, nowMillis, 7);
+            int nowSeconds = (int) (nowMillis / 1000);
+            for (int secondsUTC = nowSeconds - 12 * 24 * 3600; secondsUTC < nowSeconds + 5 * 24 * 3600;
+                 secondsUTC += 60) {
+                assertEquals("at " + secondsUTC, timeZone.getOffset(secondsUTC * 1000L) / 1000,
+                        dayBoundaries.getOffsetSeconds(secondsUTC));
+            }
+        }
+        // exactly at the transitions: 2020-03-29 01:00 UTC and 2020-10-25 01:00 UTC
+        DayBoundaries dayBoundaries = DayBoundaries.forTimeZone(timeZone, 1585735200000L, 7);
+        assertEquals(3600, dayBoundaries.getOffsetSeconds(1585443600 - 1));
+        assertEquals(2 * 3600, dayBoundaries.getOffsetSeconds(1585443600));
+        dayBoundaries = DayBoundaries.forTimeZone(timeZone, 1604052000000L, 7);
+        assertEquals(2 * 3600, dayBoundaries.getOffsetSeconds(1603587600 - 1));
+        assertEquals(3600, dayBoundaries.getOffsetSeconds(1603587600));
+    }
+
+    @Test
+    public void getLocalSecondsOfDay_onDstDay_isWallClockTimeWithoutWrapping() {
+        DayBoundaries dayBoundaries = DayBoundaries.forTimeZone(TimeZone.getTimeZone("Europe/Berlin"),
+                1585735200000L, 7);
+        int march29 = 18350;
+        int midnightUTC = march29 * 24 * 3600;
+        // 00:30 CET, 03:30 CEST (after the transition at 02:00 CET)
+        assertEquals(1800, dayBoundaries.getLocalSecondsOfDay(midnightUTC - 3600 + 1800, march29));
+        assertEquals(3 * 3600 + 1800, dayBoundaries.getLocalSecondsOfDay(midnightUTC + 3600 + 1800, march29));
+        // 23:30 CET on the day before, 00:30 CEST on the day after: not reduced modulo a day
+        assertEquals(-1800, dayBoundaries.getLocalSecondsOfDay(midnightUTC - 3600 - 1800, march29));
+        assertEquals(24 * 3600 + 1800,
+                dayBoundaries.getLocalSecondsOfDay(midnightUTC + 24 * 3600 - 2 * 3600 + 1800, march29));
+        // consistent with the local day
+        for (int secondsUTC = midnightUTC - 3 * 3600; secondsUTC < midnightUTC + 27 * 3600; secondsUTC += 300) {
+            int localSecondsOfDay = dayBoundaries.getLocalSecondsOfDay(secondsUTC, march29);
+            int expectedDay = march29 + (localSecondsOfDay < 0 ? -1 : localSecondsOfDay / (24 * 3600));
+            assertEquals(expectedDay, dayBoundaries.getDaysSinceEpochLocalTZ(secondsUTC));
+        }
+    }
+
+    @Test
+    public void getSecondsOfDayUTC_earlyAndLateEntries() {
+        int midnightUTC = 18500 * 24 * 3600;
+        assertEquals(0, DayBoundaries.getSecondsOfDayUTC(midnightUTC));
+        assertEquals(2 * 3600 - 1, DayBoundaries.getSecondsOfDayUTC(midnightUTC - 22 * 3600 - 1));
+        assertEquals(22 * 3600, DayBoundaries.getSecondsOfDayUTC(midnightUTC + 22 * 3600));
+
+        // RPIs scanned at 01:59 UTC on the 2020-03-29 and at 23:30 local time on the 2020-03-28 (22:30 UTC)
+        RpiList rpiList = new RpiList(DayBoundaries.forTimeZone(TimeZone.getTimeZone("Europe/Berlin"),
+                1585735200000L, 7));
+        int march29 = 18350;
+        byte[] rpiBytes = new byte[16];
+        rpiList.addEntry(march29, rpiBytes, createContactRecords(march29 * 24 * 3600 + 2 * 3600 - 60,
+                march29 * 24 * 3600 + 2 * 3600 - 30));
+        rpiBytes = new byte[16];
+        rpiBytes[0] = 1;
+        rpiList.addEntry(march29 - 1, rpiBytes, createContactRecords(march29 * 24 * 3600 - 3600 - 1800,
+                march29 * 24 * 3600 - 3600 - 1200));
+        assertEquals(Integer.valueOf(1), rpiList.getRpiCountForDaysSinceEpochLocalTZ(march29));
+        assertEquals(Integer.valueOf(1), rpiList.getRpiCountForDaysSinceEpochLocalTZ(march29 - 1));
+        RpiList.ListsPerDayUTC listsPerDayUTC = rpiList.getListsPerDaysSinceEpochUTC().get(march29);
+        assertNotNull(listsPerDayUTC);
+        assertEquals(1, listsPerDayUTC.rpiEntriesEarly.size());
+        listsPerDayUTC = rpiList.getListsPerDaysSinceEpochUTC().get(march29 - 1);
+        assertNotNull(listsPerDayUTC);
+        assertEquals(1, listsPerDayUTC.rpiEntriesLate.size());
+    }
+}
@@ -0,0 +1,77 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeyHistogram;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks the binning of the keys by day, region and report type, and the merging of the histograms of several files.
+ */
+public class DiagnosisKeyHistogramUnitTest {
+
+    private static final int firstDay = 18500;
+    private static final int lastDay = 18514;
+
+    private static DiagnosisKeysProtos.TemporaryExposureKey createDk(int day, int secondsIntoDay,
+            DiagnosisKeysProtos.TemporaryExposureKey.ReportType reportType) {
+        byte[] keyBytes = new byte[16];
+        Arrays.fill(keyBytes, (byte) day);
+        return DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setKeyData(ByteString.copyFrom(keyBytes))
+                .setRollingStartIntervalNumber(getENINFromSeconds(day * 24 * 3600 + secondsIntoDay))
+                .setRollingPeriod(144)
+                .setReportType(reportType)
+                .build();
+    }
+
+    @Test
+    public void add_binsByDayRegionAndReportType() {
+        DiagnosisKeysProtos.TemporaryExposureKey.ReportType confirmed =
+                DiagnosisKeysProtos.TemporaryExposureKey.ReportType.CONFIRMED_TEST;
+        DiagnosisKeysProtos.TemporaryExposureKey.ReportType selfReport =
+                DiagnosisKeysProtos.TemporaryExposureKey.ReportType.SELF_REPORT;
+        DiagnosisKeyHistogram histogram = new DiagnosisKeyHistogram(firstDay, lastDay);
+
+        DiagnosisKeyHistogram de = histogram.newEmptyCopy();
+        de.add("DE", createDk(firstDay, 0, confirmed));
+        de.add("DE", createDk(firstDay, 12 * 3600, confirmed));  // not starting at midnight
+        de.add("DE", createDk(firstDay + 3, 0, selfReport));
+        de.add("DE", createDk(firstDay - 1, 0, confirmed));  // before the first day: not counted
+        de.add("DE", createDk(lastDay + 2, 0, confirmed));  // after the last day: counted for the last day
+        DiagnosisKeyHistogram eur = histogram.newEmptyCopy();
+        eur.add("EUR", createDk(firstDay, 0, selfReport));
+
+        histogram.merge(de);
+        histogram.merge(eur);
+        assertEquals(5, histogram.getTotalCount());
+        assertEquals(3, histogram.getCount(firstDay));
+        assertEquals(1, histogram.getCount(firstDay + 3));
+        assertEquals(1, histogram.getCount(lastDay));
+        assertEquals(0, histogram.getCount(firstDay - 1));
+        assertEquals(Arrays.asList("DE", "EUR"), histogram.getRegions());
+        assertEquals(2, histogram.getCount("DE", confirmed, firstDay));
+        assertEquals(0, histogram.getCount("DE", selfReport, firstDay));
+        assertEquals(1, histogram.getCount("DE", selfReport, firstDay + 3));
+        assertEquals(1, histogram.getCount("EUR", selfReport, firstDay));
+        assertEquals(0, histogram.getCount("FR", selfReport, firstDay));
+
+        int sum = 0;
+        for (int day = histogram.getFirstDaysSinceEpoch(); day <= histogram.getLastDaysSinceEpoch(); day++) {
+            sum += histogram.getCount(day);
+        }
+        assertEquals(histogram.getTotalCount(), sum);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void merge_differentDays_isRejected() {
+        new DiagnosisKeyHistogram(firstDay, lastDay).merge(new DiagnosisKeyHistogram(firstDay + 1, lastDay));
+    }
+}
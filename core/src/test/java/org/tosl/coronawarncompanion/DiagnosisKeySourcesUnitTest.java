@@ -0,0 +1,71 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeySources;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks that a key is only retracted when all packages that contain it have failed the verification.
+ */
+public class DiagnosisKeySourcesUnitTest {
+
+    private static DiagnosisKeysProtos.TemporaryExposureKey createDk(int id, int transmissionRiskLevel) {
+        byte[] keyData = new byte[16];
+        keyData[0] = (byte) id;
+        //noinspection deprecation
+        return DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setKeyData(ByteString.copyFrom(keyData))
+                .setRollingStartIntervalNumber(2650000)
+                .setRollingPeriod(144)
+                .setTransmissionRiskLevel(transmissionRiskLevel)
+                .build();
+    }
+
+    @Test
+    public void failPackage_keyInVerifiedPackage_isNotRetracted() {
+        // the failing package (e.g. EUR) arrives first, the same key in a valid package (e.g. DE) second
+        DiagnosisKeysProtos.TemporaryExposureKey shared = createDk(1, 1);
+        DiagnosisKeysProtos.TemporaryExposureKey sharedCopy = createDk(1, 6);
+        DiagnosisKeysProtos.TemporaryExposureKey onlyInBad = createDk(2, 1);
+        DiagnosisKeysProtos.TemporaryExposureKey onlyInGood = createDk(3, 1);
+        List<DiagnosisKeysProtos.TemporaryExposureKey> badPackage = Arrays.asList(shared, onlyInBad, onlyInBad);
+        List<DiagnosisKeysProtos.TemporaryExposureKey> goodPackage = Arrays.asList(sharedCopy, onlyInGood);
+
+        DiagnosisKeySources sources = new DiagnosisKeySources();
+        DiagnosisKeySources.Package bad = sources.addPackage(badPackage);
+        assertEquals(Arrays.asList(shared, onlyInBad), bad.addedDks);
+        assertEquals(Collections.singletonList(onlyInGood), sources.addPackage(goodPackage).addedDks);
+
+        assertEquals(Collections.singletonList(onlyInBad), sources.failPackage(bad));
+        // failing the same package again retracts nothing more
+        assertEquals(Collections.emptyList(), sources.failPackage(bad));
+    }
+
+    @Test
+    public void failPackage_allPackagesOfKeyFailed_retractsTheCopyInUse() {
+        DiagnosisKeysProtos.TemporaryExposureKey shared = createDk(1, 1);
+        DiagnosisKeysProtos.TemporaryExposureKey sharedCopy = createDk(1, 6);
+        List<DiagnosisKeysProtos.TemporaryExposureKey> package1 = Collections.singletonList(shared);
+        List<DiagnosisKeysProtos.TemporaryExposureKey> package2 = Collections.singletonList(sharedCopy);
+
+        DiagnosisKeySources sources = new DiagnosisKeySources();
+        DiagnosisKeySources.Package first = sources.addPackage(package1);
+        DiagnosisKeySources.Package second = sources.addPackage(package2);
+        assertEquals(Collections.emptyList(), second.addedDks);
+
+        // the other package is still being verified
+        assertEquals(Collections.emptyList(), sources.failPackage(second));
+        List<DiagnosisKeysProtos.TemporaryExposureKey> retracted = sources.failPackage(first);
+        assertEquals(1, retracted.size());
+        assertSame(shared, retracted.get(0));
+    }
+}
@@ -0,0 +1,118 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.ExposureRisk;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ */
+public class ExposureRiskUnitTest {
+
+    private static final byte txPower = -20;
+    private static final int aemXorMask = 0x11223344;
+    private static final byte[] aemBytes = new byte[]{0x40 ^ 0x11, txPower ^ 0x22, 0x33, 0x44};
+
+    private static DiagnosisKeysProtos.TemporaryExposureKey.Builder createDkBuilder(int keyByte) {
+        byte[] keyBytes = new byte[16];
+        Arrays.fill(keyBytes, (byte) keyByte);
+        return DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setKeyData(ByteString.copyFrom(keyBytes))
+                .setRollingStartIntervalNumber(2666000)
+                .setRollingPeriod(144);
+    }
+
+    // scans given as {timestamp, attenuation}
+    private static ContactRecordsProtos.ContactRecords createContactRecords(int[][] scans) {
+        ContactRecordsProtos.ContactRecords.Builder builder = ContactRecordsProtos.ContactRecords.newBuilder();
+        for (int[] scan : scans) {
+            builder.addRecord(ContactRecordsProtos.ScanRecord.newBuilder()
+                    .setTimestamp(scan[0])
+                    .setRssi(txPower - scan[1])
+                    .setAem(ByteString.copyFrom(aemBytes)));
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void attenuationBuckets_areCorrect() {
+        assertEquals(ExposureRisk.BUCKET_IMMEDIATE, ExposureRisk.getAttenuationBucket(54));
+        assertEquals(ExposureRisk.BUCKET_NEAR, ExposureRisk.getAttenuationBucket(55));
+        assertEquals(ExposureRisk.BUCKET_NEAR, ExposureRisk.getAttenuationBucket(63));
+        assertEquals(ExposureRisk.BUCKET_MEDIUM, ExposureRisk.getAttenuationBucket(64));
+        assertEquals(ExposureRisk.BUCKET_MEDIUM, ExposureRisk.getAttenuationBucket(73));
+        assertEquals(ExposureRisk.BUCKET_OTHER, ExposureRisk.getAttenuationBucket(74));
+    }
+
+    @Test
+    public void exposureRisk_isCorrect() {
+        final int t = 1600000000;
+        // first scan: a full scan interval, then the time since the previous scan, at most a full scan interval
+        ContactRecordsProtos.ContactRecords contactRecords = createContactRecords(new int[][] {
+                {t, 50}, {t + 120, 60}, {t + 240, 70}, {t + 1240, 80}});
+        ExposureRisk exposureRisk = new ExposureRisk(contactRecords, aemXorMask, createDkBuilder(1).build());
+
+        assertEquals(300, exposureRisk.getSecondsInBucket(ExposureRisk.BUCKET_IMMEDIATE));
+        assertEquals(120, exposureRisk.getSecondsInBucket(ExposureRisk.BUCKET_NEAR));
+        assertEquals(120, exposureRisk.getSecondsInBucket(ExposureRisk.BUCKET_MEDIUM));
+        assertEquals(300, exposureRisk.getSecondsInBucket(ExposureRisk.BUCKET_OTHER));
+        assertEquals(5.0 + 2.0 + 0.5 * 2.0, exposureRisk.getWeightedExposureMinutes(), 1e-9);
+        assertEquals(50, exposureRisk.getMinAttenuation());
+        assertEquals(4, exposureRisk.getNumScans());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void keyWeight_isCorrect() {
+        assertEquals(1.0, ExposureRisk.getKeyWeight(createDkBuilder(1).build()), 1e-9);
+        assertEquals(0.5, ExposureRisk.getKeyWeight(createDkBuilder(1)
+                .setTransmissionRiskLevel(4).build()), 1e-9);
+        assertEquals(0.0, ExposureRisk.getKeyWeight(createDkBuilder(1)
+                .setReportType(DiagnosisKeysProtos.TemporaryExposureKey.ReportType.REVOKED).build()), 1e-9);
+        assertEquals(0.5, ExposureRisk.getKeyWeight(createDkBuilder(1)
+                .setReportType(DiagnosisKeysProtos.TemporaryExposureKey.ReportType.SELF_REPORT).build()), 1e-9);
+        assertEquals(1.0, ExposureRisk.getKeyWeight(createDkBuilder(1)
+                .setDaysSinceOnsetOfSymptoms(-2).build()), 1e-9);
+        assertEquals(0.6, ExposureRisk.getKeyWeight(createDkBuilder(1)
+                .setDaysSinceOnsetOfSymptoms(10).build()), 1e-9);
+        assertEquals(0.0, ExposureRisk.getKeyWeight(createDkBuilder(1)
+                .setDaysSinceOnsetOfSymptoms(-15).build()), 1e-9);
+    }
+
+    @Test
+    public void dailyExposureRisk_isAggregated() {
+        final int t = 1600000000;
+        final int day = 18518;
+        DiagnosisKeysProtos.TemporaryExposureKey dk1 = createDkBuilder(1).build();
+        DiagnosisKeysProtos.TemporaryExposureKey dk2 = createDkBuilder(2).build();
+        ContactRecordsProtos.ContactRecords contactRecords = createContactRecords(new int[][] {{t, 50}});
+
+        MatchEntryContent content = new MatchEntryContent();
+        content.matchEntries.add(new Matcher.MatchEntry(contactRecords, t, aemXorMask,
+                new ExposureRisk(contactRecords, aemXorMask, dk1)), dk1, day);
+        content.matchEntries.add(new Matcher.MatchEntry(contactRecords, t + 600, aemXorMask,
+                new ExposureRisk(contactRecords, aemXorMask, dk1)), dk1, day);
+        content.matchEntries.add(new Matcher.MatchEntry(contactRecords, t, aemXorMask,
+                new ExposureRisk(contactRecords, aemXorMask, dk2)), dk2, day);
+
+        MatchEntryContent.DailyMatchEntries dailyMatchEntries = content.matchEntries.getDailyMatchEntries(day);
+        assertEquals(15.0, dailyMatchEntries.getDailyExposureRisk().getWeightedExposureMinutes(), 1e-9);
+        assertEquals(10.0, dailyMatchEntries.getGroupedByDk(dk1).getGroupedByDkExposureRisk()
+                .getWeightedExposureMinutes(), 1e-9);
+
+        // assert that retracted matches no longer count
+        content.matchEntries.quarantine(Collections.singletonList(dk1));
+        assertEquals(5.0, dailyMatchEntries.getDailyExposureRisk().getWeightedExposureMinutes(), 1e-9);
+        assertEquals(300, dailyMatchEntries.getDailyExposureRisk().getSecondsInBucket(ExposureRisk.BUCKET_IMMEDIATE));
+    }
+}
@@ -0,0 +1,116 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryStore;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
+import static org.tosl.coronawarncompanion.tools.Utils.getMillisFromSeconds;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ */
+public class MatchEntryStoreUnitTest {
+
+    private static final int daysSinceEpoch = 18500;
+    private static final int timeZoneOffsetSeconds = 3600;
+
+    @Rule
+    public TemporaryFolder storeDir = new TemporaryFolder();
+
+    private static DiagnosisKeysProtos.TemporaryExposureKey createDk(int keyByte, int day) {
+        byte[] keyBytes = new byte[16];
+        Arrays.fill(keyBytes, (byte) keyByte);
+        return DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                .setKeyData(ByteString.copyFrom(keyBytes))
+                .setRollingStartIntervalNumber(getENINFromSeconds(day * 24 * 3600))
+                .setRollingPeriod(144)
+                .build();
+    }
+
+    private static Matcher.MatchEntry createMatchEntry(int timestamp) {
+        ContactRecordsProtos.ContactRecords contactRecords = ContactRecordsProtos.ContactRecords.newBuilder()
+                .addRecord(ContactRecordsProtos.ScanRecord.newBuilder()
+                        .setTimestamp(timestamp)
+                        .setRssi(-60)
+                        .setAem(ByteString.copyFrom(new byte[]{1, 2, 3, 4})))
+                .build();
+        return new Matcher.MatchEntry(contactRecords, timestamp, new byte[]{5, 6, 7, 8});
+    }
+
+    @Test
+    public void saveAndLoad_isCorrect() throws Exception {
+        MatchEntryStore store = new MatchEntryStore(storeDir.getRoot());
+        assertNull(store.load(timeZoneOffsetSeconds));
+
+        DiagnosisKeysProtos.TemporaryExposureKey dk1 = createDk(1, daysSinceEpoch);
+        DiagnosisKeysProtos.TemporaryExposureKey dk2 = createDk(2, daysSinceEpoch + 1);
+        DiagnosisKeysProtos.TemporaryExposureKey dk3 = createDk(3, daysSinceEpoch + 1);
+        MatchEntryContent content = new MatchEntryContent();
+        content.matchEntries.add(createMatchEntry(daysSinceEpoch * 24 * 3600 + 100), dk1, daysSinceEpoch);
+        content.matchEntries.add(createMatchEntry(daysSinceEpoch * 24 * 3600 + 700), dk1, daysSinceEpoch);
+        content.matchEntries.add(createMatchEntry((daysSinceEpoch + 1) * 24 * 3600 + 100), dk2, daysSinceEpoch + 1);
+        long snapshotTimeMillis = getMillisFromSeconds((daysSinceEpoch + 5) * 24 * 3600);
+        store.save("DE_1.zip", snapshotTimeMillis, timeZoneOffsetSeconds, Arrays.asList(dk1, dk2, dk3), content);
+
+        // the same key in a second package (e.g. another region) is only counted once
+        MatchEntryContent content2 = new MatchEntryContent();
+        content2.matchEntries.add(createMatchEntry(daysSinceEpoch * 24 * 3600 + 100), dk1, daysSinceEpoch);
+        store.save("EUR_1.zip", snapshotTimeMillis, timeZoneOffsetSeconds, Collections.singletonList(dk1), content2);
+
+        MatchEntryContent loaded = store.load(timeZoneOffsetSeconds);
+        assertNotNull(loaded);
+        assertEquals(3, loaded.matchEntries.getTotalRpiCount());
+        assertEquals(2, loaded.matchEntries.getTotalMatchingDkCount());
+        MatchEntryContent.DailyMatchEntries day1 = loaded.matchEntries.getDailyMatchEntries(daysSinceEpoch);
+        assertEquals(2, day1.getDailyRpiCount());
+        List<Matcher.MatchEntry> entries = day1.getGroupedByDk(dk1).getList();
+        assertEquals(2, entries.size());
+        assertEquals(daysSinceEpoch * 24 * 3600 + 100, entries.get(0).startTimestampUTC);
+        assertArrayEquals(new byte[]{5, 6, 7, 8}, entries.get(0).aemXorBytes);
+        assertEquals(-60, entries.get(0).contactRecords.getRecord(0).getRssi());
+        assertEquals(1, loaded.matchEntries.getDailyMatchEntries(daysSinceEpoch + 1).getDailyMatchingDkCount());
+
+        // matches of another time zone are not used
+        assertNull(store.load(0));
+
+        // packages that are no longer available are removed
+        store.retainOnly(Collections.singletonList("EUR_1.zip"));
+        loaded = store.load(timeZoneOffsetSeconds);
+        assertNotNull(loaded);
+        assertEquals(1, loaded.matchEntries.getTotalRpiCount());
+    }
+
+    @Test
+    public void needsMatching_isCorrect() throws Exception {
+        MatchEntryStore store = new MatchEntryStore(storeDir.getRoot());
+        assertTrue(store.needsMatching("DE_1.zip", timeZoneOffsetSeconds));
+
+        // keys valid until the end of daysSinceEpoch (+ 2 hours tolerance)
+        List<DiagnosisKeysProtos.TemporaryExposureKey> dks = Collections.singletonList(createDk(1, daysSinceEpoch));
+        long endOfValidityMillis = getMillisFromSeconds((daysSinceEpoch + 1) * 24 * 3600 + 2 * 3600);
+
+        // matched before the end of the validity: RPIs recorded later might still match
+        store.save("DE_1.zip", endOfValidityMillis - 1000, timeZoneOffsetSeconds, dks, new MatchEntryContent());
+        assertTrue(store.needsMatching("DE_1.zip", timeZoneOffsetSeconds));
+
+        // matched after the end of the validity: nothing can change anymore
+        store.save("DE_1.zip", endOfValidityMillis + 1000, timeZoneOffsetSeconds, dks, new MatchEntryContent());
+        assertFalse(store.needsMatching("DE_1.zip", timeZoneOffsetSeconds));
+
+        // ... unless the time zone has changed (the matches are stored per local day)
+        assertTrue(store.needsMatching("DE_1.zip", 0));
+    }
+}
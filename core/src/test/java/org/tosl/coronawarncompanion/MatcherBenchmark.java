@@ -0,0 +1,161 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.matcher.EnRpiBlockTable;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.matcher.MatcherMetrics;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.matcher.Crypto.deriveRpiKey;
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysSinceEpochFromENIN;
+import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
+
+/**
+ * Benchmark, which will execute on the development machine (host).
+ * Measures the matching hot path on synthetic data: HKDF per key, RPI generation per key,
+ * RpiList build and lookup, and findMatches with each strategy.
+ * The size is set with -Pbenchmark.keys (10k .. 1M), -Pbenchmark.rpis (10k .. 500k) and -Pbenchmark.matchRate
+ * (share of keys with a planted match), the results are appended to build/benchmark-results/benchmark-results.csv.
+ * Run with: ./gradlew :core:test -Pbenchmark --tests '*MatcherBenchmark' -Pbenchmark.keys=100000
+ * (or all benchmarks with: ./gradlew benchmark)
+ */
+public class MatcherBenchmark {
+
+    private static final long seed = 38;
+    private static final int lastDaysSinceEpoch = 18600;
+
+    private static int numKeys;
+    private static int numRpis;
+    private static int numRuns;
+    private static String parameters;
+    private static SyntheticMatchingData data;
+
+    @BeforeClass
+    public static void createData() {
+        numKeys = BenchmarkResults.getIntProperty("benchmark.keys", 10000);
+        numRpis = BenchmarkResults.getIntProperty("benchmark.rpis", 50000);
+        double matchRate = BenchmarkResults.getDoubleProperty("benchmark.matchRate", 0.001);
+        numRuns = BenchmarkResults.getIntProperty("benchmark.runs", 3);
+        parameters = String.format(Locale.ROOT, "keys=%d rpis=%d matchRate=%s", numKeys, numRpis, matchRate);
+        long start = System.nanoTime();
+        data = SyntheticMatchingData.create(seed, numKeys, numRpis, matchRate, lastDaysSinceEpoch);
+        System.out.printf("created %s in %d ms%n", parameters, (System.nanoTime() - start) / 1000000);
+    }
+
+    // the last run is recorded, the ones before are the warm-up
+    private static boolean isLastRun(int run) {
+        return run == numRuns - 1;
+    }
+
+    @Test
+    public void benchmarkKeyDerivation() {
+        List<DiagnosisKeysProtos.TemporaryExposureKey> dks = data.diagnosisKeys;
+        for (int run = 0; run < numRuns; run++) {
+            long start = System.nanoTime();
+            int sum = 0;
+            for (DiagnosisKeysProtos.TemporaryExposureKey dk : dks) {
+                sum += deriveRpiKey(dk.getKeyData().toByteArray())[0];
+            }
+            double nanosPerKey = (double) (System.nanoTime() - start) / dks.size();
+            if (isLastRun(run)) {
+                BenchmarkResults.record("hkdf", parameters + " (" + sum + ")", nanosPerKey, "ns/key");
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkRpiGeneration() {
+        List<DiagnosisKeysProtos.TemporaryExposureKey> dks = data.diagnosisKeys;
+        byte[][] rpiKeys = new byte[dks.size()][];
+        for (int i = 0; i < rpiKeys.length; i++) {
+            rpiKeys[i] = deriveRpiKey(dks.get(i).getKeyData().toByteArray());
+        }
+        Crypto crypto = new Crypto();
+        crypto.setBlockTable(EnRpiBlockTable.forDiagnosisKeys(dks));
+        for (int run = 0; run < numRuns; run++) {
+            long start = System.nanoTime();
+            int sum = 0;
+            for (int i = 0; i < rpiKeys.length; i++) {
+                DiagnosisKeysProtos.TemporaryExposureKey dk = dks.get(i);
+                sum += crypto.createListOfRpisForIntervalRange(rpiKeys[i], dk.getRollingStartIntervalNumber(),
+                        dk.getRollingPeriod()).get(0).rpiBytes[0];
+            }
+            double nanosPerKey = (double) (System.nanoTime() - start) / dks.size();
+            if (isLastRun(run)) {
+                BenchmarkResults.record("rpiGeneration", parameters + " (" + sum + ")", nanosPerKey, "ns/key");
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkRpiList() {
+        // probes: local RPIs (hits), and as many random ones (misses)
+        Random random = new Random(seed);
+        List<Crypto.RpiWithInterval> probes = new ArrayList<>();
+        List<Integer> probeDays = new ArrayList<>();
+        for (int i = 0; i < Math.max(data.numPlantedMatches, 1000); i++) {
+            SyntheticMatchingData.LocalRpi localRpi = data.localRpis.get(i % data.localRpis.size());
+            int intervalNumber = getENINFromSeconds(localRpi.contactRecords.getRecord(0).getTimestamp());
+            probes.add(new Crypto.RpiWithInterval(localRpi.rpiBytes, intervalNumber));
+            probeDays.add(getDaysSinceEpochFromENIN(intervalNumber));
+            byte[] missBytes = new byte[16];
+            random.nextBytes(missBytes);
+            probes.add(new Crypto.RpiWithInterval(missBytes, intervalNumber));
+            probeDays.add(getDaysSinceEpochFromENIN(intervalNumber));
+        }
+        for (int run = 0; run < numRuns; run++) {
+            long start = System.nanoTime();
+            RpiList rpiList = data.createRpiList();
+            double nanosPerRpi = (double) (System.nanoTime() - start) / numRpis;
+
+            start = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < probes.size(); i++) {
+                if (rpiList.searchForRpiOnDaySinceEpochUTCWith2HoursTolerance(probes.get(i), probeDays.get(i)) != null) {
+                    hits++;
+                }
+            }
+            double nanosPerLookup = (double) (System.nanoTime() - start) / probes.size();
+            if (isLastRun(run)) {
+                BenchmarkResults.record("rpiListBuild", parameters, nanosPerRpi, "ns/rpi");
+                BenchmarkResults.record("rpiListLookup", parameters + " (" + hits + " hits)", nanosPerLookup, "ns/lookup");
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkFindMatches() {
+        RpiList rpiList = data.createRpiList();
+        for (Matcher.Strategy strategy : Matcher.Strategy.values()) {
+            if (Matcher.chooseStrategy(strategy, (long) numKeys * 144, rpiList.getRpiCount()) == Matcher.Strategy.INDEX_DK_RPIS &&
+                    (long) numKeys * 144 > 8000000) {
+                System.out.println("skipped " + strategy + ": DK RPI index too large");
+                continue;
+            }
+            for (int run = 0; run < numRuns; run++) {
+                MatchEntryContent matchEntryContent = new MatchEntryContent();
+                Matcher matcher = new Matcher(rpiList, data.diagnosisKeys, matchEntryContent, 0);
+                matcher.setStrategy(strategy);
+                assertTrue(matcher.findMatches(null, () -> false));
+                MatcherMetrics metrics = matcher.getMetrics();
+                assertEquals(data.numPlantedMatches, metrics.numMatchingRpis);
+                if (isLastRun(run)) {
+                    String runParameters = parameters + " " + strategy + "->" + metrics.strategy;
+                    BenchmarkResults.record("findMatches", runParameters, metrics.getDiagnosisKeysPerSecond(), "keys/s");
+                    BenchmarkResults.record("findMatchesWall", runParameters, metrics.wallNanos / 1e6, "ms");
+                    System.out.println(metrics);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.matcher.MatcherMetrics;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.matcher.Crypto.deriveRpiKey;
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromSeconds;
+import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ */
+public class MatcherUnitTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private static final int daysSinceEpoch = 18500;
+    private static final int numDays = 5;
+
+    private static ContactRecordsProtos.ContactRecords createContactRecords(Random random, int startTimestamp) {
+        ContactRecordsProtos.ContactRecords.Builder builder = ContactRecordsProtos.ContactRecords.newBuilder();
+        int numScans = 1 + random.nextInt(5);
+        for (int i = 0; i < numScans; i++) {
+            byte[] aem = new byte[4];
+            random.nextBytes(aem);
+            builder.addRecord(ContactRecordsProtos.ScanRecord.newBuilder()
+                    .setTimestamp(startTimestamp + 120 * i)
+                    .setRssi(-50 - random.nextInt(40))
+                    .setAem(ByteString.copyFrom(aem)));
+        }
+        return builder.build();
+    }
+
+    /*
+     Random keys, some of their RPIs scanned around their interval (some of them more than 2 hours off,
+     some of them around midnight, and also stored for the next day), and random RPIs that do not match.
+     */
+    private static void createTestData(Random random, int numDks, int numNoiseRpis,
+                                       ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks, RpiList rpiList) {
+        Crypto crypto = new Crypto();
+        for (int i = 0; i < numDks; i++) {
+            byte[] keyBytes = new byte[16];
+            random.nextBytes(keyBytes);
+            DiagnosisKeysProtos.TemporaryExposureKey dk = DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                    .setKeyData(ByteString.copyFrom(keyBytes))
+                    .setRollingStartIntervalNumber(getENINFromSeconds((daysSinceEpoch + random.nextInt(numDays)) * 24 * 3600))
+                    .setRollingPeriod(144)
+                    .build();
+            dks.add(dk);
+            List<Crypto.RpiWithInterval> rpis = crypto.createListOfRpisForIntervalRange(deriveRpiKey(keyBytes),
+                    dk.getRollingStartIntervalNumber(), dk.getRollingPeriod());
+            for (int j = 0; j < 10; j++) {
+                Crypto.RpiWithInterval rpi = rpis.get(random.nextInt(rpis.size()));
+                int startTimestamp = rpi.intervalNumber * 600 + random.nextInt(6 * 3600) - 3 * 3600;
+                ContactRecordsProtos.ContactRecords contactRecords = createContactRecords(random, startTimestamp);
+                int daysSinceEpochUTC = getDaysFromSeconds(startTimestamp);
+                rpiList.addEntry(daysSinceEpochUTC, rpi.rpiBytes, contactRecords);
+                if (random.nextBoolean()) {
+                    rpiList.addEntry(daysSinceEpochUTC + 1, rpi.rpiBytes, contactRecords);
+                }
+            }
+        }
+        if (numDks > 0) {
+            // the same key published in two regions
+            dks.add(dks.get(0));
+        }
+        for (int i = 0; i < numNoiseRpis; i++) {
+            byte[] rpiBytes = new byte[16];
+            random.nextBytes(rpiBytes);
+            int startTimestamp = (daysSinceEpoch + random.nextInt(numDays)) * 24 * 3600 + random.nextInt(24 * 3600);
+            rpiList.addEntry(getDaysFromSeconds(startTimestamp), rpiBytes, createContactRecords(random, startTimestamp));
+        }
+    }
+
+    private static MatchEntryContent findMatches(RpiList rpiList, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks,
+                                                 Matcher.Strategy strategy, Matcher.Strategy expectedStrategy) {
+        MatchEntryContent matchEntryContent = new MatchEntryContent();
+        Matcher matcher = new Matcher(rpiList, dks, matchEntryContent, 0);
+        matcher.setStrategy(strategy);
+        assertTrue(matcher.findMatches(null, () -> false));
+        assertEquals(expectedStrategy, matcher.getMetrics().strategy);
+        assertEquals(matchEntryContent.matchEntries.getTotalRpiCount(), matcher.getMetrics().numMatchingRpis);
+        return matchEntryContent;
+    }
+
+    private static void assertSameMatches(MatchEntryContent expected, MatchEntryContent actual) {
+        assertSameMatches(expected, actual, true);
+    }
+
+    /*
+     sameInstances: false if the scan records have been read back from disk, and so are equal copies
+     */
+    private static void assertSameMatches(MatchEntryContent expected, MatchEntryContent actual, boolean sameInstances) {
+        assertEquals(expected.matchEntries.getTotalRpiCount(), actual.matchEntries.getTotalRpiCount());
+        assertEquals(expected.matchEntries.getTotalMatchingDkCount(), actual.matchEntries.getTotalMatchingDkCount());
+        assertEquals(expected.matchEntries.getAvailableDaysSinceEpochLocalTZ(), actual.matchEntries.getAvailableDaysSinceEpochLocalTZ());
+        for (Integer day : expected.matchEntries.getAvailableDaysSinceEpochLocalTZ()) {
+            MatchEntryContent.DailyMatchEntries expectedDailyMatchEntries = expected.matchEntries.getDailyMatchEntries(day);
+            MatchEntryContent.DailyMatchEntries actualDailyMatchEntries = actual.matchEntries.getDailyMatchEntries(day);
+            assertEquals(expectedDailyMatchEntries.getDailyMatchingDkCount(), actualDailyMatchEntries.getDailyMatchingDkCount());
+            for (MatchEntryContent.GroupedByDkMatchEntries expectedGroupedByDk : expectedDailyMatchEntries.getGroupedByDkList()) {
+                MatchEntryContent.GroupedByDkMatchEntries actualGroupedByDk =
+                        actualDailyMatchEntries.getGroupedByDk(expectedGroupedByDk.getDk());
+                assertNotNull(actualGroupedByDk);
+                List<Matcher.MatchEntry> expectedList = expectedGroupedByDk.getList();
+                List<Matcher.MatchEntry> actualList = actualGroupedByDk.getList();
+                assertEquals(expectedList.size(), actualList.size());
+                // also in the same order, because the first entry of a list stands for the whole list
+                for (int i = 0; i < expectedList.size(); i++) {
+                    if (sameInstances) {
+                        assertSame(expectedList.get(i).contactRecords, actualList.get(i).contactRecords);
+                    } else {
+                        assertEquals(expectedList.get(i).contactRecords, actualList.get(i).contactRecords);
+                    }
+                    assertEquals(expectedList.get(i).startTimestampUTC, actualList.get(i).startTimestampUTC);
+                    assertEquals(expectedList.get(i).aemXorMask, actualList.get(i).aemXorMask);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findMatches_strategies_findTheSameMatches() {
+        Random random = new Random(36);
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = new ArrayList<>();
+        RpiList rpiList = new RpiList(0);
+        createTestData(random, 30, 1000, dks, rpiList);
+
+        MatchEntryContent indexingLocalRpis = findMatches(rpiList, dks,
+                Matcher.Strategy.INDEX_LOCAL_RPIS, Matcher.Strategy.INDEX_LOCAL_RPIS);
+        MatchEntryContent indexingDkRpis = findMatches(rpiList, dks,
+                Matcher.Strategy.INDEX_DK_RPIS, Matcher.Strategy.INDEX_DK_RPIS);
+        assertTrue(indexingLocalRpis.matchEntries.getTotalRpiCount() > 0);
+        assertSameMatches(indexingLocalRpis, indexingDkRpis);
+    }
+
+    @Test
+    public void findMatches_spilledRpiList_findsTheSameMatches() throws Exception {
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = new ArrayList<>();
+        RpiList rpiList = new RpiList(0);
+        createTestData(new Random(42), 30, 1000, dks, rpiList);
+        RpiList spilledRpiList = new RpiList(0, tempDir.getRoot());
+        createTestData(new Random(42), 30, 1000, new ArrayList<>(), spilledRpiList);
+        assertTrue(spilledRpiList.isSpilled());
+        assertTrue(spilledRpiList.getListsPerDaysSinceEpochUTC().isEmpty());
+        assertEquals(rpiList.getAvailableDaysSinceEpochLocalTZ(), spilledRpiList.getAvailableDaysSinceEpochLocalTZ());
+
+        for (Matcher.Strategy strategy : new Matcher.Strategy[]{Matcher.Strategy.INDEX_LOCAL_RPIS, Matcher.Strategy.INDEX_DK_RPIS}) {
+            MatchEntryContent inMemory = findMatches(rpiList, dks, strategy, strategy);
+            MatchEntryContent matchEntryContent = new MatchEntryContent();
+            Matcher matcher = new Matcher(spilledRpiList, dks, matchEntryContent, 0);
+            matcher.setStrategy(strategy);
+            assertTrue(matcher.findMatches(null, () -> false));
+            assertTrue(inMemory.matchEntries.getTotalRpiCount() > 0);
+            assertSameMatches(inMemory, matchEntryContent, false);
+
+            // one partition per day of the keys, each smaller than the whole list
+            assertEquals(numDays, matcher.getMetrics().numPartitions);
+            assertTrue(matcher.getMetrics().maxPartitionEntries < spilledRpiList.getRpiCount());
+        }
+
+        spilledRpiList.deleteSpillFiles();
+        File[] files = tempDir.getRoot().listFiles();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    @Test
+    public void findMatches_parallelWorkers_aggregateTheSameCounts() throws Exception {
+        Random random = new Random(39);
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = new ArrayList<>();
+        RpiList rpiList = new RpiList(0);
+        createTestData(random, 40, 1000, dks, rpiList);
+        for (Matcher.Strategy strategy : new Matcher.Strategy[]{Matcher.Strategy.INDEX_LOCAL_RPIS, Matcher.Strategy.INDEX_DK_RPIS}) {
+            MatchEntryContent sequential = findMatches(rpiList, dks, strategy, strategy);
+
+            // four workers with a part of the keys each, aggregating into the same MatchEntryContent
+            MatchEntryContent parallel = new MatchEntryContent();
+            Matcher matcher = new Matcher(rpiList, dks, parallel, 0);
+            matcher.setStrategy(strategy);
+            matcher.setNumWorkers(4);
+            AtomicInteger lastPercent = new AtomicInteger(0);
+            AtomicBoolean progressDecreased = new AtomicBoolean(false);
+            Thread thread = new Thread(() -> matcher.findMatches((percent, numMatches) -> {
+                if (percent < lastPercent.getAndSet(percent)) {
+                    progressDecreased.set(true);
+                }
+            }, () -> false));
+            thread.start();
+            // meanwhile, the snapshots only ever grow
+            SortedMap<Integer, MatchEntryContent.DailyCounts> previous = parallel.matchEntries.getDailyCounts();
+            boolean running = true;
+            while (running) {
+                running = thread.isAlive();
+                SortedMap<Integer, MatchEntryContent.DailyCounts> snapshot = parallel.matchEntries.getDailyCounts();
+                for (Map.Entry<Integer, MatchEntryContent.DailyCounts> day : previous.entrySet()) {
+                    MatchEntryContent.DailyCounts dailyCounts = snapshot.get(day.getKey());
+                    assertNotNull(dailyCounts);
+                    assertTrue(dailyCounts.dailyRpiCount >= day.getValue().dailyRpiCount);
+                    assertTrue(dailyCounts.dailyMatchingDkCount >= day.getValue().dailyMatchingDkCount);
+                }
+                previous = snapshot;
+            }
+            thread.join();
+            assertFalse(progressDecreased.get());
+            assertEquals(100, lastPercent.get());
+
+            MatcherMetrics metrics = matcher.getMetrics();
+            assertTrue(metrics.finished);
+            assertEquals(4, metrics.workers.size());
+            int numWorkerDiagnosisKeys = 0;
+            for (MatcherMetrics.Worker worker : metrics.workers) {
+                assertTrue(worker.numDiagnosisKeys > 0);
+                numWorkerDiagnosisKeys += worker.numDiagnosisKeys;
+            }
+            assertEquals(dks.size(), numWorkerDiagnosisKeys);
+            assertEquals(sequential.matchEntries.getTotalRpiCount(), metrics.numMatchingRpis);
+
+            assertTrue(sequential.matchEntries.getTotalRpiCount() > 0);
+            assertSameMatches(sequential, parallel);
+            SortedMap<Integer, MatchEntryContent.DailyCounts> expected = sequential.matchEntries.getDailyCounts();
+            SortedMap<Integer, MatchEntryContent.DailyCounts> actual = parallel.matchEntries.getDailyCounts();
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Integer day : expected.keySet()) {
+                assertEquals(expected.get(day).dailyRpiCount, actual.get(day).dailyRpiCount);
+                assertEquals(expected.get(day).dailyMatchingDkCount, actual.get(day).dailyMatchingDkCount);
+                assertEquals(expected.get(day).dailyExposureRisk.getWeightedExposureMinutes(),
+                        actual.get(day).dailyExposureRisk.getWeightedExposureMinutes(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void findMatches_indexingDkRpis_mergesMatchesDuringTheRun() {
+        Random random = new Random(40);
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = new ArrayList<>();
+        RpiList rpiList = new RpiList(0);
+        createTestData(random, 30, 1000, dks, rpiList);
+        MatchEntryContent expected = findMatches(rpiList, dks,
+                Matcher.Strategy.INDEX_LOCAL_RPIS, Matcher.Strategy.INDEX_LOCAL_RPIS);
+
+        MatchEntryContent matchEntryContent = new MatchEntryContent();
+        Matcher matcher = new Matcher(rpiList, dks, matchEntryContent, 0);
+        matcher.setStrategy(Matcher.Strategy.INDEX_DK_RPIS);
+        AtomicInteger numMatchesBeforeTheEnd = new AtomicInteger(0);
+        assertTrue(matcher.findMatches((percent, numMatches) -> {
+            // the reported number is the one that has been merged already
+            assertEquals(matchEntryContent.matchEntries.getTotalMatchingDkCount(), numMatches);
+            if (percent < 100) {
+                numMatchesBeforeTheEnd.set(numMatches);
+            }
+        }, () -> false));
+        // the keys of the earlier days have been merged while the later days were still being streamed
+        assertTrue(numMatchesBeforeTheEnd.get() > 0);
+        assertSameMatches(expected, matchEntryContent);
+    }
+
+    @Test
+    public void findMatches_auto_choosesByCardinality() {
+        Random random = new Random(37);
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = new ArrayList<>();
+        RpiList rpiList = new RpiList(0);
+        createTestData(random, 5, 100, dks, rpiList);
+        // 6 keys x 144 generated RPIs > 100+ local RPIs
+        findMatches(rpiList, dks, Matcher.Strategy.AUTO, Matcher.Strategy.INDEX_LOCAL_RPIS);
+
+        createTestData(random, 0, 1000, new ArrayList<>(), rpiList);
+        findMatches(rpiList, dks, Matcher.Strategy.AUTO, Matcher.Strategy.INDEX_DK_RPIS);
+    }
+
+    @Test
+    public void findMatches_metrics_areRecorded() {
+        Random random = new Random(38);
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks = new ArrayList<>();
+        RpiList rpiList = new RpiList(0);
+        createTestData(random, 10, 2000, dks, rpiList);
+
+        for (Matcher.Strategy strategy : new Matcher.Strategy[]{Matcher.Strategy.INDEX_LOCAL_RPIS, Matcher.Strategy.INDEX_DK_RPIS}) {
+            MatchEntryContent matchEntryContent = new MatchEntryContent();
+            Matcher matcher = new Matcher(rpiList, dks, matchEntryContent, 0);
+            matcher.setStrategy(strategy);
+            assertTrue(matcher.findMatches(null, () -> false));
+            MatcherMetrics metrics = matcher.getMetrics();
+
+            assertTrue(metrics.finished);
+            assertEquals(11, metrics.numDiagnosisKeys);
+            assertEquals(11 * 144, metrics.numGeneratedRpis);
+            assertEquals(rpiList.getRpiCount(), metrics.numLocalRpis);
+            if (strategy == Matcher.Strategy.INDEX_LOCAL_RPIS) {
+                // each generated RPI is searched for once
+                assertEquals(metrics.numGeneratedRpis, metrics.numLookups);
+            } else {
+                // each local RPI is streamed through the index at least once (more often if in an early / late list)
+                assertTrue(metrics.numLookups >= metrics.numLocalRpis);
+                assertTrue(metrics.numIndexHits >= metrics.numMatchingRpis);
+            }
+            assertEquals(matchEntryContent.matchEntries.getTotalRpiCount(), metrics.numMatchingRpis);
+
+            // the phases are measured separately, within the wall time of the single worker
+            assertTrue(metrics.hkdfNanos > 0);
+            assertTrue(metrics.aesNanos > 0);
+            assertTrue(metrics.lookupNanos > 0);
+            assertTrue(metrics.aggregationNanos > 0);
+            assertEquals(1, metrics.workers.size());
+            MatcherMetrics.Worker worker = metrics.workers.get(0);
+            assertEquals(11, worker.numDiagnosisKeys);
+            assertTrue(worker.busyNanos <= metrics.wallNanos);
+            assertTrue(metrics.getGeneratedRpisPerSecond() > metrics.getDiagnosisKeysPerSecond());
+
+            metrics.device = "Test \"Device\"";
+            String json = metrics.toJson();
+            assertTrue(json.contains("\"device\": \"Test \\\"Device\\\"\""));
+            assertTrue(json.contains("\"strategy\": \"" + strategy.name() + "\""));
+            assertTrue(json.contains("\"generatedRpis\": " + (11 * 144) + ","));
+            assertTrue(json.contains("\"workers\": [\n    {\"name\": "));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tosl.coronawarncompanion.gmsreadout.ShellSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks the shell session with a plain "sh" standing in for "su".
+ */
+public class ShellSessionUnitTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private ShellSession shellSession;
+
+    @Before
+    public void setUp() throws IOException {
+        shellSession = new ShellSession("sh");
+    }
+
+    @After
+    public void tearDown() {
+        shellSession.close();
+    }
+
+    @Test
+    public void run_severalCommands_sameShell() throws IOException {
+        String pid = shellSession.run("echo $$", TIMEOUT_MILLIS).output;
+        assertTrue(pid.matches("\\d+\n"));
+        shellSession.run("cd /; FOO=bar", TIMEOUT_MILLIS);
+        assertEquals(pid, shellSession.run("echo $$", TIMEOUT_MILLIS).output);
+        assertEquals("/ bar\n", shellSession.run("echo $(pwd) $FOO", TIMEOUT_MILLIS).output);
+        // reads from /dev/null instead of the following commands
+        assertEquals("", shellSession.run("cat", TIMEOUT_MILLIS).output);
+        assertEquals(pid, shellSession.run("echo $$", TIMEOUT_MILLIS).output);
+    }
+
+    @Test
+    public void run_exitStatusAndOutputWithoutNewline() throws IOException {
+        ShellSession.Result result = shellSession.run("printf abc; false", TIMEOUT_MILLIS);
+        assertEquals(1, result.exitStatus);
+        assertEquals("abc", result.output);
+        result = shellSession.run("printf 'abc\\n\\n'; (exit 42)", TIMEOUT_MILLIS);
+        assertEquals(42, result.exitStatus);
+        assertEquals("abc\n\n", result.output);
+        assertEquals(0, shellSession.run("true", TIMEOUT_MILLIS).exitStatus);
+    }
+
+    @Test
+    public void run_binaryOutput_isStreamedUnchanged() throws IOException {
+        // every byte value, with newlines at the ends of the reads, larger than all read buffers together
+        byte[] expected = new byte[5 * ShellSession.BUFFER_SIZE + 3];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) ((i % 7 == 0) ? '\n' : i);
+        }
+        File file = File.createTempFile("ShellSessionUnitTest", ".bin");
+        try {
+            try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+                fileOutputStream.write(expected);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertEquals(0, shellSession.run("cat '" + file.getPath() + "'", output, TIMEOUT_MILLIS));
+            assertArrayEquals(expected, output.toByteArray());
+            assertEquals("next\n", shellSession.run("echo next", TIMEOUT_MILLIS).output);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void run_outputIsStreamedWhileRunning() throws IOException {
+        long[] firstOutputNanos = new long[1];
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (len > 0 && firstOutputNanos[0] == 0) {
+                    firstOutputNanos[0] = System.nanoTime();
+                }
+            }
+        };
+        long startNanos = System.nanoTime();
+        shellSession.run("echo first; sleep 1; echo second", output, TIMEOUT_MILLIS);
+        long endNanos = System.nanoTime();
+        assertTrue(firstOutputNanos[0] != 0);
+        assertTrue(endNanos - firstOutputNanos[0] > 500 * 1000 * 1000L);
+        assertTrue(firstOutputNanos[0] - startNanos < 500 * 1000 * 1000L);
+    }
+
+    @Test
+    public void run_timeout_closesSession() throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            shellSession.run("sleep 10", 200);
+            fail();
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - startNanos < 5000 * 1000 * 1000L);
+        assertFalse(shellSession.isOpen());
+        try {
+            shellSession.run("true", TIMEOUT_MILLIS);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void run_noTimeout_waitsForMultiLineScript() throws IOException {
+        // the commands of the script run one after the other, also after one has failed
+        ShellSession.Result result = shellSession.run("echo first\nfalse\nsleep 1\necho $?; echo last\n",
+                ShellSession.NO_TIMEOUT);
+        assertEquals(0, result.exitStatus);
+        assertEquals("first\n0\nlast\n", result.output);
+        assertTrue(shellSession.isOpen());
+    }
+
+    @Test
+    public void run_shellExits_closesSession() {
+        try {
+            shellSession.run("exit 3", TIMEOUT_MILLIS);
+            fail();
+        } catch (InterruptedIOException e) {
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(shellSession.isOpen());
+    }
+}
@@ -0,0 +1,117 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.diagnosiskeys.SignatureVerifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ */
+public class SignatureVerifierUnitTest {
+
+    private static byte[] createExportDotSig(byte[] exportDotBin, KeyPair keyPair) throws Exception {
+        Signature signature = Signature.getInstance("SHA256withECDSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(exportDotBin);
+        return DiagnosisKeysProtos.TEKSignatureList.newBuilder()
+                .addSignatures(DiagnosisKeysProtos.TEKSignature.newBuilder()
+                        .setSignatureInfo(DiagnosisKeysProtos.SignatureInfo.newBuilder()
+                                .setSignatureAlgorithm(SignatureVerifier.SIGNATURE_ALGORITHM_OID))
+                        .setBatchNum(1)
+                        .setBatchSize(1)
+                        .setSignature(ByteString.copyFrom(signature.sign())))
+                .build().toByteArray();
+    }
+
+    @Test
+    public void verify_isCorrect() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        KeyPair otherKeyPair = keyPairGenerator.generateKeyPair();
+
+        byte[] exportDotBin = "EK Export v1    some keys".getBytes(StandardCharsets.UTF_8);
+        byte[] exportDotSig = createExportDotSig(exportDotBin, keyPair);
+
+        SignatureVerifier verifier = new SignatureVerifier(keyPair.getPublic().getEncoded(), 1);
+
+        // assert that a correctly signed file is accepted
+        assertTrue(verifier.verify(exportDotBin, exportDotSig));
+
+        // assert that a modified file is rejected
+        byte[] modifiedExportDotBin = exportDotBin.clone();
+        modifiedExportDotBin[modifiedExportDotBin.length - 1] ^= 1;
+        assertFalse(verifier.verify(modifiedExportDotBin, exportDotSig));
+
+        // assert that a file signed with another key is rejected
+        assertFalse(verifier.verify(exportDotBin, createExportDotSig(exportDotBin, otherKeyPair)));
+
+        // assert that a missing or broken signature file is rejected
+        assertFalse(verifier.verify(exportDotBin, null));
+        assertFalse(verifier.verify(exportDotBin, new byte[] {1, 2, 3}));
+
+        verifier.shutdown();
+    }
+
+    private static void writeZipFile(File zipFile, byte[] exportDotBin, byte[] exportDotSig) throws Exception {
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            zipOutputStream.putNextEntry(new ZipEntry("export.bin"));
+            zipOutputStream.write(exportDotBin);
+            zipOutputStream.closeEntry();
+            zipOutputStream.putNextEntry(new ZipEntry("export.sig"));
+            zipOutputStream.write(exportDotSig);
+            zipOutputStream.closeEntry();
+        }
+    }
+
+    @Test
+    public void verify_zipFile_isCorrectForAllSizes() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        SignatureVerifier verifier = new SignatureVerifier(keyPair.getPublic().getEncoded(), 1);
+        Random random = new Random(1);
+
+        File zipFile = File.createTempFile("SignatureVerifierUnitTest", ".zip");
+        try {
+            // export.bin is streamed through the verification in chunks of 16 KB
+            int[] sizes = {1024, 16 * 1024, 40 * 1024, 100 * 1024 + 7};
+            for (int size : sizes) {
+                byte[] exportDotBin = new byte[size];
+                // compressible, so that the unzipped reads fill the whole buffer
+                for (int i = 0; i < size; i++) {
+                    exportDotBin[i] = (byte) ((i % 4096 == 0) ? random.nextInt() : i % 64);
+                }
+                byte[] exportDotSig = createExportDotSig(exportDotBin, keyPair);
+
+                // assert that a correctly signed file is accepted
+                writeZipFile(zipFile, exportDotBin, exportDotSig);
+                assertTrue("size " + size, verifier.verify(zipFile));
+
+                // assert that a file modified in its last chunk is rejected
+                exportDotBin[size - 1] ^= 1;
+                writeZipFile(zipFile, exportDotBin, exportDotSig);
+                assertFalse("size " + size, verifier.verify(zipFile));
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            zipFile.delete();
+        }
+        verifier.shutdown();
+    }
+}
@@ -0,0 +1,134 @@
+package org.tosl.coronawarncompanion;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tosl.coronawarncompanion.dkdownload.StreamingHttpClient;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * A local HTTP server sends large responses.
+ */
+public class StreamingHttpClientUnitTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    // "/<n>" sends n MB of a counting pattern, anything else is not found
+    private void handle(HttpExchange exchange) throws IOException {
+        int numMegabytes;
+        try {
+            numMegabytes = Integer.parseInt(exchange.getRequestURI().getPath().substring(1));
+        } catch (NumberFormatException e) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, (long) numMegabytes * MB);
+        byte[] chunk = new byte[MB];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) i;
+        }
+        try (OutputStream os = exchange.getResponseBody()) {
+            for (int i = 0; i < numMegabytes; i++) {
+                os.write(chunk);
+            }
+        }
+        exchange.close();
+    }
+
+    private static long getCurrentThreadAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private long downloadAndGetAllocatedBytes(int numMegabytes) throws IOException {
+        File file = new File(tempFolder.getRoot(), numMegabytes + ".zip");
+        long allocatedBefore = getCurrentThreadAllocatedBytes();
+        long numBytes = StreamingHttpClient.getToFile(new URL(baseUrl + "/" + numMegabytes), file);
+        long allocated = getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        // assert that the complete body has been written to the file
+        assertEquals((long) numMegabytes * MB, numBytes);
+        assertEquals((long) numMegabytes * MB, file.length());
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[StreamingHttpClient.BUFFER_SIZE];
+            long position = 0;
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                for (int i = 0; i < bytesRead; i++, position++) {
+                    if (buffer[i] != (byte) (position % MB)) {
+                        fail("Unexpected content at position " + position);
+                    }
+                }
+            }
+        }
+        return allocated;
+    }
+
+    @Test
+    public void getToFile_largeResponse_usesBoundedMemory() throws IOException {
+        downloadAndGetAllocatedBytes(1);  // warm up (class loading, connection setup)
+        long allocated16 = downloadAndGetAllocatedBytes(16);
+        long allocated64 = downloadAndGetAllocatedBytes(64);
+
+        // assert that the body has not been buffered in memory, not even in parts
+        assertTrue("allocated " + allocated16 + " bytes for 16 MB", allocated16 < 2 * MB);
+        assertTrue("allocated " + allocated64 + " bytes for 64 MB", allocated64 < 2 * MB);
+    }
+
+    @Test
+    public void getToFile_notFound_leavesNoFile() {
+        File file = new File(tempFolder.getRoot(), "missing.zip");
+        try {
+            StreamingHttpClient.getToFile(new URL(baseUrl + "/missing"), file);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertFalse(file.exists());
+            // assert that the temporary part file has been removed as well
+            assertArrayEquals(new String[0], tempFolder.getRoot().list());
+        }
+    }
+
+    @Test
+    public void get_smallResponse_isCorrect() throws IOException {
+        byte[] content = StreamingHttpClient.get(new URL(baseUrl + "/1"));
+        assertEquals(MB, content.length);
+        assertEquals((byte) 12345, content[12345]);
+    }
+}
@@ -0,0 +1,314 @@
+package org.tosl.coronawarncompanion;
+
+import com.google.protobuf.ByteString;
+
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.diagnosiskeys.SignatureVerifier;
+import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.matcher.Crypto;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.tosl.coronawarncompanion.matcher.Crypto.deriveRpiKey;
+import static org.tosl.coronawarncompanion.tools.Utils.byteArrayToHexString;
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromSeconds;
+import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
+import static org.tosl.coronawarncompanion.tools.Utils.standardRollingPeriod;
+
+/**
+ * Deterministic (seeded) Diagnosis Keys and local RPIs for benchmarks and tests at realistic scale.
+ * The keys are spread over the 14 days before lastDaysSinceEpoch, the local RPIs as well.
+ * For a share of the keys (matchRate), one local RPI is planted that matches one of the key's intervals,
+ * the other local RPIs are random.
+ * The data can be written in the formats of the app's readers: a GMS contact record LevelDB, a RaMBLE SQLite
+ * database, and zipped export.bin / export.sig files. Run main() to write all of them into a directory.
+ */
+class SyntheticMatchingData {
+
+    static class LocalRpi {
+        final int daysSinceEpochUTC;
+        final byte[] rpiBytes;
+        final ContactRecordsProtos.ContactRecords contactRecords;
+
+        LocalRpi(int daysSinceEpochUTC, byte[] rpiBytes, ContactRecordsProtos.ContactRecords contactRecords) {
+            this.daysSinceEpochUTC = daysSinceEpochUTC;
+            this.rpiBytes = rpiBytes;
+            this.contactRecords = contactRecords;
+        }
+    }
+
+    static final int numDays = 14;
+
+    final ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys;
+    final List<LocalRpi> localRpis;
+    final int numPlantedMatches;
+
+    private SyntheticMatchingData(ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys,
+                                  List<LocalRpi> localRpis, int numPlantedMatches) {
+        this.diagnosisKeys = diagnosisKeys;
+        this.localRpis = localRpis;
+        this.numPlantedMatches = numPlantedMatches;
+    }
+
+    // 1..4 scans within the interval, all with the same AEM
+    private static ContactRecordsProtos.ContactRecords createContactRecords(Random random, int startTimestamp) {
+        byte[] aem = new byte[4];
+        random.nextBytes(aem);
+        ContactRecordsProtos.ContactRecords.Builder builder = ContactRecordsProtos.ContactRecords.newBuilder();
+        int numScans = 1 + random.nextInt(4);
+        for (int i = 0; i < numScans; i++) {
+            builder.addRecord(ContactRecordsProtos.ScanRecord.newBuilder()
+                    .setTimestamp(startTimestamp + 150 * i)
+                    .setRssi(-50 - random.nextInt(40))
+                    .setAem(ByteString.copyFrom(aem)));
+        }
+        return builder.build();
+    }
+
+    static SyntheticMatchingData create(long seed, int numKeys, int numLocalRpis, double matchRate,
+                                        int lastDaysSinceEpoch) {
+        Random random = new Random(seed);
+        int firstDaysSinceEpoch = lastDaysSinceEpoch - numDays + 1;
+        int numPlantedMatches = (int) Math.min(Math.round(numKeys * matchRate), numLocalRpis);
+        Crypto crypto = new Crypto();
+
+        ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeys = new ArrayList<>(numKeys);
+        List<LocalRpi> localRpis = new ArrayList<>(numLocalRpis);
+        byte[] keyBytes = new byte[16];
+        for (int i = 0; i < numKeys; i++) {
+            random.nextBytes(keyBytes);
+            int daysSinceEpoch = firstDaysSinceEpoch + random.nextInt(numDays);
+            DiagnosisKeysProtos.TemporaryExposureKey dk = DiagnosisKeysProtos.TemporaryExposureKey.newBuilder()
+                    .setKeyData(ByteString.copyFrom(keyBytes))
+                    .setRollingStartIntervalNumber(getENINFromSeconds(daysSinceEpoch * 24 * 3600))
+                    .setRollingPeriod(standardRollingPeriod)
+                    .setTransmissionRiskLevel(1 + random.nextInt(8))
+                    .build();
+            diagnosisKeys.add(dk);
+            if (i < numPlantedMatches) {
+                // the first keys get the planted matches, they are shuffled below
+                int interval = random.nextInt(standardRollingPeriod);
+                Crypto.RpiWithInterval rpi = crypto.createListOfRpisForIntervalRange(deriveRpiKey(keyBytes),
+                        dk.getRollingStartIntervalNumber(), standardRollingPeriod).get(interval);
+                int startTimestamp = rpi.intervalNumber * 600 + random.nextInt(150);
+                localRpis.add(new LocalRpi(getDaysFromSeconds(startTimestamp), rpi.rpiBytes,
+                        createContactRecords(random, startTimestamp)));
+            }
+        }
+        if (numPlantedMatches > 0) {
+            // keys are not published in order of their matches
+            Collections.shuffle(diagnosisKeys, random);
+        }
+        while (localRpis.size() < numLocalRpis) {
+            byte[] rpiBytes = new byte[16];
+            random.nextBytes(rpiBytes);
+            // not too close to the end of the day, so that all scans are on the same day (as in the GMS database)
+            int startTimestamp = (firstDaysSinceEpoch + random.nextInt(numDays)) * 24 * 3600 + random.nextInt(24 * 3600 - 600);
+            localRpis.add(new LocalRpi(getDaysFromSeconds(startTimestamp), rpiBytes,
+                    createContactRecords(random, startTimestamp)));
+        }
+        return new SyntheticMatchingData(diagnosisKeys, localRpis, numPlantedMatches);
+    }
+
+    RpiList createRpiList() {
+        RpiList rpiList = new RpiList(0);
+        for (LocalRpi localRpi : localRpis) {
+            rpiList.addEntry(localRpi.daysSinceEpochUTC, localRpi.rpiBytes, localRpi.contactRecords);
+        }
+        return rpiList;
+    }
+
+    /*
+     GMS contact record LevelDB, as read by ContactDbReader:
+     key = 2 bytes day (UTC) + 16 bytes RPI, value = ContactRecords.
+     */
+    void writeGmsLevelDb(File dir) throws IOException {
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.compressionType(CompressionType.NONE);
+        try (DB db = new Iq80DBFactory().open(dir, options)) {
+            for (LocalRpi localRpi : localRpis) {
+                byte[] key = ByteBuffer.allocate(2 + 16)
+                        .putShort((short) localRpi.daysSinceEpochUTC)
+                        .put(localRpi.rpiBytes)
+                        .array();
+                db.put(key, localRpi.contactRecords.toByteArray());
+            }
+        }
+    }
+
+    /*
+     RaMBLE database, with the columns read by RambleDbOnDisk: an entry in "devices" per RPI, with
+     service_data "fd6f:<RPI><AEM>" (hex), and an entry in "locations" per scan.
+     Requires an SQLite JDBC driver (a test dependency). The app looks for files named like
+     RaMBLE_playstore_v40.15_20200819_0644.sqlite in the Downloads directory.
+     */
+    void writeRambleSqlite(File file) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE devices (id INTEGER PRIMARY KEY, address TEXT, name TEXT, " +
+                        "service_uuids TEXT, service_data TEXT, first_seen INTEGER, last_seen INTEGER)");
+                statement.execute("CREATE TABLE locations (id INTEGER PRIMARY KEY, device_id INTEGER, " +
+                        "timestamp INTEGER, rssi INTEGER, latitude REAL, longitude REAL)");
+                statement.execute("CREATE INDEX locations_device_id ON locations (device_id)");
+            }
+            try (PreparedStatement insertDevice = connection.prepareStatement(
+                    "INSERT INTO devices (id, service_uuids, service_data, first_seen, last_seen) VALUES (?, 'fd6f', ?, ?, ?)");
+                 PreparedStatement insertLocation = connection.prepareStatement(
+                         "INSERT INTO locations (device_id, timestamp, rssi) VALUES (?, ?, ?)")) {
+                int id = 0;
+                for (LocalRpi localRpi : localRpis) {
+                    id++;
+                    ContactRecordsProtos.ContactRecords contactRecords = localRpi.contactRecords;
+                    int recordCount = contactRecords.getRecordCount();
+                    insertDevice.setInt(1, id);
+                    insertDevice.setString(2, "fd6f:" + byteArrayToHexString(localRpi.rpiBytes) +
+                            byteArrayToHexString(contactRecords.getRecord(0).getAem().toByteArray()));
+                    insertDevice.setInt(3, contactRecords.getRecord(0).getTimestamp());
+                    insertDevice.setInt(4, contactRecords.getRecord(recordCount - 1).getTimestamp());
+                    insertDevice.addBatch();
+                    for (ContactRecordsProtos.ScanRecord scanRecord : contactRecords.getRecordList()) {
+                        insertLocation.setInt(1, id);
+                        insertLocation.setInt(2, scanRecord.getTimestamp());
+                        insertLocation.setLong(3, scanRecord.getRssi());
+                        insertLocation.addBatch();
+                    }
+                    if (id % 10000 == 0) {
+                        insertDevice.executeBatch();
+                        insertLocation.executeBatch();
+                    }
+                }
+                insertDevice.executeBatch();
+                insertLocation.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    private static byte[] createExportDotBin(List<DiagnosisKeysProtos.TemporaryExposureKey> keys, String region) {
+        long startTimestamp = Long.MAX_VALUE;
+        long endTimestamp = Long.MIN_VALUE;
+        for (DiagnosisKeysProtos.TemporaryExposureKey dk : keys) {
+            startTimestamp = Math.min(startTimestamp, dk.getRollingStartIntervalNumber() * 600L);
+            endTimestamp = Math.max(endTimestamp, (dk.getRollingStartIntervalNumber() + dk.getRollingPeriod()) * 600L);
+        }
+        byte[] header = "EK Export v1    ".getBytes(StandardCharsets.UTF_8);
+        byte[] export = DiagnosisKeysProtos.TemporaryExposureKeyExport.newBuilder()
+                .setStartTimestamp(startTimestamp)
+                .setEndTimestamp(endTimestamp)
+                .setRegion(region)
+                .setBatchNum(1)
+                .setBatchSize(1)
+                .addSignatureInfos(DiagnosisKeysProtos.SignatureInfo.newBuilder()
+                        .setSignatureAlgorithm(SignatureVerifier.SIGNATURE_ALGORITHM_OID))
+                .addAllKeys(keys)
+                .build().toByteArray();
+        byte[] exportDotBin = new byte[header.length + export.length];
+        System.arraycopy(header, 0, exportDotBin, 0, header.length);
+        System.arraycopy(export, 0, exportDotBin, header.length, export.length);
+        return exportDotBin;
+    }
+
+    private static byte[] createExportDotSig(byte[] exportDotBin, PrivateKey signingKey) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA256withECDSA");
+        signature.initSign(signingKey);
+        signature.update(exportDotBin);
+        return DiagnosisKeysProtos.TEKSignatureList.newBuilder()
+                .addSignatures(DiagnosisKeysProtos.TEKSignature.newBuilder()
+                        .setSignatureInfo(DiagnosisKeysProtos.SignatureInfo.newBuilder()
+                                .setSignatureAlgorithm(SignatureVerifier.SIGNATURE_ALGORITHM_OID))
+                        .setBatchNum(1)
+                        .setBatchSize(1)
+                        .setSignature(ByteString.copyFrom(signature.sign())))
+                .build().toByteArray();
+    }
+
+    /*
+     Diagnosis Key packages as downloaded: zip files <region>_synthetic_<n>.zip with export.bin,
+     and with export.sig if signingKey is not null. keysPerFile keys per file, in the order of diagnosisKeys.
+     */
+    List<File> writeExportZips(File dir, String region, int keysPerFile, PrivateKey signingKey)
+            throws IOException, GeneralSecurityException {
+        List<File> files = new ArrayList<>();
+        for (int first = 0; first < diagnosisKeys.size(); first += keysPerFile) {
+            List<DiagnosisKeysProtos.TemporaryExposureKey> keys =
+                    diagnosisKeys.subList(first, Math.min(first + keysPerFile, diagnosisKeys.size()));
+            byte[] exportDotBin = createExportDotBin(keys, region);
+            File file = new File(dir, region + "_synthetic_" + files.size() + ".zip");
+            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+                zos.putNextEntry(new ZipEntry("export.bin"));
+                zos.write(exportDotBin);
+                zos.closeEntry();
+                if (signingKey != null) {
+                    zos.putNextEntry(new ZipEntry("export.sig"));
+                    zos.write(createExportDotSig(exportDotBin, signingKey));
+                    zos.closeEntry();
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /*
+     Writes all formats into a directory.
+     Arguments: outputDir [numKeys numLocalRpis matchRate seed keysPerFile]
+     The export files are signed with a new key, its public key (X.509, DER) is written to signing_key.der.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticMatchingData outputDir [numKeys numLocalRpis matchRate seed keysPerFile]");
+            System.exit(1);
+        }
+        File outputDir = new File(args[0]);
+        int numKeys = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        int numLocalRpis = (args.length > 2) ? Integer.parseInt(args[2]) : 50000;
+        double matchRate = (args.length > 3) ? Double.parseDouble(args[3]) : 0.001;
+        long seed = (args.length > 4) ? Long.parseLong(args[4]) : 39;
+        int keysPerFile = (args.length > 5) ? Integer.parseInt(args[5]) : 10000;
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create " + outputDir);
+        }
+
+        int lastDaysSinceEpoch = getDaysFromSeconds((int) (System.currentTimeMillis() / 1000)) - 1;
+        SyntheticMatchingData data = create(seed, numKeys, numLocalRpis, matchRate, lastDaysSinceEpoch);
+        data.writeGmsLevelDb(new File(outputDir, "app_contact-tracing-contact-record-db"));
+        data.writeRambleSqlite(new File(outputDir, "RaMBLE_synthetic_v0_00000000_0000.sqlite"));
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        try (FileOutputStream outputStream = new FileOutputStream(new File(outputDir, "signing_key.der"))) {
+            outputStream.write(keyPair.getPublic().getEncoded());
+        }
+        List<File> exportZips = data.writeExportZips(outputDir, "XX", keysPerFile, keyPair.getPrivate());
+        System.out.printf("%d keys (%d export files), %d local RPIs, %d planted matches written to %s%n",
+                numKeys, exportZips.size(), numLocalRpis, data.numPlantedMatches, outputDir);
+    }
+}
@@ -0,0 +1,141 @@
+package org.tosl.coronawarncompanion;
+
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysImport;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.diagnosiskeys.SignatureVerifier;
+import org.tosl.coronawarncompanion.gmsreadout.ContactDbReader;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.ramblereadout.RambleDevice;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.tosl.coronawarncompanion.dkdownload.Unzip.openUnzippedStream;
+import static org.tosl.coronawarncompanion.tools.Utils.byteArrayToHexString;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks that the synthetic data is read back by the app's readers.
+ */
+public class SyntheticMatchingDataUnitTest {
+
+    private static final int lastDaysSinceEpoch = 18600;
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private static int countMatches(RpiList rpiList, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> dks) {
+        MatchEntryContent matchEntryContent = new MatchEntryContent();
+        new Matcher(rpiList, dks, matchEntryContent, 0).findMatches(null, () -> false);
+        return matchEntryContent.matchEntries.getTotalRpiCount();
+    }
+
+    @Test
+    public void create_isDeterministic() {
+        SyntheticMatchingData data1 = SyntheticMatchingData.create(39, 200, 1000, 0.1, lastDaysSinceEpoch);
+        SyntheticMatchingData data2 = SyntheticMatchingData.create(39, 200, 1000, 0.1, lastDaysSinceEpoch);
+        assertEquals(data1.diagnosisKeys, data2.diagnosisKeys);
+        assertEquals(1000, data1.localRpis.size());
+        for (int i = 0; i < data1.localRpis.size(); i++) {
+            assertArrayEquals(data1.localRpis.get(i).rpiBytes, data2.localRpis.get(i).rpiBytes);
+            assertEquals(data1.localRpis.get(i).contactRecords, data2.localRpis.get(i).contactRecords);
+        }
+        assertEquals(20, data1.numPlantedMatches);
+        assertEquals(20, countMatches(data1.createRpiList(), data1.diagnosisKeys));
+    }
+
+    @Test
+    public void writeGmsLevelDb_isReadByContactDbReader() throws Exception {
+        SyntheticMatchingData data = SyntheticMatchingData.create(39, 200, 1000, 0.1, lastDaysSinceEpoch);
+        File dbDir = new File(tempDir.getRoot(), "app_contact-tracing-contact-record-db");
+        data.writeGmsLevelDb(dbDir);
+
+        Options options = new Options();
+        options.createIfMissing(false);
+        RpiList rpiList;
+        try (DB db = new Iq80DBFactory().open(dbDir, options)) {
+            rpiList = ContactDbReader.readToRpiList(db, 0);
+        }
+        assertEquals(1000, rpiList.getRpiCount());
+        assertEquals(data.numPlantedMatches, countMatches(rpiList, data.diagnosisKeys));
+    }
+
+    @Test
+    public void writeExportZips_areReadAndVerified() throws Exception {
+        SyntheticMatchingData data = SyntheticMatchingData.create(39, 250, 100, 0.1, lastDaysSinceEpoch);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        List<File> files = data.writeExportZips(tempDir.getRoot(), "XX", 100, keyPair.getPrivate());
+        assertEquals(3, files.size());
+
+        SignatureVerifier verifier = new SignatureVerifier(keyPair.getPublic().getEncoded(), 1);
+        List<DiagnosisKeysProtos.TemporaryExposureKey> keys = new ArrayList<>();
+        for (File file : files) {
+            assertTrue(verifier.verify(file));
+            try (InputStream inputStream = openUnzippedStream(file, "export.bin")) {
+                DiagnosisKeysImport diagnosisKeysImport = new DiagnosisKeysImport(inputStream);
+                assertEquals("XX", diagnosisKeysImport.getRegion());
+                keys.addAll(diagnosisKeysImport.getDiagnosisKeys());
+            }
+        }
+        verifier.shutdown();
+        assertEquals(data.diagnosisKeys, keys);
+    }
+
+    @Test
+    public void writeRambleSqlite_hasTheColumnsOfRambleDbOnDisk() throws Exception {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException(e);
+        }
+        SyntheticMatchingData data = SyntheticMatchingData.create(39, 200, 1000, 0.1, lastDaysSinceEpoch);
+        File file = new File(tempDir.getRoot(), "RaMBLE_synthetic_v0_00000000_0000.sqlite");
+        data.writeRambleSqlite(file);
+
+        // the same queries as RambleDbOnDisk
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+             Statement statement = connection.createStatement();
+             Statement statement2 = connection.createStatement()) {
+            int numDevices = 0;
+            try (ResultSet devices = statement.executeQuery(RambleDevice.DEVICES_QUERY)) {
+                while (devices.next()) {
+                    SyntheticMatchingData.LocalRpi localRpi = data.localRpis.get(numDevices);
+                    String rpiAemStr = devices.getString(1).split(":")[1];
+                    assertEquals(byteArrayToHexString(localRpi.rpiBytes), rpiAemStr.substring(0, 16 * 2));
+                    assertEquals(localRpi.contactRecords.getRecord(0).getTimestamp(), Integer.parseInt(devices.getString(2)));
+                    int numScans = 0;
+                    try (ResultSet locations = statement2.executeQuery(RambleDevice.LOCATIONS_QUERY + devices.getString(4))) {
+                        while (locations.next()) {
+                            assertEquals(localRpi.contactRecords.getRecord(numScans).getRssi(), Integer.parseInt(locations.getString(2)));
+                            numScans++;
+                        }
+                    }
+                    assertEquals(localRpi.contactRecords.getRecordCount(), numScans);
+                    numDevices++;
+                }
+            }
+            assertEquals(1000, numDevices);
+        }
+    }
+}
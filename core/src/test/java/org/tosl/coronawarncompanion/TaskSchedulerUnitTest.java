@@ -0,0 +1,136 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.tasks.CancellationToken;
+import org.tosl.coronawarncompanion.tasks.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test, which will execute on the development machine (host).
+ * Checks the delivery of stage results and the cancellation of running stages.
+ */
+public class TaskSchedulerUnitTest {
+
+    // stands in for the UI thread: the test thread runs what has been posted
+    private final BlockingQueue<Runnable> resultQueue = new LinkedBlockingQueue<>();
+
+    private void runPostedResults() {
+        Runnable runnable;
+        while ((runnable = resultQueue.poll()) != null) {
+            runnable.run();
+        }
+    }
+
+    @Test
+    public void submit_deliversResultOnResultExecutor() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler("Test", resultQueue::add);
+        List<String> results = new ArrayList<>();
+        Future<String> future = taskScheduler.submit("Stage", cancellationToken ->
+                Thread.currentThread().getName(), results::add);
+        assertEquals("Stage", future.get(5, TimeUnit.SECONDS));
+        Runnable delivery = resultQueue.poll(5, TimeUnit.SECONDS);
+        assertNotNull(delivery);
+        delivery.run();
+        assertEquals(1, results.size());
+        assertEquals("Stage", results.get(0));
+        taskScheduler.cancel();
+    }
+
+    @Test
+    public void submit_failingStage_deliversNothing() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler("Test", resultQueue::add);
+        Future<Object> future = taskScheduler.submit("Stage", cancellationToken -> {
+            throw new IllegalStateException("failed");
+        }, result -> fail());
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertNull(resultQueue.poll(100, TimeUnit.MILLISECONDS));
+        taskScheduler.cancel();
+    }
+
+    @Test
+    public void cancel_stopsRunningStageQuickly() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler("Test", resultQueue::add);
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger iterations = new AtomicInteger();
+        Future<Integer> future = taskScheduler.submit("Polling", cancellationToken -> {
+            started.countDown();
+            while (!cancellationToken.shouldStop()) {
+                iterations.incrementAndGet();
+            }
+            return iterations.get();  // the partial result
+        }, result -> fail());
+        CountDownLatch blockingStageStopped = new CountDownLatch(1);
+        taskScheduler.submit("Blocking", cancellationToken -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();  // only returns when interrupted
+            } finally {
+                blockingStageStopped.countDown();
+            }
+            return null;
+        }, result -> fail());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(taskScheduler.isBusy());
+
+        long startNanos = System.nanoTime();
+        taskScheduler.cancel();
+        long cancelMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue("cancel() must not wait for the stages: " + cancelMillis + " ms", cancelMillis < 1000);
+        assertTrue(blockingStageStopped.await(1, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertTrue(taskScheduler.isCancelled());
+        assertFalse(taskScheduler.isBusy());
+
+        // nothing is delivered after cancel(), and nothing new is run
+        taskScheduler.post(() -> fail());
+        Future<Object> lateFuture = taskScheduler.submit("Late", cancellationToken -> {
+            fail();
+            return null;
+        }, null);
+        assertTrue(lateFuture.isCancelled());
+        Thread.sleep(100);
+        runPostedResults();
+    }
+
+    @Test
+    public void post_afterCancel_isDropped() {
+        TaskScheduler taskScheduler = new TaskScheduler("Test", resultQueue::add);
+        AtomicInteger numRuns = new AtomicInteger();
+        taskScheduler.post(numRuns::incrementAndGet);
+        taskScheduler.cancel();  // after posting, before running
+        taskScheduler.post(numRuns::incrementAndGet);
+        runPostedResults();
+        assertEquals(0, numRuns.get());
+    }
+
+    @Test
+    public void cancellationToken_runsListenersOnce() {
+        CancellationToken cancellationToken = new CancellationToken();
+        AtomicInteger numCalls = new AtomicInteger();
+        cancellationToken.onCancel(numCalls::incrementAndGet);
+        assertEquals(0, numCalls.get());
+        assertTrue(cancellationToken.cancel());
+        assertFalse(cancellationToken.cancel());
+        assertEquals(1, numCalls.get());
+        assertTrue(cancellationToken.shouldStop());
+        // registered after the cancellation: runs right away
+        cancellationToken.onCancel(numCalls::incrementAndGet);
+        assertEquals(2, numCalls.get());
+    }
+}
@@ -18,10 +18,16 @@
 
 package org.tosl.coronawarncompanion;
 
+import android.app.ActivityManager;
 import android.app.Application;
+import android.content.Context;
+import android.util.Log;
 
-import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matcher.MatcherMetrics;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
 
+import java.io.File;
 import java.util.TimeZone;
 
 public class CWCApplication extends Application {
@@ -29,21 +35,66 @@ public class CWCApplication extends Application {
     public enum AppModeOptions {NORMAL_MODE, DEMO_MODE, RAMBLE_MODE}
     public static AppModeOptions appMode = AppModeOptions.NORMAL_MODE;
 
-    private static MatchEntryContent matchEntryContent = null;
-    public static MatchEntryContent getMatchEntryContent() {return matchEntryContent;}
-    public static void setMatchEntryContent(
-            MatchEntryContent myMatchEntryContent) {matchEntryContent = myMatchEntryContent;
-    }
+    private static RetainedResults retainedResults = null;  // of MainActivity, see RetainedResults
+    public static RetainedResults getRetainedResults() {return retainedResults;}
+    public static void setRetainedResults(RetainedResults myRetainedResults) {retainedResults = myRetainedResults;}
+
+    private static MatcherMetrics matcherMetrics = null;  // of the last matching run, for the diagnostics screen
+    public static MatcherMetrics getMatcherMetrics() {return matcherMetrics;}
+    public static void setMatcherMetrics(MatcherMetrics myMatcherMetrics) {matcherMetrics = myMatcherMetrics;}
 
     private static int timeZoneOffsetSeconds;
     public static int getTimeZoneOffsetSeconds() {return timeZoneOffsetSeconds;}
 
-    public static boolean backgroundThreadsRunning = false;
-    public static boolean backgroundThreadsShouldStop = false;
+    // the local days (with their DST offsets) of the scanned RPIs and the matches
+    private static final int DAY_BOUNDARIES_NUM_DAYS_BACK = 21;
+    private static DayBoundaries dayBoundaries = DayBoundaries.forFixedOffset(0);
+    public static DayBoundaries getDayBoundaries() {return dayBoundaries;}
+
+    // on low-RAM devices the scanned RPIs are spilled to disk and matched day by day
+    private static final int MEMORY_BOUNDED_MAX_MEMORY_CLASS_MB = 128;
+    private static boolean memoryBounded = false;
+    public static boolean isMemoryBounded() {return memoryBounded;}
+
+    private static File getRpiSpillDir(Context context) {
+        return new File(context.getCacheDir(), "rpi-spill");
+    }
+
+    public static RpiList newRpiList(Context context) {
+        if (memoryBounded) {
+            return new RpiList(dayBoundaries, getRpiSpillDir(context));
+        } else {
+            return new RpiList(dayBoundaries);
+        }
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        timeZoneOffsetSeconds = TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 1000;
+        long nowMillis = System.currentTimeMillis();
+        timeZoneOffsetSeconds = TimeZone.getDefault().getOffset(nowMillis) / 1000;
+        dayBoundaries = DayBoundaries.forTimeZone(TimeZone.getDefault(), nowMillis, DAY_BOUNDARIES_NUM_DAYS_BACK);
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            memoryBounded = activityManager.isLowRamDevice() ||
+                    activityManager.getMemoryClass() <= MEMORY_BOUNDED_MAX_MEMORY_CLASS_MB;
+        }
+        // spill files of a previous process (they are retained until MainActivity is finished)
+        File[] staleSpillFiles = getRpiSpillDir(this).listFiles();
+        if (staleSpillFiles != null) {
+            for (File staleSpillFile : staleSpillFiles) {
+                //noinspection ResultOfMethodCallIgnored
+                staleSpillFile.delete();
+            }
+        }
+        // route the log output of the core module to logcat
+        org.tosl.coronawarncompanion.tools.Log.setSink((level, tag, msg) -> {
+            switch (level) {
+                case 'E': Log.e(tag, msg); break;
+                case 'W': Log.w(tag, msg); break;
+                case 'I': Log.i(tag, msg); break;
+                default: Log.d(tag, msg); break;
+            }
+        });
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.method.ScrollingMovementMethod;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import org.tosl.coronawarncompanion.matcher.MatcherMetrics;
+
+/*
+ Hidden screen (long press on the matches text in MainActivity) showing the metrics of the last matching run,
+ as JSON, which can be shared for comparing runs on different devices.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    private String json = null;
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.diagnostics_activity_menu, menu);
+        menu.findItem(R.id.share).setEnabled(json != null);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        // Handle item selection
+        if (item.getItemId() == R.id.share) {
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("application/json");
+            intent.putExtra(Intent.EXTRA_TEXT, json);
+            startActivity(Intent.createChooser(intent, getString(R.string.menu_entry_share)));
+            return true;
+        } else {
+            return super.onOptionsItemSelected(item);
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        // Action Bar:
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+            actionBar.setTitle(R.string.title_activity_diagnostics);
+        }
+        TextView textView = findViewById(R.id.mainTextView);
+        textView.setMovementMethod(new ScrollingMovementMethod());
+
+        MatcherMetrics matcherMetrics = CWCApplication.getMatcherMetrics();
+        if (matcherMetrics != null) {
+            json = matcherMetrics.toJson();
+            textView.setText(json);
+        } else {
+            textView.setText(R.string.diagnostics_no_matching_run);
+        }
+    }
+}
@@ -33,9 +33,14 @@ import android.widget.TextView;
 import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
 import org.tosl.coronawarncompanion.matchentries.MatchesRecyclerViewAdapter;
 import org.tosl.coronawarncompanion.matchentries.MatchesRecyclerViewFragment;
+import org.tosl.coronawarncompanion.matchentries.PrecomputedMatchEntryDetails;
+import org.tosl.coronawarncompanion.tasks.TaskScheduler;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -45,6 +50,7 @@ public class DisplayDetailsActivity extends AppCompatActivity {
 
     private static final String TAG = "DisplayDetailsActivity";
     private MatchesRecyclerViewFragment matchesRecyclerViewFragment;
+    private TaskScheduler taskScheduler;
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -57,6 +63,9 @@ public class DisplayDetailsActivity extends AppCompatActivity {
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle item selection
         if (item.getItemId() == R.id.showhideallscans) {
+            if (this.matchesRecyclerViewFragment == null) {
+                return true;  // details are still being precomputed
+            }
             RecyclerView recyclerView = (RecyclerView) this.matchesRecyclerViewFragment.getView();
             MatchesRecyclerViewAdapter matchesRecyclerViewAdapter;
             if (recyclerView != null) {
@@ -75,6 +84,7 @@ public class DisplayDetailsActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_display_details);
+        taskScheduler = new TaskScheduler(TAG, this::runOnUiThread);
 
         // Get the Intent that started this activity and extract the string
         Intent intent = getIntent();
@@ -89,7 +99,8 @@ public class DisplayDetailsActivity extends AppCompatActivity {
             count = Integer.parseInt(countMessage);
         }
 
-        MatchEntryContent matchEntryContent = CWCApplication.getMatchEntryContent();
+        RetainedResults retainedResults = CWCApplication.getRetainedResults();
+        MatchEntryContent matchEntryContent = (retainedResults != null) ? retainedResults.getMatchEntryContent() : null;
 
         if (savedInstanceState == null) {
 
@@ -120,14 +131,40 @@ public class DisplayDetailsActivity extends AppCompatActivity {
             textView.setText(getResources().getQuantityString(R.plurals.details_title_matches_on_day, count, dateStr));
 
             // RecyclerView List:
-            FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
-            this.matchesRecyclerViewFragment =
-                    new MatchesRecyclerViewFragment(selectedDaysSinceEpochLocalTZ, matchEntryContent);
-            transaction.replace(R.id.contentFragment, this.matchesRecyclerViewFragment);
-            transaction.commit();
+            // Take a snapshot of the day's matches (the set may still change while matching is running),
+            // and precompute the details of all matches in the background, so that binding a row only copies values.
+            List<MatchEntryContent.GroupedByDkMatchEntries> entries = new ArrayList<>();
+            if (matchEntryContent != null) {
+                synchronized (matchEntryContent.matchEntries) {
+                    MatchEntryContent.DailyMatchEntries dailyMatchEntries =
+                            matchEntryContent.matchEntries.getDailyMatchEntries(selectedDaysSinceEpochLocalTZ);
+                    if (dailyMatchEntries != null) {
+                        entries.addAll(dailyMatchEntries.getGroupedByDkList());
+                    }
+                }
+            }
+            // the scan times with the DST offset in effect at each scan, relative to the selected day
+            DayBoundaries dayBoundaries = CWCApplication.getDayBoundaries();
+            int daysSinceEpochLocalTZ = selectedDaysSinceEpochLocalTZ;
+            // not delivered after onDestroy()
+            taskScheduler.submit("DetailsPrecomputation", cancellationToken ->
+                    PrecomputedMatchEntryDetails.precompute(entries, dayBoundaries, daysSinceEpochLocalTZ,
+                            cancellationToken),
+                    details -> {
+                        FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
+                        this.matchesRecyclerViewFragment = new MatchesRecyclerViewFragment(details);
+                        transaction.replace(R.id.contentFragment, this.matchesRecyclerViewFragment);
+                        transaction.commit();
+                    });
 
             // End of this path.
             // From now on, the user can tap on a match entry.
         }
     }
+
+    @Override
+    protected void onDestroy() {
+        taskScheduler.cancel();
+        super.onDestroy();
+    }
 }
\ No newline at end of file
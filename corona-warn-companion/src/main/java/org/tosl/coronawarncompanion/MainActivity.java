@@ -29,12 +29,10 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Color;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Message;
 import android.os.Process;
+import android.util.Base64;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.Menu;
@@ -43,70 +41,87 @@ import android.view.MenuItem;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.highlight.Highlight;
 import com.github.mikephil.charting.listener.OnChartValueSelectedListener;
 
+import org.tosl.coronawarncompanion.backgroundsync.BackgroundSyncWorker;
 import org.tosl.coronawarncompanion.barcharts.BarChartSync;
 import org.tosl.coronawarncompanion.barcharts.CwcBarChart;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeyHistogram;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeySources;
 import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysImport;
 import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.diagnosiskeys.SignatureVerifier;
 import org.tosl.coronawarncompanion.dkdownload.DKDownload;
 import org.tosl.coronawarncompanion.gmsreadout.ContactDbOnDisk;
 import org.tosl.coronawarncompanion.ramblereadout.RambleDbOnDisk;
 import org.tosl.coronawarncompanion.rpis.RpiList;
 import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryStore;
+import org.tosl.coronawarncompanion.matcher.Crypto;
 import org.tosl.coronawarncompanion.matcher.Matcher;
-
-import java.io.ByteArrayOutputStream;
+import org.tosl.coronawarncompanion.matcher.MatcherMetrics;
+import org.tosl.coronawarncompanion.tasks.CancellationToken;
+import org.tosl.coronawarncompanion.tasks.CoalescingDeltaChannel;
+import org.tosl.coronawarncompanion.tasks.TaskScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.security.GeneralSecurityException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TimeZone;
-import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import static org.tosl.coronawarncompanion.CWCApplication.AppModeOptions.DEMO_MODE;
 import static org.tosl.coronawarncompanion.CWCApplication.AppModeOptions.NORMAL_MODE;
 import static org.tosl.coronawarncompanion.CWCApplication.AppModeOptions.RAMBLE_MODE;
-import static org.tosl.coronawarncompanion.CWCApplication.backgroundThreadsShouldStop;
-import static org.tosl.coronawarncompanion.CWCApplication.backgroundThreadsRunning;
-import static org.tosl.coronawarncompanion.dkdownload.Unzip.getUnzippedBytesFromZipFileBytes;
+import static org.tosl.coronawarncompanion.dkdownload.Unzip.openUnzippedStream;
 import static org.tosl.coronawarncompanion.tools.Utils.getDaysSinceEpochFromENIN;
 import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromMillis;
 import static org.tosl.coronawarncompanion.tools.Utils.getENINFromDate;
 import static org.tosl.coronawarncompanion.tools.Utils.getMillisFromDays;
-import static org.tosl.coronawarncompanion.tools.Utils.resolveColorAttr;
-import static org.tosl.coronawarncompanion.tools.Utils.standardRollingPeriod;
+import static org.tosl.coronawarncompanion.tools.AndroidUtils.resolveColorAttr;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
     public static final String EXTRA_MESSAGE_DAY = "org.tosl.coronawarncompanion.DAY_MESSAGE";
     public static final String EXTRA_MESSAGE_COUNT = "org.tosl.coronawarncompanion.COUNT_MESSAGE";
-    private static boolean appModeShouldToggle = false;
     private static CWCApplication.AppModeOptions desiredAppMode;
+    private TaskScheduler taskScheduler;  // extraction, download and matching of this activity
     private RpiList rpiList = null;
     private Date maxDate = null;
     private Date minDate = null;
-    private Date currentDate;  // usually the same as maxDate
 
     private DKDownload diagnosisKeysDownload;
-    private LinkedList<URL> diagnosisKeysUrls;
-    private int numDiagnosisKeysUrls;
+    private SignatureVerifier signatureVerifier;
     private ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList;
+    private DiagnosisKeyHistogram diagnosisKeyHistogram;  // of diagnosisKeysList, only accessed on the UI thread
+    // to skip keys that are contained in more than one region, and to retract only those without a verified package
+    private final DiagnosisKeySources diagnosisKeySources = new DiagnosisKeySources();
     @SuppressWarnings("SpellCheckingInspection")
     private final int normalBarColor = Color.parseColor("#8CEAFF");
     private final int matchBarColor = Color.parseColor("red");
+    private MatchEntryContent matchEntryContent = new MatchEntryContent();
+    private boolean matchingFinished = false;
+    private RetainedResults retainedResults;  // what has been computed so far, also by a previous MainActivity
+    private CoalescingDeltaChannel liveMatches = null;
 
     private CwcBarChart chartRpis;
     private CwcBarChart chartDks;
@@ -130,6 +145,7 @@ public class MainActivity extends AppCompatActivity {
         } if (CWCApplication.appMode == RAMBLE_MODE) {
             menu.findItem(R.id.ramblemode).setChecked(true);
         }
+        menu.findItem(R.id.javaaes).setChecked(Crypto.getDefaultAesEngine() == Crypto.AesEngine.JAVA_TABLES);
         return true;
     }
 
@@ -141,14 +157,6 @@ public class MainActivity extends AppCompatActivity {
             return true;
         } else if (item.getItemId() == R.id.normalmode || item.getItemId() == R.id.demomode ||
                 item.getItemId() == R.id.ramblemode) {
-            if (backgroundThreadsShouldStop) {
-                // user has to wait a little bit longer
-                CharSequence text = getString(R.string.error_app_mode_switching_not_possible);
-                Toast toast = Toast.makeText(this, text, Toast.LENGTH_SHORT);
-                toast.setGravity(Gravity.CENTER, 0, 0);
-                toast.show();
-                return false;
-            }
             item.setChecked(true);
             if (item.getItemId() == R.id.normalmode) {
                 desiredAppMode = NORMAL_MODE;
@@ -163,7 +171,17 @@ public class MainActivity extends AppCompatActivity {
                 editor.putInt(getString(R.string.saved_app_mode), desiredAppMode.ordinal());
                 editor.apply();
             }
-            toggleAppModeOnNextPossibleOccasion();
+            toggleAppMode();
+            return true;
+        } else if (item.getItemId() == R.id.javaaes) {
+            // takes effect with the next matching
+            item.setChecked(!item.isChecked());
+            Crypto.AesEngine aesEngine = item.isChecked() ? Crypto.AesEngine.JAVA_TABLES : Crypto.AesEngine.JCE;
+            Crypto.setDefaultAesEngine(aesEngine);
+            SharedPreferences sharedPreferences = this.getPreferences(Context.MODE_PRIVATE);
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            editor.putInt(getString(R.string.saved_aes_engine), aesEngine.ordinal());
+            editor.apply();
             return true;
         } else if (item.getItemId() == R.id.osslicenses) {
             startActivity(new Intent(this, DisplayLicensesActivity.class));
@@ -173,19 +191,13 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void toggleAppModeOnNextPossibleOccasion() {
-        if (backgroundThreadsRunning) {  // don't do recreate() while background threads are running
-            appModeShouldToggle = true;
-            backgroundThreadsShouldStop = true;
-        } else {
-            toggleAppModeNow();
+    private void toggleAppMode() {
+        if (desiredAppMode != CWCApplication.appMode) {
+            retainedResults.discard();
+            CWCApplication.setRetainedResults(null);
         }
-    }
-
-    private void toggleAppModeNow() {
-        appModeShouldToggle = false;
         CWCApplication.appMode = desiredAppMode;
-        recreate();
+        recreate();  // onDestroy() cancels the background work of this activity
     }
 
     @Override
@@ -201,6 +213,12 @@ public class MainActivity extends AppCompatActivity {
         } catch (ArrayIndexOutOfBoundsException e) {
             CWCApplication.appMode = NORMAL_MODE;
         }
+        int aesEngineOrdinal = sharedPreferences.getInt(getString(R.string.saved_aes_engine), Crypto.AesEngine.JCE.ordinal());
+        try {
+            Crypto.setDefaultAesEngine(Crypto.AesEngine.values()[aesEngineOrdinal]);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Crypto.setDefaultAesEngine(Crypto.AesEngine.JCE);
+        }
 
         ActionBar actionBar = getSupportActionBar();
         if (actionBar != null) {
@@ -221,22 +239,32 @@ public class MainActivity extends AppCompatActivity {
             Log.i(TAG, "--- RAMBLE MODE ---");
         }
 
-        if(backgroundThreadsRunning) {
-            // reCreate() was called, e.g. by switching from portrait to landscape, etc.
-            backgroundThreadsShouldStop = true;
-            while(backgroundThreadsRunning) {
-                try {
-                    //noinspection BusyWait
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+        // the background sync works with the contact DB of GMS, so it is only done in normal mode
+        if (CWCApplication.appMode == NORMAL_MODE) {
+            BackgroundSyncWorker.schedule(this);
+        } else {
+            BackgroundSyncWorker.cancel(this);
         }
 
+        // if this activity has been recreated (e.g. by switching from portrait to landscape),
+        // the background work of the previous one has been cancelled in its onDestroy()
+        taskScheduler = new TaskScheduler(TAG, this::runOnUiThread);
+
         int timeZoneOffsetSeconds = CWCApplication.getTimeZoneOffsetSeconds();
         Log.d(TAG, "Local TimeZone Offset in seconds: "+ timeZoneOffsetSeconds);
 
+        retainedResults = CWCApplication.getRetainedResults();
+        if (retainedResults == null || !retainedResults.isValidFor(CWCApplication.appMode, timeZoneOffsetSeconds)) {
+            if (retainedResults != null) {
+                Log.d(TAG, "Retained results are outdated.");
+                retainedResults.discard();
+            }
+            retainedResults = new RetainedResults(CWCApplication.appMode, timeZoneOffsetSeconds,
+                    TimeUnit.MINUTES.toMillis(getResources().getInteger(R.integer.retained_results_max_age_minutes)));
+            CWCApplication.setRetainedResults(retainedResults);
+        }
+        retainedResults.setListener(new RetainedResultsListener());
+
         long todayLastMidnightInMillis = getMillisFromDays(getDaysFromMillis(System.currentTimeMillis()));
         maxDate = new Date(todayLastMidnightInMillis);
         minDate = new Date(todayLastMidnightInMillis - getMillisFromDays(14));
@@ -244,6 +272,11 @@ public class MainActivity extends AppCompatActivity {
         textViewRpis = findViewById(R.id.textView1);
         textViewDks = findViewById(R.id.textView2);
         textViewMatches = findViewById(R.id.textView3);
+        // hidden diagnostics screen
+        textViewMatches.setOnLongClickListener(view -> {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        });
         textViewExtractionError = findViewById(R.id.textViewExtractionError);
         textViewDownloadError = findViewById(R.id.textViewDownloadError);
         BarChartSync barChartSync = new BarChartSync();
@@ -252,27 +285,71 @@ public class MainActivity extends AppCompatActivity {
         chartMatches = new CwcBarChart(findViewById(R.id.chart3), findViewById(R.id.progressBar3), barChartSync, this);
         chartMatches.getBarChart().setOnChartValueSelectedListener(new Chart3ValueSelectedListener());
 
+        // Show the matches that have been precomputed by the background sync, until matching is finished.
+        // They are loaded in parallel with the extraction, which can take a while (root access).
+        if (CWCApplication.appMode == NORMAL_MODE && !retainedResults.hasPrecomputedMatchEntryContent() &&
+                !retainedResults.isMatchingFinished()) {
+            File matchEntryStoreDir = BackgroundSyncWorker.getMatchEntryStoreDir(this);
+            taskScheduler.submit("PrecomputedMatches", cancellationToken ->
+                    new MatchEntryStore(matchEntryStoreDir).load(CWCApplication.getTimeZoneOffsetSeconds()),
+                    precomputedMatchEntryContent -> {
+                        if (precomputedMatchEntryContent != null && !matchingFinished) {
+                            Log.d(TAG, "Showing precomputed matches.");
+                            retainedResults.setPrecomputedMatchEntryContent(precomputedMatchEntryContent);
+                            presentPrecomputedMatches();
+                        }
+                    });
+        }
+
         // 1st Section: Get RPIs from database (requires root), or from demo database, or from RaMBLE
 
+        if (retainedResults.getRpiList() != null) {
+            Log.d(TAG, "Using the retained RPIs.");
+            processExtractedRpis(retainedResults.getRpiList());
+            return;
+        }
+        if (CWCApplication.appMode == RAMBLE_MODE) {
+            RambleDbOnDisk.requestFileAccess(this);
+        }
+        taskScheduler.submit("Extraction", this::extractRpis, extractedRpiList -> {
+            if ((extractedRpiList != null) && (!extractedRpiList.isEmpty())) {
+                retainedResults.setRpiList(extractedRpiList);
+            }
+            processExtractedRpis(extractedRpiList);
+        });
+        // (the rest is done when the extraction has finished)
+    }
+
+    private RpiList extractRpis(CancellationToken cancellationToken) {
+        RpiList extractedRpiList;
         if (CWCApplication.appMode == NORMAL_MODE || CWCApplication.appMode == DEMO_MODE) {
             ContactDbOnDisk contactDbOnDisk = new ContactDbOnDisk(this);
-            rpiList = contactDbOnDisk.getRpisFromContactDB();
+            extractedRpiList = contactDbOnDisk.getRpisFromContactDB();
         } else if (CWCApplication.appMode == RAMBLE_MODE) {
             RambleDbOnDisk rambleDbOnDisk = new RambleDbOnDisk(this);
-            rpiList = rambleDbOnDisk.getRpisFromContactDB(this);
+            extractedRpiList = rambleDbOnDisk.getRpisFromContactDB();
         } else {
             throw new IllegalStateException();
         }
+        if (cancellationToken.isCancelled() && extractedRpiList != null) {
+            extractedRpiList.deleteSpillFiles();  // it won't reach onDestroy()
+        }
+        return extractedRpiList;
+    }
+
+    private void processExtractedRpis(RpiList extractedRpiList) {
+        rpiList = extractedRpiList;
 
         if ((rpiList != null) && (!rpiList.isEmpty())) {  // check that getting the RPIs didn't fail, e.g. because we didn't get root rights
             SortedSet<Integer> rpiListDaysSinceEpochLocalTZ = rpiList.getAvailableDaysSinceEpochLocalTZ();
-            List<BarEntry> dataPoints1 = new ArrayList<>();
+            chartRpis.setDays(rpiListDaysSinceEpochLocalTZ.first(), rpiListDaysSinceEpochLocalTZ.last(),
+                    normalBarColor, "RPIs", false, this);
 
             int count = 0;
             for (Integer daysSinceEpochLocalTZ : rpiListDaysSinceEpochLocalTZ) {
                 int numEntries = rpiList.getRpiCountForDaysSinceEpochLocalTZ(daysSinceEpochLocalTZ);
                 //Log.d(TAG, "Datapoint: " + daysSinceEpochLocalTZ + ": " + numEntries);
-                dataPoints1.add(new BarEntry(daysSinceEpochLocalTZ, numEntries));
+                chartRpis.setValue(daysSinceEpochLocalTZ, numEntries);
                 count += numEntries;
             }
 
@@ -289,18 +366,20 @@ public class MainActivity extends AppCompatActivity {
 
             textViewRpis.setText(getString(R.string.title_rpis_extracted, count, minDateStr, maxDateStr));
 
-            chartRpis.setData(dataPoints1, normalBarColor, "RPIs", false, this);
             chartRpis.setFormatAndRefresh(this);
 
+            // the precomputed matches may have been drawn before, now only those of the days of the fresh RPIs
+            if (retainedResults.hasPrecomputedMatchEntryContent() && !retainedResults.isMatchingFinished()) {
+                presentPrecomputedMatches();
+            }
+
         } else {  // getting the RPIs failed, e.g. because we didn't get root rights
-            List<BarEntry> dataPoints1 = new ArrayList<>();
             long currentTimeMillis = System.currentTimeMillis();
-            int currentTimestampLocalTZ = (int) (currentTimeMillis / 1000) + timeZoneOffsetSeconds;
-            int daysSinceEpochLocalTZ = currentTimestampLocalTZ / (3600*24);
-            for (int day = daysSinceEpochLocalTZ-13; day <= daysSinceEpochLocalTZ; day++) {
-                dataPoints1.add(new BarEntry(day, 0));
-            }
-            chartRpis.setData(dataPoints1, normalBarColor, "RPIs", false, this);
+            // the local day of now, with the DST offsets of the same table as the RPIs
+            int daysSinceEpochLocalTZ = CWCApplication.getDayBoundaries()
+                    .getDaysSinceEpochLocalTZ((int) (currentTimeMillis / 1000));
+            // 14 empty days
+            chartRpis.setDays(daysSinceEpochLocalTZ-13, daysSinceEpochLocalTZ, normalBarColor, "RPIs", false, this);
             chartRpis.setFormatAndRefresh(this);
             showExtractionError();
             showMatchingNotPossible();
@@ -308,42 +387,81 @@ public class MainActivity extends AppCompatActivity {
 
         // 2nd Section: Diagnosis Keys
 
-        if (CWCApplication.appMode == NORMAL_MODE || CWCApplication.appMode == RAMBLE_MODE) {
+        if (retainedResults.getDiagnosisKeysList() != null) {
+            Log.d(TAG, "Using the retained Diagnosis Keys.");
+            diagnosisKeysList = retainedResults.getDiagnosisKeysList();
+            diagnosisKeyHistogram = retainedResults.getDiagnosisKeyHistogram();
+            processDownloadedDiagnosisKeys(diagnosisKeysList);
+        } else if (CWCApplication.appMode == NORMAL_MODE || CWCApplication.appMode == RAMBLE_MODE) {
             diagnosisKeysList = new ArrayList<>();
-            diagnosisKeysDownload = new DKDownload(this, diagnosisKeysList);
-            diagnosisKeysUrls = new LinkedList<>();
-            diagnosisKeysDownload.availableDatesRequest(new availableDatesResponseCallbackCommand(),
-                    new errorResponseCallbackCommand());
-            // (the rest is done asynchronously in callback functions)
-        } else if (CWCApplication.appMode == DEMO_MODE) {
+            diagnosisKeyHistogram = newDiagnosisKeyHistogram();
+            List<String> regions = Arrays.asList(getResources().getStringArray(R.array.dk_download_regions));
+            diagnosisKeysDownload = new DKDownload(BackgroundSyncWorker.getPackageDir(this), regions,
+                    getResources().getInteger(R.integer.dk_download_max_concurrent_requests));
+            taskScheduler.getCancellationToken().onCancel(diagnosisKeysDownload::cancel);
             try {
-                InputStream inputStream = getAssets().open("demo_dks.zip");
-                byte[] buffer = new byte[100000];
+                signatureVerifier = new SignatureVerifier(
+                        Base64.decode(getString(R.string.dk_signature_public_key), Base64.DEFAULT), 1);
+                // the verifications that have been started outlive this activity, see processFileResponse()
+                retainedResults.getTaskScheduler().getCancellationToken().onCancel(signatureVerifier::shutdown);
+            } catch (GeneralSecurityException e) {
+                Log.e(TAG, "Invalid public key for signature verification", e);
+            }
+            diagnosisKeysDownload.start(minDate);
+            startDownloadProcessing();
+            // (the rest is done asynchronously in a background thread)
+        } else if (CWCApplication.appMode == DEMO_MODE) {
+            diagnosisKeysList = new ArrayList<>();
+            diagnosisKeyHistogram = newDiagnosisKeyHistogram();
+            taskScheduler.submit("DemoKeys", this::importDemoDiagnosisKeys, ignored -> {
+                retainedResults.setDiagnosisKeysList(diagnosisKeysList, diagnosisKeyHistogram);
+                processDownloadedDiagnosisKeys(diagnosisKeysList);
+            });
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
+    private Void importDemoDiagnosisKeys(CancellationToken cancellationToken) {
+        try {
+            File packageDir = BackgroundSyncWorker.getPackageDir(this);
+            //noinspection ResultOfMethodCallIgnored
+            packageDir.mkdirs();
+            DKDownload.FileResponse response = new DKDownload.FileResponse();
+            response.url = new URL("https://tosl.org/demo_dks.zip");
+            response.file = new File(packageDir, "demo_dks.zip");
+            try (InputStream inputStream = getAssets().open("demo_dks.zip");
+                 OutputStream output = new FileOutputStream(response.file)) {
+                byte[] buffer = new byte[16*1024];
                 int bytesRead;
-                ByteArrayOutputStream output = new ByteArrayOutputStream();
                 while ((bytesRead = inputStream.read(buffer)) != -1) {
                     output.write(buffer, 0, bytesRead);
                 }
-                DKDownload.FileResponse response = new DKDownload.FileResponse();
-                response.url = new URL("https://tosl.org/demo_dks.zip");
-                response.fileBytes = output.toByteArray();
-
-                diagnosisKeysList = new ArrayList<>();
-                numDiagnosisKeysUrls = 1;
-                new downloadCompleteCallbackCommand().execute(response, diagnosisKeysList);
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-        } else {
-            throw new IllegalStateException();
+
+            processFileResponse(response);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        return null;
     }
 
-    public class errorResponseCallbackCommand implements DKDownload.CallbackCommand {
-        public void execute(Object data, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList) {
-            showDownloadError();
-            showMatchingNotPossible();
+    @Override
+    protected void onDestroy() {
+        // returns right away, the running stages stop within milliseconds,
+        // and the download is cancelled by the token
+        taskScheduler.cancel();
+        // the matching and the signature verifications go on, for a recreated activity
+        retainedResults.setListener(null);
+        if (liveMatches != null) {
+            matchEntryContent.matchEntries.setDailyMatchingDkCountListener(null);
+        }
+        if (isFinishing()) {
+            // the user has left the app, don't hold on to the RPIs until the process ends
+            retainedResults.discard();
+            CWCApplication.setRetainedResults(null);
         }
+        super.onDestroy();
     }
 
     private void showExtractionError() {
@@ -377,82 +495,122 @@ public class MainActivity extends AppCompatActivity {
                 permissions[0].equals(Manifest.permission.WRITE_EXTERNAL_STORAGE) &&
                 grantResults[0] == PackageManager.PERMISSION_GRANTED)
         {
-            toggleAppModeOnNextPossibleOccasion();
+            toggleAppMode();
         }
     }
 
-    public class availableDatesResponseCallbackCommand implements DKDownload.CallbackCommand {
-        public void execute(Object data, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList) {
-            // get Daily Diagnosis Keys URLs for the previous days
-            @SuppressWarnings("unchecked") LinkedList<Date> availableDates = (LinkedList<Date>) data;
-            for (Date date : availableDates) {
-                if (date.compareTo(minDate) >= 0) {  // date >= minDate
-                    diagnosisKeysUrls.add(diagnosisKeysDownload.getDailyDKsURLForDate(date));
+    private void startDownloadProcessing() {
+        taskScheduler.submit("DownloadProcessing", cancellationToken -> {
+            // the downloaded files of all regions arrive here through one queue
+            try {
+                DKDownload.FileResponse fileResponse;
+                while ((fileResponse = diagnosisKeysDownload.takeNext()) != null) {
+                    processFileResponse(fileResponse);
+                }
+            } catch (InterruptedException e) {
+                return null;  // cancelled
+            } finally {
+                if (signatureVerifier != null) {
+                    signatureVerifier.shutdownWhenDone();
                 }
             }
-            if (availableDates.size() > 0) {
-                // get Hourly Diagnosis Keys URLs for the current day
-                Calendar c = Calendar.getInstance();
-                c.setTime(availableDates.getLast());
-                c.add(Calendar.DATE, 1);
-                currentDate = c.getTime();
-                diagnosisKeysDownload.availableHoursForDateRequest(currentDate, new availableHoursResponseCallbackCommand());
-            } else {
+            return null;
+        }, ignored -> {
+            if (diagnosisKeysDownload.allRegionsFailed()) {
                 showDownloadError();
+                showMatchingNotPossible();
+            } else {
+                List<String> failedRegions = diagnosisKeysDownload.getFailedRegions();
+                if (!failedRegions.isEmpty()) {
+                    Log.w(TAG, "Download failed for regions: " + failedRegions);
+                }
+                retainedResults.setDiagnosisKeysList(diagnosisKeysList, diagnosisKeyHistogram);
+                processDownloadedDiagnosisKeys(diagnosisKeysList);
             }
-        }
+        });
     }
 
-    public class availableHoursResponseCallbackCommand implements DKDownload.CallbackCommand {
-        public void execute(Object data, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList) {
-            // get Hourly Diagnosis Keys URLs for the current day
-            @SuppressWarnings("unchecked") LinkedList<String> availableHours = (LinkedList<String>) data;
-            for (String hour : availableHours) {
-                diagnosisKeysUrls.add(diagnosisKeysDownload.getHourlyDKsURLForDateAndHour(currentDate, hour));
+    private void processFileResponse(DKDownload.FileResponse fileResponse) {
+        Log.d(TAG, "Download complete: " + fileResponse.url);
+
+        // parse the keys while unzipping them from the downloaded file
+        DiagnosisKeysImport diagnosisKeysImport;
+        try (InputStream exportDotBin = openUnzippedStream(fileResponse.file, "export.bin")) {
+            diagnosisKeysImport = new DiagnosisKeysImport(
+                    exportDotBin != null ? exportDotBin : new ByteArrayInputStream(new byte[0]));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not unzip: " + fileResponse.file + ": " + e);
+            return;
+        }
+        if (!diagnosisKeysImport.isHeaderValid()) {
+            taskScheduler.post(this::showInvalidKeyFileHeader);
+        }
+        List<DiagnosisKeysProtos.TemporaryExposureKey> dkList = diagnosisKeysImport.getDiagnosisKeys();
+        if (diagnosisKeysImport.getRegion() != null) {
+            fileResponse.region = diagnosisKeysImport.getRegion();
+        }
+        if (dkList != null) {
+            Log.d(TAG, "Number of keys in this file: " + dkList.size() + " (region: " + fileResponse.region + ")");
+            DiagnosisKeySources.Package keyPackage = diagnosisKeySources.addPackage(dkList);
+            List<DiagnosisKeysProtos.TemporaryExposureKey> addedDks = keyPackage.addedDks;
+            DiagnosisKeyHistogram addedDksHistogram = diagnosisKeyHistogram.newEmptyCopy();
+            for (DiagnosisKeysProtos.TemporaryExposureKey dk : addedDks) {
+                addedDksHistogram.add(fileResponse.region, dk);
+            }
+            diagnosisKeysList.addAll(addedDks);
+            // the chart grows with each file
+            taskScheduler.post(() -> {
+                diagnosisKeyHistogram.merge(addedDksHistogram);
+                presentDiagnosisKeyHistogram();
+            });
+
+            // Verify the signature in the background. The keys are used right away, if the verification fails later,
+            // the matches of the keys that are not contained in another (verified or pending) package are retracted.
+            // The result goes to the RetainedResults, so it still counts if this activity has been recreated
+            // in the meantime: the keys are retained, and so are the matches, see startMatching().
+            if (signatureVerifier != null) {
+                MatchEntryContent matchEntryContent = this.matchEntryContent;
+                RetainedResults retainedResults = this.retainedResults;
+                DiagnosisKeySources diagnosisKeySources = this.diagnosisKeySources;
+                signatureVerifier.verifyAsync(fileResponse.file, verified -> {
+                    if (!verified) {
+                        quarantineDiagnosisKeys(fileResponse, diagnosisKeySources.failPackage(keyPackage),
+                                matchEntryContent, retainedResults);
+                    }
+                });
             }
-            // Now we have all Diagnosis Keys URLs, let's process them
-            numDiagnosisKeysUrls = diagnosisKeysUrls.size();
-            processUrlList();
         }
     }
 
-    private void processUrlList() {
-        if (numDiagnosisKeysUrls > 0) {
-            for (URL url : diagnosisKeysUrls) {
-                Log.d(TAG, "Going to download: " + url);
-                diagnosisKeysDownload.dkFileRequest(url, new downloadCompleteCallbackCommand(),
-                        new errorResponseCallbackCommand());
-            }
-        } else {
-            processDownloadedDiagnosisKeys(diagnosisKeysList);
+    private void showInvalidKeyFileHeader() {
+        if (isDestroyed()) {
+            return;
         }
+        Toast toast = Toast.makeText(this, R.string.error_download_invalid_key_file_header, Toast.LENGTH_LONG);
+        toast.setGravity(Gravity.CENTER, 0, 0);
+        toast.show();
     }
 
-    public class downloadCompleteCallbackCommand implements DKDownload.CallbackCommand {
-        public void execute(Object data, ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList) {
-            DKDownload.FileResponse fileResponse = (DKDownload.FileResponse) data;
-            Log.d(TAG, "Download complete: " + fileResponse.url);
-
-            // unzip the data
-            byte[] exportDotBinBytes = {};
-            try {
-                exportDotBinBytes = getUnzippedBytesFromZipFileBytes(fileResponse.fileBytes, "export.bin");
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            DiagnosisKeysImport diagnosisKeysImport = new DiagnosisKeysImport(exportDotBinBytes, getApplicationContext());
-            List<DiagnosisKeysProtos.TemporaryExposureKey> dkList = diagnosisKeysImport.getDiagnosisKeys();
-            if (dkList != null) {
-                Log.d(TAG, "Number of keys in this file: " + dkList.size());
-                diagnosisKeysList.addAll(dkList);
-            }
+    // static: called on a verification thread, also after the activity has been recreated
+    private static void quarantineDiagnosisKeys(DKDownload.FileResponse fileResponse,
+                                                List<DiagnosisKeysProtos.TemporaryExposureKey> dks,
+                                                MatchEntryContent matchEntryContent,
+                                                RetainedResults retainedResults) {
+        Log.w(TAG, "Signature verification failed, ignoring " + dks.size() + " keys from: " + fileResponse.url);
+        // so that it is downloaded again, instead of being taken from the package cache
+        if (!fileResponse.file.delete()) {
+            Log.w(TAG, "Could not delete: " + fileResponse.file);
+        }
+        matchEntryContent.matchEntries.quarantine(dks);
+        retainedResults.getTaskScheduler().post(retainedResults::setDiagnosisKeysQuarantined);
+    }
 
-            numDiagnosisKeysUrls--;
-            Log.d(TAG, "Downloads left: " + numDiagnosisKeysUrls);
-            if (numDiagnosisKeysUrls <= 0) {  // all files have been downloaded
-                processDownloadedDiagnosisKeys(diagnosisKeysList);
-            }
+    private void showSignatureVerificationFailed() {
+        Toast toast = Toast.makeText(this, R.string.error_download_signature_verification_failed, Toast.LENGTH_LONG);
+        toast.setGravity(Gravity.CENTER, 0, 0);
+        toast.show();
+        if (matchingFinished) {
+            presentMatchResults();  // redraw without the retracted matches
         }
     }
 
@@ -460,146 +618,243 @@ public class MainActivity extends AppCompatActivity {
         // Count the downloaded Diagnosis Keys
         Log.d(TAG, "Number of keys that have been downloaded: " + diagnosisKeysList.size());
 
-        TreeMap<Integer, Integer> diagnosisKeyCountMap = new TreeMap<>();  // Key: ENIN (==date), Value: count
-        int minENIN = getENINFromDate(minDate);
-        int maxENIN = getENINFromDate(maxDate);
-        for (int ENIN = minENIN; ENIN <= maxENIN; ENIN += standardRollingPeriod) {
-            diagnosisKeyCountMap.put(ENIN, 0);
-        }
-        int count = 0;
-        for (DiagnosisKeysProtos.TemporaryExposureKey diagnosisKeyEntry : diagnosisKeysList) {
-            int ENIN = diagnosisKeyEntry.getRollingStartIntervalNumber();
-            Integer bin = diagnosisKeyCountMap.floorKey(ENIN);
-            if (bin != null) {
-                Integer binCount = diagnosisKeyCountMap.get(bin);
-                if (binCount != null) {
-                    binCount++;
-                    diagnosisKeyCountMap.put(bin, binCount);
+        // already counted while the keys have been imported
+        presentDiagnosisKeyHistogram();
+
+        if ((rpiList != null) && (!rpiList.isEmpty())) {
+            if (retainedResults.isMatchingFinished()) {
+                Log.d(TAG, "Using the retained matches.");
+                matchEntryContent = retainedResults.getMatchEntryContent();
+                matchingFinished = true;
+                presentMatchResults();
+            } else if (retainedResults.isMatchingRunning()) {
+                Log.d(TAG, "Continuing to show the running matching.");
+                matchEntryContent = retainedResults.getLiveMatchEntryContent();
+                if (retainedResults.hasPrecomputedMatchEntryContent()) {
+                    presentMatchResults();
+                } else {
+                    startLiveMatches(matchEntryContent);
+                }
+                if (retainedResults.getMatchingPercent() >= 0) {
+                    showMatchingProgress(retainedResults.getMatchingPercent(), retainedResults.getMatchingNumMatches());
+                } else {
+                    textViewMatches.setText(getString(R.string.title_matching_not_done_yet));
                 }
-                count++;
+            } else {
+                textViewMatches.setText(getString(R.string.title_matching_not_done_yet));
+                startMatching(diagnosisKeysList);
             }
         }
+    }
 
-        textViewDks.setText(getString(R.string.title_diagnosis_keys_downloaded, count));
-
-        List<BarEntry> dataPoints2 = new ArrayList<>();
+    private DiagnosisKeyHistogram newDiagnosisKeyHistogram() {
+        return new DiagnosisKeyHistogram(getDaysSinceEpochFromENIN(getENINFromDate(minDate)),
+                getDaysSinceEpochFromENIN(getENINFromDate(maxDate)));
+    }
 
-        for (Integer ENIN : diagnosisKeyCountMap.keySet()) {
-            Integer numEntriesInteger = diagnosisKeyCountMap.get(ENIN);
-            int numEntries = 0;
-            if (numEntriesInteger != null) {
-                numEntries = numEntriesInteger;
-            }
-            //Log.d(TAG, "Datapoint: " + ENIN + ": " + numEntries);
-            dataPoints2.add(new BarEntry(getDaysSinceEpochFromENIN(ENIN), numEntries));
+    private void presentDiagnosisKeyHistogram() {
+        textViewDks.setText(getString(R.string.title_diagnosis_keys_downloaded, diagnosisKeyHistogram.getTotalCount()));
+        chartDks.setDays(diagnosisKeyHistogram.getFirstDaysSinceEpoch(), diagnosisKeyHistogram.getLastDaysSinceEpoch(),
+                normalBarColor, "DKs", false, this);
+        for (int day = diagnosisKeyHistogram.getFirstDaysSinceEpoch();
+             day <= diagnosisKeyHistogram.getLastDaysSinceEpoch(); day++) {
+            chartDks.setValue(day, diagnosisKeyHistogram.getCount(day));
         }
-
-        chartDks.setData(dataPoints2, normalBarColor,"DKs", false, this);
         chartDks.setFormatAndRefresh(this);
-
-        if ((rpiList != null) && (!rpiList.isEmpty())) {
-            textViewMatches.setText(getString(R.string.title_matching_not_done_yet));
-            startMatching(diagnosisKeysList);
-        }
     }
 
-    public Handler uiThreadHandler;
-    public HandlerThread backgroundMatcher;
-
+    /*
+     The matching runs on the TaskScheduler of the RetainedResults, so it is not cancelled when this activity
+     is recreated (e.g. by rotating the device): the next one continues to show it,
+     see processDownloadedDiagnosisKeys(). So the stage must not refer to this activity.
+     */
     private void startMatching(ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList) {
-        backgroundThreadsRunning = true;  // required so that DEMO_MODE toggle can safely stop the background threads
-        backgroundThreadsShouldStop = false;
+        RpiList rpiList = this.rpiList;
+        MatchEntryContent matchEntryContent = this.matchEntryContent;
+        RetainedResults retainedResults = this.retainedResults;
+        TaskScheduler retainedTaskScheduler = retainedResults.getTaskScheduler();
+        Context applicationContext = getApplicationContext();
+        retainedResults.setMatchingStarted(matchEntryContent);
+        // the precomputed matches are complete, so they are shown instead of those found so far
+        if (!retainedResults.hasPrecomputedMatchEntryContent()) {
+            startLiveMatches(matchEntryContent);
+        }
+        retainedTaskScheduler.submit("BackgroundMatcher", cancellationToken -> {
+            android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
 
-        uiThreadHandler = new Handler(Looper.getMainLooper()) {
-            @Override
-            public void handleMessage(@SuppressWarnings("NullableProblems") Message inputMessage) {
-                Log.d(TAG, "Message received: Matching finished.");
-                presentMatchResults();
+            boolean finished = false;
+            if ((rpiList != null) && (diagnosisKeysList.size() != 0)) {
+                Matcher matcher = new Matcher(rpiList, diagnosisKeysList, matchEntryContent,
+                        CWCApplication.getDayBoundaries());
+                matcher.setNumWorkers(Runtime.getRuntime().availableProcessors());
+                finished = matcher.findMatches(
+                        (percent, numMatches) -> retainedTaskScheduler.post(
+                                () -> retainedResults.setMatchingProgress(percent, numMatches)),
+                        cancellationToken);
+                // also if it has been cancelled: the metrics say how far it got
+                MatcherMetrics matcherMetrics = matcher.getMetrics();
+                matcherMetrics.device = Build.MANUFACTURER + " " + Build.MODEL + " (API " + Build.VERSION.SDK_INT + ")";
+                CWCApplication.setMatcherMetrics(matcherMetrics);
+                // also dump it where it can be pulled from the device without root
+                File metricsDir = applicationContext.getExternalFilesDir(null);
+                if (metricsDir != null) {
+                    try {
+                        matcherMetrics.writeJson(new File(metricsDir, "matcher_metrics.json"));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                Log.d(TAG, "Finished matching.");
             }
-        };
-
-        backgroundMatcher = new HandlerThread("BackgroundMatcher");
-        backgroundMatcher.start();
-        Handler backgroundThreadHandler = new Handler(backgroundMatcher.getLooper());
-        backgroundThreadHandler.post(new BackgroundMatching(this, diagnosisKeysList));
+            return finished;
+        }, retainedResults::setMatchingFinished);
     }
 
-    private class BackgroundMatching implements Runnable {
-        private final MainActivity mainActivity;
-        private final ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList;
-
-        BackgroundMatching(MainActivity theMainActivity,
-                           ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList) {
-            mainActivity = theMainActivity;
-            this.diagnosisKeysList = diagnosisKeysList;
+    /*
+     Shows the matches found so far, and then grows the chart with the matches found from now on.
+     */
+    private void startLiveMatches(MatchEntryContent matchEntryContent) {
+        SortedSet<Integer> rpiListDaysSinceEpochLocalTZ = rpiList.getAvailableDaysSinceEpochLocalTZ();
+        chartMatches.setDays(rpiListDaysSinceEpochLocalTZ.first(), rpiListDaysSinceEpochLocalTZ.last(),
+                matchBarColor, "Matches", true, this);
+        liveMatches = new CoalescingDeltaChannel(
+                getResources().getInteger(R.integer.live_match_updates_per_second), taskScheduler::post,
+                this::presentLiveMatches);
+        SortedMap<Integer, MatchEntryContent.DailyCounts> dailyCountsMap;
+        // in one step, so that each match is either in the snapshot or in the deltas
+        synchronized (matchEntryContent.matchEntries) {
+            matchEntryContent.matchEntries.setDailyMatchingDkCountListener(liveMatches::publish);
+            dailyCountsMap = matchEntryContent.matchEntries.getDailyCounts();
+        }
+        for (Map.Entry<Integer, MatchEntryContent.DailyCounts> dailyCounts : dailyCountsMap.entrySet()) {
+            chartMatches.addToValue(dailyCounts.getKey(), dailyCounts.getValue().dailyMatchingDkCount);
         }
+        chartMatches.setFormatAndRefresh(this);
+    }
 
-        @Override
-        public void run() {
-            android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+    private void showMatchingProgress(int percent, int numMatches) {
+        textViewMatches.setText(getString(R.string.title_matching_not_done_yet_with_progress, percent, numMatches));
+    }
 
-            if ((rpiList != null) && (diagnosisKeysList.size() != 0)) {
-                MatchEntryContent matchEntryContent = new MatchEntryContent();
-                Matcher matcher = new Matcher(rpiList, diagnosisKeysList, matchEntryContent);
-                matcher.findMatches(
-                        progress -> runOnUiThread(
-                                () -> textViewMatches.setText(getResources().getString(R.string.
-                                        title_matching_not_done_yet_with_progress, progress.first, progress.second))));
-                Log.d(TAG, "Finished matching, sending the message...");
-                CWCApplication.setMatchEntryContent(matchEntryContent);
-            }
-            backgroundThreadsRunning = false;
-            backgroundThreadsShouldStop = false;
-            Message completeMessage = mainActivity.uiThreadHandler.obtainMessage();
-            completeMessage.sendToTarget();
+    /*
+     Grows the chart while matching is still running, so that days with matches can be tapped already.
+     presentMatchResults() draws the final result.
+     */
+    private void presentLiveMatches(SortedMap<Integer, Integer> deltas) {
+        if (matchingFinished || retainedResults.hasPrecomputedMatchEntryContent()) {
+            return;
         }
+        for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+            chartMatches.addToValue(delta.getKey(), delta.getValue());
+        }
+        chartMatches.setFormatAndRefresh(this);
     }
 
     private void presentMatchResults() {
-        MatchEntryContent matchEntryContent = CWCApplication.getMatchEntryContent();
+        MatchEntryContent matchEntryContent = retainedResults.getMatchEntryContent();
         if ((rpiList != null) && (diagnosisKeysList != null) && (matchEntryContent != null)) {
-            int numberOfMatches = 0;
-            if (matchEntryContent.matchEntries != null) {
-                numberOfMatches = matchEntryContent.matchEntries.getTotalMatchingDkCount();
-            }
-            Resources res = getResources();
-            if (numberOfMatches > 0) {
-                textViewMatches.setText(res.getQuantityString(R.plurals.title_number_of_matches_found, numberOfMatches, numberOfMatches));
-                textViewMatches.setTextColor(matchBarColor);
-            } else {
-                textViewMatches.setText(R.string.title_no_matches_found);
+            presentMatches(matchEntryContent, rpiList.getAvailableDaysSinceEpochLocalTZ());
+        } else {
+            showMatchingNotPossible();
+        }
+    }
+
+    /*
+     The matches that have been precomputed by the background sync, as soon as they have been loaded.
+     Until the RPIs have been extracted, they are drawn over the last 14 days,
+     processExtractedRpis() draws them again over the days of the fresh RPIs.
+     */
+    private void presentPrecomputedMatches() {
+        SortedSet<Integer> daysSinceEpochLocalTZList;
+        if ((rpiList != null) && (!rpiList.isEmpty())) {
+            daysSinceEpochLocalTZList = rpiList.getAvailableDaysSinceEpochLocalTZ();
+        } else {
+            int today = CWCApplication.getDayBoundaries().getDaysSinceEpochLocalTZ(
+                    (int) (System.currentTimeMillis() / 1000));
+            daysSinceEpochLocalTZList = new TreeSet<>();
+            for (int daysSinceEpochLocalTZ = today - 13; daysSinceEpochLocalTZ <= today; daysSinceEpochLocalTZ++) {
+                daysSinceEpochLocalTZList.add(daysSinceEpochLocalTZ);
             }
-            Log.d(TAG, "Number of matches: " + numberOfMatches);
+        }
+        presentMatches(retainedResults.getMatchEntryContent(), daysSinceEpochLocalTZList);
+    }
 
-            List<BarEntry> dataPoints3 = new ArrayList<>();
-            SortedSet<Integer> rpiListDaysSinceEpochLocalTZ = rpiList.getAvailableDaysSinceEpochLocalTZ();
-            int total = 0;
-            for (Integer daysSinceEpochLocalTZ : rpiListDaysSinceEpochLocalTZ) {
-                int dailyCount = 0;
-                if (matchEntryContent.matchEntries != null) {
-                    MatchEntryContent.DailyMatchEntries dailyMatchEntries = matchEntryContent.matchEntries.getDailyMatchEntries(daysSinceEpochLocalTZ);
-                    if (dailyMatchEntries != null) {
-                        dailyCount = dailyMatchEntries.getDailyMatchingDkCount();
-                    }
+    /*
+     Draws the matches of the given days.
+     */
+    private void presentMatches(MatchEntryContent matchEntryContent, SortedSet<Integer> daysSinceEpochLocalTZList) {
+        int numberOfMatches = 0;
+        if (matchEntryContent.matchEntries != null) {
+            numberOfMatches = matchEntryContent.matchEntries.getTotalMatchingDkCount();
+        }
+        Resources res = getResources();
+        if (numberOfMatches > 0) {
+            textViewMatches.setText(res.getQuantityString(R.plurals.title_number_of_matches_found, numberOfMatches, numberOfMatches));
+            textViewMatches.setTextColor(matchBarColor);
+        } else {
+            textViewMatches.setText(R.string.title_no_matches_found);
+        }
+        Log.d(TAG, "Number of matches: " + numberOfMatches);
+
+        chartMatches.setDays(daysSinceEpochLocalTZList.first(), daysSinceEpochLocalTZList.last(),
+                matchBarColor, "Matches", true, this);
+        int total = 0;
+        double maxWeightedExposureMinutes = 0.0;
+        int maxRiskDaysSinceEpochLocalTZ = 0;
+        // one consistent snapshot of all days
+        SortedMap<Integer, MatchEntryContent.DailyCounts> dailyCountsMap = matchEntryContent.matchEntries.getDailyCounts();
+        for (Integer daysSinceEpochLocalTZ : daysSinceEpochLocalTZList) {
+            int dailyCount = 0;
+            MatchEntryContent.DailyCounts dailyCounts = dailyCountsMap.get(daysSinceEpochLocalTZ);
+            if (dailyCounts != null) {
+                dailyCount = dailyCounts.dailyMatchingDkCount;
+                // the exposure risk has been scored during matching, no need to decode the scan records here
+                double weightedExposureMinutes = dailyCounts.dailyExposureRisk.getWeightedExposureMinutes();
+                if (weightedExposureMinutes > maxWeightedExposureMinutes) {
+                    maxWeightedExposureMinutes = weightedExposureMinutes;
+                    maxRiskDaysSinceEpochLocalTZ = daysSinceEpochLocalTZ;
                 }
-                //Log.d(TAG, "Datapoint: " + daysSinceEpochLocalTZ + ": " + count);
-                dataPoints3.add(new BarEntry(daysSinceEpochLocalTZ, dailyCount));
-                total += dailyCount;
             }
-            Log.d(TAG, "Number of matches displayed: " + total);
+            //Log.d(TAG, "Datapoint: " + daysSinceEpochLocalTZ + ": " + count);
+            chartMatches.setValue(daysSinceEpochLocalTZ, dailyCount);
+            total += dailyCount;
+        }
+        Log.d(TAG, "Number of matches displayed: " + total);
+        if (maxWeightedExposureMinutes > 0.0) {
+            String deviceDateFormat = android.text.format.DateFormat.getBestDateTimePattern(Locale.getDefault(), "dM");
+            DateFormat dateFormat = new SimpleDateFormat(deviceDateFormat, Locale.getDefault());
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            // UTC because we don't want DateFormat to do additional time zone compensation
+            String dateStr = dateFormat.format(new Date(getMillisFromDays(maxRiskDaysSinceEpochLocalTZ)));
+            textViewMatches.append("\n" + res.getString(R.string.title_max_weighted_exposure_minutes,
+                    (int) Math.ceil(maxWeightedExposureMinutes), dateStr));
+        }
 
-            chartMatches.setData(dataPoints3, matchBarColor, "Matches", true, this);
-            chartMatches.setFormatAndRefresh(this);
+        chartMatches.setFormatAndRefresh(this);
 
-            // End of this path.
-            // From now on, the user can scroll the charts,
-            // or tap on a match to reach the DisplayDetailsActivity.
+        // End of this path.
+        // From now on, the user can scroll the charts,
+        // or tap on a match to reach the DisplayDetailsActivity.
+    }
 
-            if (appModeShouldToggle) {
-                toggleAppModeNow();
+    class RetainedResultsListener implements RetainedResults.Listener {
+        @Override
+        public void onMatchingProgress(int percent, int numMatches) {
+            showMatchingProgress(percent, numMatches);
+        }
+
+        @Override
+        public void onMatchingFinished() {
+            if (liveMatches != null) {
+                matchEntryContent.matchEntries.setDailyMatchingDkCountListener(null);
             }
-        } else {
-            showMatchingNotPossible();
+            matchingFinished = true;
+            presentMatchResults();
+        }
+
+        @Override
+        public void onDiagnosisKeysQuarantined() {
+            showSignatureVerificationFailed();
         }
     }
 
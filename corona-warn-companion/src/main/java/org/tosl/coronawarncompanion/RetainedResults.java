@@ -0,0 +1,254 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeyHistogram;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+import org.tosl.coronawarncompanion.tasks.TaskScheduler;
+
+import java.util.ArrayList;
+
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromMillis;
+
+/*
+ The results of the extraction, the download and the matching of MainActivity, retained while the app is
+ in use, so that a recreated MainActivity (e.g. after rotating the device or switching the theme) redraws
+ them instead of computing them again. DisplayDetailsActivity shows the matches from here, too.
+
+ Invalidation policy: the results are valid for one app mode, time zone offset and local day,
+ and for at most maxAgeMillis (new Diagnosis Keys are published several times a day).
+ MainActivity discards them when it is finished (the user has left the app).
+ Each part is only set when its stage has finished successfully; a stage that has been cancelled is done again.
+ The exceptions are the matching and the signature verifications: they run on the TaskScheduler of the
+ RetainedResults, which is only cancelled by discard(), so a recreated MainActivity attaches itself as the
+ Listener and shows the matches found so far, instead of matching again from the start.
+ Only accessed on the UI thread.
+ */
+public class RetainedResults {
+
+    private static final String TAG = "RetainedResults";
+
+    /*
+     The background work of the RetainedResults reports to the MainActivity that is currently shown,
+     on the UI thread.
+     */
+    public interface Listener {
+        void onMatchingProgress(int percent, int numMatches);
+        void onMatchingFinished();
+        void onDiagnosisKeysQuarantined();
+    }
+
+    private final TaskScheduler taskScheduler =
+            new TaskScheduler(TAG, new Handler(Looper.getMainLooper())::post);
+    private Listener listener = null;
+
+    private final CWCApplication.AppModeOptions appMode;
+    private final int timeZoneOffsetSeconds;
+    private final int daysSinceEpochLocalTZ;
+    private final long createdElapsedRealtime;
+    private final long maxAgeMillis;
+
+    private RpiList rpiList = null;
+
+    private ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList = null;
+    private DiagnosisKeyHistogram diagnosisKeyHistogram = null;  // of diagnosisKeysList
+
+    private MatchEntryContent matchEntryContent = null;  // of a finished matching
+    private MatchEntryContent precomputedMatchEntryContent = null;  // by the background sync, shown until then
+    private MatchEntryContent liveMatchEntryContent = null;  // of a running matching, shown if nothing is precomputed
+    private boolean matchingRunning = false;
+    private int matchingPercent = -1;  // of the running matching, -1 until the first progress
+    private int matchingNumMatches = 0;
+
+    public RetainedResults(CWCApplication.AppModeOptions appMode, int timeZoneOffsetSeconds, long maxAgeMillis) {
+        this.appMode = appMode;
+        this.timeZoneOffsetSeconds = timeZoneOffsetSeconds;
+        this.daysSinceEpochLocalTZ = getDaysFromMillis(System.currentTimeMillis() + timeZoneOffsetSeconds * 1000L);
+        this.createdElapsedRealtime = SystemClock.elapsedRealtime();
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public boolean isValidFor(CWCApplication.AppModeOptions appMode, int timeZoneOffsetSeconds) {
+        return appMode == this.appMode &&
+                timeZoneOffsetSeconds == this.timeZoneOffsetSeconds &&
+                getDaysFromMillis(System.currentTimeMillis() + timeZoneOffsetSeconds * 1000L) == daysSinceEpochLocalTZ &&
+                SystemClock.elapsedRealtime() - createdElapsedRealtime <= maxAgeMillis;
+    }
+
+    /*
+     Runs the matching and the signature verifications, which are not cancelled when MainActivity is recreated.
+     */
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    /*
+     null when the MainActivity is destroyed.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /*
+     Releases everything, incl. the spill files of a memory-bounded RpiList,
+     and stops the matching and the signature verifications.
+     */
+    public void discard() {
+        taskScheduler.cancel();
+        listener = null;
+        if (rpiList != null) {
+            rpiList.deleteSpillFiles();
+        }
+        rpiList = null;
+        precomputedMatchEntryContent = null;
+        discardDiagnosisKeys();
+    }
+
+    /*
+     Returns null if the extraction has not finished yet (or has failed, then it is tried again).
+     */
+    public RpiList getRpiList() {
+        return rpiList;
+    }
+
+    public void setRpiList(RpiList rpiList) {
+        this.rpiList = rpiList;
+    }
+
+    /*
+     Returns null if the download has not finished yet (or has failed).
+     */
+    public ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> getDiagnosisKeysList() {
+        return diagnosisKeysList;
+    }
+
+    public DiagnosisKeyHistogram getDiagnosisKeyHistogram() {
+        return diagnosisKeyHistogram;
+    }
+
+    public void setDiagnosisKeysList(ArrayList<DiagnosisKeysProtos.TemporaryExposureKey> diagnosisKeysList,
+                                     DiagnosisKeyHistogram diagnosisKeyHistogram) {
+        this.diagnosisKeysList = diagnosisKeysList;
+        this.diagnosisKeyHistogram = diagnosisKeyHistogram;
+    }
+
+    /*
+     The matches depend on the keys, so they are discarded, too.
+     */
+    private void discardDiagnosisKeys() {
+        diagnosisKeysList = null;
+        diagnosisKeyHistogram = null;
+        matchEntryContent = null;
+        liveMatchEntryContent = null;
+        matchingRunning = false;
+    }
+
+    public boolean isMatchingFinished() {
+        return matchEntryContent != null;
+    }
+
+    public void setMatchEntryContent(MatchEntryContent matchEntryContent) {
+        this.matchEntryContent = matchEntryContent;
+        this.liveMatchEntryContent = null;
+    }
+
+    /*
+     liveMatchEntryContent: filled by the matching that has been submitted to getTaskScheduler()
+     */
+    public void setMatchingStarted(MatchEntryContent liveMatchEntryContent) {
+        this.liveMatchEntryContent = liveMatchEntryContent;
+        matchingRunning = true;
+        matchingPercent = -1;
+        matchingNumMatches = 0;
+    }
+
+    public boolean isMatchingRunning() {
+        return matchingRunning;
+    }
+
+    /*
+     The matches found so far by the running matching.
+     */
+    public MatchEntryContent getLiveMatchEntryContent() {
+        return liveMatchEntryContent;
+    }
+
+    public int getMatchingPercent() {
+        return matchingPercent;
+    }
+
+    public int getMatchingNumMatches() {
+        return matchingNumMatches;
+    }
+
+    public void setMatchingProgress(int percent, int numMatches) {
+        matchingPercent = percent;
+        matchingNumMatches = numMatches;
+        if (listener != null) {
+            listener.onMatchingProgress(percent, numMatches);
+        }
+    }
+
+    /*
+     finished: false if there was nothing to match, then the live matches stay the ones to show
+     */
+    public void setMatchingFinished(boolean finished) {
+        matchingRunning = false;
+        if (finished) {
+            setMatchEntryContent(liveMatchEntryContent);
+        }
+        if (listener != null) {
+            listener.onMatchingFinished();
+        }
+    }
+
+    /*
+     After the signature verification of some of the keys has failed, and their matches have been retracted.
+     */
+    public void setDiagnosisKeysQuarantined() {
+        if (listener != null) {
+            listener.onDiagnosisKeysQuarantined();
+        }
+    }
+
+    public boolean hasPrecomputedMatchEntryContent() {
+        return precomputedMatchEntryContent != null;
+    }
+
+    public void setPrecomputedMatchEntryContent(MatchEntryContent precomputedMatchEntryContent) {
+        this.precomputedMatchEntryContent = precomputedMatchEntryContent;
+    }
+
+    /*
+     The matches to show: those of the finished matching, or until then the precomputed ones,
+     or else those found so far (may be null).
+     */
+    public MatchEntryContent getMatchEntryContent() {
+        if (matchEntryContent != null) {
+            return matchEntryContent;
+        }
+        return (precomputedMatchEntryContent != null) ? precomputedMatchEntryContent : liveMatchEntryContent;
+    }
+}
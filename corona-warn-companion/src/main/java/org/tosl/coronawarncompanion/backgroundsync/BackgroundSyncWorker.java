@@ -0,0 +1,269 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.backgroundsync;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import org.tosl.coronawarncompanion.CWCApplication;
+import org.tosl.coronawarncompanion.R;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysImport;
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.diagnosiskeys.SignatureVerifier;
+import org.tosl.coronawarncompanion.dkdownload.DKDownload;
+import org.tosl.coronawarncompanion.gmsreadout.ContactDbOnDisk;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryContent;
+import org.tosl.coronawarncompanion.matchentries.MatchEntryStore;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.rpis.RpiList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.tosl.coronawarncompanion.dkdownload.Unzip.openUnzippedStream;
+import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromMillis;
+import static org.tosl.coronawarncompanion.tools.Utils.getMillisFromDays;
+
+/*
+ Periodic background job (normal mode only), which runs while the device is charging and on an unmetered network:
+ 1. prefetches new Diagnosis Keys packages into the package cache (see DKDownload),
+ 2. takes a snapshot of the contact DB,
+ 3. matches the packages that have not been matched against the current RPIs yet,
+    and stores the results in the MatchEntryStore,
+ so that MainActivity can show precomputed matches right away, while it is still extracting the RPIs.
+
+ Each run is limited by a time budget and a CPU time budget. When a budget is exhausted, or when
+ WorkManager stops the job, the run ends after the current package; packages that have been matched
+ completely are kept, the remaining ones are matched in the next run.
+ */
+public class BackgroundSyncWorker extends Worker {
+    private static final String TAG = "BackgroundSyncWorker";
+
+    private static final String UNIQUE_WORK_NAME = "BackgroundSync";
+    private static final String DK_PACKAGE_DIR = "dk_packages";    // in the (internal) cache dir
+    private static final String MATCH_ENTRY_STORE_DIR = "matches";  // in the no-backup files dir
+
+    private volatile DKDownload diagnosisKeysDownload = null;
+
+    public BackgroundSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    public static File getPackageDir(Context context) {
+        return new File(context.getCacheDir(), DK_PACKAGE_DIR);
+    }
+
+    public static File getMatchEntryStoreDir(Context context) {
+        return new File(context.getNoBackupFilesDir(), MATCH_ENTRY_STORE_DIR);
+    }
+
+    /*
+     Schedules the periodic background sync. An already scheduled sync is kept as it is.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(BackgroundSyncWorker.class,
+                context.getResources().getInteger(R.integer.background_sync_interval_hours), TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(UNIQUE_WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    public static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(UNIQUE_WORK_NAME);
+    }
+
+    /*
+     Wall clock time and CPU time budget of one run. The CPU time is measured for the calling thread,
+     which does the matching (the downloads mostly wait for the network).
+     */
+    private static class Budget implements Matcher.StopCondition {
+        private final long deadlineMillis;
+        private final long cpuDeadlineMillis;
+        private final Matcher.StopCondition cancellation;
+
+        Budget(long maxMillis, long maxCpuMillis, Matcher.StopCondition cancellation) {
+            this.deadlineMillis = SystemClock.elapsedRealtime() + maxMillis;
+            this.cpuDeadlineMillis = SystemClock.currentThreadTimeMillis() + maxCpuMillis;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public boolean shouldStop() {
+            return cancellation.shouldStop() ||
+                    SystemClock.elapsedRealtime() > deadlineMillis ||
+                    SystemClock.currentThreadTimeMillis() > cpuDeadlineMillis;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (CWCApplication.appMode != CWCApplication.AppModeOptions.NORMAL_MODE) {
+            return Result.success();
+        }
+        Context context = getApplicationContext();
+        Resources res = context.getResources();
+        Budget budget = new Budget(TimeUnit.MINUTES.toMillis(res.getInteger(R.integer.background_sync_max_minutes)),
+                TimeUnit.SECONDS.toMillis(res.getInteger(R.integer.background_sync_max_cpu_seconds)),
+                this::isStopped);
+
+        // 1. Prefetch
+        long todayLastMidnightInMillis = getMillisFromDays(getDaysFromMillis(System.currentTimeMillis()));
+        Date minDate = new Date(todayLastMidnightInMillis - getMillisFromDays(14));
+        DKDownload download = new DKDownload(getPackageDir(context),
+                Arrays.asList(res.getStringArray(R.array.dk_download_regions)),
+                res.getInteger(R.integer.dk_download_max_concurrent_requests));
+        download.start(minDate);
+        diagnosisKeysDownload = download;
+        if (isStopped()) {
+            download.cancel();  // onStopped() may have been called before the download was assigned
+        }
+        List<DKDownload.FileResponse> packages = new ArrayList<>();
+        try {
+            DKDownload.FileResponse fileResponse;
+            while ((fileResponse = download.takeNext()) != null) {
+                packages.add(fileResponse);
+            }
+        } catch (InterruptedException e) {
+            download.cancel();
+            return Result.success();
+        }
+        if (budget.shouldStop()) {
+            Log.i(TAG, "Stopped after downloading.");
+            return Result.success();
+        }
+        if (download.allRegionsFailed()) {
+            Log.w(TAG, "Download failed.");
+            return Result.retry();
+        }
+        Log.d(TAG, "Packages available: " + packages.size());
+
+        // 2. Snapshot of the contact DB
+        long rpiSnapshotTimeMillis = System.currentTimeMillis();
+        RpiList rpiList = new ContactDbOnDisk(context).getRpisFromContactDB();
+        if (rpiList == null || rpiList.isEmpty()) {
+            Log.w(TAG, "No RPIs available, nothing to match.");
+            return Result.success();
+        }
+
+        // 3. Incremental matching
+        SignatureVerifier signatureVerifier = null;
+        try {
+            signatureVerifier = new SignatureVerifier(
+                    Base64.decode(res.getString(R.string.dk_signature_public_key), Base64.DEFAULT), 1);
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Invalid public key for signature verification", e);
+        }
+        int timeZoneOffsetSeconds = CWCApplication.getTimeZoneOffsetSeconds();
+        MatchEntryStore matchEntryStore = new MatchEntryStore(getMatchEntryStoreDir(context));
+        List<String> packageNames = new ArrayList<>();
+        boolean complete = true;
+        int numMatchedPackages = 0;
+        try {
+            for (DKDownload.FileResponse fileResponse : packages) {
+                String packageName = fileResponse.file.getName();
+                packageNames.add(packageName);
+                if (!matchEntryStore.needsMatching(packageName, timeZoneOffsetSeconds)) {
+                    continue;
+                }
+                if (budget.shouldStop()) {
+                    complete = false;
+                    break;
+                }
+                if (signatureVerifier != null && !signatureVerifier.verify(fileResponse.file)) {
+                    Log.w(TAG, "Signature verification failed, skipping: " + fileResponse.url);
+                    // so that it is downloaded again, instead of being taken from the package cache
+                    if (!fileResponse.file.delete()) {
+                        Log.w(TAG, "Could not delete: " + fileResponse.file);
+                    }
+                    continue;
+                }
+                List<DiagnosisKeysProtos.TemporaryExposureKey> dks = null;
+                try (InputStream exportDotBin = openUnzippedStream(fileResponse.file, "export.bin")) {
+                    if (exportDotBin != null) {
+                        dks = new DiagnosisKeysImport(exportDotBin).getDiagnosisKeys();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not unzip: " + fileResponse.file + ": " + e);
+                }
+                if (dks == null) {
+                    continue;
+                }
+                MatchEntryContent matchEntryContent = new MatchEntryContent();
+                Matcher matcher = new Matcher(rpiList, new ArrayList<>(dks), matchEntryContent,
+                        CWCApplication.getDayBoundaries());
+                if (!matcher.findMatches(null, budget)) {
+                    complete = false;
+                    break;
+                }
+                try {
+                    matchEntryStore.save(packageName, rpiSnapshotTimeMillis, timeZoneOffsetSeconds,
+                            dks, matchEntryContent);
+                    numMatchedPackages++;
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not store the matches of " + packageName + ": " + e);
+                }
+            }
+        } finally {
+            if (signatureVerifier != null) {
+                signatureVerifier.shutdown();
+            }
+            rpiList.deleteSpillFiles();
+        }
+        if (complete) {
+            matchEntryStore.retainOnly(packageNames);
+        }
+        Log.i(TAG, "Matched " + numMatchedPackages + " packages" + (complete ? "." : ", budget exhausted."));
+        return Result.success();
+    }
+
+    @Override
+    public void onStopped() {
+        DKDownload download = diagnosisKeysDownload;
+        if (download != null) {
+            download.cancel();
+        }
+        super.onStopped();
+    }
+}
@@ -1,5 +1,7 @@
 package org.tosl.coronawarncompanion.barcharts;
 
+import android.graphics.Matrix;
+
 import com.github.mikephil.charting.charts.BarChart;
 
 import java.util.ArrayList;
@@ -7,6 +9,10 @@ import java.util.ArrayList;
 public class BarChartSync {
     public final ArrayList<BarChart> barChartList;
 
+    // reused for every gesture event, only accessed on the UI thread
+    private final float[] sourceValues = new float[9];
+    private final float[] targetValues = new float[9];
+
     public BarChartSync() {
         this.barChartList = new ArrayList<>();
     }
@@ -14,4 +20,45 @@ public class BarChartSync {
     public void add(BarChart barChart) {
         this.barChartList.add(barChart);
     }
+
+    /*
+     Applies the horizontal zoom and scroll position of the source chart to all other charts.
+     Only their viewport matrices are changed and the charts invalidated, nothing is laid out again.
+     */
+    public void syncWith(BarChart sourceChart) {
+        sourceChart.getViewPortHandler().getMatrixTouch().getValues(sourceValues);
+        for (BarChart barChart : barChartList) {
+            if (barChart != sourceChart) {
+                applySourceValues(barChart);
+            }
+        }
+    }
+
+    /*
+     For a chart that has just got its data: takes over the viewport of the charts that already show theirs.
+     */
+    public void alignWithOthers(BarChart barChart) {
+        for (BarChart otherChart : barChartList) {
+            if (otherChart != barChart && otherChart.getData() != null) {
+                otherChart.getViewPortHandler().getMatrixTouch().getValues(sourceValues);
+                applySourceValues(barChart);
+                return;
+            }
+        }
+    }
+
+    private void applySourceValues(BarChart barChart) {
+        Matrix matrix = barChart.getViewPortHandler().getMatrixTouch();
+        matrix.getValues(targetValues);
+        if (targetValues[Matrix.MSCALE_X] == sourceValues[Matrix.MSCALE_X] &&
+                targetValues[Matrix.MTRANS_X] == sourceValues[Matrix.MTRANS_X] &&
+                targetValues[Matrix.MSKEW_X] == sourceValues[Matrix.MSKEW_X]) {
+            return;  // already in sync, no need to redraw
+        }
+        targetValues[Matrix.MSCALE_X] = sourceValues[Matrix.MSCALE_X];
+        targetValues[Matrix.MTRANS_X] = sourceValues[Matrix.MTRANS_X];
+        targetValues[Matrix.MSKEW_X] = sourceValues[Matrix.MSKEW_X];
+        matrix.setValues(targetValues);
+        barChart.getViewPortHandler().refresh(matrix, barChart, true);
+    }
 }
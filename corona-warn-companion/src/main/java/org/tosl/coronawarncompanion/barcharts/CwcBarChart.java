@@ -21,12 +21,13 @@ import org.tosl.coronawarncompanion.R;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.TimeZone;
 
 import static org.tosl.coronawarncompanion.tools.Utils.getDateFromDaysSinceEpoch;
-import static org.tosl.coronawarncompanion.tools.Utils.resolveColorAttr;
+import static org.tosl.coronawarncompanion.tools.AndroidUtils.resolveColorAttr;
 
 public class CwcBarChart  {
 
@@ -34,13 +35,23 @@ public class CwcBarChart  {
 
     private final BarChart barChart;
     private final ProgressBar progressBar;
+    private final BarChartSync barChartSync;
     private BarData barData;
 
     private final float textScalingFactor;
 
+    // one slot per day, from firstDaysSinceEpoch on: the values are updated in place,
+    // and only copied into the (equally reused) BarEntries by refresh()
+    private int firstDaysSinceEpoch = 0;
+    private float[] values = new float[0];
+    private final ArrayList<BarEntry> barEntries = new ArrayList<>();
+    private float laidOutMaxValue = -1.0f;  // the axes have been computed for this maximum
+    private boolean formatted = false;
+
     public CwcBarChart(BarChart barChart, ProgressBar progressBar, BarChartSync barChartSync, Context context) {
         this.barChart = barChart;
         this.progressBar = progressBar;
+        this.barChartSync = barChartSync;
         this.barChart.setNoDataText(context.getString(R.string.please_wait));
         this.barChart.setNoDataTextColor(resolveColorAttr(android.R.attr.textColorPrimary, context));
         barChartSync.add(barChart);
@@ -53,21 +64,93 @@ public class CwcBarChart  {
         return barChart;
     }
 
-    public void setData(List<BarEntry> dataPoints, Integer color, String label, boolean itemsSelectable, Context context) {
-        BarDataSet dataSet = new BarDataSet(dataPoints, label); // add entries to dataSet
+    /*
+     Shows one bar per day from firstDaysSinceEpoch to lastDaysSinceEpoch (inclusive), all set to 0.
+     The slots are only allocated again if the range of days changes.
+     */
+    public void setDays(int firstDaysSinceEpoch, int lastDaysSinceEpoch,
+                        Integer color, String label, boolean itemsSelectable, Context context) {
+        int numDays = Math.max(0, lastDaysSinceEpoch - firstDaysSinceEpoch + 1);
+        if (barData != null && firstDaysSinceEpoch == this.firstDaysSinceEpoch && numDays == values.length) {
+            Arrays.fill(values, 0.0f);
+            return;
+        }
+        this.firstDaysSinceEpoch = firstDaysSinceEpoch;
+        values = new float[numDays];
+        barEntries.clear();
+        for (int i = 0; i < numDays; i++) {
+            barEntries.add(new BarEntry(firstDaysSinceEpoch + i, 0.0f));
+        }
+        BarDataSet dataSet = new BarDataSet(barEntries, label); // add entries to dataSet
         dataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
         dataSet.setColor(color);
         BarData barData = new BarData(dataSet);
         dataSet.setHighlightEnabled(itemsSelectable);
         dataSet.setValueTextSize(8.0f*this.textScalingFactor);
         dataSet.setValueTextColor(resolveColorAttr(android.R.attr.textColorPrimary, context));
+        barData.setValueFormatter(barFormatter);
         this.barData = barData;
         this.barChart.setData(barData);
+        laidOutMaxValue = -1.0f;
+        barChartSync.alignWithOthers(barChart);
+    }
+
+    /*
+     Days outside of the range given to setDays() are ignored.
+     */
+    public void setValue(int daysSinceEpoch, float value) {
+        int slot = daysSinceEpoch - firstDaysSinceEpoch;
+        if (slot >= 0 && slot < values.length) {
+            values[slot] = value;
+        }
+    }
+
+    public void addToValue(int daysSinceEpoch, float delta) {
+        int slot = daysSinceEpoch - firstDaysSinceEpoch;
+        if (slot >= 0 && slot < values.length) {
+            values[slot] += delta;
+        }
     }
 
     public void setFormatAndRefresh(Context context) {
-        switchPleaseWaitAnimationOff();
+        if (!formatted) {
+            switchPleaseWaitAnimationOff();
+            format(context);
+            formatted = true;
+        }
+        refresh();
+    }
+
+    /*
+     Shows the current values. The axes are only computed again if the highest bar has changed,
+     otherwise this is a single invalidate. The viewport (scrolling, zoom) is kept.
+     */
+    public void refresh() {
+        if (barData == null) {
+            return;
+        }
+        float maxValue = 0.0f;
+        for (int i = 0; i < values.length; i++) {
+            barEntries.get(i).setY(values[i]);
+            maxValue = Math.max(maxValue, values[i]);
+        }
+        barData.notifyDataChanged();
+        if (maxValue != laidOutMaxValue) {
+            laidOutMaxValue = maxValue;
+            barChart.notifyDataSetChanged();
+        }
+        barChart.invalidate(); // refresh
+    }
 
+    // the bar labels
+    private final ValueFormatter barFormatter = new ValueFormatter() {
+        @Override
+        public String getBarLabel(BarEntry barEntry) {
+            return String.valueOf((int) barEntry.getY());
+        }
+    };
+
+    private void format(Context context) {
         // set date label formatter
         String deviceDateFormat = android.text.format.DateFormat.getBestDateTimePattern(Locale.getDefault(), "dM");
         DateFormat dateFormat = new SimpleDateFormat(deviceDateFormat, Locale.getDefault());
@@ -89,14 +172,6 @@ public class CwcBarChart  {
                 return String.format("%5d", (int) value);
             }
         };
-        // the bar labels
-        ValueFormatter BarFormatter1 = new ValueFormatter() {
-            @Override
-            public String getBarLabel(BarEntry barEntry) {
-                return String.valueOf((int) barEntry.getY());
-            }
-        };
-        barData.setValueFormatter(BarFormatter1);
         XAxis xAxis = barChart.getXAxis();
         xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         xAxis.setValueFormatter(xAxisFormatter1);
@@ -125,7 +200,6 @@ public class CwcBarChart  {
         barChart.setScaleYEnabled(false);
         barChart.getViewPortHandler().setMaximumScaleX(5.0f);
         //barChart.setFitBars(true); // make the x-axis fit exactly all bars
-        barChart.invalidate(); // refresh
     }
 
     public void switchPleaseWaitAnimationOff() {
@@ -23,14 +23,10 @@ import android.content.Context;
 import android.content.res.AssetManager;
 import android.util.Log;
 
-import com.google.protobuf.InvalidProtocolBufferException;
-
 import org.iq80.leveldb.CompressionType;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBFactory;
-import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.Options;
-import org.iq80.leveldb.ReadOptions;
 import org.iq80.leveldb.impl.Iq80DBFactory;
 import org.tosl.coronawarncompanion.CWCApplication;
 import org.tosl.coronawarncompanion.rpis.RpiList;
@@ -40,7 +36,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 
 import static org.tosl.coronawarncompanion.gmsreadout.Sudo.sudo;
 
@@ -71,12 +66,14 @@ public class ContactDbOnDisk {
         assert cacheDir != null;
         cachePathStr = cacheDir.getPath();
 
-        // First rename the LevelDB directory, then copy it, then rename to the original name
+        // First rename the LevelDB directory, then copy it, then rename to the original name.
+        // The renames and the copy are one command, so that the rename back is done whenever the first rename
+        // has been done, also if the copy fails.
         String result = sudo(
                 "rm -rf "+cachePathStr+"/"+dbNameModified,
-                "mv "+gmsPathStr+"/"+dbName+" "+gmsPathStr+"/"+dbNameModified,
-                "cp -R "+gmsPathStr+"/"+dbNameModified+" "+cachePathStr+"/",
-                "mv "+gmsPathStr+"/"+dbNameModified+" "+gmsPathStr+"/"+dbName,
+                "mv "+gmsPathStr+"/"+dbName+" "+gmsPathStr+"/"+dbNameModified+" && { "+
+                        "cp -R "+gmsPathStr+"/"+dbNameModified+" "+cachePathStr+"/; "+
+                        "mv "+gmsPathStr+"/"+dbNameModified+" "+gmsPathStr+"/"+dbName+"; }",
                 "ls -la "+cachePathStr+"/"+dbNameModified
         );
         Log.d(TAG, "Result from trying to copy LevelDB: "+result);
@@ -187,36 +184,19 @@ public class ContactDbOnDisk {
 
 
     public RpiList readToRpiList() {
-        RpiList rpiList = new RpiList();
-
-        ReadOptions readOptions = new ReadOptions();
-        readOptions.verifyChecksums(true);
-        readOptions.fillCache(true);
-
-        DBIterator iterator = levelDBStore.iterator(readOptions);
-        for(iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
-            byte[] key = iterator.peekNext().getKey();
-            byte[] value = iterator.peekNext().getValue();
-
-            byte[] rpiBytes = new byte[16];
-            ByteBuffer keyBuf = ByteBuffer.wrap(key);
-            int daysSinceEpochUTC = keyBuf.getShort();  // get first 2 bytes: date
-            keyBuf.get(rpiBytes); // get the next 16 bytes: RPI
-
-            ContactRecordsProtos.ContactRecords contactRecords = null;
-            try {
-                contactRecords = ContactRecordsProtos.ContactRecords.parseFrom(value);
-            } catch (InvalidProtocolBufferException e) {
-                e.printStackTrace();
-            }
-            if (contactRecords != null) {
-                rpiList.addEntry(daysSinceEpochUTC, rpiBytes, contactRecords);
-            }
-        }
+        RpiList rpiList = CWCApplication.newRpiList(context);
+        ContactDbReader.readInto(levelDBStore, rpiList);
         return rpiList;
     }
 
     public RpiList getRpisFromContactDB() {
+        // MainActivity and the background sync use the same cache directory
+        synchronized (ContactDbOnDisk.class) {
+            return getRpisFromContactDBLocked();
+        }
+    }
+
+    private RpiList getRpisFromContactDBLocked() {
         RpiList rpiList = null;
         try {
             // delete cache:
@@ -20,49 +20,49 @@ package org.tosl.coronawarncompanion.gmsreadout;
 
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 
+/*
+ Runs commands as root, in one long-lived "su" shell (see ShellSession) that is started on the first use
+ and restarted after it has been closed (e.g. root access denied, or a command timed out).
+ */
 public class Sudo {
-    private static String readFromStream(InputStream is) throws IOException {
-        ByteArrayOutputStream s = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = is.read(buffer)) != -1) {
-            s.write(buffer, 0, length);
+    private static final String TAG = "Sudo";
+
+    private static ShellSession shellSession = null;
+
+    private static synchronized ShellSession getShellSession() throws IOException {
+        if (shellSession == null || !shellSession.isOpen()) {
+            shellSession = new ShellSession("su");
         }
-        return s.toString("UTF-8");
+        return shellSession;
     }
 
+    /*
+     Runs the commands as one script, one after the other, also if one of them fails, and returns their output.
+     The script is never abandoned halfway (no timeout), because the commands may depend on each other,
+     e.g. rename a directory of another app and rename it back.
+     */
     public static String sudo(String...strings) {
-        String res = "";
-        DataOutputStream outputStream = null;
-        InputStream response = null;
-        try{
-            Process su = Runtime.getRuntime().exec("su");
-            outputStream = new DataOutputStream(su.getOutputStream());
-            response = su.getInputStream();
-            for (String s : strings) {
-                outputStream.writeBytes(s+"\n");
-                outputStream.flush();
-            }
-            outputStream.writeBytes("exit\n");
-            outputStream.flush();
-            try {
-                su.waitFor();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            res = readFromStream(response);
-        } catch (IOException e){
-            e.printStackTrace();
-        } finally {
-            CloseablesCloser.close(outputStream, response);
+        StringBuilder script = new StringBuilder();
+        for (String s : strings) {
+            script.append(s).append('\n');
+        }
+        try {
+            return getShellSession().run(script.toString(), ShellSession.NO_TIMEOUT).output;
+        } catch (IOException e) {
+            Log.e(TAG, "Command failed: " + e);
+            return "";
         }
-        return res;
+    }
+
+    /*
+     Streams the (binary) output of a command, e.g. "cat" of a file, to output. Returns the exit status.
+     */
+    public static int sudo(String command, OutputStream output, long timeoutMillis) throws IOException {
+        return getShellSession().run(command, output, timeoutMillis);
     }
 
     public static class CloseablesCloser {
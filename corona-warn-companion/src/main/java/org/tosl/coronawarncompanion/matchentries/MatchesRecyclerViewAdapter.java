@@ -26,8 +26,6 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Color;
 import android.util.DisplayMetrics;
-import android.util.Log;
-import android.util.Pair;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -42,12 +40,11 @@ import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.ValueFormatter;
 
-import org.tosl.coronawarncompanion.CWCApplication;
 import org.tosl.coronawarncompanion.R;
 import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
-import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
-import org.tosl.coronawarncompanion.matchentries.MatchEntryContent.DailyMatchEntries;
+import org.tosl.coronawarncompanion.matcher.ExposureRisk;
 import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -55,14 +52,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.TimeZone;
-import java.util.TreeMap;
 
-import static org.tosl.coronawarncompanion.tools.Utils.byteArrayToHexString;
 import static org.tosl.coronawarncompanion.tools.Utils.getMillisFromSeconds;
-import static org.tosl.coronawarncompanion.tools.Utils.resolveColorAttr;
-import static org.tosl.coronawarncompanion.tools.Utils.xorTwoByteArrays;
+import static org.tosl.coronawarncompanion.tools.AndroidUtils.resolveColorAttr;
 
 /**
  * {@link RecyclerView.Adapter} that can display a {@link org.tosl.coronawarncompanion.matcher.Matcher.MatchEntry}.
@@ -77,24 +70,27 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
     private static final int greenColor = Color.parseColor("#00FF00");
     private final float textScalingFactor;
 
-    private final ArrayList<Pair<DiagnosisKeysProtos.TemporaryExposureKey, MatchEntryContent.GroupedByDkMatchEntries>> mValues;
+    // the dot colors are a few constants, so the charts can share their boxed values
+    private static final Integer[] boxedDotColors = {redColor, orangeColor, yellowColor, greenColor};
+
+    private final List<PrecomputedMatchEntryDetails> mValues;
     private final Context mContext;
+    private final DateFormat dateFormat;
 
     private boolean showAllScans = false;
 
-    public MatchesRecyclerViewAdapter(DailyMatchEntries dailyMatchEntries, Context context) {
+    public MatchesRecyclerViewAdapter(List<PrecomputedMatchEntryDetails> values, Context context) {
         this.mContext = context;
-        this.mValues = new ArrayList<>();
-        TreeMap<Integer, Pair<DiagnosisKeysProtos.TemporaryExposureKey,
-                MatchEntryContent.GroupedByDkMatchEntries>> treeMap = new TreeMap<>();
-        for (Map.Entry<DiagnosisKeysProtos.TemporaryExposureKey, MatchEntryContent.GroupedByDkMatchEntries> entry :
-                dailyMatchEntries.getMap().entrySet()) {
-            treeMap.put(entry.getValue().getList().get(0).startTimestampUTC, new Pair<>(entry.getKey(), entry.getValue()));
-        }
-        mValues.addAll(treeMap.values());
+        this.mValues = values;
         DisplayMetrics metrics = this.mContext.getResources().getDisplayMetrics();
         this.textScalingFactor = metrics.scaledDensity/metrics.density;
         this.lineColor = resolveColorAttr(android.R.attr.textColorSecondary, context);
+
+        // set date label formatter
+        String deviceDateFormat = android.text.format.DateFormat.getBestDateTimePattern(Locale.getDefault(), "Hm");
+        this.dateFormat = new SimpleDateFormat(deviceDateFormat, Locale.getDefault());
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // UTC because we don't want DateFormat to do additional time zone compensation
     }
 
     @NonNull
@@ -102,25 +98,19 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.match_card_fragment, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        configureDetailsChart(holder, mContext);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(final ViewHolder holder, int position) {
-        holder.mMatchEntriesPair = mValues.get(position);
-        DiagnosisKeysProtos.TemporaryExposureKey dk = holder.mMatchEntriesPair.first;
-        MatchEntryContent.GroupedByDkMatchEntries groupedByDkMatchEntries = holder.mMatchEntriesPair.second;
-
-        ArrayList<Matcher.MatchEntry> list = groupedByDkMatchEntries.getList();
+        holder.mDetails = mValues.get(position);
+        PrecomputedMatchEntryDetails details = holder.mDetails;
+        DiagnosisKeysProtos.TemporaryExposureKey dk = details.dk;
 
         // Text View:
 
-        // set date label formatter
-        String deviceDateFormat = android.text.format.DateFormat.getBestDateTimePattern(Locale.getDefault(), "Hm");
-        DateFormat dateFormat = new SimpleDateFormat(deviceDateFormat, Locale.getDefault());
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        // UTC because we don't want DateFormat to do additional time zone compensation
-
         boolean hasTransmissionRiskLevel = false;
         int transmissionRiskLevel = 0;
         //noinspection deprecation
@@ -138,9 +128,8 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
             hasReportType = true;
         }
 
-        MatchEntryDetails matchEntryDetails = getMatchEntryDetails(list, CWCApplication.getTimeZoneOffsetSeconds());
-        int minTimestampLocalTZDay0 = matchEntryDetails.minTimestampLocalTZDay0;
-        int maxTimestampLocalTZDay0 = matchEntryDetails.maxTimestampLocalTZDay0;
+        int minTimestampLocalTZDay0 = details.minTimestampLocalTZDay0;
+        int maxTimestampLocalTZDay0 = details.maxTimestampLocalTZDay0;
 
         Date startDate = new Date(getMillisFromSeconds(minTimestampLocalTZDay0));
         Date endDate = new Date(getMillisFromSeconds(maxTimestampLocalTZDay0));
@@ -172,18 +161,15 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         holder.mTextView2.setText(text);
 
         // Graph:
-        configureDetailsChart(holder.mChartView, matchEntryDetails.dataPointsMinAttenuation, matchEntryDetails.dotColorsMinAttenuation,
-                matchEntryDetails.dataPoints, matchEntryDetails.dotColors,
-                minTimestampLocalTZDay0, maxTimestampLocalTZDay0, mContext);
-        holder.mChartView.getLineData().getDataSetByIndex(1).setVisible(this.showAllScans);
+        updateDetailsChart(holder, details);
 
         if (this.showAllScans) {
             String txPowerStr;
-            if (matchEntryDetails.minTxPower == matchEntryDetails.maxTxPower) {
-                txPowerStr = String.valueOf(matchEntryDetails.minTxPower);
+            if (details.minTxPower == details.maxTxPower) {
+                txPowerStr = String.valueOf(details.minTxPower);
             } else {
-                txPowerStr = String.valueOf(matchEntryDetails.minTxPower) + ".." +
-                        String.valueOf(matchEntryDetails.maxTxPower);
+                txPowerStr = String.valueOf(details.minTxPower) + ".." +
+                        String.valueOf(details.maxTxPower);
             }
             holder.mTextView3.setText(this.mContext.getResources().getString(R.string.tx_power, txPowerStr));
             ViewGroup.LayoutParams params = (ViewGroup.LayoutParams) holder.mTextView3.getLayoutParams();
@@ -214,168 +200,54 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
     }
 
     public static MatchEntryDetails getMatchEntryDetails(ArrayList<Matcher.MatchEntry> list,
-                                                         int timeZoneOffset) {
-        // Threshold value for break detection:
-        final int pauseThresholdSeconds = 10;
+                                                         DayBoundaries dayBoundaries, int daysSinceEpochLocalTZ) {
+        SegmentedScans segmentedScans = new SegmentedScans(list, dayBoundaries, daysSinceEpochLocalTZ);
 
         MatchEntryDetails result = new MatchEntryDetails();
-        result.minTimestampLocalTZDay0 = Integer.MAX_VALUE;
-        result.maxTimestampLocalTZDay0 = Integer.MIN_VALUE;
-        result.dataPoints = new ArrayList<>();
-        result.dotColors = new ArrayList<>();
-        result.dataPointsMinAttenuation = new ArrayList<>();
-        result.dotColorsMinAttenuation = new ArrayList<>();
-        result.minAttenuation = Integer.MAX_VALUE;
-        result.minTxPower = Byte.MAX_VALUE;
-        result.maxTxPower = Byte.MIN_VALUE;
-
-        TreeMap<Integer, Integer> dataPointsInterimMap = new TreeMap<>();
-
-        // First step: Create a "flat" sorted list (TreeMap) from all scan records from all matchEntries
-        for (Matcher.MatchEntry matchEntry : list) {  // process each matchEntry separately
-            for (ContactRecordsProtos.ScanRecord scanRecord : matchEntry.contactRecords.getRecordList()) {
-                byte[] aem = xorTwoByteArrays(scanRecord.getAem().toByteArray(), matchEntry.aemXorBytes);
-                if ((aem[0] != 0x40) || (aem[2] != 0x00) || (aem[3] != 0x00)) {
-                    Log.w(TAG, "WARNING: Invalid AEM: " + byteArrayToHexString(aem));
-                }
-                byte txPower = aem[1];
-                //Log.d(TAG, "TXPower: "+txPower+" dBm");
-                int rssi = (int) scanRecord.getRssi();
-                //Log.d(TAG, "RSSI: "+rssi+" dBm");
-                int attenuation = txPower - rssi;
-                //Log.d(TAG, "Attenuation: "+attenuation+" dB");
-
-                int timestampLocalTZ = scanRecord.getTimestamp() + timeZoneOffset;
-                // reduce to "day0", to improve resolution within the float x value:
-                int timestampLocalTZDay0 = timestampLocalTZ % (24*3600);
-
-                // store to temporary buffers:
-                dataPointsInterimMap.put(timestampLocalTZDay0, attenuation);
-
-                // if found, store max/min values
-                if (result.minTxPower > txPower) {
-                    result.minTxPower = txPower;
-                }
-                if (result.maxTxPower < txPower) {
-                    result.maxTxPower = txPower;
-                }
-                if (result.minAttenuation > attenuation) {
-                    result.minAttenuation = attenuation;
-                }
-                if (result.minTimestampLocalTZDay0 > timestampLocalTZDay0) {
-                    result.minTimestampLocalTZDay0 = timestampLocalTZDay0;
-                }
-                if (result.maxTimestampLocalTZDay0 < timestampLocalTZDay0) {
-                    result.maxTimestampLocalTZDay0 = timestampLocalTZDay0;
-                }
-            }
-        }
-
-        // Second step: Process each scan record, group them, find the minimum attenuation in each group
-        ArrayList<Entry> dataPointsBuffer = new ArrayList<>();
-        ArrayList<Integer> dotColorsBuffer = new ArrayList<>();
-        int lastTimestampLocalTZDay0 = 0;
-        int localMinAttenuation = Integer.MAX_VALUE;
-
-        int numLastScanRecord = dataPointsInterimMap.size() - 1;
-        int i = 0;
-        for(Map.Entry<Integer, Integer> mapEntry : dataPointsInterimMap.entrySet()) {
-            // iterate over sorted TreeMap
-            int timestampLocalTZDay0 = mapEntry.getKey();
-            int attenuation = mapEntry.getValue();
-
-            // Second step: look for a break (>= pauseThresholdSeconds)
-            // suppress break detection at the very first entry
-            if ((i != 0) && (timestampLocalTZDay0 >= lastTimestampLocalTZDay0 + pauseThresholdSeconds)) {
-                /*
-                String deviceDateFormat = android.text.format.DateFormat.getBestDateTimePattern(Locale.getDefault(), "Hms");
-                DateFormat dateFormat = new SimpleDateFormat(deviceDateFormat, Locale.getDefault());
-                dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-                // UTC because we don't want DateFormat to do additional time zone compensation
-                */
-                //Log.d(TAG, "lastTimestampLocalTZDay0: "+dateFormat.format(new Date(getMillisFromSeconds((int) lastTimestampLocalTZDay0)))+
-                //        ", timestampLocalTZDay0: "+dateFormat.format(new Date(getMillisFromSeconds((int) timestampLocalTZDay0))));
-
-                // break found: Now copy the block we have collected so far
-                boolean minHandled = false;
-                for (int pos = 0; pos < dataPointsBuffer.size(); pos++) {
-                    Entry entry = dataPointsBuffer.get(pos);
-                    int color = dotColorsBuffer.get(pos);
-                    //Log.d(TAG, "Entry at: "+dateFormat.format(new Date(getMillisFromSeconds((int) entry.getX()))));
-                    if (!minHandled && entry.getY() <= localMinAttenuation) {
-                        // This is the minimum, store in the "minimum" list
-                        //Log.d(TAG, "Minimum found.");
-                        result.dataPointsMinAttenuation.add(entry);
-                        result.dotColorsMinAttenuation.add(color);
-                        minHandled = true;
-                    } else {
-                        // This is one of the other entries, store in the "normal" list
-                        result.dataPoints.add(entry);
-                        result.dotColors.add(color);
-                    }
-                }
-                // clear the temporary buffer
-                dataPointsBuffer.clear();
-                dotColorsBuffer.clear();
-                // reset search for local minimum:
-                localMinAttenuation = Integer.MAX_VALUE;
-            }
-
-            // store to temporary buffers:
-            dataPointsBuffer.add(new Entry(timestampLocalTZDay0, attenuation));
-            dotColorsBuffer.add(getDotColorForAttenuation(attenuation));
-            // if found, store local min value
-            if (localMinAttenuation > attenuation) {
-                localMinAttenuation = attenuation;
-            }
-
-            // if this is the last entry, handle the situation separately
-            if (i == numLastScanRecord) {
-                // Now copy the block we have collected so far
-                boolean minHandled = false;
-                for (int pos = 0; pos < dataPointsBuffer.size(); pos++) {
-                    Entry entry = dataPointsBuffer.get(pos);
-                    int color = dotColorsBuffer.get(pos);
-                    //Log.d(TAG, "Entry at: "+dateFormat.format(new Date(getMillisFromSeconds((int) entry.getX()))));
-                    if (!minHandled && entry.getY() <= localMinAttenuation) {
-                        // This is the minimum, store in the "minimum" list
-                        //Log.d(TAG, "Minimum found.");
-                        result.dataPointsMinAttenuation.add(entry);
-                        result.dotColorsMinAttenuation.add(color);
-                        minHandled = true;
-                    } else {
-                        // This is one of the other entries, store in the "normal" list
-                        result.dataPoints.add(entry);
-                        result.dotColors.add(color);
-                    }
-                }
-            }
+        result.minTimestampLocalTZDay0 = segmentedScans.minTimestampLocalTZDay0;
+        result.maxTimestampLocalTZDay0 = segmentedScans.maxTimestampLocalTZDay0;
+        result.minAttenuation = segmentedScans.minAttenuation;
+        result.minTxPower = segmentedScans.minTxPower;
+        result.maxTxPower = segmentedScans.maxTxPower;
+        result.dataPoints = new ArrayList<>(segmentedScans.timestamps.length);
+        result.dotColors = new ArrayList<>(segmentedScans.timestamps.length);
+        result.dataPointsMinAttenuation = new ArrayList<>(segmentedScans.minAttenuationTimestamps.length);
+        result.dotColorsMinAttenuation = new ArrayList<>(segmentedScans.minAttenuationTimestamps.length);
+        addEntries(segmentedScans.timestamps, segmentedScans.attenuations,
+                result.dataPoints, result.dotColors);
+        addEntries(segmentedScans.minAttenuationTimestamps, segmentedScans.minAttenuations,
+                result.dataPointsMinAttenuation, result.dotColorsMinAttenuation);
+        return result;
+    }
 
-            // prepare break detection
-            lastTimestampLocalTZDay0 = timestampLocalTZDay0;
-            i++;
+    private static void addEntries(int[] timestamps, int[] attenuations,
+                                   ArrayList<Entry> dataPoints, ArrayList<Integer> dotColors) {
+        for (int i = 0; i < timestamps.length; i++) {
+            dataPoints.add(new Entry(timestamps[i], attenuations[i]));
+            dotColors.add(getDotColorForAttenuation(attenuations[i]));
         }
-        return result;
     }
 
-    private static int getDotColorForAttenuation(int attenuation) {
-        if (attenuation < 55) {
-            return redColor;
-        } else if (attenuation <= 63) {
-            return orangeColor;
-        } else if (attenuation <= 73) {
-            return yellowColor;
-        } else {
-            return greenColor;
+    static int getDotColorForAttenuation(int attenuation) {
+        switch (ExposureRisk.getAttenuationBucket(attenuation)) {
+            case ExposureRisk.BUCKET_IMMEDIATE:
+                return redColor;
+            case ExposureRisk.BUCKET_NEAR:
+                return orangeColor;
+            case ExposureRisk.BUCKET_MEDIUM:
+                return yellowColor;
+            default:
+                return greenColor;
         }
     }
 
-    private void configureDetailsChart(LineChart chartView, List<Entry> dataPointsMinAttenuation, ArrayList<Integer> dotColorsMinAttenuation,
-                                       List<Entry> dataPoints, ArrayList<Integer> dotColors,
-                                       int minTimestampLocalTZDay0, int maxTimestampLocalTZDay0, Context context) {
-        LineDataSet dataSetMin = new LineDataSet(dataPointsMinAttenuation, "Minimum Attenuation"); // add entries to dataSetMin
+    // Sets up the chart of a ViewHolder once, the data is filled in by updateDetailsChart().
+    private void configureDetailsChart(ViewHolder holder, Context context) {
+        LineChart chartView = holder.mChartView;
+
+        LineDataSet dataSetMin = new LineDataSet(holder.mEntriesMinAttenuation, "Minimum Attenuation"); // add entries to dataSetMin
         dataSetMin.setAxisDependency(YAxis.AxisDependency.LEFT);
-        dataSetMin.setCircleColors(dotColorsMinAttenuation);
+        dataSetMin.setCircleColors(holder.mDotColorsMinAttenuation);
         dataSetMin.setDrawCircleHole(false);
         dataSetMin.setCircleHoleColor(resolveColorAttr(android.R.attr.colorBackgroundFloating, context));
         //dataSetMin.enableDashedLine(0, 1, 0);
@@ -385,9 +257,9 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         dataSetMin.setCircleRadius(5.0f);
         dataSetMin.setCircleHoleRadius(2.5f);
 
-        LineDataSet dataSetRest = new LineDataSet(dataPoints, "Attenuation"); // add entries to dataSetRest
+        LineDataSet dataSetRest = new LineDataSet(holder.mEntries, "Attenuation"); // add entries to dataSetRest
         dataSetRest.setAxisDependency(YAxis.AxisDependency.LEFT);
-        dataSetRest.setCircleColors(dotColors);
+        dataSetRest.setCircleColors(holder.mDotColors);
         dataSetRest.setDrawCircleHole(false);
         dataSetRest.setCircleHoleColor(resolveColorAttr(android.R.attr.colorBackgroundFloating, context));
         dataSetRest.enableDashedLine(0, 1, 0);  // these parameters mean: do not show line
@@ -400,11 +272,6 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         lineData.addDataSet(dataSetRest);
         chartView.setData(lineData);
 
-        String deviceDateFormat = android.text.format.DateFormat.getBestDateTimePattern(Locale.getDefault(), "Hm");
-        DateFormat dateFormat = new SimpleDateFormat(deviceDateFormat, Locale.getDefault());
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        // UTC because we don't want DateFormat to do additional time zone compensation
-
         // the labels that should be drawn on the XAxis
         ValueFormatter xAxisFormatter = new ValueFormatter() {
             @Override
@@ -427,8 +294,6 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         xAxis.setGranularity(60.0f); // minimum axis-step (interval) is 60 seconds
         xAxis.setGranularityEnabled(true);
         xAxis.setDrawGridLines(false);
-        xAxis.setAxisMinimum(minTimestampLocalTZDay0-60);
-        xAxis.setAxisMaximum(maxTimestampLocalTZDay0+60);
         xAxis.setTextSize(11.0f*this.textScalingFactor);
         xAxis.setTextColor(resolveColorAttr(android.R.attr.textColorPrimary, context));
         chartView.setExtraBottomOffset(3.0f);
@@ -450,6 +315,29 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         chartView.getLegend().setEnabled(false);
         chartView.getDescription().setEnabled(false);
         chartView.setScaleYEnabled(false);
+    }
+
+    // Copies the precomputed values into the chart of a ViewHolder.
+    // The Entry objects of the previous binding are reused, so scrolling does not allocate per scan.
+    private void updateDetailsChart(ViewHolder holder, PrecomputedMatchEntryDetails details) {
+        LineChart chartView = holder.mChartView;
+        setEntries(holder.mEntriesMinAttenuation, holder.mDotColorsMinAttenuation,
+                details.minAttenuationTimestamps, details.minAttenuations, details.minAttenuationColors);
+        setEntries(holder.mEntries, holder.mDotColors,
+                details.timestamps, details.attenuations, details.colors);
+        LineData lineData = chartView.getLineData();
+        lineData.getDataSetByIndex(1).setVisible(this.showAllScans);
+        for (int i = 0; i < lineData.getDataSetCount(); i++) {
+            lineData.getDataSetByIndex(i).calcMinMax();
+        }
+        lineData.notifyDataChanged();
+
+        int minTimestampLocalTZDay0 = details.minTimestampLocalTZDay0;
+        int maxTimestampLocalTZDay0 = details.maxTimestampLocalTZDay0;
+        XAxis xAxis = chartView.getXAxis();
+        xAxis.setAxisMinimum(minTimestampLocalTZDay0-60);
+        xAxis.setAxisMaximum(maxTimestampLocalTZDay0+60);
+
         int span = maxTimestampLocalTZDay0-minTimestampLocalTZDay0;
         float maximumScaleX = span / 700.0f;
         if (maximumScaleX < 1.0f) {
@@ -457,9 +345,37 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         }
         //Log.d(TAG, "maximumScaleX: "+maximumScaleX);
         chartView.getViewPortHandler().setMaximumScaleX(maximumScaleX);
+        chartView.notifyDataSetChanged();
         chartView.invalidate(); // refresh
     }
 
+    private static void setEntries(ArrayList<Entry> entries, ArrayList<Integer> dotColors,
+                                   int[] x, int[] y, int[] colors) {
+        while (entries.size() > x.length) {
+            entries.remove(entries.size() - 1);
+        }
+        dotColors.clear();
+        for (int i = 0; i < x.length; i++) {
+            if (i < entries.size()) {
+                Entry entry = entries.get(i);
+                entry.setX(x[i]);
+                entry.setY(y[i]);
+            } else {
+                entries.add(new Entry(x[i], y[i]));
+            }
+            dotColors.add(getBoxedDotColor(colors[i]));
+        }
+    }
+
+    private static Integer getBoxedDotColor(int color) {
+        for (Integer boxedDotColor : boxedDotColors) {
+            if (boxedDotColor == color) {
+                return boxedDotColor;
+            }
+        }
+        return color;
+    }
+
     private String getReportTypeStr(DiagnosisKeysProtos.TemporaryExposureKey.ReportType reportType) {
         switch (reportType) {
             case REVOKED:
@@ -489,7 +405,12 @@ public class MatchesRecyclerViewAdapter extends RecyclerView.Adapter<MatchesRecy
         public final TextView mTextView2;
         public final TextView mTextView3;
         public final LineChart mChartView;
-        public Pair<DiagnosisKeysProtos.TemporaryExposureKey, MatchEntryContent.GroupedByDkMatchEntries> mMatchEntriesPair;
+        public PrecomputedMatchEntryDetails mDetails;
+        // the data of mChartView, reused for each binding
+        final ArrayList<Entry> mEntriesMinAttenuation = new ArrayList<>();
+        final ArrayList<Integer> mDotColorsMinAttenuation = new ArrayList<>();
+        final ArrayList<Entry> mEntries = new ArrayList<>();
+        final ArrayList<Integer> mDotColors = new ArrayList<>();
 
         public ViewHolder(View view) {
             super(view);
@@ -32,6 +32,8 @@ import android.view.ViewGroup;
 
 import org.tosl.coronawarncompanion.R;
 
+import java.util.List;
+
 /**
  * A fragment representing a list of Items.
  */
@@ -40,18 +42,15 @@ public class MatchesRecyclerViewFragment extends Fragment {
     private static final String ARG_COLUMN_COUNT = "column-count";
     private int mColumnCount = 1;
 
-    private final MatchEntryContent mMatchEntryContent;
-    private final int mDaysSinceEpochLocalTZ;
+    private final List<PrecomputedMatchEntryDetails> mDetails;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
      * fragment (e.g. upon screen orientation changes).
-     * @param daysSinceEpochLocalTZ The day for which the fragment has been set up.
-     * @param matchEntryContent The MarchEntryContent class that has all the MatchEntries.
+     * @param details The precomputed details of all matches of the day for which the fragment has been set up.
      */
-    public MatchesRecyclerViewFragment(int daysSinceEpochLocalTZ, MatchEntryContent matchEntryContent) {
-        this.mDaysSinceEpochLocalTZ = daysSinceEpochLocalTZ;
-        this.mMatchEntryContent = matchEntryContent;
+    public MatchesRecyclerViewFragment(List<PrecomputedMatchEntryDetails> details) {
+        this.mDetails = details;
     }
 
     @Override
@@ -77,8 +76,7 @@ public class MatchesRecyclerViewFragment extends Fragment {
             } else {
                 recyclerView.setLayoutManager(new GridLayoutManager(context, mColumnCount));
             }
-            MatchesRecyclerViewAdapter adapter = new MatchesRecyclerViewAdapter(mMatchEntryContent.matchEntries.
-                    getDailyMatchEntries(mDaysSinceEpochLocalTZ), context);
+            MatchesRecyclerViewAdapter adapter = new MatchesRecyclerViewAdapter(mDetails, context);
             recyclerView.setAdapter(adapter);
             //adapter.setHour(mInitialHour);
         }
@@ -0,0 +1,103 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.tosl.coronawarncompanion.matchentries;
+
+import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
+import org.tosl.coronawarncompanion.tasks.CancellationToken;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ The details of the matches of one Diagnosis Key (one card in DisplayDetailsActivity), in a compact form:
+ timestamps (local time of day, see SegmentedScans), attenuations and dot colors as int arrays,
+ separately for the minimum attenuation of each contiguous exposure and for all other scans.
+
+ The details are computed once, on a background thread, when DisplayDetailsActivity is opened.
+ Binding a card then only copies these values into its chart.
+ */
+public class PrecomputedMatchEntryDetails {
+
+    public final DiagnosisKeysProtos.TemporaryExposureKey dk;
+    public final int startTimestampUTC;  // of the first match, for the order of the cards
+
+    public final int[] minAttenuationTimestamps;
+    public final int[] minAttenuations;
+    public final int[] minAttenuationColors;
+    public final int[] timestamps;
+    public final int[] attenuations;
+    public final int[] colors;
+
+    public final int minAttenuation;
+    public final byte minTxPower;
+    public final byte maxTxPower;
+    public final int minTimestampLocalTZDay0;
+    public final int maxTimestampLocalTZDay0;
+
+    public PrecomputedMatchEntryDetails(DiagnosisKeysProtos.TemporaryExposureKey dk,
+                                        MatchEntryContent.GroupedByDkMatchEntries groupedByDkMatchEntries,
+                                        DayBoundaries dayBoundaries, int daysSinceEpochLocalTZ) {
+        this.dk = dk;
+        this.startTimestampUTC = groupedByDkMatchEntries.getList().get(0).startTimestampUTC;
+        SegmentedScans segmentedScans = new SegmentedScans(groupedByDkMatchEntries.getList(),
+                dayBoundaries, daysSinceEpochLocalTZ);
+        minAttenuationTimestamps = segmentedScans.minAttenuationTimestamps;
+        minAttenuations = segmentedScans.minAttenuations;
+        minAttenuationColors = getDotColors(minAttenuations);
+        timestamps = segmentedScans.timestamps;
+        attenuations = segmentedScans.attenuations;
+        colors = getDotColors(attenuations);
+        minAttenuation = segmentedScans.minAttenuation;
+        minTxPower = segmentedScans.minTxPower;
+        maxTxPower = segmentedScans.maxTxPower;
+        minTimestampLocalTZDay0 = segmentedScans.minTimestampLocalTZDay0;
+        maxTimestampLocalTZDay0 = segmentedScans.maxTimestampLocalTZDay0;
+    }
+
+    private static int[] getDotColors(int[] attenuations) {
+        int[] dotColors = new int[attenuations.length];
+        for (int i = 0; i < attenuations.length; i++) {
+            dotColors[i] = MatchesRecyclerViewAdapter.getDotColorForAttenuation(attenuations[i]);
+        }
+        return dotColors;
+    }
+
+    /*
+     Computes the details of all matches of one day, ordered by the time of the first match.
+     Call this on a background thread, the matches must not change in the meantime.
+     Stops early (with the details computed so far) when cancelled.
+     */
+    public static ArrayList<PrecomputedMatchEntryDetails> precompute(
+            List<MatchEntryContent.GroupedByDkMatchEntries> matches,
+            DayBoundaries dayBoundaries, int daysSinceEpochLocalTZ, CancellationToken cancellationToken) {
+        ArrayList<PrecomputedMatchEntryDetails> result = new ArrayList<>(matches.size());
+        for (MatchEntryContent.GroupedByDkMatchEntries groupedByDkMatchEntries : matches) {
+            if (cancellationToken.shouldStop()) {
+                break;
+            }
+            result.add(new PrecomputedMatchEntryDetails(groupedByDkMatchEntries.getDk(), groupedByDkMatchEntries,
+                    dayBoundaries, daysSinceEpochLocalTZ));
+        }
+        Collections.sort(result, (a, b) -> Integer.compare(a.startTimestampUTC, b.startTimestampUTC));
+        return result;
+    }
+}
@@ -12,9 +12,7 @@ import android.util.Log;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.protobuf.ByteString;
-
-import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
+import org.tosl.coronawarncompanion.CWCApplication;
 import org.tosl.coronawarncompanion.rpis.RpiList;
 
 import java.io.File;
@@ -22,9 +20,6 @@ import java.io.FileFilter;
 import java.util.Arrays;
 import java.util.regex.Pattern;
 
-import static org.tosl.coronawarncompanion.tools.Utils.getDaysFromSeconds;
-import static org.tosl.coronawarncompanion.tools.Utils.hexStringToByteArray;
-
 public class RambleDbOnDisk {
 
     private static final String TAG = "RambleDbOnDisk";
@@ -34,11 +29,12 @@ public class RambleDbOnDisk {
         this.context = context;
     }
 
-    public RpiList getRpisFromContactDB(Activity activity) {
-        RpiList rpiList = null;
-
+    /*
+     To be called on the UI thread, before getRpisFromContactDB()
+     */
+    public static void requestFileAccess(Activity activity) {
         // get live permission to access files
-        boolean grantedAll = ContextCompat.checkSelfPermission(this.context,
+        boolean grantedAll = ContextCompat.checkSelfPermission(activity,
                 Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
         if (!grantedAll)
         {
@@ -46,6 +42,10 @@ public class RambleDbOnDisk {
                     new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE},
                     0);
         }
+    }
+
+    public RpiList getRpisFromContactDB() {
+        RpiList rpiList = null;
 
         // in the Downloads directory, ...
         File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
@@ -67,54 +67,26 @@ public class RambleDbOnDisk {
                     if (rambleDb != null) {
                         Log.d(TAG, "Opened RaMBLE Database: " + downloadDir + "/" + rambleDbFileName);
 
-                        Cursor cursor = rambleDb.rawQuery("SELECT service_data, first_seen, last_seen, id "+
-                                        "FROM devices WHERE service_uuids='fd6f'", null);
+                        Cursor cursor = rambleDb.rawQuery(RambleDevice.DEVICES_QUERY, null);
 
-                        rpiList = new RpiList();
+                        rpiList = CWCApplication.newRpiList(context);
 
                         while(cursor.moveToNext()) {
                             // parse entry from table "devices"
-                            String rpiAemStr = cursor.getString(0).split(":")[1];
-                            String rpiStr = rpiAemStr.substring(0, 16*2);
-                            byte[] rpiBytes = hexStringToByteArray(rpiStr);
-                            String aemStr = rpiAemStr.substring(16*2);
-                            byte[] aemBytes = hexStringToByteArray(aemStr);
-                            String firstSeenStr = cursor.getString(1);
-                            int firstSeenTimestamp = Integer.parseInt(firstSeenStr);
-                            String lastSeenStr = cursor.getString(2);
-                            int lastSeenTimestamp = Integer.parseInt(lastSeenStr);
+                            RambleDevice device = new RambleDevice(cursor.getString(0),
+                                    Integer.parseInt(cursor.getString(1)), Integer.parseInt(cursor.getString(2)));
                             String idStr = cursor.getString(3);
-                            // Log.d(TAG, "Device seen: " + byteArrayToHexString(rpiBytes) + " " + byteArrayToHexString(aemBytes) +
-                            //        " " + firstSeenTimestamp + "-" + lastSeenTimestamp + " " + idStr);
 
                             // get Scan Records from table "locations"
-                            ContactRecordsProtos.ContactRecords.Builder contactRecordsBuilder =
-                                    ContactRecordsProtos.ContactRecords.newBuilder();
-                            Cursor cursor2 = rambleDb.rawQuery("SELECT timestamp, rssi "+
-                                    "FROM locations WHERE device_id="+idStr, null);
+                            Cursor cursor2 = rambleDb.rawQuery(RambleDevice.LOCATIONS_QUERY + idStr, null);
                             while(cursor2.moveToNext()) {
-                                String timestampStr = cursor2.getString(0);
-                                int timestamp = Integer.parseInt(timestampStr);
-                                String rssiStr = cursor2.getString(1);
-                                int rssi = Integer.parseInt(rssiStr);
-                                //Log.d(TAG, "Scan events: " + timestamp + " " + rssi);
-
-                                // add scanRecord to contactRecords
-                                ContactRecordsProtos.ScanRecord scanRecord = ContactRecordsProtos.ScanRecord.newBuilder()
-                                        .setTimestamp(timestamp)
-                                        .setRssi(rssi)
-                                        .setAem(ByteString.copyFrom(aemBytes))
-                                        .build();
-                                contactRecordsBuilder.addRecord(scanRecord);
+                                device.addScan(Integer.parseInt(cursor2.getString(0)),
+                                        Integer.parseInt(cursor2.getString(1)));
                             }
                             cursor2.close();
 
                             // store entry (incl. contactRecords) in rpiList
-                            int daysSinceEpochUTC = getDaysFromSeconds(firstSeenTimestamp);
-                            rpiList.addEntry(daysSinceEpochUTC, rpiBytes, contactRecordsBuilder.build());
-                            if (getDaysFromSeconds(lastSeenTimestamp) != daysSinceEpochUTC) {  // extremely unlikely
-                                rpiList.addEntry(daysSinceEpochUTC+1, rpiBytes, contactRecordsBuilder.build());
-                            }
+                            device.addTo(rpiList);
                         }
                         cursor.close();
                     }
@@ -0,0 +1,46 @@
+/*
+ * Corona-Warn-Companion. An app that shows COVID-19 Exposure Notifications details.
+ * Copyright (C) 2020  Michael Huebler <corona-warn-companion@tosl.org> and other contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.tosl.coronawarncompanion.tools;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.TypedValue;
+
+import androidx.core.content.ContextCompat;
+
+public class AndroidUtils {
+    public static int resolveColorAttr(int colorAttr, Context context) {
+        TypedValue resolvedAttr = resolveThemeAttr(colorAttr, context);
+        // resourceId is used if it's a ColorStateList, and data if it's a color reference or a hex color
+        int colorRes;
+        if (resolvedAttr.resourceId != 0) {
+            colorRes = resolvedAttr.resourceId;
+        } else {
+            colorRes = resolvedAttr.data;
+        }
+        return ContextCompat.getColor(context, colorRes);
+    }
+
+    private static TypedValue resolveThemeAttr(int attrRes, Context context) {
+        TypedValue typedValue = new TypedValue();
+        Resources.Theme theme = context.getTheme();
+        theme.resolveAttribute(attrRes, typedValue, true);
+        return typedValue;
+    }
+}
@@ -0,0 +1,71 @@
+package org.tosl.coronawarncompanion;
+
+import org.junit.Test;
+import org.tosl.coronawarncompanion.matchentries.MatchesRecyclerViewAdapter;
+import org.tosl.coronawarncompanion.matchentries.SegmentedScans;
+import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmark, which will execute on the development machine (host).
+ * Compares getMatchEntryDetails() and SegmentedScans with the original TreeMap based implementation,
+ * for long exposures.
+ * Run with: ./gradlew testGithubDebugUnitTest -Pbenchmark --tests '*MatchEntryDetailsBenchmark'
+ */
+public class MatchEntryDetailsBenchmark {
+
+    private static final int warmupIterations = 200;
+    private static final int iterations = 500;
+
+    private interface Implementation {
+        Object run(ArrayList<Matcher.MatchEntry> list);
+    }
+
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static void measure(String name, ArrayList<Matcher.MatchEntry> list, int numScans,
+                                Implementation implementation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            implementation.run(list);
+        }
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            implementation.run(list);
+        }
+        long nanosPerOp = (System.nanoTime() - start) / iterations;
+        long bytesPerOp = (getAllocatedBytes() - allocatedBefore) / iterations;
+        System.out.printf("%-10s %6d scans: %8d us/op, %9d bytes/op%n",
+                name, numScans, nanosPerOp / 1000, bytesPerOp);
+    }
+
+    @Test
+    public void benchmarkGetMatchEntryDetails() {
+        Random random = new Random(1);
+        DayBoundaries dayBoundaries = DayBoundaries.forFixedOffset(0);
+        for (int scansPerMatchEntry : new int[] {10, 100, 500}) {
+            final int numMatchEntries = 10;
+            ArrayList<Matcher.MatchEntry> list = MatchesRecyclerViewAdapterUnitTest.createRandomMatchEntries(
+                    random, numMatchEntries, scansPerMatchEntry, 18000*24*3600);
+            int numScans = numMatchEntries * scansPerMatchEntry;
+            measure("reference", list, numScans,
+                    l -> MatchesRecyclerViewAdapterUnitTest.getMatchEntryDetailsReference(l, 0, 18000));
+            measure("current", list, numScans,
+                    l -> MatchesRecyclerViewAdapter.getMatchEntryDetails(l, dayBoundaries, 18000));
+            // without the conversion to chart Entries, as used by the details screen
+            measure("primitive", list, numScans,
+                    l -> new SegmentedScans(l, dayBoundaries, 18000));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.tosl.coronawarncompanion;
 
+import com.github.mikephil.charting.data.Entry;
 import com.google.protobuf.ByteString;
 
 import org.junit.Test;
@@ -7,8 +8,14 @@ import org.tosl.coronawarncompanion.diagnosiskeys.DiagnosisKeysProtos;
 import org.tosl.coronawarncompanion.gmsreadout.ContactRecordsProtos;
 import org.tosl.coronawarncompanion.matchentries.MatchesRecyclerViewAdapter;
 import org.tosl.coronawarncompanion.matcher.Matcher;
+import org.tosl.coronawarncompanion.tools.DayBoundaries;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 import static org.junit.Assert.*;
 import static org.tosl.coronawarncompanion.tools.Utils.getENINFromSeconds;
@@ -87,7 +94,8 @@ public class MatchesRecyclerViewAdapterUnitTest {
 
         // run getMatchEntryDetails()
         MatchesRecyclerViewAdapter.MatchEntryDetails matchEntryDetails =
-                MatchesRecyclerViewAdapter.getMatchEntryDetails(list,0);
+                MatchesRecyclerViewAdapter.getMatchEntryDetails(list,
+                        DayBoundaries.forFixedOffset(0), daysSinceEpoch);
 
         // assert that no entry was lost in the process
         assertEquals(list.size(),
@@ -97,4 +105,127 @@ public class MatchesRecyclerViewAdapterUnitTest {
         // assert that there's a color for each dataPoint
         assertEquals(matchEntryDetails.dataPoints.size(), matchEntryDetails.dotColors.size());
     }
+
+    /*
+     Creates the matches of one Diagnosis Key: numMatchEntries entries with scans at random times
+     (including duplicate timestamps and pauses), random RSSI values and the given AEM.
+     */
+    static ArrayList<Matcher.MatchEntry> createRandomMatchEntries(Random random, int numMatchEntries,
+                                                                  int scansPerMatchEntry, int startTimestamp) {
+        byte[] aemXorBytes = new byte[] {(byte) 0x12, (byte) 0x34, (byte) 0x56, (byte) 0x78};
+        byte[] aemBytes = new byte[] {(byte) (0x40 ^ 0x12), (byte) (-20 ^ 0x34), (byte) 0x56, (byte) 0x78};
+        ArrayList<Matcher.MatchEntry> list = new ArrayList<>();
+        int timestamp = startTimestamp;
+        for (int entryPos = 0; entryPos < numMatchEntries; entryPos++) {
+            ContactRecordsProtos.ContactRecords.Builder contactRecordsBuilder =
+                    ContactRecordsProtos.ContactRecords.newBuilder();
+            for (int scanPos = 0; scanPos < scansPerMatchEntry; scanPos++) {
+                // mostly short steps, sometimes the same timestamp, sometimes a pause
+                int step = random.nextInt(20) == 0 ? 5*60 : random.nextInt(12);
+                timestamp += step;
+                contactRecordsBuilder.addRecord(ContactRecordsProtos.ScanRecord.newBuilder()
+                        .setTimestamp(timestamp)
+                        .setRssi(-40 - random.nextInt(60))
+                        .setAem(ByteString.copyFrom(aemBytes)));
+            }
+            list.add(new Matcher.MatchEntry(contactRecordsBuilder.build(), startTimestamp, aemXorBytes));
+        }
+        // scans are not necessarily stored in time order
+        Collections.shuffle(list, random);
+        return list;
+    }
+
+    /*
+     Reference implementation: the original TreeMap based grouping, returns the {x, y} pairs of the
+     minimum attenuation points (index 0) and of the other points (index 1).
+     The timestamps are relative to the given local day, without wrapping around at midnight.
+     */
+    static List<List<int[]>> getMatchEntryDetailsReference(ArrayList<Matcher.MatchEntry> list, int timeZoneOffset,
+                                                           int daysSinceEpochLocalTZ) {
+        final int pauseThresholdSeconds = 10;
+        TreeMap<Integer, Integer> dataPointsInterimMap = new TreeMap<>();
+        for (Matcher.MatchEntry matchEntry : list) {
+            for (ContactRecordsProtos.ScanRecord scanRecord : matchEntry.contactRecords.getRecordList()) {
+                byte txPower = (byte) (scanRecord.getAem().byteAt(1) ^ matchEntry.aemXorBytes[1]);
+                int attenuation = txPower - (int) scanRecord.getRssi();
+                int timestampLocalTZDay0 = scanRecord.getTimestamp() + timeZoneOffset - daysSinceEpochLocalTZ*24*3600;
+                dataPointsInterimMap.put(timestampLocalTZDay0, attenuation);
+            }
+        }
+        List<int[]> minPoints = new ArrayList<>();
+        List<int[]> otherPoints = new ArrayList<>();
+        List<int[]> buffer = new ArrayList<>();
+        int localMinAttenuation = Integer.MAX_VALUE;
+        int lastTimestamp = 0;
+        int i = 0;
+        for (Map.Entry<Integer, Integer> mapEntry : dataPointsInterimMap.entrySet()) {
+            if ((i != 0) && (mapEntry.getKey() >= lastTimestamp + pauseThresholdSeconds)) {
+                flushReferenceBuffer(buffer, localMinAttenuation, minPoints, otherPoints);
+                localMinAttenuation = Integer.MAX_VALUE;
+            }
+            buffer.add(new int[] {mapEntry.getKey(), mapEntry.getValue()});
+            localMinAttenuation = Math.min(localMinAttenuation, mapEntry.getValue());
+            lastTimestamp = mapEntry.getKey();
+            i++;
+        }
+        flushReferenceBuffer(buffer, localMinAttenuation, minPoints, otherPoints);
+        List<List<int[]>> result = new ArrayList<>();
+        result.add(minPoints);
+        result.add(otherPoints);
+        return result;
+    }
+
+    private static void flushReferenceBuffer(List<int[]> buffer, int localMinAttenuation,
+                                             List<int[]> minPoints, List<int[]> otherPoints) {
+        boolean minHandled = false;
+        for (int[] point : buffer) {
+            if (!minHandled && point[1] <= localMinAttenuation) {
+                minPoints.add(point);
+                minHandled = true;
+            } else {
+                otherPoints.add(point);
+            }
+        }
+        buffer.clear();
+    }
+
+    private static void assertSamePoints(List<int[]> expected, List<Entry> actual, List<Integer> actualColors) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.size(), actualColors.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], (int) actual.get(i).getX());
+            assertEquals(expected.get(i)[1], (int) actual.get(i).getY());
+        }
+    }
+
+    @Test
+    public void getMatchEntryDetails_isCompatibleWithReference() {
+        Random random = new Random(42);
+        final int timeZoneOffset = 2*3600;
+        for (int run = 0; run < 50; run++) {
+            ArrayList<Matcher.MatchEntry> list = createRandomMatchEntries(random,
+                    1 + random.nextInt(20), 1 + random.nextInt(50), 18000*24*3600 + random.nextInt(20*3600));
+
+            MatchesRecyclerViewAdapter.MatchEntryDetails matchEntryDetails =
+                    MatchesRecyclerViewAdapter.getMatchEntryDetails(list,
+                            DayBoundaries.forFixedOffset(timeZoneOffset), 18000);
+            List<List<int[]>> expected = getMatchEntryDetailsReference(list, timeZoneOffset, 18000);
+
+            // assert that the points and their order are the same as with the original implementation
+            assertSamePoints(expected.get(0), matchEntryDetails.dataPointsMinAttenuation,
+                    matchEntryDetails.dotColorsMinAttenuation);
+            assertSamePoints(expected.get(1), matchEntryDetails.dataPoints, matchEntryDetails.dotColors);
+            assertEquals(-20, matchEntryDetails.minTxPower);
+            assertEquals(-20, matchEntryDetails.maxTxPower);
+        }
+    }
+
+    @Test
+    public void getMatchEntryDetails_emptyList() {
+        MatchesRecyclerViewAdapter.MatchEntryDetails matchEntryDetails =
+                MatchesRecyclerViewAdapter.getMatchEntryDetails(new ArrayList<>(),
+                        DayBoundaries.forFixedOffset(0), 18000);
+        assertEquals(0, matchEntryDetails.dataPoints.size());
+        assertEquals(0, matchEntryDetails.dataPointsMinAttenuation.size());
+    }
 }